@@ -181,4 +181,16 @@ public class CommandApduTest extends PersoSimTestCase {
 		assertFalse(commandApdu.isNeZeroEncoded());
 	}
 
+	@Test
+	public void testGetNc_extendedMsbSet() {
+		byte[] apdu = new byte[7 + 0x8000];
+		apdu[1] = (byte) 0x80;
+		apdu[5] = (byte) 0x80;
+		CommandApdu commandApdu = CommandApduFactory.createCommandApdu(apdu);
+		
+		//call mut
+		assertEquals(0x8000, commandApdu.getNc());
+		assertEquals(0x8000, commandApdu.getCommandData().toByteArray().length);
+	}
+
 }
@@ -162,4 +162,28 @@ public class ObjectStoreTest extends PersoSimTestCase {
 		
 		assertEquals(result, getField(objectStore, "currentFile"));
 	}
+
+	/**
+	 * The selection state is bound to the logical channel.
+	 * @throws FileNotFoundException 
+	 */
+	@Test
+	public void testSelectLogicalChannel() throws FileNotFoundException{
+		objectStore.selectFile(new FileIdentifier(0x011C), Scope.FROM_MF);
+		
+		//run mut
+		objectStore.selectLogicalChannel((byte) 1);
+		assertEquals("new channel", masterFile, objectStore.getCurrentFile());
+		objectStore.selectFileForPersonalization(dedicatedFile);
+		
+		objectStore.selectLogicalChannel((byte) 0);
+		assertEquals("channel 0", elementaryFile3UnderMF, objectStore.getCurrentFile());
+		
+		objectStore.selectLogicalChannel((byte) 1);
+		assertEquals("channel 1", dedicatedFile, objectStore.getCurrentFile());
+		
+		objectStore.resetLogicalChannel((byte) 0);
+		objectStore.selectLogicalChannel((byte) 0);
+		assertEquals("channel 0 after reset", masterFile, objectStore.getCurrentFile());
+	}
 }
@@ -0,0 +1,142 @@
+package de.persosim.simulator.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.security.Provider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Test;
+
+import de.persosim.simulator.test.PersoSimTestCase;
+import de.persosim.simulator.utils.HexString;
+
+public class CryptoSupportSelectorTest extends PersoSimTestCase {
+
+	private static final String CIPHER_NAME = "AES/CBC/NoPadding";
+	private static final String MAC_NAME = "AESCMAC";
+
+	/**
+	 * Positive test: instances are cached by cipher and MAC algorithm.
+	 */
+	@Test
+	public void testGetCryptoSupport_cached() {
+		CryptoSupport cryptoSupport = CryptoSupportSelector.getCryptoSupport(CIPHER_NAME, MAC_NAME);
+
+		assertSame(cryptoSupport, CryptoSupportSelector.getCryptoSupport(CIPHER_NAME, MAC_NAME));
+		assertNotSame(cryptoSupport, CryptoSupportSelector.getCryptoSupport("AES/CBC/PKCS5Padding", MAC_NAME));
+	}
+
+	/**
+	 * Positive test: cached instances are replaced once the provider changes.
+	 */
+	@Test
+	public void testGetCryptoSupport_providerChanged() {
+		CryptoSupport cryptoSupport = CryptoSupportSelector.getCryptoSupport(CIPHER_NAME, MAC_NAME);
+		assertSame(bcProvider, cryptoSupport.getCipher().getProvider());
+
+		Provider otherProvider = new BouncyCastleProvider();
+		Crypto.setCryptoProvider(otherProvider);
+		try {
+			CryptoSupport otherCryptoSupport = CryptoSupportSelector.getCryptoSupport(CIPHER_NAME, MAC_NAME);
+
+			assertNotSame(cryptoSupport, otherCryptoSupport);
+			assertSame(otherProvider, otherCryptoSupport.getCipher().getProvider());
+			assertSame(otherProvider, otherCryptoSupport.getMac().getProvider());
+			assertSame(otherCryptoSupport, CryptoSupportSelector.getCryptoSupport(CIPHER_NAME, MAC_NAME));
+		} finally {
+			Crypto.setCryptoProvider(bcProvider);
+		}
+	}
+
+	/**
+	 * Negative test: unsupported ciphers are rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetCryptoSupport_unsupportedCipher() {
+		CryptoSupportSelector.getCryptoSupport("DESede/CBC/NoPadding", "ISO9797ALG3");
+	}
+
+	/**
+	 * Positive test: each thread uses engines of its own.
+	 */
+	@Test
+	public void testGetCipher_perThread() throws Exception {
+		final CryptoSupport cryptoSupport = CryptoSupportSelector.getCryptoSupport(CIPHER_NAME, MAC_NAME);
+		Cipher cipher = cryptoSupport.getCipher();
+
+		assertSame(cipher, cryptoSupport.getCipher());
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Cipher otherCipher = executor.submit(new Callable<Cipher>() {
+				@Override
+				public Cipher call() {
+					return cryptoSupport.getCipher();
+				}
+			}).get();
+			assertNotSame(cipher, otherCipher);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Positive test: concurrent use of a shared instance with different keys
+	 * yields the same results as sequential use.
+	 */
+	@Test
+	public void testConcurrentUse() throws Exception {
+		final CryptoSupport cryptoSupport = CryptoSupportSelector.getCryptoSupport(CIPHER_NAME, MAC_NAME);
+		final byte[] plainText = HexString.toByteArray("000102030405060708090A0B0C0D0E0F101112131415161718191A1B1C1D1E1F");
+		int noOfThreads = 8;
+
+		ExecutorService executor = Executors.newFixedThreadPool(noOfThreads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < noOfThreads; i++) {
+				final SecretKeySpec key = cryptoSupport.generateSecretKeySpecCipher(createKey(i));
+				final SecretKeySpec macKey = cryptoSupport.generateSecretKeySpecMac(createKey(i));
+				final byte[] expectedCipherText = cryptoSupport.encryptWithIvZero(plainText, key);
+				final byte[] expectedMac = cryptoSupport.macPlain(plainText, macKey);
+
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int j = 0; j < 500; j++) {
+							assertArrayEquals(expectedCipherText, cryptoSupport.encryptWithIvZero(plainText, key));
+							assertArrayEquals(plainText, cryptoSupport.decryptWithIvZero(expectedCipherText, key));
+							assertArrayEquals(expectedMac, cryptoSupport.macPlain(plainText, macKey));
+						}
+						return null;
+					}
+				}));
+			}
+
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static byte[] createKey(int seed) {
+		byte[] key = new byte[16];
+		for (int i = 0; i < key.length; i++) {
+			key[i] = (byte) (seed * 31 + i);
+		}
+		return key;
+	}
+
+}
@@ -0,0 +1,65 @@
+package de.persosim.simulator.crypto;
+
+import static org.junit.Assert.assertSame;
+
+import java.security.Provider;
+import java.security.Security;
+
+import org.junit.After;
+import org.junit.Test;
+
+import de.persosim.simulator.test.PersoSimTestCase;
+
+public class CryptoTest extends PersoSimTestCase {
+
+	@After
+	public void tearDown() {
+		Crypto.setCryptoProvider(bcProvider);
+	}
+
+	/**
+	 * Positive test: the provider set explicitly takes precedence.
+	 */
+	@Test
+	public void testGetCryptoProvider_explicit() {
+		assertSame(bcProvider, Crypto.getCryptoProvider());
+	}
+
+	/**
+	 * Positive test: without explicit provider and OSGi service the most
+	 * preferred installed provider is resolved and cached.
+	 */
+	@Test
+	public void testGetCryptoProvider_resolved() {
+		Crypto.setCryptoProvider(null);
+
+		Provider provider = Crypto.getCryptoProvider();
+		assertSame(Security.getProviders()[0], provider);
+		assertSame(provider, Crypto.getCryptoProvider());
+	}
+
+	/**
+	 * Positive test: the singleton is created once, also when requested concurrently.
+	 */
+	@Test
+	public void testGetInstance() throws Exception {
+		final Crypto[] instances = new Crypto[8];
+		Thread[] threads = new Thread[instances.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					instances[index] = Crypto.getInstance();
+				}
+			});
+			threads[i].start();
+		}
+
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+			assertSame(Crypto.getInstance(), instances[i]);
+		}
+	}
+
+}
@@ -7,6 +7,7 @@ import static org.junit.Assert.assertTrue;
 import java.math.BigInteger;
 import java.security.KeyPair;
 import java.security.spec.ECPoint;
+import java.util.Arrays;
 
 import org.junit.Test;
 
@@ -404,4 +405,78 @@ public class CryptoUtilTest extends PersoSimTestCase {
 		assertTrue(keyPair != null);
 	}
 	
+	/**
+	 * Positive test case: data is padded in place behind the data.
+	 */
+	@Test
+	public void testPadData_inPlace() {
+		byte[] buffer = HexString.toByteArray("FF0011223344FFFFFFFF");
+		
+		assertEquals(8, CryptoUtil.padData(buffer, 1, 5, 8));
+		assertArrayEquals(HexString.toByteArray("FF0011223344800000FF"), buffer);
+	}
+	
+	/**
+	 * Negative test case: the buffer must provide space for the padding.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testPadData_inPlaceBufferTooShort() {
+		CryptoUtil.padData(new byte[16], 1, 8, 8);
+	}
+	
+	/**
+	 * Positive test case: unpadding matches padding for all data lengths and
+	 * offsets, also if the data ends with bytes looking like padding.
+	 */
+	@Test
+	public void testUnpadData_allLengths() {
+		for (int blockSize : new int[] {1, 8, 16}) {
+			for (int length = 0; length <= 3 * blockSize; length++) {
+				for (int offset = 0; offset < 9; offset++) {
+					for (byte fill : new byte[] {0x00, (byte) 0x80, 0x01}) {
+						byte[] buffer = new byte[offset + CryptoUtil.getPaddedLength(length, blockSize) + 3];
+						Arrays.fill(buffer, (byte) 0x55);
+						Arrays.fill(buffer, offset, offset + length, fill);
+						
+						int paddedLength = CryptoUtil.padData(buffer, offset, length, blockSize);
+						
+						assertEquals(length, CryptoUtil.unpadData(buffer, offset, paddedLength, blockSize));
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Negative test case: padding indicator missing within the last block.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnpadData_noPaddingIndicator() {
+		CryptoUtil.unpadData(HexString.toByteArray("80000000000000000000000000000000"), 0, 16, 8);
+	}
+	
+	/**
+	 * Negative test case: non-zero byte behind the padding indicator.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnpadData_invalidPaddingByte() {
+		CryptoUtil.unpadData(HexString.toByteArray("0011223344558000000000000000010000"), 1, 16, 16);
+	}
+	
+	/**
+	 * Negative test case: last byte neither zero nor padding indicator.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnpadData_noPadding() {
+		CryptoUtil.unpadData(HexString.toByteArray("00112233445566778899AABBCCDDEEFF"), 0, 16, 16);
+	}
+	
+	/**
+	 * Negative test case: all zero data.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnpadData_allZero() {
+		CryptoUtil.unpadData(new byte[16], 0, 16, 16);
+	}
+	
 }
@@ -0,0 +1,112 @@
+package de.persosim.simulator.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.persosim.simulator.test.PersoSimTestCase;
+import de.persosim.simulator.utils.HexString;
+import de.persosim.simulator.utils.Utils;
+
+public class PaddedMacTest extends PersoSimTestCase {
+
+	private static final SecretKeySpec KEY = new SecretKeySpec(HexString.toByteArray("8BC9DD9D33C62926101D212B04C0C79A"), "AESCMAC");
+	private static final byte[] DATA = HexString.toByteArray("000102030405060708090A0B0C0D0E0F101112131415161718191A1B1C1D1E1F2021");
+
+	private Mac mac;
+	private Mac referenceMac;
+
+	@Before
+	public void setUp() throws Exception {
+		mac = Mac.getInstance("AESCMAC", Crypto.getCryptoProvider());
+		mac.init(KEY);
+		referenceMac = Mac.getInstance("AESCMAC", Crypto.getCryptoProvider());
+		referenceMac.init(KEY);
+	}
+
+	private byte[] doFinal(PaddedMac paddedMac) {
+		byte[] result = new byte[paddedMac.getMacLength() + 2];
+		assertEquals(paddedMac.getMacLength(), paddedMac.doFinal(result, 1));
+		return Arrays.copyOfRange(result, 1, result.length - 1);
+	}
+
+	/**
+	 * Positive test: slices are processed as if concatenated and padded.
+	 */
+	@Test
+	public void testUpdate_slices() {
+		PaddedMac paddedMac = new PaddedMac().init(mac, 16);
+		paddedMac.update(DATA, 0, 5).update(DATA[5]).update(DATA, 6, DATA.length - 6);
+
+		assertArrayEquals(referenceMac.doFinal(CryptoUtil.padData(DATA, 16)), doFinal(paddedMac));
+	}
+
+	/**
+	 * Positive test: each segment is padded separately, a segment ending on a
+	 * block boundary is padded by a full block.
+	 */
+	@Test
+	public void testPad_segments() {
+		PaddedMac paddedMac = new PaddedMac().init(mac, 16);
+		paddedMac.update(DATA, 0, 4).pad().update(DATA, 0, 16);
+
+		byte[] expected = referenceMac.doFinal(Utils.concatByteArrays(CryptoUtil.padData(Arrays.copyOf(DATA, 4), 16), CryptoUtil.padData(Arrays.copyOf(DATA, 16), 16)));
+		assertArrayEquals(expected, doFinal(paddedMac));
+	}
+
+	/**
+	 * Positive test: empty segments are not padded.
+	 */
+	@Test
+	public void testPad_emptySegment() {
+		PaddedMac paddedMac = new PaddedMac().init(mac, 16);
+		paddedMac.update(DATA, 0, 4).pad().pad().update(DATA, 0, 0);
+
+		assertArrayEquals(referenceMac.doFinal(CryptoUtil.padData(Arrays.copyOf(DATA, 4), 16)), doFinal(paddedMac));
+	}
+
+	/**
+	 * Positive test: data already processed by the MAC is not part of the padded input.
+	 */
+	@Test
+	public void testInit_auxiliaryData() {
+		byte[] auxiliaryData = new byte[16];
+		auxiliaryData[15] = 0x03;
+
+		mac.update(auxiliaryData);
+		PaddedMac paddedMac = new PaddedMac().init(mac, 16);
+		paddedMac.update(DATA, 0, DATA.length);
+
+		assertArrayEquals(referenceMac.doFinal(Utils.concatByteArrays(auxiliaryData, CryptoUtil.padData(DATA, 16))), doFinal(paddedMac));
+	}
+
+	/**
+	 * Positive test: instances can be reused.
+	 */
+	@Test
+	public void testInit_reuse() {
+		PaddedMac paddedMac = new PaddedMac().init(mac, 16);
+		paddedMac.update(DATA, 0, 3);
+		doFinal(paddedMac);
+
+		paddedMac.init(mac, 16).update(DATA, 0, DATA.length);
+
+		assertArrayEquals(referenceMac.doFinal(CryptoUtil.padData(DATA, 16)), doFinal(paddedMac));
+	}
+
+	/**
+	 * Negative test: the block size must fit the padding.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInit_illegalBlockSize() {
+		new PaddedMac().init(mac, PaddedMac.MAX_BLOCK_SIZE + 1);
+	}
+
+}
@@ -0,0 +1,91 @@
+package de.persosim.simulator.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+import de.persosim.simulator.utils.HexString;
+
+public class SendSequenceCounterTest {
+
+	/**
+	 * Positive test: the encoding is padded to the max byte length.
+	 */
+	@Test
+	public void testToByteArray() {
+		SendSequenceCounter ssc = new SendSequenceCounter(16);
+		ssc.increment();
+		ssc.increment();
+
+		assertArrayEquals(HexString.toByteArray("00000000000000000000000000000002"), ssc.toByteArray());
+		assertEquals(BigInteger.valueOf(2), ssc.getValue());
+		assertEquals(1, ssc.getCurrentByteLength());
+	}
+
+	/**
+	 * Positive test: incrementing carries from the least into the most
+	 * significant 64 bits.
+	 */
+	@Test
+	public void testIncrement_carry() {
+		SendSequenceCounter ssc = new SendSequenceCounter(new BigInteger("FFFFFFFFFFFFFFFF", 16), 16);
+		ssc.increment();
+
+		assertArrayEquals(HexString.toByteArray("00000000000000010000000000000000"), ssc.toByteArray());
+		assertEquals(9, ssc.getCurrentByteLength());
+	}
+
+	/**
+	 * Positive test: incrementing beyond the max value wraps around to 0.
+	 */
+	@Test
+	public void testIncrement_wrapAround() {
+		SendSequenceCounter ssc = new SendSequenceCounter(new BigInteger(1, HexString.toByteArray("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF")), 16);
+		ssc.increment();
+		assertEquals(BigInteger.ZERO, ssc.getValue());
+
+		ssc = new SendSequenceCounter(new BigInteger(1, HexString.toByteArray("FFFFFFFFFFFFFFFF")), 8);
+		ssc.increment();
+		assertArrayEquals(new byte[8], ssc.toByteArray());
+
+		ssc = new SendSequenceCounter(BigInteger.valueOf(300));
+		ssc.setValue(BigInteger.valueOf(300));
+		ssc.increment();
+		assertEquals(BigInteger.ZERO, ssc.getValue());
+		assertEquals(2, ssc.getMaxByteLength());
+	}
+
+	/**
+	 * Positive test: the encoding is written into the provided buffer.
+	 */
+	@Test
+	public void testWriteTo() {
+		SendSequenceCounter ssc = new SendSequenceCounter(HexString.toByteArray("0102030405060708090A0B0C0D0E0F10").length);
+		ssc.setValue(HexString.toByteArray("0102030405060708090A0B0C0D0E0F10"));
+
+		byte[] buffer = new byte[18];
+		assertEquals(17, ssc.writeTo(buffer, 1));
+		assertArrayEquals(HexString.toByteArray("000102030405060708090A0B0C0D0E0F1000"), buffer);
+	}
+
+	/**
+	 * Negative test: the value must not exceed the max value.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetValue_exceedsMaxValue() {
+		SendSequenceCounter ssc = new SendSequenceCounter(8);
+		ssc.setValue(HexString.toByteArray("010000000000000000"));
+	}
+
+	/**
+	 * Negative test: the max byte length must not exceed 16 bytes.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_maxByteLengthTooLarge() {
+		new SendSequenceCounter(17);
+	}
+
+}
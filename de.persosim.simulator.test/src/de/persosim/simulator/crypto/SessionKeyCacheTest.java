@@ -0,0 +1,122 @@
+package de.persosim.simulator.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Test;
+
+import de.persosim.simulator.crypto.SessionKeyCache.SessionKeys;
+import de.persosim.simulator.test.PersoSimTestCase;
+import de.persosim.simulator.utils.HexString;
+
+public class SessionKeyCacheTest extends PersoSimTestCase {
+
+	private static final byte[] SEED = HexString.toByteArray("0102030405060708");
+	private static final byte[] SHARED_SECRET = HexString.toByteArray("28768D20701247DAE81804C9E780EDE582A9996DB4A315020B2733197DB84925");
+	private static final byte[] NONCE = HexString.toByteArray("D0E1F2A3B4C5D6E7");
+
+	private CryptoSupport cryptoSupport = CryptoSupportSelector.getCryptoSupport("AES/CBC/NoPadding", "AESCMAC");
+
+	@After
+	public void tearDown() {
+		SessionKeyCache.disableTestMode();
+	}
+
+	private static byte[] nextBytes(SecureRandom secureRandom) {
+		byte[] bytes = new byte[16];
+		secureRandom.nextBytes(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Positive test: test mode is disabled by default, randomness is passed through.
+	 */
+	@Test
+	public void testGetSecureRandom_productionMode() {
+		assertFalse(SessionKeyCache.isTestModeEnabled());
+
+		SecureRandom secureRandom = new SecureRandom();
+		assertSame(secureRandom, SessionKeyCache.getSecureRandom(secureRandom, SessionKeyCache.PURPOSE_PACE_NONCE));
+	}
+
+	/**
+	 * Positive test: in test mode randomness is deterministic per purpose.
+	 */
+	@Test
+	public void testGetSecureRandom_testMode() {
+		SessionKeyCache.enableTestMode(SEED);
+
+		byte[] nonce1 = nextBytes(SessionKeyCache.getSecureRandom(new SecureRandom(), SessionKeyCache.PURPOSE_PACE_NONCE));
+		byte[] nonce2 = nextBytes(SessionKeyCache.getSecureRandom(new SecureRandom(), SessionKeyCache.PURPOSE_PACE_NONCE));
+		byte[] nonce3 = nextBytes(SessionKeyCache.getSecureRandom(new SecureRandom(), SessionKeyCache.PURPOSE_CA_NONCE));
+
+		assertArrayEquals(nonce1, nonce2);
+		assertFalse(Arrays.equals(nonce1, nonce3));
+	}
+
+	/**
+	 * Positive test: keys match the KDF output and are not cached in production mode.
+	 */
+	@Test
+	public void testDeriveSessionKeys_productionMode() {
+		SessionKeys sessionKeys = SessionKeyCache.deriveSessionKeys(cryptoSupport, 32, SHARED_SECRET, NONCE);
+
+		KeyDerivationFunction kdf = new KeyDerivationFunction(32);
+		assertArrayEquals(kdf.deriveENC(SHARED_SECRET, NONCE), sessionKeys.getKeyEnc().getEncoded());
+		assertArrayEquals(kdf.deriveMAC(SHARED_SECRET, NONCE), sessionKeys.getKeyMac().getEncoded());
+		assertEquals(cryptoSupport.getMacName(), sessionKeys.getKeyMac().getAlgorithm());
+
+		assertNotSame(sessionKeys, SessionKeyCache.deriveSessionKeys(cryptoSupport, 32, SHARED_SECRET, NONCE));
+		assertEquals(0, SessionKeyCache.size());
+	}
+
+	/**
+	 * Positive test: keys are cached by shared secret and nonce in test mode.
+	 */
+	@Test
+	public void testDeriveSessionKeys_testMode() {
+		SessionKeyCache.enableTestMode(SEED);
+
+		SessionKeys sessionKeys = SessionKeyCache.deriveSessionKeys(cryptoSupport, 16, SHARED_SECRET, NONCE);
+		assertSame(sessionKeys, SessionKeyCache.deriveSessionKeys(cryptoSupport, 16, SHARED_SECRET, NONCE));
+
+		KeyDerivationFunction kdf = new KeyDerivationFunction(16);
+		assertArrayEquals(kdf.deriveENC(SHARED_SECRET, NONCE), sessionKeys.getKeyEnc().getEncoded());
+
+		assertNotSame(sessionKeys, SessionKeyCache.deriveSessionKeys(cryptoSupport, 16, SHARED_SECRET, null));
+		assertNotSame(sessionKeys, SessionKeyCache.deriveSessionKeys(cryptoSupport, 32, SHARED_SECRET, NONCE));
+		assertEquals(3, SessionKeyCache.size());
+	}
+
+	/**
+	 * Positive test: disabling test mode discards cached keys.
+	 */
+	@Test
+	public void testDisableTestMode() {
+		SessionKeyCache.enableTestMode(SEED);
+		SessionKeyCache.deriveSessionKeys(cryptoSupport, 16, SHARED_SECRET, NONCE);
+		assertTrue(SessionKeyCache.isTestModeEnabled());
+
+		SessionKeyCache.disableTestMode();
+
+		assertFalse(SessionKeyCache.isTestModeEnabled());
+		assertEquals(0, SessionKeyCache.size());
+	}
+
+	/**
+	 * Negative test: the seed must not be empty.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testEnableTestMode_emptySeed() {
+		SessionKeyCache.enableTestMode(new byte[0]);
+	}
+
+}
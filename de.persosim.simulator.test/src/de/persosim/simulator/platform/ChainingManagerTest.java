@@ -0,0 +1,328 @@
+package de.persosim.simulator.platform;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.persosim.simulator.apdu.CommandApdu;
+import de.persosim.simulator.apdu.CommandApduFactory;
+import de.persosim.simulator.apdu.ResponseApdu;
+import de.persosim.simulator.crypto.CryptoSupport;
+import de.persosim.simulator.crypto.CryptoSupportSelector;
+import de.persosim.simulator.crypto.CryptoUtil;
+import de.persosim.simulator.processing.ProcessingData;
+import de.persosim.simulator.securemessaging.SecureMessaging;
+import de.persosim.simulator.securemessaging.SmDataProviderTr03110;
+import de.persosim.simulator.test.PersoSimTestCase;
+import de.persosim.simulator.tlv.TlvValuePlain;
+import de.persosim.simulator.utils.HexString;
+import de.persosim.simulator.utils.Utils;
+
+public class ChainingManagerTest extends PersoSimTestCase {
+
+	/**
+	 * Test instance
+	 */
+	private ChainingManager chainingManager;
+
+	@Before
+	public void setUp() {
+		chainingManager = new ChainingManager(0);
+		chainingManager.powerOn();
+	}
+
+	/**
+	 * Propagate the given APDU upwards through the test instance
+	 * @param apdu APDU as hex string
+	 * @return the processing data used
+	 */
+	private ProcessingData processAscending(String apdu) {
+		ProcessingData processingData = new ProcessingData();
+		processingData.updateCommandApdu(this, "test command APDU",
+				CommandApduFactory.createCommandApdu(HexString.toByteArray(apdu)));
+		chainingManager.processAscending(processingData);
+		return processingData;
+	}
+
+	/**
+	 * Chained commands are collected and acknowledged, the last command of the
+	 * chain is handed upwards with the data of the complete chain.
+	 */
+	@Test
+	public void testChainedCommandCollected() {
+		ProcessingData pData = processAscending("10DA010203112233");
+		assertTrue("first command not consumed", chainingManager.isApduConsumed());
+		assertEquals(Iso7816.SW_9000_NO_ERROR, pData.getResponseApdu().getStatusWord());
+
+		pData = processAscending("10DA0102024455");
+		assertTrue("second command not consumed", chainingManager.isApduConsumed());
+		assertEquals(Iso7816.SW_9000_NO_ERROR, pData.getResponseApdu().getStatusWord());
+
+		pData = processAscending("00DA01020166");
+		assertFalse("last command consumed", chainingManager.isApduConsumed());
+		assertNull("response already set", pData.getResponseApdu());
+		assertArrayEquals(HexString.toByteArray("00DA010206112233445566"), pData.getCommandApdu().toByteArray());
+	}
+
+	/**
+	 * Chained data exceeding short length is handed upwards as extended length
+	 * APDU.
+	 */
+	@Test
+	public void testChainedCommandExtendedLength() {
+		byte[] fragment = new byte[205];
+		fragment[0] = (byte) 0x10;
+		fragment[1] = (byte) 0x2A;
+		fragment[4] = (byte) 200;
+		Arrays.fill(fragment, 5, fragment.length, (byte) 0x5A);
+
+		processAscending(HexString.encode(fragment));
+		fragment[0] = 0;
+		ProcessingData pData = processAscending(HexString.encode(fragment) + "00");
+
+		CommandApdu commandApdu = pData.getCommandApdu();
+		assertTrue("not extended length", commandApdu.isExtendedLength());
+		assertEquals("N_c", 400, commandApdu.getNc());
+		assertEquals("N_e", 256, commandApdu.getNe());
+	}
+
+	/**
+	 * A chain interrupted by a command with a different header is aborted.
+	 */
+	@Test
+	public void testChainInterrupted() {
+		processAscending("10DA010203112233");
+
+		ProcessingData pData = processAscending("00DB01020166");
+		assertTrue("command not consumed", chainingManager.isApduConsumed());
+		assertEquals(Iso7816.SW_6883_LAST_COMMAND_EXPECTED, pData.getResponseApdu().getStatusWord());
+
+		pData = processAscending("00DA01020166");
+		assertFalse("command consumed after aborted chain", chainingManager.isApduConsumed());
+		assertArrayEquals(HexString.toByteArray("00DA01020166"), pData.getCommandApdu().toByteArray());
+	}
+
+	/**
+	 * GENERAL AUTHENTICATE uses chaining to link protocol steps and must be
+	 * passed upwards unmodified.
+	 */
+	@Test
+	public void testProtocolChainingPassedThrough() {
+		ProcessingData pData = processAscending("10860000027C0000");
+		assertFalse("command consumed", chainingManager.isApduConsumed());
+		assertNull("response already set", pData.getResponseApdu());
+		assertArrayEquals(HexString.toByteArray("10860000027C0000"), pData.getCommandApdu().toByteArray());
+	}
+
+	/**
+	 * Response data exceeding N_e is sliced and the remaining data is provided
+	 * via GET RESPONSE.
+	 */
+	@Test
+	public void testGetResponse() {
+		byte[] responseData = new byte[300];
+		for (int i = 0; i < responseData.length; i++) {
+			responseData[i] = (byte) i;
+		}
+
+		ProcessingData pData = processAscending("00B0000000");
+		pData.updateResponseAPDU(this, "long response", new ResponseApdu(new TlvValuePlain(responseData), Iso7816.SW_9000_NO_ERROR));
+		chainingManager.processDescending(pData);
+
+		ResponseApdu responseApdu = pData.getResponseApdu();
+		assertEquals((short) 0x612C, responseApdu.getStatusWord());
+		assertArrayEquals(Arrays.copyOfRange(responseData, 0, 256), responseApdu.getData().toByteArray());
+
+		pData = processAscending("00C0000010");
+		assertTrue("GET RESPONSE not consumed", chainingManager.isApduConsumed());
+		chainingManager.processDescending(pData);
+		responseApdu = pData.getResponseApdu();
+		assertEquals((short) 0x611C, responseApdu.getStatusWord());
+		assertArrayEquals(Arrays.copyOfRange(responseData, 256, 272), responseApdu.getData().toByteArray());
+
+		pData = processAscending("00C0000000");
+		responseApdu = pData.getResponseApdu();
+		assertEquals(Iso7816.SW_9000_NO_ERROR, responseApdu.getStatusWord());
+		assertArrayEquals(Arrays.copyOfRange(responseData, 272, 300), responseApdu.getData().toByteArray());
+
+		pData = processAscending("00C0000000");
+		assertFalse("GET RESPONSE without pending data consumed", chainingManager.isApduConsumed());
+	}
+
+	/**
+	 * Pending response data is discarded by any other command.
+	 */
+	@Test
+	public void testGetResponseDiscarded() {
+		ProcessingData pData = processAscending("00B0000001");
+		pData.updateResponseAPDU(this, "long response", new ResponseApdu(new TlvValuePlain(new byte[2]), Iso7816.SW_9000_NO_ERROR));
+		chainingManager.processDescending(pData);
+		assertEquals((short) 0x6101, pData.getResponseApdu().getStatusWord());
+
+		processAscending("00A4000C023F00");
+
+		processAscending("00C0000001");
+		assertFalse("GET RESPONSE after discarded data consumed", chainingManager.isApduConsumed());
+	}
+
+	/**
+	 * Pending response data of one logical channel is not affected by commands
+	 * on other logical channels.
+	 */
+	@Test
+	public void testGetResponseOtherChannel() {
+		ProcessingData pData = processAscending("00B0000001");
+		pData.updateResponseAPDU(this, "long response", new ResponseApdu(new TlvValuePlain(HexString.toByteArray("1122")), Iso7816.SW_9000_NO_ERROR));
+		chainingManager.processDescending(pData);
+
+		processAscending("11DA010203112233");
+		assertTrue("chained command on other channel not consumed", chainingManager.isApduConsumed());
+		processAscending("01A4000C023F00");
+		assertTrue("command on other channel did not abort its chain", chainingManager.isApduConsumed());
+
+		pData = processAscending("00C0000001");
+		assertTrue("GET RESPONSE not consumed", chainingManager.isApduConsumed());
+		assertEquals(Iso7816.SW_9000_NO_ERROR, pData.getResponseApdu().getStatusWord());
+		assertArrayEquals(HexString.toByteArray("22"), pData.getResponseApdu().getData().toByteArray());
+	}
+
+	/**
+	 * Pending response data is discarded when its logical channel is reset.
+	 */
+	@Test
+	public void testResetLogicalChannel() {
+		ProcessingData pData = processAscending("01B0000001");
+		pData.updateResponseAPDU(this, "long response", new ResponseApdu(new TlvValuePlain(new byte[2]), Iso7816.SW_9000_NO_ERROR));
+		chainingManager.processDescending(pData);
+		assertEquals((short) 0x6101, pData.getResponseApdu().getStatusWord());
+
+		chainingManager.resetLogicalChannel((byte) 1);
+
+		processAscending("01C0000001");
+		assertFalse("GET RESPONSE after reset consumed", chainingManager.isApduConsumed());
+	}
+
+	/**
+	 * Response data of a command protected by secure messaging is retrieved by
+	 * GET RESPONSE protected by secure messaging.
+	 */
+	@Test
+	public void testGetResponseSecureMessaging() throws Exception {
+		SmSession session = new SmSession();
+		byte[] responseData = new byte[32];
+		Arrays.fill(responseData, (byte) 0x5A);
+
+		ProcessingData pData = session.process(session.wrapCommand((byte) 0xB0, 0x10), responseData);
+		assertEquals((short) 0x6110, pData.getResponseApdu().getStatusWord());
+
+		pData = session.process(session.wrapCommand(INS_C0_GET_RESPONSE, 0x10), null);
+		assertTrue("GET RESPONSE not consumed", chainingManager.isApduConsumed());
+		assertEquals(Iso7816.SW_9000_NO_ERROR, pData.getResponseApdu().getStatusWord());
+		assertEquals((byte) 0x87, pData.getResponseApdu().getData().toByteArray()[0]);
+	}
+
+	/**
+	 * Response data of a command protected by secure messaging is not
+	 * returned to a GET RESPONSE without secure messaging, even though the
+	 * secure messaging layer below already discarded its session.
+	 */
+	@Test
+	public void testGetResponseSecureMessagingMissing() throws Exception {
+		SmSession session = new SmSession();
+
+		ProcessingData pData = session.process(session.wrapCommand((byte) 0xB0, 0x10), new byte[32]);
+		assertEquals((short) 0x6110, pData.getResponseApdu().getStatusWord());
+
+		pData = session.process(HexString.toByteArray("00C0000010"), null);
+		assertTrue("GET RESPONSE not consumed", chainingManager.isApduConsumed());
+		assertEquals(Iso7816.SW_6987_EXPECTED_SM_DATA_OBJECTS_MISSING, pData.getResponseApdu().getStatusWord());
+		assertNull("response data returned", pData.getResponseApdu().getData());
+
+		pData = session.process(HexString.toByteArray("00C0000010"), null);
+		assertFalse("GET RESPONSE after discarded data consumed", chainingManager.isApduConsumed());
+	}
+
+	/**
+	 * Secure messaging layer below the test instance with an established
+	 * session and the terminal side of this session.
+	 */
+	private class SmSession {
+		private SecureMessaging secureMessaging = new SecureMessaging(0);
+		private SmDataProviderTr03110 terminal;
+
+		SmSession() throws Exception {
+			CryptoSupport cryptoSupport = CryptoSupportSelector.getCryptoSupport("AES/CBC/NoPadding", "AESCMAC");
+			SecretKeySpec keyEnc = cryptoSupport.generateSecretKeySpecCipher(HexString.toByteArray("000102030405060708090A0B0C0D0E0F"));
+			SecretKeySpec keyMac = cryptoSupport.generateSecretKeySpecMac(HexString.toByteArray("101112131415161718191A1B1C1D1E1F"));
+
+			ProcessingData pData = new ProcessingData();
+			pData.addUpdatePropagation(ChainingManagerTest.this, "establish SM session", new SmDataProviderTr03110(keyEnc, keyMac));
+			secureMessaging.processDescending(pData);
+
+			terminal = new SmDataProviderTr03110(keyEnc, keyMac);
+		}
+
+		/**
+		 * Wraps a command without data for the established session
+		 */
+		byte[] wrapCommand(byte ins, int ne) {
+			terminal.nextIncoming();
+
+			byte[] header = new byte[] {0x0C, ins, 0, 0};
+			byte[] do97 = new byte[] {(byte) 0x97, 0x01, (byte) ne};
+
+			Mac mac = terminal.getInitializedMac();
+			mac.update(CryptoUtil.padData(header, 16));
+			mac.update(CryptoUtil.padData(do97, 16));
+			byte[] macValue = Arrays.copyOf(mac.doFinal(), 8);
+
+			byte[] body = Utils.concatByteArrays(do97, new byte[] {(byte) 0x8E, 0x08}, macValue);
+			return Utils.concatByteArrays(header, new byte[] {(byte) body.length}, body, new byte[1]);
+		}
+
+		/**
+		 * Propagates the APDU through the secure messaging layer and the test
+		 * instance, the application returns the provided data if the APDU is
+		 * not consumed
+		 */
+		ProcessingData process(byte[] apdu, byte[] responseData) {
+			ProcessingData pData = new ProcessingData();
+			pData.updateCommandApdu(ChainingManagerTest.this, "test command APDU", CommandApduFactory.createCommandApdu(apdu));
+
+			secureMessaging.processAscending(pData);
+			chainingManager.processAscending(pData);
+			if (!chainingManager.isApduConsumed() && (responseData != null)) {
+				pData.updateResponseAPDU(ChainingManagerTest.this, "application response", new ResponseApdu(new TlvValuePlain(responseData), Iso7816.SW_9000_NO_ERROR));
+			}
+			chainingManager.processDescending(pData);
+			secureMessaging.processDescending(pData);
+
+			terminal.nextOutgoing();
+			return pData;
+		}
+	}
+
+	/**
+	 * Responses that fit into N_e remain unchanged.
+	 */
+	@Test
+	public void testShortResponseUnchanged() {
+		ProcessingData pData = processAscending("00B0000000");
+		ResponseApdu response = new ResponseApdu(new TlvValuePlain(new byte[256]), Iso7816.SW_9000_NO_ERROR);
+		pData.updateResponseAPDU(this, "response", response);
+		chainingManager.processDescending(pData);
+
+		assertTrue("response modified", response == pData.getResponseApdu());
+	}
+
+}
@@ -0,0 +1,233 @@
+package de.persosim.simulator.platform;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.persosim.simulator.apdu.CommandApduFactory;
+import de.persosim.simulator.apdu.ResponseApdu;
+import de.persosim.simulator.cardobjects.MasterFile;
+import de.persosim.simulator.cardobjects.ObjectStore;
+import de.persosim.simulator.processing.ProcessingData;
+import de.persosim.simulator.protocols.Protocol;
+import de.persosim.simulator.protocols.ProtocolUpdate;
+import de.persosim.simulator.secstatus.SecStatus;
+import de.persosim.simulator.test.PersoSimTestCase;
+import de.persosim.simulator.tlv.TlvDataObject;
+import de.persosim.simulator.utils.InfoSource;
+
+/**
+ * Differential test of {@link TableDrivenCommandProcessorStateMachine} against
+ * the generated {@link CommandProcessorStateMachine}.
+ */
+public class CommandProcessorStateMachineTest extends PersoSimTestCase {
+
+	private static final int NUMBER_OF_PROTOCOLS = 5;
+
+	/**
+	 * Behavior of a {@link ScriptedProtocol} for the current APDU
+	 */
+	private static class Behavior {
+		boolean process;
+		short sw;
+		boolean update;
+		boolean finished;
+		boolean moveToStack;
+	}
+
+	/**
+	 * Protocol that behaves as defined by the test for each APDU and records
+	 * all calls it receives.
+	 */
+	private static class ScriptedProtocol implements Protocol, InfoSource {
+		private int id;
+		private List<String> calls;
+		Behavior behavior = new Behavior();
+
+		public ScriptedProtocol(int id, List<String> calls) {
+			this.id = id;
+			this.calls = calls;
+		}
+
+		@Override
+		public String getProtocolName() {
+			return "ScriptedProtocol" + id;
+		}
+
+		@Override
+		public void setCardStateAccessor(CardStateAccessor cardState) {
+		}
+
+		@Override
+		public Collection<? extends TlvDataObject> getSecInfos(SecInfoPublicity publicity, MasterFile mf) {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public void process(ProcessingData processingData) {
+			calls.add("process " + id);
+			if (behavior.process) {
+				processingData.updateResponseAPDU(this, "scripted", new ResponseApdu(behavior.sw));
+			}
+			if (behavior.update) {
+				processingData.addUpdatePropagation(this, "scripted", new ProtocolUpdate(behavior.finished));
+			}
+		}
+
+		@Override
+		public void reset() {
+			calls.add("reset " + id);
+		}
+
+		@Override
+		public boolean isMoveToStackRequested() {
+			return behavior.moveToStack;
+		}
+
+		@Override
+		public String getIDString() {
+			return getProtocolName();
+		}
+	}
+
+	private List<String> generatedCalls;
+	private List<String> tableDrivenCalls;
+	private List<ScriptedProtocol> generatedProtocols;
+	private List<ScriptedProtocol> tableDrivenProtocols;
+	private CommandProcessorStateMachine generated;
+	private TableDrivenCommandProcessorStateMachine tableDriven;
+
+	@Before
+	public void setUp() {
+		generatedCalls = new ArrayList<>();
+		tableDrivenCalls = new ArrayList<>();
+		generatedProtocols = new ArrayList<>();
+		tableDrivenProtocols = new ArrayList<>();
+
+		generated = new CommandProcessorStateMachine() {
+		};
+		tableDriven = new TableDrivenCommandProcessorStateMachine() {
+		};
+		initCommandProcessor(generated, generatedProtocols, generatedCalls);
+		initCommandProcessor(tableDriven, tableDrivenProtocols, tableDrivenCalls);
+	}
+
+	private void initCommandProcessor(AbstractCommandProcessor commandProcessor, List<ScriptedProtocol> protocols, List<String> calls) {
+		commandProcessor.objectStore = new ObjectStore(new MasterFile());
+		commandProcessor.securityStatus = new SecStatus();
+		for (int i = 0; i < NUMBER_OF_PROTOCOLS; i++) {
+			ScriptedProtocol protocol = new ScriptedProtocol(i, calls);
+			protocols.add(protocol);
+			commandProcessor.addProtocol(protocol);
+		}
+		commandProcessor.init();
+		commandProcessor.powerOn();
+	}
+
+	private ProcessingData process(AbstractCommandProcessor commandProcessor, byte[] apdu) {
+		ProcessingData processingData = new ProcessingData();
+		processingData.updateCommandApdu(this, "differential test", CommandApduFactory.createCommandApdu(apdu));
+		commandProcessor.processAscending(processingData);
+		return processingData;
+	}
+
+	private void randomizeBehavior(Random random) {
+		for (int i = 0; i < NUMBER_OF_PROTOCOLS; i++) {
+			Behavior behavior = new Behavior();
+			behavior.process = random.nextInt(3) == 0;
+			behavior.sw = random.nextBoolean() ? SW_9000_NO_ERROR : (short) 0x4A82;
+			behavior.update = random.nextBoolean();
+			behavior.finished = random.nextBoolean();
+			// protocols requesting to get on the stack without processing the APDU would be put on the stack endlessly
+			behavior.moveToStack = behavior.process && (behavior.sw == SW_9000_NO_ERROR) && (random.nextInt(4) == 0);
+			generatedProtocols.get(i).behavior = behavior;
+			tableDrivenProtocols.get(i).behavior = behavior;
+		}
+	}
+
+	/**
+	 * Both implementations call the same protocols in the same order, produce
+	 * the same responses and end up in the same state for random protocol
+	 * behavior.
+	 */
+	@Test
+	public void testDifferential() {
+		Random random = new Random(0x5EED);
+		byte[] apdu = new byte[] {0x00, 0x00, 0x00, 0x00};
+
+		for (int i = 0; i < 2000; i++) {
+			randomizeBehavior(random);
+			apdu[OFFSET_INS] = (byte) random.nextInt(0x60);
+
+			ProcessingData generatedData = process(generated, apdu);
+			ProcessingData tableDrivenData = process(tableDriven, apdu);
+
+			assertEquals("calls of APDU " + i, generatedCalls, tableDrivenCalls);
+			assertArrayEquals("response of APDU " + i, generatedData.getResponseApdu().toByteArray(),
+					tableDrivenData.getResponseApdu().toByteArray());
+			assertEquals("stack after APDU " + i, generated.protocolStack, toGeneratedProtocols(tableDriven.protocolStack));
+			assertEquals("state after APDU " + i, generated.getInnermostActiveState(), tableDriven.getInnermostActiveState());
+
+			if (random.nextInt(100) == 0) {
+				generated.powerOn();
+				tableDriven.powerOn();
+			}
+		}
+	}
+
+	/**
+	 * Maps protocols of the table driven instance to their counterparts of the
+	 * generated instance
+	 */
+	private List<Protocol> toGeneratedProtocols(List<Protocol> protocols) {
+		List<Protocol> mapped = new ArrayList<>();
+		for (Protocol curProtocol : protocols) {
+			mapped.add(generatedProtocols.get(tableDrivenProtocols.indexOf(curProtocol)));
+		}
+		return mapped;
+	}
+
+	/**
+	 * Compare the time required by both implementations to dispatch APDUs.
+	 * Only executed if the system property persosim.benchmark is set.
+	 */
+	@Test
+	public void benchmark() {
+		Assume.assumeTrue(System.getProperty("persosim.benchmark") != null);
+
+		Random random = new Random(0x5EED);
+		randomizeBehavior(random);
+		for (ScriptedProtocol curProtocol : generatedProtocols) {
+			curProtocol.behavior.process = false;
+			curProtocol.behavior.moveToStack = false;
+		}
+		generatedProtocols.get(NUMBER_OF_PROTOCOLS - 1).behavior.process = true;
+
+		byte[] apdu = new byte[] {0x00, (byte) 0xB0, 0x00, 0x00};
+		int iterations = 100000;
+
+		for (int round = 0; round < 3; round++) {
+			System.out.println("generated:    " + measure(generated, generatedCalls, apdu, iterations) + " ns/APDU");
+			System.out.println("table driven: " + measure(tableDriven, tableDrivenCalls, apdu, iterations) + " ns/APDU");
+		}
+	}
+
+	private long measure(AbstractCommandProcessor commandProcessor, List<String> calls, byte[] apdu, int iterations) {
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			process(commandProcessor, apdu);
+			calls.clear();
+		}
+		return (System.nanoTime() - start) / iterations;
+	}
+
+}
@@ -1,6 +1,11 @@
 package de.persosim.simulator.platform;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import mockit.Delegate;
@@ -26,7 +31,9 @@ import de.persosim.simulator.protocols.Protocol;
 import de.persosim.simulator.protocols.ProtocolUpdate;
 import de.persosim.simulator.secstatus.SecStatus;
 import de.persosim.simulator.test.PersoSimTestCase;
+import de.persosim.simulator.tlv.TlvDataObject;
 import de.persosim.simulator.tlv.TlvValuePlain;
+import de.persosim.simulator.utils.HexString;
 import de.persosim.simulator.utils.InfoSource;
 
 public class CommandProcessorTest extends PersoSimTestCase {
@@ -239,4 +246,109 @@ public class CommandProcessorTest extends PersoSimTestCase {
 		}};
 	}
 
+	/**
+	 * Simple protocol that processes all APDUs with the given INS and counts
+	 * its invocations.
+	 */
+	private static class InsProtocol implements Protocol, InfoSource {
+		private byte ins;
+		int processCount = 0;
+		
+		public InsProtocol(byte ins) {
+			this.ins = ins;
+		}
+
+		@Override
+		public String getProtocolName() {
+			return "InsProtocol" + ins;
+		}
+
+		@Override
+		public void setCardStateAccessor(CardStateAccessor cardState) {
+		}
+
+		@Override
+		public Collection<? extends TlvDataObject> getSecInfos(SecInfoPublicity publicity, MasterFile mf) {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public void process(ProcessingData processingData) {
+			processCount++;
+			if (processingData.getCommandApdu().getIns() == ins) {
+				processingData.updateResponseAPDU(this, "processed", new ResponseApdu(Iso7816.SW_9000_NO_ERROR));
+				processingData.addUpdatePropagation(this, "finished", new ProtocolUpdate(true));
+			}
+		}
+
+		@Override
+		public void reset() {
+		}
+
+		@Override
+		public boolean isMoveToStackRequested() {
+			return false;
+		}
+
+		@Override
+		public String getIDString() {
+			return getProtocolName();
+		}
+	}
+	
+	/**
+	 * The protocol that accepted an APDU is tried first for further APDUs with
+	 * the same header if the dispatch cache is enabled.
+	 */
+	@Test
+	public void testDispatchCache() {
+		InsProtocol protocolGetChallenge = new InsProtocol(Iso7816.INS_84_GET_CHALLENGE);
+		InsProtocol protocolReadBinary = new InsProtocol(Iso7816.INS_B0_READ_BINARY);
+		commandProcessor.addProtocol(protocolGetChallenge);
+		commandProcessor.addProtocol(protocolReadBinary);
+		commandProcessor.setDispatchCacheEnabled(true);
+		
+		for (String curApdu : new String[] {"00B0000000", "00B0001000", "00B0002000"}) {
+			ProcessingData pData = new ProcessingData();
+			pData.updateCommandApdu(this, "READ BINARY", CommandApduFactory.createCommandApdu(HexString.toByteArray(curApdu)));
+			commandProcessor.processAscending(pData);
+			assertEquals(Iso7816.SW_9000_NO_ERROR, pData.getResponseApdu().getStatusWord());
+		}
+		
+		assertEquals("GET CHALLENGE protocol tried", 1, protocolGetChallenge.processCount);
+		assertEquals("READ BINARY protocol processed", 3, protocolReadBinary.processCount);
+		assertEquals("lookups", 3, commandProcessor.getDispatchCacheLookups());
+		assertEquals("hits", 2, commandProcessor.getDispatchCacheHits());
+		
+		// a different header is dispatched in list order
+		ProcessingData pData = new ProcessingData();
+		pData.updateCommandApdu(this, "GET CHALLENGE", CommandApduFactory.createCommandApdu(HexString.toByteArray("0084000008")));
+		commandProcessor.processAscending(pData);
+		assertEquals(Iso7816.SW_9000_NO_ERROR, pData.getResponseApdu().getStatusWord());
+		assertEquals("READ BINARY protocol processed", 3, protocolReadBinary.processCount);
+		assertEquals("hits", 2, commandProcessor.getDispatchCacheHits());
+	}
+	
+	/**
+	 * The dispatch cache is disabled by default and protocols are tried in
+	 * list order.
+	 */
+	@Test
+	public void testDispatchCacheDisabled() {
+		InsProtocol protocolGetChallenge = new InsProtocol(Iso7816.INS_84_GET_CHALLENGE);
+		InsProtocol protocolReadBinary = new InsProtocol(Iso7816.INS_B0_READ_BINARY);
+		commandProcessor.addProtocol(protocolGetChallenge);
+		commandProcessor.addProtocol(protocolReadBinary);
+		
+		for (int i = 0; i < 2; i++) {
+			ProcessingData pData = new ProcessingData();
+			pData.updateCommandApdu(this, "READ BINARY", CommandApduFactory.createCommandApdu(HexString.toByteArray("00B0000000")));
+			commandProcessor.processAscending(pData);
+		}
+		
+		assertFalse(commandProcessor.isDispatchCacheEnabled());
+		assertEquals("GET CHALLENGE protocol tried", 2, protocolGetChallenge.processCount);
+		assertEquals("lookups", 0, commandProcessor.getDispatchCacheLookups());
+	}
+
 }
@@ -1,5 +1,6 @@
 package de.persosim.simulator.platform;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import org.junit.Before;
@@ -208,4 +209,40 @@ public class Iso7816LibTest extends PersoSimTestCase implements Iso7816 {
 	public void testSetSecureMessagingStatus_ProprietaryFormat() {
 		Iso7816Lib.setSecureMessagingStatus((byte)0x80, SM_OFF_OR_NO_INDICATION);
 	}
+
+	@Test
+	public void testBuildCommandApdu_Short() {
+		byte[] header = new byte[] { 0x00, (byte) 0x80, 0x00, 0x00 };
+		byte[] data = new byte[] { (byte) 0xFF };
+		
+		assertArrayEquals("case 1", iso1, Iso7816Lib.buildCommandApdu(header, new byte[0], 0));
+		assertArrayEquals("case 2", iso2ZeroEnc, Iso7816Lib.buildCommandApdu(header, new byte[0], 256));
+		assertArrayEquals("case 3", iso3, Iso7816Lib.buildCommandApdu(header, data, 0));
+		assertArrayEquals("case 4", iso4MsbSetMax, Iso7816Lib.buildCommandApdu(header, data, 255));
+	}
+	
+	@Test
+	public void testBuildCommandApdu_Extended() {
+		byte[] header = new byte[] { 0x00, (byte) 0x80, 0x00, 0x00 };
+		byte[] data = new byte[] { (byte) 0xFF };
+		
+		assertArrayEquals("case 2", iso2ExtendedZeroEnc, Iso7816Lib.buildCommandApdu(header, new byte[0], 65536));
+		assertArrayEquals("case 4", iso4ExtendedMsbSet, Iso7816Lib.buildCommandApdu(header, data, 32768));
+		
+		byte[] apdu = Iso7816Lib.buildCommandApdu(header, new byte[256], 0);
+		assertEquals("extended case 3 length", 263, apdu.length);
+		assertEquals("extended case 3 N_c", 256, Iso7816Lib.getNc(apdu));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testBuildCommandApdu_NeTooLarge() {
+		Iso7816Lib.buildCommandApdu(new byte[] { 0x00, (byte) 0x80, 0x00, 0x00 }, new byte[0], 65537);
+	}
+
+	@Test
+	public void testGetChannel() {
+		assertEquals("first interindustry", 3, Iso7816Lib.getChannel(new byte[] { 0x03, (byte) 0xA4, 0x00, 0x00 }));
+		assertEquals("further interindustry min", 4, Iso7816Lib.getChannel(new byte[] { 0x40, (byte) 0xA4, 0x00, 0x00 }));
+		assertEquals("further interindustry max", 19, Iso7816Lib.getChannel(new byte[] { 0x4F, (byte) 0xA4, 0x00, 0x00 }));
+	}
 }
@@ -0,0 +1,141 @@
+package de.persosim.simulator.platform;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.persosim.simulator.apdu.CommandApduFactory;
+import de.persosim.simulator.processing.ProcessingData;
+import de.persosim.simulator.test.PersoSimTestCase;
+import de.persosim.simulator.utils.HexString;
+
+public class LogicalChannelManagerTest extends PersoSimTestCase {
+
+	/**
+	 * Test instance
+	 */
+	private LogicalChannelManager channelManager;
+
+	/**
+	 * Channels reset by the test instance
+	 */
+	private List<Byte> resetChannels;
+
+	@Before
+	public void setUp() {
+		resetChannels = new ArrayList<>();
+		List<Layer> layers = new ArrayList<>();
+		layers.add(new Layer(0) {
+			@Override
+			public String getLayerName() {
+				return "ResetRecorder";
+			}
+
+			@Override
+			public void resetLogicalChannel(byte channel) {
+				resetChannels.add(channel);
+			}
+		});
+
+		channelManager = new LogicalChannelManager(1, layers);
+		channelManager.powerOn();
+	}
+
+	/**
+	 * Propagate the given APDU upwards through the test instance
+	 * @param apdu APDU as hex string
+	 * @return the processing data used
+	 */
+	private ProcessingData processAscending(String apdu) {
+		ProcessingData processingData = new ProcessingData();
+		processingData.updateCommandApdu(this, "test command APDU",
+				CommandApduFactory.createCommandApdu(HexString.toByteArray(apdu)));
+		channelManager.processAscending(processingData);
+		return processingData;
+	}
+
+	/**
+	 * Commands on the basic channel are passed upwards
+	 */
+	@Test
+	public void testBasicChannelPassedThrough() {
+		ProcessingData pData = processAscending("00A4000C023F00");
+		assertFalse("command consumed", channelManager.isApduConsumed());
+		assertNull("response already set", pData.getResponseApdu());
+	}
+
+	/**
+	 * Commands on channels that are not open are rejected
+	 */
+	@Test
+	public void testClosedChannelRejected() {
+		ProcessingData pData = processAscending("01A4000C023F00");
+		assertTrue("command not consumed", channelManager.isApduConsumed());
+		assertEquals(Iso7816.SW_6881_LOGICAL_CHANNEL_NOT_SUPPORTED, pData.getResponseApdu().getStatusWord());
+	}
+
+	/**
+	 * Open a channel assigned by the card, use it and close it again
+	 */
+	@Test
+	public void testOpenAssignedChannel() {
+		ProcessingData pData = processAscending("0070000001");
+		assertTrue("command not consumed", channelManager.isApduConsumed());
+		assertArrayEquals(HexString.toByteArray("019000"), pData.getResponseApdu().toByteArray());
+		assertTrue("channel not open", channelManager.isOpen((byte) 1));
+		assertEquals("reset layers", 1, resetChannels.size());
+
+		pData = processAscending("01A4000C023F00");
+		assertFalse("command on open channel consumed", channelManager.isApduConsumed());
+
+		pData = processAscending("01708000");
+		assertEquals(Iso7816.SW_9000_NO_ERROR, pData.getResponseApdu().getStatusWord());
+		assertFalse("channel still open", channelManager.isOpen((byte) 1));
+		assertEquals("reset layers", 2, resetChannels.size());
+	}
+
+	/**
+	 * Open a channel with the number given by the terminal, further
+	 * interindustry class byte is used for channels above 3
+	 */
+	@Test
+	public void testOpenSpecificChannel() {
+		ProcessingData pData = processAscending("00700005");
+		assertEquals(Iso7816.SW_9000_NO_ERROR, pData.getResponseApdu().getStatusWord());
+
+		pData = processAscending("41A4000C023F00");
+		assertFalse("command on open channel consumed", channelManager.isApduConsumed());
+
+		pData = processAscending("00700005");
+		assertEquals("channel opened twice", Iso7816.SW_6A86_INCORRECT_PARAMETERS_P1P2, pData.getResponseApdu().getStatusWord());
+	}
+
+	/**
+	 * The basic channel can not be closed
+	 */
+	@Test
+	public void testCloseBasicChannel() {
+		ProcessingData pData = processAscending("00708000");
+		assertEquals(Iso7816.SW_6A86_INCORRECT_PARAMETERS_P1P2, pData.getResponseApdu().getStatusWord());
+		assertTrue("basic channel closed", channelManager.isOpen(Iso7816.CH_DEFAULT));
+	}
+
+	/**
+	 * Opened channels are closed by power cycle
+	 */
+	@Test
+	public void testPowerOnClosesChannels() {
+		processAscending("00700001");
+		channelManager.powerOn();
+		assertFalse("channel still open", channelManager.isOpen((byte) 1));
+	}
+
+}
@@ -1,5 +1,7 @@
 package de.persosim.simulator.secstatus;
 
+import static org.junit.Assert.assertEquals;
+
 import java.util.Collection;
 import java.util.HashSet;
 
@@ -47,4 +49,30 @@ public class SecStatusTest extends PersoSimTestCase{
 		
 	}
 	
+	/**
+	 * Mechanisms within the application context are bound to the logical
+	 * channel, mechanisms within the global context are shared.
+	 */
+	@Test
+	public void testSelectLogicalChannel() {
+		Collection<Class<? extends SecMechanism>> wantedMechanisms = new HashSet<>();
+		wantedMechanisms.add(mechanism.getClass());
+		
+		ProcessingData processingData = new ProcessingData();
+		processingData.addUpdatePropagation(this, "application mechanism", new SecStatusMechanismUpdatePropagation(SecContext.APPLICATION, mechanism));
+		processingData.addUpdatePropagation(this, "global mechanism", new SecStatusMechanismUpdatePropagation(SecContext.GLOBAL, mechanism));
+		securityStatus.updateSecStatus(processingData);
+		
+		securityStatus.selectLogicalChannel((byte) 1);
+		assertEquals("application context on channel 1", 0, securityStatus.getCurrentMechanisms(SecContext.APPLICATION, wantedMechanisms).size());
+		assertEquals("global context on channel 1", 1, securityStatus.getCurrentMechanisms(SecContext.GLOBAL, wantedMechanisms).size());
+		
+		securityStatus.selectLogicalChannel((byte) 0);
+		assertEquals("application context on channel 0", 1, securityStatus.getCurrentMechanisms(SecContext.APPLICATION, wantedMechanisms).size());
+		
+		securityStatus.resetLogicalChannel((byte) 0);
+		assertEquals("application context after reset", 0, securityStatus.getCurrentMechanisms(SecContext.APPLICATION, wantedMechanisms).size());
+		assertEquals("global context after reset", 1, securityStatus.getCurrentMechanisms(SecContext.GLOBAL, wantedMechanisms).size());
+	}
+	
 }
@@ -0,0 +1,378 @@
+package de.persosim.simulator.securemessaging;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import de.persosim.simulator.apdu.CommandApduFactory;
+import de.persosim.simulator.apdu.ResponseApdu;
+import de.persosim.simulator.crypto.CryptoSupport;
+import de.persosim.simulator.crypto.CryptoSupportSelector;
+import de.persosim.simulator.crypto.CryptoUtil;
+import de.persosim.simulator.processing.ProcessingData;
+import de.persosim.simulator.test.PersoSimTestCase;
+import de.persosim.simulator.tlv.PrimitiveTlvDataObject;
+import de.persosim.simulator.tlv.TlvDataObject;
+import de.persosim.simulator.tlv.TlvDataObjectContainer;
+import de.persosim.simulator.tlv.TlvTag;
+import de.persosim.simulator.tlv.TlvValuePlain;
+import de.persosim.simulator.utils.Utils;
+
+/**
+ * Throughput and latency benchmark of the {@link SecureMessaging} layer for
+ * the AES cipher suites used after PACE.
+ * <p/>
+ * Each simulated card consists of a {@link SecureMessaging} layer with its
+ * own {@link SmDataProviderTr03110} session, installed by an update
+ * propagation like in {@link SecureMessagingTest}. A terminal sharing the
+ * session keys wraps READ BINARY and UPDATE BINARY commands and verifies
+ * every response. Only the processing of the card is measured, i.e. parsing
+ * of the command APDU, unwrapping and wrapping of the response.
+ * <p/>
+ * The round trip test is always executed, the benchmark is only executed if
+ * the system property persosim.benchmark is set. Results are printed as one
+ * tab separated line per measurement so they can be compared across commits.
+ * Payloads are limited to 65504 bytes, the largest UPDATE BINARY data that
+ * still fits the extended length SM command.
+ */
+public class SecureMessagingBenchmarkTest extends PersoSimTestCase {
+
+	private static final String CIPHER_NAME = "AES/CBC/NoPadding";
+	private static final String MAC_NAME = "AESCMAC";
+
+	private static final int[] KEY_LENGTHS = new int[] {16, 24, 32};
+	private static final int[] PAYLOAD_SIZES = new int[] {0, 16, 255, 1024, 4096, 16384, 65504};
+
+	private static final byte INS_READ_BINARY = (byte) 0xB0;
+	private static final byte INS_UPDATE_BINARY = (byte) 0xD6;
+
+	private static final TlvTag TAG_87 = TlvTag.valueOf((byte) 0x87);
+	private static final TlvTag TAG_97 = TlvTag.valueOf((byte) 0x97);
+
+	private static final int MAC_LENGTH = 8;
+
+	/**
+	 * Simulated card, i.e. the secure messaging layer with an established session.
+	 */
+	private class Card {
+		private SecureMessaging secureMessaging = new SecureMessaging(0);
+
+		Card(SecretKeySpec keyEnc, SecretKeySpec keyMac) throws Exception {
+			ProcessingData pData = new ProcessingData();
+			pData.addUpdatePropagation(SecureMessagingBenchmarkTest.this, "establish SM session", new SmDataProviderTr03110(keyEnc, keyMac));
+			secureMessaging.processDescending(pData);
+		}
+
+		/**
+		 * Processes a wrapped command, the application returns the provided
+		 * payload with status word 9000.
+		 */
+		ResponseApdu process(byte[] smCommand, byte[] responseData) {
+			ProcessingData pData = new ProcessingData();
+			pData.updateCommandApdu(SecureMessagingBenchmarkTest.this, "SM command APDU", CommandApduFactory.createCommandApdu(smCommand));
+			secureMessaging.processAscending(pData);
+			assertNull("SM command APDU rejected", pData.getResponseApdu());
+
+			ResponseApdu plainResponse;
+			if (responseData.length > 0) {
+				plainResponse = new ResponseApdu(new TlvValuePlain(responseData), SW_9000_NO_ERROR);
+			} else {
+				plainResponse = new ResponseApdu(SW_9000_NO_ERROR);
+			}
+			pData.updateResponseAPDU(SecureMessagingBenchmarkTest.this, "plain response APDU", plainResponse);
+			secureMessaging.processDescending(pData);
+
+			return pData.getResponseApdu();
+		}
+	}
+
+	/**
+	 * Terminal side of a session, wraps commands and unwraps responses.
+	 */
+	private static class Terminal {
+		private SmDataProviderTr03110 dataProvider;
+		private int blockSize;
+
+		Terminal(SecretKeySpec keyEnc, SecretKeySpec keyMac) throws Exception {
+			dataProvider = new SmDataProviderTr03110(keyEnc, keyMac);
+			blockSize = dataProvider.getCipher().getBlockSize();
+		}
+
+		byte[] wrapCommand(byte ins, byte[] data, int ne) throws Exception {
+			dataProvider.nextIncoming();
+
+			byte[] header = new byte[] {0x0C, ins, 0, 0};
+			byte[] dataObjects = new byte[0];
+
+			if (data.length > 0) {
+				byte[] cryptogram = CryptoUtil.padData(data, blockSize);
+				dataProvider.encrypt(cryptogram, 0, cryptogram.length);
+				dataObjects = new PrimitiveTlvDataObject(TAG_87, Utils.concatByteArrays(new byte[] {0x01}, cryptogram)).toByteArray();
+			}
+
+			if (ne > 0) {
+				byte[] le = (ne <= 256) ? new byte[] {(byte) ne} : new byte[] {(byte) (ne >>> 8), (byte) ne};
+				dataObjects = Utils.concatByteArrays(dataObjects, new PrimitiveTlvDataObject(TAG_97, le).toByteArray());
+			}
+
+			Mac mac = dataProvider.getInitializedMac();
+			mac.update(CryptoUtil.padData(header, blockSize));
+			if (dataObjects.length > 0) {
+				mac.update(CryptoUtil.padData(dataObjects, blockSize));
+			}
+			byte[] macValue = Arrays.copyOf(mac.doFinal(), MAC_LENGTH);
+
+			byte[] body = Utils.concatByteArrays(dataObjects, new byte[] {(byte) 0x8E, MAC_LENGTH}, macValue);
+
+			if ((body.length > 255) || (ne > 256)) {
+				return Utils.concatByteArrays(header, new byte[] {0, (byte) (body.length >>> 8), (byte) body.length}, body, new byte[2]);
+			} else {
+				return Utils.concatByteArrays(header, new byte[] {(byte) body.length}, body, new byte[1]);
+			}
+		}
+
+		void verifyResponse(ResponseApdu smResponse, byte[] expectedData) {
+			dataProvider.nextOutgoing();
+
+			assertEquals(SW_9000_NO_ERROR, smResponse.getStatusWord());
+			TlvDataObjectContainer dataObjects = new TlvDataObjectContainer(smResponse.getData().toByteArray());
+
+			TlvDataObject do87 = dataObjects.getTlvDataObject(TAG_87);
+			TlvDataObject do99 = dataObjects.getTlvDataObject(TlvTag.valueOf((byte) 0x99));
+			TlvDataObject do8E = dataObjects.getTlvDataObject(TlvTag.valueOf((byte) 0x8E));
+			assertNotNull(do99);
+			assertNotNull(do8E);
+
+			byte[] macInput = do99.toByteArray();
+			if (do87 != null) {
+				macInput = Utils.concatByteArrays(do87.toByteArray(), macInput);
+			}
+			Mac mac = dataProvider.getInitializedMac();
+			byte[] expectedMac = Arrays.copyOf(mac.doFinal(CryptoUtil.padData(macInput, blockSize)), MAC_LENGTH);
+			assertArrayEquals("MAC mismatch", expectedMac, do8E.getValueField());
+
+			byte[] data = new byte[0];
+			if (do87 != null) {
+				byte[] value = do87.getValueField();
+				dataProvider.decrypt(value, 1, value.length - 1);
+				data = SecureMessaging.unpadData(Arrays.copyOfRange(value, 1, value.length), blockSize);
+			}
+			assertArrayEquals(expectedData, data);
+		}
+	}
+
+	/**
+	 * Card and terminal of one session.
+	 */
+	private class Session {
+		Card card;
+		Terminal terminal;
+
+		Session(int keyLength) throws Exception {
+			CryptoSupport cryptoSupport = CryptoSupportSelector.getCryptoSupport(CIPHER_NAME, MAC_NAME);
+			SecretKeySpec keyEnc = cryptoSupport.generateSecretKeySpecCipher(createKey(keyLength, 1));
+			SecretKeySpec keyMac = cryptoSupport.generateSecretKeySpecMac(createKey(keyLength, 2));
+
+			card = new Card(keyEnc, keyMac);
+			terminal = new Terminal(keyEnc, keyMac);
+		}
+
+		/**
+		 * Performs one exchange and verifies the response.
+		 * @return the duration of the card processing in ns
+		 */
+		long exchange(byte ins, byte[] payload) throws Exception {
+			boolean read = ins == INS_READ_BINARY;
+			byte[] smCommand = terminal.wrapCommand(ins, read ? new byte[0] : payload, read ? payload.length : 0);
+
+			long start = System.nanoTime();
+			ResponseApdu smResponse = card.process(smCommand, read ? payload : new byte[0]);
+			long duration = System.nanoTime() - start;
+
+			terminal.verifyResponse(smResponse, read ? payload : new byte[0]);
+			return duration;
+		}
+	}
+
+	private static byte[] createKey(int length, int seed) {
+		byte[] key = new byte[length];
+		for (int i = 0; i < key.length; i++) {
+			key[i] = (byte) (seed * 37 + i);
+		}
+		return key;
+	}
+
+	private static byte[] createPayload(int size) {
+		byte[] payload = new byte[size];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) i;
+		}
+		return payload;
+	}
+
+	/**
+	 * Positive test: wrapped commands of all cipher suites and payload sizes
+	 * are processed and the responses are verified by the terminal.
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		for (int keyLength : KEY_LENGTHS) {
+			Session session = new Session(keyLength);
+
+			for (int size : PAYLOAD_SIZES) {
+				byte[] payload = createPayload(size);
+				session.exchange(INS_READ_BINARY, payload);
+				session.exchange(INS_UPDATE_BINARY, payload);
+			}
+		}
+	}
+
+	/**
+	 * Positive test: round trips with the cryptographic operations performed
+	 * by an {@link SmCryptoExecutor}.
+	 */
+	@Test
+	public void testRoundTrip_cryptoExecutor() throws Exception {
+		SmCryptoExecutor executor = new SmCryptoExecutor(2, 0, TimeUnit.MILLISECONDS, 16);
+		SecureMessaging.setCryptoExecutor(executor);
+		try {
+			Session session = new Session(32);
+
+			for (int size : PAYLOAD_SIZES) {
+				byte[] payload = createPayload(size);
+				session.exchange(INS_READ_BINARY, payload);
+				session.exchange(INS_UPDATE_BINARY, payload);
+			}
+		} finally {
+			SecureMessaging.setCryptoExecutor(null);
+			executor.shutdown();
+		}
+
+		/* MAC verification and decryption or encryption and MAC computation per exchange */
+		assertTrue(executor.getStatistics().getJobCount() >= PAYLOAD_SIZES.length * 2 * 2);
+	}
+
+	/**
+	 * Measures latency and throughput of the card for all cipher suites,
+	 * commands and payload sizes, single-threaded and with one independent
+	 * card per available processor.
+	 * <p/>
+	 * Only executed if the system property persosim.benchmark is set.
+	 */
+	@Test
+	public void benchmark() throws Exception {
+		Assume.assumeTrue(System.getProperty("persosim.benchmark") != null);
+
+		int noOfThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		List<String> results = new ArrayList<>();
+
+		/* the layers log every APDU, discard the output while measuring */
+		PrintStream stdout = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+
+		try {
+			for (int keyLength : KEY_LENGTHS) {
+				for (byte ins : new byte[] {INS_READ_BINARY, INS_UPDATE_BINARY}) {
+					for (int size : PAYLOAD_SIZES) {
+						results.add(measure(keyLength, ins, size, 1));
+						results.add(measure(keyLength, ins, size, noOfThreads));
+					}
+				}
+			}
+		} finally {
+			System.setOut(stdout);
+		}
+
+		System.out.println("sm\tsuite\tcommand\tpayload\tthreads\tops/s\tMB/s\tp50 us\tp99 us");
+		for (String result : results) {
+			System.out.println(result);
+		}
+	}
+
+	private String measure(final int keyLength, final byte ins, int size, int noOfThreads) throws Exception {
+		final byte[] payload = createPayload(size);
+		/* scale the number of exchanges with the payload size */
+		final int iterations = Math.max(50, Math.min(5000, (8 << 20) / Math.max(size, 1024)));
+		final CountDownLatch startSignal = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(noOfThreads);
+		try {
+			List<Future<long[]>> futures = new ArrayList<>();
+			for (int i = 0; i < noOfThreads; i++) {
+				futures.add(executor.submit(new Callable<long[]>() {
+					@Override
+					public long[] call() throws Exception {
+						Session session = new Session(keyLength);
+
+						for (int j = 0; j < iterations / 2; j++) {
+							session.exchange(ins, payload);
+						}
+
+						startSignal.await();
+						long[] durations = new long[iterations];
+						for (int j = 0; j < iterations; j++) {
+							durations[j] = session.exchange(ins, payload);
+						}
+						return durations;
+					}
+				}));
+			}
+
+			startSignal.countDown();
+
+			/* the throughput is based on the card processing time of the slowest thread */
+			long[] durations = new long[noOfThreads * iterations];
+			long maxTotal = 0;
+			for (int i = 0; i < noOfThreads; i++) {
+				long[] current = futures.get(i).get();
+				long total = 0;
+				for (long duration : current) {
+					total += duration;
+				}
+				maxTotal = Math.max(maxTotal, total);
+				System.arraycopy(current, 0, durations, i * iterations, iterations);
+			}
+
+			Arrays.sort(durations);
+			double seconds = maxTotal / 1e9;
+			double opsPerSecond = durations.length / seconds;
+
+			return String.format(Locale.ROOT, "sm\tAES-%d\t%s\t%d\t%d\t%.0f\t%.2f\t%.1f\t%.1f",
+					keyLength * 8, (ins == INS_READ_BINARY) ? "READ BINARY" : "UPDATE BINARY", size, noOfThreads,
+					opsPerSecond, opsPerSecond * size / (1 << 20),
+					durations[durations.length / 2] / 1e3, durations[(int) (durations.length * 0.99)] / 1e3);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
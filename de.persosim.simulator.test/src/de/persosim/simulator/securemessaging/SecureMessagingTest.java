@@ -2,8 +2,10 @@ package de.persosim.simulator.securemessaging;
 
 import static mockit.Deencapsulation.setField;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.security.GeneralSecurityException;
 
@@ -21,13 +23,16 @@ import de.persosim.simulator.apdu.CommandApdu;
 import de.persosim.simulator.apdu.CommandApduFactory;
 import de.persosim.simulator.apdu.ResponseApdu;
 import de.persosim.simulator.crypto.Crypto;
+import de.persosim.simulator.crypto.CryptoSupport;
 import de.persosim.simulator.crypto.CryptoUtil;
 import de.persosim.simulator.processing.ProcessingData;
 import de.persosim.simulator.test.PersoSimTestCase;
+import de.persosim.simulator.tlv.PrimitiveTlvDataObject;
 import de.persosim.simulator.tlv.TlvDataObjectContainer;
 import de.persosim.simulator.tlv.TlvTag;
 import de.persosim.simulator.tlv.TlvValuePlain;
 import de.persosim.simulator.utils.HexString;
+import de.persosim.simulator.utils.Utils;
 
 public class SecureMessagingTest extends PersoSimTestCase {
 
@@ -119,6 +124,26 @@ public class SecureMessagingTest extends PersoSimTestCase {
 
 	}
 	
+	/**
+	 * SM APDU with malformed data objects is rejected without being unwrapped
+	 */
+	@Test
+	public void processAscending_malformedDataObjects() {
+		SecureMessaging secureMessaging = new SecureMessaging(0);
+		setField(secureMessaging, "dataProvider", dataProviderMock);
+		
+		// length of DO 87 exceeds the command data
+		ProcessingData pData = new ProcessingData();
+		byte[] apduBytes = HexString.toByteArray("0CA4020C05870901637500");
+		pData.updateCommandApdu(this, "test command APDU", CommandApduFactory.createCommandApdu(apduBytes));
+		
+		// call mut
+		secureMessaging.processAscending(pData);
+		
+		assertEquals(SW_6988_INCORRECT_SM_DATA_OBJECTS, pData.getResponseApdu().getStatusWord());
+		assertArrayEquals(apduBytes, pData.getCommandApdu().toByteArray());
+	}
+	
 	/**
 	 * SM after PACE, example from previous GlobalTester run
 	 * @throws Exception
@@ -196,7 +221,45 @@ public class SecureMessagingTest extends PersoSimTestCase {
 				commandApdu.toByteArray());
 
 	}
-	
+
+	/**
+	 * Short SM APDU protecting an extended L_e (two bytes in DO97) must be
+	 * unwrapped to an extended length plain APDU
+	 */
+	@Test
+	public void extractPlainTextAPDU_shortSmApduExtendedLe() {
+		SecureMessaging secureMessaging = new SecureMessaging(0);
+
+		ProcessingData pData = new ProcessingData();
+		pData.updateCommandApdu(this, "test command APDU", CommandApduFactory.createCommandApdu(
+				HexString.toByteArray("0CB000000E970200008E08000000000000000000")));
+		setField(secureMessaging, "processingData", pData);
+
+		CommandApdu plainApdu = secureMessaging.extractPlainTextAPDU();
+
+		assertTrue("plain APDU is not extended length", plainApdu.isExtendedLength());
+		assertEquals("Ne", 65536, plainApdu.getNe());
+		assertArrayEquals(HexString.toByteArray("00B00000000000"), plainApdu.toByteArray());
+	}
+
+	/**
+	 * Short SM APDU protecting a short L_e of '00' must keep Ne 256
+	 */
+	@Test
+	public void extractPlainTextAPDU_shortSmApduShortLe() {
+		SecureMessaging secureMessaging = new SecureMessaging(0);
+
+		ProcessingData pData = new ProcessingData();
+		pData.updateCommandApdu(this, "test command APDU", CommandApduFactory.createCommandApdu(
+				HexString.toByteArray("0CB000000D9701008E08000000000000000000")));
+		setField(secureMessaging, "processingData", pData);
+
+		CommandApdu plainApdu = secureMessaging.extractPlainTextAPDU();
+
+		assertFalse("plain APDU is extended length", plainApdu.isExtendedLength());
+		assertEquals("Ne", 256, plainApdu.getNe());
+	}
+
 	/**
 	 * Encoding of SM Response APDU must not contain DO87 if data field of plain response is absent
 	 * @throws Exception
@@ -273,6 +336,65 @@ public class SecureMessagingTest extends PersoSimTestCase {
 		assertFalse("DO 87 present", ((TlvDataObjectContainer) respApdu.getData()).containsTlvDataObject(new TlvTag((byte)0x87)));
 	}
 
+	/**
+	 * Response data must be padded, encrypted and maced as if the data objects
+	 * were concatenated and processed at once
+	 * @throws Exception
+	 */
+	@Test
+	public void processOutgoingSmApdu_responseDataPresent() throws Exception {
+		//prepare configuration
+		SecureMessaging secureMessaging = new SecureMessaging(0);
+		
+		final Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding", Crypto.getCryptoProvider());
+		final Mac mac = Mac.getInstance(AES256_MAC);
+		final IvParameterSpec iv = new IvParameterSpec(HexString.toByteArray(AES256_IV_ENC));
+		final SecretKeySpec keyEnc = new SecretKeySpec(HexString.toByteArray(AES256_SK_ENC), "AES");
+		final SecretKeySpec keyMac = new SecretKeySpec(HexString.toByteArray(AES256_SK_MAC), "AES");
+		final byte[] auxData = HexString.toByteArray(AES256_SK_MAC_AUX_DATA);
+				
+		//provide the mocked SmDataProvider
+		setField(secureMessaging, "dataProvider", dataProviderMock);
+		new NonStrictExpectations() {{
+
+			dataProviderMock.getCipherIv(); result = iv;
+			dataProviderMock.getCipher(); result = cipher;
+			dataProviderMock.getKeyEnc(); result = keyEnc;
+
+			dataProviderMock.getMac(); result = mac;
+			dataProviderMock.getKeyMac(); result = keyMac;
+			dataProviderMock.getMacAuxiliaryData(); result = auxData;
+			dataProviderMock.getMacLength(); result = 8;
+
+		}};
+		
+		byte[] responseData = new byte[300];
+		for (int i = 0; i < responseData.length; i++) {
+			responseData[i] = (byte) i;
+		}
+		
+		// provide sample APDU
+		ProcessingData pData = new ProcessingData();
+		pData.updateResponseAPDU(this, "test response with response data", new ResponseApdu(new TlvValuePlain(responseData), SW_9000_NO_ERROR));
+		setField(secureMessaging, "processingData", pData);
+
+		// call mut
+		secureMessaging.processOutgoingSmApdu();
+		
+		// compute expected response
+		byte[] encryptedData = CryptoSupport.encrypt(cipher, CryptoUtil.padData(responseData, 16), keyEnc, iv);
+		TlvDataObjectContainer expected = new TlvDataObjectContainer();
+		expected.addTlvDataObject(new PrimitiveTlvDataObject(new TlvTag((byte) 0x87), Utils.concatByteArrays(new byte[] {0x01}, encryptedData)));
+		expected.addTlvDataObject(new PrimitiveTlvDataObject(new TlvTag((byte) 0x99), HexString.toByteArray("9000")));
+		byte[] expectedMac = CryptoSupport.mac(mac, auxData, cipher, CryptoUtil.padData(expected.toByteArray(), 16), keyMac, 8);
+		expected.addTlvDataObject(new PrimitiveTlvDataObject(new TlvTag((byte) 0x8E), expectedMac));
+
+		// extract/check ResponseApdu
+		ResponseApdu respApdu = pData.getResponseApdu();
+		assertEquals(SW_9000_NO_ERROR, respApdu.getStatusWord());
+		assertArrayEquals(expected.toByteArray(), respApdu.getData().toByteArray());
+	}
+
 	/**
 	 * Positive test: input far below blocksize
 	 */
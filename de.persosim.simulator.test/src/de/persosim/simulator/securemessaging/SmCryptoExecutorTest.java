@@ -0,0 +1,137 @@
+package de.persosim.simulator.securemessaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class SmCryptoExecutorTest {
+
+	private SmCryptoExecutor executor;
+
+	@After
+	public void tearDown() {
+		if(executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	private static Runnable recordThread(final Thread[] thread) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				thread[0] = Thread.currentThread();
+			}
+		};
+	}
+
+	/**
+	 * Positive test: jobs of one session are always executed by the same worker.
+	 */
+	@Test
+	public void testExecute_sessionAffinity() {
+		executor = new SmCryptoExecutor(2, 0, TimeUnit.MILLISECONDS, 16);
+		Object session = new Object();
+
+		Thread[] first = new Thread[1];
+		Thread[] second = new Thread[1];
+		executor.execute(session, recordThread(first));
+		executor.execute(session, recordThread(second));
+
+		assertNotSame(Thread.currentThread(), first[0]);
+		assertSame(first[0], second[0]);
+		assertEquals(2, executor.getStatistics().getJobCount());
+	}
+
+	/**
+	 * Positive test: jobs submitted concurrently are processed in batches.
+	 */
+	@Test
+	public void testExecute_batches() throws Exception {
+		int noOfSessions = 8;
+		executor = new SmCryptoExecutor(1, 200, TimeUnit.MILLISECONDS, noOfSessions);
+		final CountDownLatch startSignal = new CountDownLatch(1);
+
+		ExecutorService sessions = Executors.newFixedThreadPool(noOfSessions);
+		try {
+			List<Future<Void>> futures = new ArrayList<>();
+			for (int i = 0; i < noOfSessions; i++) {
+				futures.add(sessions.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						startSignal.await();
+						executor.execute(new Object(), new Runnable() {
+							@Override
+							public void run() {
+							}
+						});
+						return null;
+					}
+				}));
+			}
+
+			startSignal.countDown();
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			sessions.shutdown();
+		}
+
+		SmCryptoExecutor.Statistics statistics = executor.getStatistics();
+		assertEquals(noOfSessions, statistics.getJobCount());
+		assertTrue(statistics.getBatchCount() < noOfSessions);
+		assertTrue(statistics.getMaxBatchSize() > 1);
+		assertTrue(statistics.getAverageLatencyNanos() > 0);
+	}
+
+	/**
+	 * Positive test: jobs submitted after shutdown are executed by the caller.
+	 */
+	@Test
+	public void testExecute_afterShutdown() throws Exception {
+		executor = new SmCryptoExecutor(1, 0, TimeUnit.MILLISECONDS, 16);
+		executor.shutdown();
+		Thread.sleep(50);
+
+		Thread[] thread = new Thread[1];
+		executor.execute(new Object(), recordThread(thread));
+
+		assertSame(Thread.currentThread(), thread[0]);
+	}
+
+	/**
+	 * Negative test: exceptions thrown by the job are rethrown to the caller.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testExecute_exception() {
+		executor = new SmCryptoExecutor(1, 0, TimeUnit.MILLISECONDS, 16);
+		executor.execute(new Object(), new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalArgumentException("illegal blocksize");
+			}
+		});
+	}
+
+	/**
+	 * Negative test: at least one worker is required.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_noWorkers() {
+		new SmCryptoExecutor(0, 1, TimeUnit.MILLISECONDS, 16);
+	}
+
+}
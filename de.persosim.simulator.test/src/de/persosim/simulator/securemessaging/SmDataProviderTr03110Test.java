@@ -0,0 +1,139 @@
+package de.persosim.simulator.securemessaging;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+import de.persosim.simulator.crypto.Crypto;
+import de.persosim.simulator.crypto.CryptoSupport;
+import de.persosim.simulator.test.PersoSimTestCase;
+import de.persosim.simulator.utils.HexString;
+
+public class SmDataProviderTr03110Test extends PersoSimTestCase {
+
+	private static final String AES256_SK_ENC = "4DD037AB00B6B0D7FC80DA1D567AEF8098F8D8AC417E212660CCD6BDD7002067";
+	private static final String AES256_SK_MAC = "8BC9DD9D33C62926101D212B04C0C79A5BF7032F4DDCA237552D665DCB560B68";
+	private static final String ICAO_SK_ENC = "979EC13B1CBFE9DCD01AB0FED307EAE5";
+	private static final String ICAO_SK_MAC = "F1CB1F1FB5ADF208806B89DC579DC1F8";
+
+	private static final byte[] PLAIN_TEXT = HexString.toByteArray("000102030405060708090A0B0C0D0E0F101112131415161718191A1B1C1D1E1F");
+
+	private SmDataProviderTr03110 createAesProvider() throws Exception {
+		return new SmDataProviderTr03110(
+				new SecretKeySpec(HexString.toByteArray(AES256_SK_ENC), "AES/CBC/NoPadding"),
+				new SecretKeySpec(HexString.toByteArray(AES256_SK_MAC), "AESCMAC"));
+	}
+
+	private SmDataProviderTr03110 createDesEdeProvider() throws Exception {
+		return new SmDataProviderTr03110(
+				new SecretKeySpec(HexString.toByteArray(ICAO_SK_ENC), "DESede/CBC/NoPadding"),
+				new SecretKeySpec(HexString.toByteArray(ICAO_SK_MAC), "DESede"));
+	}
+
+	/**
+	 * Checks that encryption and decryption with the session bound engines
+	 * match the cipher initialized with key and IV of the current APDU.
+	 */
+	private void checkEncryptDecrypt(SmDataProviderTr03110 dataProvider) {
+		for (int i = 0; i < 3; i++) {
+			dataProvider.nextIncoming();
+
+			byte[] buffer = new byte[PLAIN_TEXT.length + 2];
+			System.arraycopy(PLAIN_TEXT, 0, buffer, 1, PLAIN_TEXT.length);
+			dataProvider.encrypt(buffer, 1, PLAIN_TEXT.length);
+
+			byte[] expected = CryptoSupport.encrypt(dataProvider.getCipher(), PLAIN_TEXT, dataProvider.getKeyEnc(), dataProvider.getCipherIv());
+			assertArrayEquals(expected, Arrays.copyOfRange(buffer, 1, PLAIN_TEXT.length + 1));
+
+			dataProvider.decrypt(buffer, 1, PLAIN_TEXT.length);
+			assertArrayEquals(PLAIN_TEXT, Arrays.copyOfRange(buffer, 1, PLAIN_TEXT.length + 1));
+		}
+	}
+
+	/**
+	 * Checks that the initialized MAC matches a MAC initialized for the current APDU.
+	 */
+	private void checkInitializedMac(SmDataProviderTr03110 dataProvider) throws Exception {
+		for (int i = 0; i < 3; i++) {
+			dataProvider.nextOutgoing();
+
+			Mac expectedMac = Mac.getInstance(dataProvider.getMac().getAlgorithm(), Crypto.getCryptoProvider());
+			expectedMac.init(dataProvider.getKeyMac());
+			expectedMac.update(dataProvider.getMacAuxiliaryData());
+			byte[] expected = expectedMac.doFinal(PLAIN_TEXT);
+
+			// an interrupted computation must not affect the next one
+			dataProvider.getInitializedMac().update(PLAIN_TEXT, 0, 3);
+
+			assertArrayEquals(expected, dataProvider.getInitializedMac().doFinal(PLAIN_TEXT));
+		}
+	}
+
+	/**
+	 * Positive test: session bound AES engines.
+	 */
+	@Test
+	public void testEncryptDecrypt_aes() throws Exception {
+		checkEncryptDecrypt(createAesProvider());
+	}
+
+	/**
+	 * Positive test: session bound 3DES engines.
+	 */
+	@Test
+	public void testEncryptDecrypt_desEde() throws Exception {
+		checkEncryptDecrypt(createDesEdeProvider());
+	}
+
+	/**
+	 * Positive test: session bound AES CMAC.
+	 */
+	@Test
+	public void testGetInitializedMac_aes() throws Exception {
+		checkInitializedMac(createAesProvider());
+	}
+
+	/**
+	 * Positive test: session bound 3DES retail MAC.
+	 */
+	@Test
+	public void testGetInitializedMac_desEde() throws Exception {
+		checkInitializedMac(createDesEdeProvider());
+	}
+
+	/**
+	 * Positive test: the AES IV is derived anew for every APDU.
+	 */
+	@Test
+	public void testGetCipherIv_aes() throws Exception {
+		SmDataProviderTr03110 dataProvider = createAesProvider();
+
+		dataProvider.nextIncoming();
+		byte[] iv1 = dataProvider.getCipherIv().getIV();
+		assertArrayEquals(iv1, dataProvider.getCipherIv().getIV());
+
+		dataProvider.nextOutgoing();
+		byte[] iv2 = dataProvider.getCipherIv().getIV();
+		assertFalse(Arrays.equals(iv1, iv2));
+
+		byte[] ssc = HexString.toByteArray("00000000000000000000000000000002");
+		assertArrayEquals(CryptoSupport.encryptWithIvZero(dataProvider.getCipher(), ssc, dataProvider.getKeyEnc()), iv2);
+	}
+
+	/**
+	 * Negative test: the length of the data must be a multiple of the block size.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testEncrypt_illegalBlockSize() throws Exception {
+		SmDataProviderTr03110 dataProvider = createAesProvider();
+		dataProvider.nextIncoming();
+		dataProvider.encrypt(new byte[20], 0, 20);
+	}
+
+}
@@ -2,11 +2,18 @@ package de.persosim.simulator.tlv;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import mockit.Deencapsulation;
 
 import org.junit.Test;
 
 import de.persosim.simulator.exception.ISO7816Exception;
+import de.persosim.simulator.utils.HexString;
 import de.persosim.simulator.utils.Utils;
 
 public class ConstructedTlvDataObjectTest {
@@ -1025,6 +1032,165 @@ public class ConstructedTlvDataObjectTest {
 		tlvObject.setTag(null, true);
 	}
 	
+	/**
+	 * Positive test case: deeply nested objects are encoded correctly, the
+	 * lengths of all levels are updated after a child has been modified.
+	 * Parsing the encoding back requires lifting the default parsing limits.
+	 */
+	@Test
+	public void testToByteArray_deeplyNested() {
+		PrimitiveTlvDataObject leaf = new PrimitiveTlvDataObject(TlvConstants.TAG_80, new byte[] {0x01});
+		TlvDataObject current = leaf;
+		int depth = 200;
+		for (int i = 0; i < depth; i++) {
+			current = new ConstructedTlvDataObject(TlvConstants.TAG_SEQUENCE, current);
+		}
+		
+		TlvParsingLimits.setCurrent(TlvParsingLimits.UNLIMITED);
+		try {
+			byte[] encoding = current.toByteArray();
+			assertEquals(current.getLength(), encoding.length);
+			assertEquals(current, TlvDataObjectFactory.createTLVDataObject(encoding));
+			
+			leaf.setValue(new byte[200]);
+			encoding = current.toByteArray();
+			assertEquals(current.getLength(), encoding.length);
+			assertArrayEquals(leaf.toByteArray(), ((ConstructedTlvDataObject) TlvDataObjectFactory.createTLVDataObject(encoding)).getTlvDataObject(createPath(depth)).toByteArray());
+		} finally {
+			TlvParsingLimits.setCurrent(TlvParsingLimits.DEFAULT);
+		}
+	}
+	
+	private TlvPath createPath(int depth) {
+		TlvPath path = new TlvPath();
+		for (int i = 1; i < depth; i++) {
+			path.add(TlvConstants.TAG_SEQUENCE);
+		}
+		path.add(TlvConstants.TAG_80);
+		return path;
+	}
+	
+	/**
+	 * Positive test case: the encoding written into a buffer equals the one
+	 * returned as byte array, explicitly set non DER lengths are kept.
+	 */
+	@Test
+	public void testWriteTo() {
+		ConstructedTlvDataObject tlvObject = (ConstructedTlvDataObject) TlvDataObjectFactory.createTLVDataObject("3081088001FF81820001EE");
+		byte[] expected = tlvObject.toByteArray();
+		assertArrayEquals(HexString.toByteArray("3081088001FF81820001EE"), expected);
+		
+		ByteBuffer buffer = ByteBuffer.allocate(expected.length + 2);
+		buffer.put((byte) 0x55);
+		tlvObject.writeTo(buffer);
+		
+		assertEquals(expected.length + 1, buffer.position());
+		assertArrayEquals(expected, Arrays.copyOfRange(buffer.array(), 1, expected.length + 1));
+	}
+	
+	/**
+	 * Positive test case: sub-objects are parsed one level at a time when
+	 * accessed, untouched sub-objects keep their original encoding including
+	 * non DER length fields.
+	 */
+	@Test
+	public void testLazyParsing() {
+		byte[] encoding = HexString.toByteArray("7F4E0F" + "5F2901" + "00" + "7F4981050600" + "8101FF" + "A100");
+		ConstructedTlvDataObject tlvObject = new ConstructedTlvDataObject(encoding);
+		encoding[encoding.length - 1] = 0x01;
+		
+		assertTrue(tlvObject.getTlvDataObjectContainer().isUnparsed());
+		
+		ConstructedTlvDataObject publicKey = (ConstructedTlvDataObject) tlvObject.getTlvDataObject(TlvConstants.TAG_7F49);
+		assertFalse(tlvObject.getTlvDataObjectContainer().isUnparsed());
+		assertTrue(publicKey.getTlvDataObjectContainer().isUnparsed());
+		
+		assertArrayEquals(HexString.toByteArray("7F4981050600" + "8101FF"), publicKey.toByteArray());
+		assertArrayEquals(HexString.toByteArray("7F4E0F" + "5F2901" + "00" + "7F4981050600" + "8101FF" + "A100"), tlvObject.toByteArray());
+		assertEquals(3, tlvObject.getNoOfElements());
+		assertTrue(publicKey.getTlvDataObjectContainer().isUnparsed());
+		
+		assertArrayEquals(HexString.toByteArray("FF"), publicKey.getTlvDataObject(TlvConstants.TAG_81).getValueField());
+		assertFalse(publicKey.getTlvDataObjectContainer().isUnparsed());
+	}
+	
+	/**
+	 * Negative test case: malformed nested sub-objects are rejected on
+	 * construction although they are parsed lazily.
+	 */
+	@Test(expected = ISO7816Exception.class)
+	public void testLazyParsing_malformedNestedObject() {
+		TlvDataObjectFactory.createTLVDataObject("3006" + "3004" + "A1028103");
+	}
+	
+	/**
+	 * Positive test case: a frozen object keeps its encoding and returns copies
+	 * of it, sub-objects are frozen as well.
+	 */
+	@Test
+	public void testFreeze() {
+		ConstructedTlvDataObject tlvObject = (ConstructedTlvDataObject) TlvDataObjectFactory.createTLVDataObject("3081088001FF81820001EE");
+		tlvObject.freeze();
+		
+		assertTrue(tlvObject.isFrozen());
+		assertTrue(tlvObject.getTlvDataObjectContainer().isFrozen());
+		assertTrue(tlvObject.getTlvDataObject(TlvConstants.TAG_80).isFrozen());
+		
+		byte[] encoding = tlvObject.toByteArray();
+		assertArrayEquals(HexString.toByteArray("3081088001FF81820001EE"), encoding);
+		assertEquals(encoding.length, tlvObject.getLength());
+		
+		encoding[0] = 0;
+		assertArrayEquals(HexString.toByteArray("3081088001FF81820001EE"), tlvObject.toByteArray());
+	}
+	
+	/**
+	 * Positive test case: a frozen object can be embedded into an object that
+	 * is not frozen.
+	 */
+	@Test
+	public void testFreeze_embedded() {
+		PrimitiveTlvDataObject child = new PrimitiveTlvDataObject(TlvConstants.TAG_80, HexString.toByteArray("FF"));
+		child.freeze();
+		ConstructedTlvDataObject parent = new ConstructedTlvDataObject(TlvConstants.TAG_SEQUENCE, child);
+		
+		assertArrayEquals(HexString.toByteArray("30038001FF"), parent.toByteArray());
+		
+		parent.addTlvDataObject(new PrimitiveTlvDataObject(TlvConstants.TAG_81));
+		assertArrayEquals(HexString.toByteArray("30058001FF8100"), parent.toByteArray());
+	}
+	
+	/**
+	 * Negative test case: a child of a frozen object must not be added.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testFreeze_addTlvDataObject() {
+		ConstructedTlvDataObject tlvObject = (ConstructedTlvDataObject) TlvDataObjectFactory.createTLVDataObject("30038001FF");
+		tlvObject.freeze();
+		tlvObject.addTlvDataObject(new PrimitiveTlvDataObject(TlvConstants.TAG_81));
+	}
+	
+	/**
+	 * Negative test case: a child of a frozen object must not be modified.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testFreeze_modifyChild() {
+		ConstructedTlvDataObject tlvObject = (ConstructedTlvDataObject) TlvDataObjectFactory.createTLVDataObject("30038001FF");
+		tlvObject.freeze();
+		((PrimitiveTlvDataObject) tlvObject.getTlvDataObject(TlvConstants.TAG_80)).setValue(new byte[] {0x01});
+	}
+	
+	/**
+	 * Negative test case: the list of children of a frozen object must not be
+	 * modified.
+	 */
+	@Test(expected = UnsupportedOperationException.class)
+	public void testFreeze_modifyTlvObjects() {
+		ConstructedTlvDataObject tlvObject = (ConstructedTlvDataObject) TlvDataObjectFactory.createTLVDataObject("30038001FF");
+		tlvObject.freeze();
+		tlvObject.getTlvDataObjectContainer().getTlvObjects().clear();
+	}
+	
 	//TODO missing tests
 	// modification of child values / update of length field
 	// expected methods like testGetLength_ChildLenghtIncreased and testGetLength_ChildLengthDecreased
@@ -9,6 +9,7 @@ import mockit.Deencapsulation;
 import org.junit.Test;
 
 import de.persosim.simulator.exception.ISO7816Exception;
+import de.persosim.simulator.utils.HexString;
 import de.persosim.simulator.utils.Utils;
 
 public class PrimitiveTlvDataObjectTest {
@@ -464,6 +465,33 @@ public class PrimitiveTlvDataObjectTest {
 		tlv2Object.setValue(value);
 	}
 
+	/**
+	 * Positive test case: the value of a frozen object can not be modified
+	 * through the value returned by getTlvValue().
+	 */
+	@Test
+	public void testFreeze_getTlvValue() {
+		TlvValuePlain value = new TlvValuePlain(HexString.toByteArray("FF"));
+		PrimitiveTlvDataObject tlvObject = new PrimitiveTlvDataObject(TlvConstants.TAG_80, value);
+		tlvObject.freeze();
+		
+		value.setValueField(new TlvValuePlain(HexString.toByteArray("0102")));
+		tlvObject.getTlvValue().setValueField(new TlvValuePlain(HexString.toByteArray("0102")));
+		
+		assertArrayEquals(HexString.toByteArray("8001FF"), tlvObject.toByteArray());
+		assertArrayEquals(HexString.toByteArray("FF"), tlvObject.getValueField());
+	}
+	
+	/**
+	 * Negative test case: the tag of a frozen object must not be set.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testFreeze_setTag() {
+		PrimitiveTlvDataObject tlvObject = new PrimitiveTlvDataObject(TlvConstants.TAG_80, HexString.toByteArray("FF"));
+		tlvObject.freeze();
+		tlvObject.setTag(TlvConstants.TAG_81);
+	}
+	
 	//TODO missing tests
 	// modification of value / update of length field (according to package doc this should also work if the existing value is modified and not only if a new value is set)
 }
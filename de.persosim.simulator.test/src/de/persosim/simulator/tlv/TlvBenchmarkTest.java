@@ -0,0 +1,360 @@
+package de.persosim.simulator.tlv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.persosim.simulator.exception.ISO7816Exception;
+import de.persosim.simulator.utils.HexString;
+
+/**
+ * Throughput measurements and corpus based fuzzing for the TLV subsystem.
+ * The corpus consists of a card verifiable certificate, an EF.CardSecurity,
+ * a DG2 sized primitive and a deeply nested synthetic tree.
+ * 
+ * The fuzz tests are always executed, the benchmarks are only executed if the
+ * system property persosim.benchmark is set.
+ * 
+ */
+public class TlvBenchmarkTest {
+	
+	public static final String CVC = "7F218201B07F4E8201685F290100420D444549534356434130303030317F4982011D060A04007F000702020202038120A9FB57DBA1EEA9BC3E660A909D838D726E3BF623D52620282013481D1F6E537782207D5A0975FC2C3057EEF67530417AFFE7FB8055C126DC5C6CE94A4B44F330B5D9832026DC5C6CE94A4B44F330B5D9BBD77CBF958416295CF7E1CE6BCCDC18FF8C07B68441048BD2AEB9CB7E57CB2C4B482FFC81B7AFB9DE27E1E3BD23C23A4453BD9ACE3262547EF835C3DAC4FD97F8461A14611DC9C27745132DED8E545C1D54C72F0469978520A9FB57DBA1EEA9BC3E660A909D838D718C397AA3B561A6F7901E0E82974856A78641045889BF5306189ABB7FA3AD0E922443F9C60162E8215053B72812663E5D798EE05097C4DFAC7470701A5B644AAEAFE1E50BA1D0ED5769151EC476C154BB4A56848701015F200D444549534356434130303030317F4C0E060904007F0007030102015301E35F25060104000500055F24060105000500055F37400A589134205376E20EFF49E108560F1CB47C7D221E96E51FF3C6F4EAF1F6CCC000A5E34ED8E3F6E05253DA09B0D68FF5DFB5BD586782B987453C655FBEE8EC59";
+	
+	public static final String EF_CARD_SECURITY = "308206B006092A864886F70D010702A08206A13082069D020103310F300D0609608648016503040204050030820188060804007F0007030201A082017A04820176318201723012060A04007F0007020204020202010202010D300D060804007F00070202020201023017060A04007F0007020205020330090201010201010101003019060904007F000702020502300C060704007F0007010202010D3017060A04007F0007020205020330090201010201020101013012060A04007F00070202030202020102020129301C060904007F000702020302300C060704007F0007010202010D0201293062060904007F0007020201023052300C060704007F0007010202010D0342000419D4B7447788B0E1993DB35500999627E739A4E5E35F02D8FB07D6122E76567F17758D7A3AA6943EF23E5E2909B3E8B31BFAA4544C2CBF1FB487F31FF239C8F8020129303E060804007F000702020831323012060A04007F0007020203020202010202012D301C060904007F000702020302300C060704007F0007010202010D02012D302A060804007F0007020206161E687474703A2F2F6273692E62756E642E64652F6369662F6E70612E786D6CA08203EE308203EA30820371A00302010202012D300A06082A8648CE3D0403033055310B3009060355040613024445310D300B060355040A0C0462756E64310C300A060355040B0C03627369310D300B0603550405130430303033311A301806035504030C115445535420637363612D6765726D616E79301E170D3134303732333036333034305A170D3235303232333233353935395A305C310B3009060355040613024445310C300A060355040A0C03425349310D300B06035504051304303035303130302E06035504030C275445535420446F63756D656E74205369676E6572204964656E7469747920446F63756D656E7473308201133081D406072A8648CE3D02013081C8020101302806072A8648CE3D0101021D00FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF000000000000000000000001303C041CFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEFFFFFFFFFFFFFFFFFFFFFFFE041CB4050A850C04B3ABF54132565044B0B7D7BFD8BA270B39432355FFB4043904B70E0CBD6BB4BF7F321390B94A03C1D356C21122343280D6115C1D21BD376388B5F723FB4C22DFE6CD4375A05A07476444D5819985007E34021D00FFFFFFFFFFFFFFFFFFFFFFFFFFFF16A2E0B8F03E13DD29455C5C2A3D020101033A00043A79C3CBFDB8A6E569C9226CD54E81DE14381BC92A61AD554EBF349BFAFD72F18DC85D78E49742F37A75411E28E894308D6880D1380FBEB4A382016D30820169301F0603551D23041830168014A38DB7C0DBECF5A91FCA6B3D5EB2F328B5A5DC17301D0603551D0E04160414CF0A2AC150F28ADE4329F662E3D21CE5C78BCDE9300E0603551D0F0101FF040403020780302B0603551D1004243022800F32303134303732333036333034305A810F32303135303232333233353935395A30160603551D20040F300D300B060904007F000703010101302D0603551D1104263024821262756E646573647275636B657265692E6465A40E300C310A300806035504070C014430510603551D12044A30488118637363612D6765726D616E79406273692E62756E642E6465861C68747470733A2F2F7777772E6273692E62756E642E64652F63736361A40E300C310A300806035504070C01443019060767810801010602040E300C02010031071301411302494430350603551D1F042E302C302AA028A0268624687474703A2F2F7777772E6273692E62756E642E64652F746573745F637363615F63726C300A06082A8648CE3D040303036700306402300D90B1C6E52B5E20D8ECE1520981E11EF1AF02906A930420F87E90315588B70C0C9642160E877E42B1CE311849E388B802303450209749C1368D965CE879460F729E68BAB9D5D3269724721D0C564FB2752EC4C0F8F5542990CFDB7C848AA7D0A2BB3182010730820103020101305A3055310B3009060355040613024445310D300B060355040A0C0462756E64310C300A060355040B0C03627369310D300B0603550405130430303033311A301806035504030C115445535420637363612D6765726D616E7902012D300D06096086480165030402040500A046301706092A864886F70D010903310A060804007F0007030201302B06092A864886F70D010904311E041C2297E6DDAB70ED461516301D2690431105E4C1A6DAC2BD6B274C168C300A06082A8648CE3D040301043F303D021C00835806916E8E30963BBB86E9BC3B8A4E8D91EFF91E8AD8CFB46EB0021D009D598F31A17305055021F50DB8B698789779B8757FEECC64B0CA0DA4";
+	
+	public static final int DG2_IMAGE_LENGTH = 20000;
+	public static final int NESTING_DEPTH = 48;
+	public static final int NO_OF_MUTATIONS = 2000;
+	
+	private static final TlvPath PATH_CVC_CHR = new TlvPath(TlvTag.valueOf(new byte[] {0x7F, 0x21}), TlvTag.valueOf(new byte[] {0x7F, 0x4E}), TlvTag.valueOf(new byte[] {0x5F, 0x20}));
+	private static final TlvPath PATH_DOCUMENT_SIGNER_CERTIFICATE = new TlvPath(TlvConstants.TAG_SEQUENCE, TlvConstants.TAG_A0, TlvConstants.TAG_SEQUENCE, TlvConstants.TAG_A0, TlvConstants.TAG_SEQUENCE);
+	private static final TlvPath PATH_SECURITY_INFOS = new TlvPath(TlvConstants.TAG_SEQUENCE, TlvConstants.TAG_A0, TlvConstants.TAG_SEQUENCE, TlvConstants.TAG_SEQUENCE, TlvConstants.TAG_A0, TlvConstants.TAG_OCTET_STRING);
+	
+	private List<byte[]> corpus;
+	
+	@Before
+	public void setUp() {
+		corpus = new ArrayList<>();
+		corpus.add(HexString.toByteArray(CVC));
+		corpus.add(HexString.toByteArray(EF_CARD_SECURITY));
+		corpus.add(createDg2(DG2_IMAGE_LENGTH));
+		corpus.add(createNestedTree(NESTING_DEPTH));
+	}
+	
+	/**
+	 * Creates an encoded DG2 like structure containing a single biometric data
+	 * block of the provided length.
+	 * @param imageLength the length of the biometric data block
+	 * @return the encoding
+	 */
+	public static byte[] createDg2(int imageLength) {
+		byte[] image = new byte[imageLength];
+		new Random(imageLength).nextBytes(image);
+		
+		ConstructedTlvDataObject bdt = new ConstructedTlvDataObject(TlvTag.valueOf(new byte[] {0x7F, 0x60}));
+		bdt.addTlvDataObject(new ConstructedTlvDataObject(TlvTag.valueOf((byte) 0xA1), new PrimitiveTlvDataObject(TlvTag.valueOf((byte) 0x80), new byte[] {0x01, 0x01})));
+		bdt.addTlvDataObject(new PrimitiveTlvDataObject(TlvTag.valueOf(new byte[] {0x5F, 0x2E}), image));
+		
+		ConstructedTlvDataObject bitGroup = new ConstructedTlvDataObject(TlvTag.valueOf(new byte[] {0x7F, 0x61}));
+		bitGroup.addTlvDataObject(new PrimitiveTlvDataObject(TlvTag.valueOf((byte) 0x02), new byte[] {0x01}));
+		bitGroup.addTlvDataObject(bdt);
+		
+		return new ConstructedTlvDataObject(TlvTag.valueOf((byte) 0x75), bitGroup).toByteArray();
+	}
+	
+	/**
+	 * Creates an encoded synthetic tree of constructed TLV data objects each
+	 * containing a primitive and a constructed child.
+	 * @param depth the nesting depth
+	 * @return the encoding
+	 */
+	public static byte[] createNestedTree(int depth) {
+		TlvDataObject current = new PrimitiveTlvDataObject(TlvTag.valueOf((byte) 0x80), new byte[] {0x00});
+		
+		for(int i = 1; i < depth; i++) {
+			current = new ConstructedTlvDataObject(TlvTag.valueOf((byte) 0xA1), new PrimitiveTlvDataObject(TlvTag.valueOf((byte) 0x80), new byte[] {(byte) i}), current);
+		}
+		
+		return current.toByteArray();
+	}
+	
+	/**
+	 * Applies one random mutation to a copy of the provided encoding.
+	 */
+	private static byte[] mutate(byte[] data, Random random) {
+		byte[] mutant = Arrays.copyOf(data, data.length);
+		int offset = random.nextInt(mutant.length);
+		
+		switch(random.nextInt(5)) {
+		case 0:
+			/* flip a single bit */
+			mutant[offset] ^= 1 << random.nextInt(8);
+			return mutant;
+		case 1:
+			/* replace a byte by a long form length prefix */
+			mutant[offset] = (byte) (0x80 + random.nextInt(6));
+			return mutant;
+		case 2:
+			/* replace a byte by 0xFF */
+			mutant[offset] = (byte) 0xFF;
+			return mutant;
+		case 3:
+			/* truncate */
+			return Arrays.copyOf(mutant, offset);
+		default:
+			/* insert a random byte */
+			byte[] extended = new byte[mutant.length + 1];
+			System.arraycopy(mutant, 0, extended, 0, offset);
+			extended[offset] = (byte) random.nextInt(256);
+			System.arraycopy(mutant, offset, extended, offset + 1, mutant.length - offset);
+			return extended;
+		}
+	}
+	
+	/**
+	 * Fully parses the provided encoding.
+	 * @return the parsed container or null if the encoding has been rejected
+	 */
+	private static TlvDataObjectContainer parse(byte[] data) {
+		try {
+			TlvDataObjectContainer container = new TlvDataObjectContainer(data);
+			container.getNoOfElements(true);
+			return container;
+		} catch (ISO7816Exception | IllegalArgumentException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Positive test: all elements of the corpus are valid BER encodings.
+	 */
+	@Test
+	public void testCorpus() {
+		for (byte[] curData : corpus) {
+			TlvDataObjectContainer container = parse(curData);
+			assertNotNull(container);
+			assertArrayEquals(curData, container.toByteArray());
+			assertEquals(true, TlvValidator.isValidBerEncoding(curData));
+		}
+	}
+	
+	/**
+	 * Mutated encodings must either be parsed or be rejected with one of the
+	 * documented exceptions. Encodings accepted by the {@link TlvValidator}
+	 * must be parseable and their encoding must remain unchanged.
+	 */
+	@Test
+	public void testFuzzCorpus() {
+		Random random = new Random(0x5EED);
+		
+		for (int i = 0; i < NO_OF_MUTATIONS; i++) {
+			byte[] original = corpus.get(random.nextInt(corpus.size()));
+			byte[] mutant = mutate(original, random);
+			
+			TlvDataObjectContainer container = parse(mutant);
+			
+			if (TlvValidator.isValidBerEncoding(mutant)) {
+				if (container == null) {
+					fail("valid mutant rejected by parser: " + HexString.encode(mutant));
+				}
+				assertArrayEquals(mutant, container.toByteArray());
+			}
+		}
+	}
+	
+	/**
+	 * Negative test: length fields indicating huge lengths must be rejected.
+	 */
+	@Test
+	public void testHugeLengthFields() {
+		String[] encodings = new String[] {"8084FFFFFFFF00", "80847FFFFFFF00", "A0847FFFFFFF8000", "7F2184FFFFFFF0", "3084800000003000"};
+		
+		for (String curEncoding : encodings) {
+			byte[] data = HexString.toByteArray(curEncoding);
+			assertFalse(curEncoding, TlvValidator.isValidBerEncoding(data));
+			assertEquals(curEncoding, null, parse(data));
+		}
+	}
+	
+	/**
+	 * Negative test: nesting deeper than the default limit must be rejected
+	 * by the validator and the parser.
+	 */
+	@Test
+	public void testDeepNesting() {
+		byte[] data = createNestedTree(TlvValidator.DEFAULT_MAX_DEPTH + 1);
+		
+		assertFalse(TlvValidator.isValidBerEncoding(data));
+		assertEquals(null, parse(data));
+		assertEquals(true, TlvValidator.isValidBerEncoding(createNestedTree(TlvValidator.DEFAULT_MAX_DEPTH)));
+	}
+	
+	/**
+	 * Measure the time required to perform the operation for all elements
+	 * of the corpus.
+	 */
+	private static abstract class Operation {
+		String name;
+		
+		Operation(String name) {
+			this.name = name;
+		}
+		
+		abstract Object run(byte[] data, TlvDataObjectContainer parsed);
+	}
+	
+	private void measure(Operation operation, int iterations) {
+		List<TlvDataObjectContainer> parsed = new ArrayList<>();
+		for (byte[] curData : corpus) {
+			parsed.add(parse(curData));
+		}
+		
+		StringBuilder sb = new StringBuilder(operation.name);
+		for (int i = 0; i < corpus.size(); i++) {
+			byte[] curData = corpus.get(i);
+			
+			/* warm up */
+			for (int j = 0; j < iterations; j++) {
+				operation.run(curData, parsed.get(i));
+			}
+			
+			long start = System.nanoTime();
+			for (int j = 0; j < iterations; j++) {
+				operation.run(curData, parsed.get(i));
+			}
+			long nsPerOp = (System.nanoTime() - start) / iterations;
+			sb.append(String.format(" | %6d bytes: %8d ns/op", curData.length, nsPerOp));
+		}
+		System.out.println(sb.toString());
+	}
+	
+	/**
+	 * Measure parsing, encoding, path lookup, sorting and validation.
+	 * Only executed if the system property persosim.benchmark is set.
+	 */
+	@Test
+	public void benchmark() {
+		Assume.assumeTrue(System.getProperty("persosim.benchmark") != null);
+		
+		int iterations = 2000;
+		
+		measure(new Operation("parse lazy") {
+			@Override
+			Object run(byte[] data, TlvDataObjectContainer parsed) {
+				return new TlvDataObjectContainer(data);
+			}
+		}, iterations);
+		
+		measure(new Operation("parse full") {
+			@Override
+			Object run(byte[] data, TlvDataObjectContainer parsed) {
+				return parse(data);
+			}
+		}, iterations);
+		
+		measure(new Operation("encode    ") {
+			@Override
+			Object run(byte[] data, TlvDataObjectContainer parsed) {
+				return parsed.toByteArray();
+			}
+		}, iterations);
+		
+		measure(new Operation("path      ") {
+			@Override
+			Object run(byte[] data, TlvDataObjectContainer parsed) {
+				parsed.getTlvDataObject(PATH_CVC_CHR);
+				return parsed.getTlvDataObject(PATH_DOCUMENT_SIGNER_CERTIFICATE);
+			}
+		}, iterations);
+		
+		measure(new Operation("sort      ") {
+			@Override
+			Object run(byte[] data, TlvDataObjectContainer parsed) {
+				parsed.sort(new TlvDataObjectComparatorDer());
+				return parsed;
+			}
+		}, iterations);
+		
+		measure(new Operation("validate  ") {
+			@Override
+			Object run(byte[] data, TlvDataObjectContainer parsed) {
+				return TlvValidator.isValidDerEncoding(data);
+			}
+		}, iterations);
+		
+		byte[] securityInfos = ((PrimitiveTlvDataObject) parse(corpus.get(1)).getTlvDataObject(PATH_SECURITY_INFOS)).getValueField();
+		ConstructedTlvDataObject securityInfosSet = new ConstructedTlvDataObject(securityInfos);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			securityInfosSet.sort(new TlvDataObjectComparatorDer());
+		}
+		System.out.println("sort SecurityInfos: " + (System.nanoTime() - start) / iterations + " ns/op");
+	}
+	
+	/**
+	 * Report fuzzing throughput and the scaling of parse times for growing
+	 * nesting depth and element count. Parse times growing considerably
+	 * faster than the input size indicate super-linear behavior.
+	 * Only executed if the system property persosim.benchmark is set.
+	 */
+	@Test
+	public void benchmarkFuzzAndScaling() {
+		Assume.assumeTrue(System.getProperty("persosim.benchmark") != null);
+		
+		Random random = new Random(0x5EED);
+		int noOfMutations = 100000;
+		long noOfBytes = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < noOfMutations; i++) {
+			byte[] mutant = mutate(corpus.get(random.nextInt(corpus.size())), random);
+			noOfBytes += mutant.length;
+			parse(mutant);
+		}
+		long duration = System.nanoTime() - start;
+		System.out.println("fuzz: " + (noOfMutations * 1000000000L / duration) + " inputs/s, " + (noOfBytes * 1000L / duration) + " MB/s");
+		
+		/* the scaling is measured beyond the default limits */
+		TlvParsingLimits.setCurrent(TlvParsingLimits.UNLIMITED);
+		try {
+			for (int depth = 32; depth <= 512; depth *= 2) {
+				byte[] data = createNestedTree(depth);
+				System.out.println("nesting depth " + depth + ": " + measureParse(data) + " ps/byte");
+			}
+			
+			for (int noOfElements = 1000; noOfElements <= 16000; noOfElements *= 2) {
+				byte[] data = new byte[noOfElements * 3];
+				for (int i = 0; i < noOfElements; i++) {
+					data[i * 3] = (byte) 0x80;
+					data[i * 3 + 1] = 0x01;
+				}
+				System.out.println("elements " + noOfElements + ": " + measureParse(data) + " ps/byte");
+			}
+		} finally {
+			TlvParsingLimits.setCurrent(TlvParsingLimits.DEFAULT);
+		}
+	}
+	
+	private static long measureParse(byte[] data) {
+		int iterations = 200;
+		for (int i = 0; i < iterations; i++) {
+			parse(data);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			parse(data);
+		}
+		return (System.nanoTime() - start) * 1000 / iterations / data.length;
+	}
+	
+}
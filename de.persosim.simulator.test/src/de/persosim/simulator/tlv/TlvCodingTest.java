@@ -0,0 +1,95 @@
+package de.persosim.simulator.tlv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import de.persosim.simulator.exception.ISO7816Exception;
+import de.persosim.simulator.platform.Iso7816;
+import de.persosim.simulator.utils.HexString;
+
+public class TlvCodingTest {
+
+	/**
+	 * Positive test: tag fields of one, two and three bytes.
+	 */
+	@Test
+	public void testDecodeNoOfTagBytes() {
+		byte[] data = HexString.toByteArray("805F299F8101");
+
+		assertEquals(1, TlvCoding.decodeNoOfTagBytes(data, 0, data.length));
+		assertEquals(2, TlvCoding.decodeNoOfTagBytes(data, 1, data.length));
+		assertEquals(3, TlvCoding.decodeNoOfTagBytes(data, 3, data.length));
+	}
+
+	/**
+	 * Negative test: malformed tag fields and tag fields exceeding the range
+	 * are reported by error codes.
+	 */
+	@Test
+	public void testDecodeNoOfTagBytes_errors() {
+		assertEquals(TlvCoding.INVALID, TlvCoding.decodeNoOfTagBytes(HexString.toByteArray("5F1E"), 0, 2));
+		assertEquals(TlvCoding.INVALID, TlvCoding.decodeNoOfTagBytes(HexString.toByteArray("5F808101"), 0, 4));
+		assertEquals(TlvCoding.INVALID, TlvCoding.decodeNoOfTagBytes(HexString.toByteArray("5F81818101"), 0, 5));
+		assertEquals(TlvCoding.OUTSIDE_RANGE, TlvCoding.decodeNoOfTagBytes(HexString.toByteArray("5F8101"), 0, 2));
+	}
+
+	/**
+	 * Positive test: length fields in short and long form.
+	 */
+	@Test
+	public void testDecodeNoOfLengthBytes() {
+		byte[] data = HexString.toByteArray("7F820100");
+
+		assertEquals(1, TlvCoding.decodeNoOfLengthBytes(data, 0, data.length));
+		assertEquals(3, TlvCoding.decodeNoOfLengthBytes(data, 1, data.length));
+		assertEquals(256, TlvCoding.getIndicatedLength(data, 1, 3));
+	}
+
+	/**
+	 * Negative test: indefinite form, overlong length fields and length fields
+	 * exceeding the range are reported by error codes.
+	 */
+	@Test
+	public void testDecodeNoOfLengthBytes_errors() {
+		assertEquals(TlvCoding.INVALID, TlvCoding.decodeNoOfLengthBytes(HexString.toByteArray("80"), 0, 1));
+		assertEquals(TlvCoding.INVALID, TlvCoding.decodeNoOfLengthBytes(HexString.toByteArray("85000000000001"), 0, 7));
+		assertEquals(TlvCoding.OUTSIDE_RANGE, TlvCoding.decodeNoOfLengthBytes(HexString.toByteArray("8201"), 0, 2));
+	}
+
+	/**
+	 * Negative test: the get methods throw the same exceptions as object
+	 * construction.
+	 */
+	@Test
+	public void testGetNoOfTagBytes_exceptions() {
+		try {
+			TlvCoding.getNoOfTagBytes(HexString.toByteArray("5F1E"), 0, 2);
+			fail("malformed tag accepted");
+		} catch (ISO7816Exception e) {
+			assertEquals(Iso7816.SW_6A80_WRONG_DATA, e.getStatusWord());
+		}
+
+		try {
+			TlvCoding.getNoOfLengthBytes(HexString.toByteArray("8201"), 0, 2);
+			fail("truncated length accepted");
+		} catch (ISO7816Exception e) {
+			assertEquals(Iso7816.SW_6A85_NC_INCONSISTENT_WITH_TLV_STRUCTURE, e.getStatusWord());
+		}
+	}
+
+	/**
+	 * Positive test: tags are compared by class first and tag number second.
+	 */
+	@Test
+	public void testCompareTags() {
+		byte[] data = HexString.toByteArray("9F81015F1E02");
+
+		assertTrue(TlvCoding.compareTags(data, 0, 3, 3, 2) > 0);
+		assertTrue(TlvCoding.compareTags(data, 3, 2, 5, 1) > 0);
+		assertEquals(129, TlvCoding.getTagNo(data, 0, 3));
+	}
+
+}
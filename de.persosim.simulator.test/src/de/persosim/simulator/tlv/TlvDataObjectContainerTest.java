@@ -2,8 +2,17 @@ package de.persosim.simulator.tlv;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Test;
 
+import de.persosim.simulator.exception.ISO7816Exception;
 import de.persosim.simulator.utils.HexString;
 
 public class TlvDataObjectContainerTest implements TlvConstants {
@@ -67,4 +76,158 @@ public class TlvDataObjectContainerTest implements TlvConstants {
 
 		assertEquals(child2, container.getTlvDataObject(new TlvPath(new TlvTagIdentifier(TAG_INTEGER, 1))));
 	}
+	
+	/**
+	 * Create a container exceeding {@link TlvDataObjectContainer#TAG_INDEX_THRESHOLD}
+	 * with the tags 80, 81, ... and two INTEGERs at the end.
+	 */
+	private TlvDataObjectContainer createLargeContainer() {
+		TlvDataObjectContainer container = new TlvDataObjectContainer();
+		for (int i = 0; i < TlvDataObjectContainer.TAG_INDEX_THRESHOLD; i++) {
+			container.addTlvDataObject(new PrimitiveTlvDataObject(new TlvTag((byte) (0x80 + i)), new byte[] {(byte) i}));
+		}
+		container.addTlvDataObject(new PrimitiveTlvDataObject(HexString.toByteArray("020101")));
+		container.addTlvDataObject(new PrimitiveTlvDataObject(HexString.toByteArray("020102")));
+		return container;
+	}
+	
+	/**
+	 * Positive test: lookups in a large container yield the same occurrences
+	 * as in small containers.
+	 */
+	@Test
+	public void testGetTlvDataObject_largeContainer() {
+		TlvDataObjectContainer container = createLargeContainer();
+		
+		assertEquals(new PrimitiveTlvDataObject(HexString.toByteArray("820102")), container.getTlvDataObject(TAG_82));
+		assertEquals(new PrimitiveTlvDataObject(HexString.toByteArray("020101")), container.getTlvDataObject(TAG_INTEGER));
+		assertEquals(new PrimitiveTlvDataObject(HexString.toByteArray("020102")), container.getTlvDataObject(new TlvTagIdentifier(TAG_INTEGER, 1)));
+		assertNull(container.getTlvDataObject(new TlvTagIdentifier(TAG_INTEGER, 2)));
+		assertNull(container.getTlvDataObject(TAG_5F20));
+	}
+	
+	/**
+	 * Positive test: lookups in a large container reflect removal, addition
+	 * and sorting of elements as well as replaced tags.
+	 */
+	@Test
+	public void testGetTlvDataObject_largeContainerModified() {
+		TlvDataObjectContainer container = createLargeContainer();
+		assertNotNull(container.getTlvDataObject(TAG_INTEGER));
+		
+		container.removeTlvDataObject(TAG_INTEGER);
+		assertEquals(new PrimitiveTlvDataObject(HexString.toByteArray("020102")), container.getTlvDataObject(TAG_INTEGER));
+		
+		PrimitiveTlvDataObject first = new PrimitiveTlvDataObject(HexString.toByteArray("020100"));
+		container.addTlvDataObject(first);
+		container.sort(new TlvDataObjectComparatorDer());
+		assertSame(first, container.getTlvDataObject(new TlvTagIdentifier(TAG_INTEGER, 1)));
+		assertEquals(new PrimitiveTlvDataObject(HexString.toByteArray("800100")), container.getTlvDataObject(TAG_80));
+		
+		first.setTag(TAG_5F20);
+		assertSame(first, container.getTlvDataObject(TAG_5F20));
+		assertEquals(new PrimitiveTlvDataObject(HexString.toByteArray("020102")), container.getTlvDataObject(TAG_INTEGER));
+		
+		container.getTlvObjects().remove(first);
+		assertNull(container.getTlvDataObject(TAG_5F20));
+	}
+	
+	/**
+	 * Positive test: lookups in a large container reflect modifications
+	 * performed through a list obtained before the lookup.
+	 */
+	@Test
+	public void testGetTlvDataObject_largeContainerModifiedThroughList() {
+		TlvDataObjectContainer container = createLargeContainer();
+		List<TlvDataObject> tlvObjects = container.getTlvObjects();
+		assertNotNull(container.getTlvDataObject(TAG_80));
+		
+		PrimitiveTlvDataObject replacement = new PrimitiveTlvDataObject(HexString.toByteArray("5F2000"));
+		tlvObjects.set(0, replacement);
+		assertNull(container.getTlvDataObject(TAG_80));
+		assertSame(replacement, container.getTlvDataObject(TAG_5F20));
+		
+		PrimitiveTlvDataObject first = new PrimitiveTlvDataObject(HexString.toByteArray("020100"));
+		tlvObjects.add(0, first);
+		assertSame(first, container.getTlvDataObject(TAG_INTEGER));
+		
+		tlvObjects.remove(first);
+		assertEquals(new PrimitiveTlvDataObject(HexString.toByteArray("020101")), container.getTlvDataObject(TAG_INTEGER));
+		assertEquals(container.getNoOfElements(), tlvObjects.size());
+	}
+	
+	/**
+	 * Positive test: replacing the tag of an object shared by two large
+	 * containers is reflected by lookups in both containers.
+	 */
+	@Test
+	public void testGetTlvDataObject_largeContainersSharingObject() {
+		TlvDataObjectContainer container1 = createLargeContainer();
+		TlvDataObjectContainer container2 = createLargeContainer();
+		PrimitiveTlvDataObject shared = new PrimitiveTlvDataObject(HexString.toByteArray("5F2000"));
+		container1.addTlvDataObject(shared);
+		container2.addTlvDataObject(shared);
+		assertSame(shared, container1.getTlvDataObject(TAG_5F20));
+		assertSame(shared, container2.getTlvDataObject(TAG_5F20));
+		
+		shared.setTag(TAG_5F29);
+		assertNull(container1.getTlvDataObject(TAG_5F20));
+		assertNull(container2.getTlvDataObject(TAG_5F20));
+		assertSame(shared, container2.getTlvDataObject(TAG_5F29));
+	}
+	
+	/**
+	 * Positive test: wrapping an encoding parses it on demand without copying.
+	 */
+	@Test
+	public void testWrap() {
+		byte[] encoding = HexString.toByteArray("8701AA" + "990290008E080102030405060708");
+		TlvDataObjectContainer container = TlvDataObjectContainer.wrap(encoding);
+		
+		assertTrue(container.isUnparsed());
+		assertArrayEquals(encoding, container.toByteArray());
+		assertEquals(3, container.getNoOfElements());
+		assertArrayEquals(HexString.toByteArray("9000"), container.getTlvDataObject(new TlvTag((byte) 0x99)).getValueField());
+	}
+	
+	/**
+	 * Positive test: concurrent readers of a wrapped encoding trigger parsing
+	 * only once and all see the same objects.
+	 */
+	@Test
+	public void testWrap_concurrentAccess() throws Exception {
+		final TlvDataObjectContainer container = TlvDataObjectContainer.wrap(HexString.toByteArray("8701AA" + "A1058201BBCC00" + "990290008E080102030405060708"));
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		
+		ExecutorService readers = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<TlvDataObject>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(readers.submit(new Callable<TlvDataObject>() {
+					@Override
+					public TlvDataObject call() throws Exception {
+						startSignal.await();
+						return container.getTlvDataObject(new TlvPath(new TlvTag((byte) 0xA1), new TlvTag((byte) 0x82)));
+					}
+				}));
+			}
+			
+			startSignal.countDown();
+			TlvDataObject expected = futures.get(0).get();
+			assertArrayEquals(HexString.toByteArray("BB"), expected.getValueField());
+			for (Future<TlvDataObject> future : futures) {
+				assertSame(expected, future.get());
+			}
+		} finally {
+			readers.shutdown();
+		}
+	}
+	
+	/**
+	 * Negative test: wrapping a malformed encoding is rejected immediately.
+	 */
+	@Test(expected = ISO7816Exception.class)
+	public void testWrap_malformed() {
+		TlvDataObjectContainer.wrap(HexString.toByteArray("870301"));
+	}
 }
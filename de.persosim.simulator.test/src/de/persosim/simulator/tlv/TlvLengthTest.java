@@ -383,4 +383,54 @@ public class TlvLengthTest {
 	}
 	
 	
+	/**
+	 * Positive test case: the length encoding written into a buffer equals the
+	 * one returned as byte array for all sizes of length fields.
+	 */
+	@Test
+	public void testWriteLengthEncoding() {
+		int[] lengths = new int[] {0, 1, 127, 128, 255, 256, 65535, 65536, 0xFFFFFF, 0x1000000, Integer.MAX_VALUE};
+		
+		for (int curLength : lengths) {
+			byte[] expected = TlvLength.getLengthEncoding(curLength);
+			byte[] buffer = new byte[expected.length + 1];
+			
+			assertEquals("end offset for " + curLength, expected.length + 1, TlvLength.writeLengthEncoding(curLength, buffer, 1));
+			assertArrayEquals("encoding for " + curLength, Utils.concatByteArrays(new byte[1], expected), buffer);
+			assertEquals("no of bytes for " + curLength, expected.length, TlvLength.getMinNoOfBytesEncodingLength(curLength));
+		}
+	}
+	
+	/**
+	 * Positive test case: short form length fields are created from the shared
+	 * encodings, other length fields are created as usual.
+	 */
+	@Test
+	public void testValueOf() {
+		assertEquals(TlvLength.valueOf(5), TlvLength.valueOf(new byte[] {0x05, 0x01}, 0, 2));
+		assertEquals(new TlvLength(127), TlvLength.valueOf(127));
+		assertArrayEquals(new byte[] {(byte) 0x81, (byte) 0x80}, TlvLength.valueOf(new byte[] {(byte) 0x81, (byte) 0x80, 0x01}, 0, 3).toByteArray());
+		assertArrayEquals(new byte[] {(byte) 0x81, (byte) 0x80}, TlvLength.valueOf(128).toByteArray());
+	}
+	
+	/**
+	 * Positive test case: modifying a short form length field does not affect
+	 * other length fields of the same value.
+	 */
+	@Test
+	public void testValueOf_modify() {
+		TlvLength modified = TlvLength.valueOf(5);
+		modified.forceLengthField(new byte[] {0x06});
+		
+		assertEquals(6, modified.getIndicatedLength());
+		assertEquals(5, TlvLength.valueOf(5).getIndicatedLength());
+		assertEquals(5, TlvLength.valueOf(new byte[] {0x05}, 0, 1).getIndicatedLength());
+		
+		modified = TlvLength.valueOf(7);
+		modified.setLengthField(new byte[] {(byte) 0x81, (byte) 0x80});
+		
+		assertEquals(128, modified.getIndicatedLength());
+		assertEquals(7, TlvLength.valueOf(7).getIndicatedLength());
+	}
+	
 }
@@ -0,0 +1,139 @@
+package de.persosim.simulator.tlv;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Test;
+
+import de.persosim.simulator.exception.ISO7816Exception;
+import de.persosim.simulator.utils.HexString;
+
+public class TlvParsingLimitsTest {
+
+	@After
+	public void tearDown() {
+		TlvParsingLimits.setCurrent(TlvParsingLimits.DEFAULT);
+	}
+
+	/**
+	 * Positive test: structures within the limits are parsed, the limits are
+	 * inclusive.
+	 */
+	@Test
+	public void testWithinLimits() {
+		TlvParsingLimits.setCurrent(new TlvParsingLimits(3, 4, 10));
+
+		TlvDataObjectContainer container = new TlvDataObjectContainer(HexString.toByteArray("A106" + "A104" + "8002" + "0102"));
+		assertEquals(3, container.getNoOfElements(true));
+
+		container = new TlvDataObjectContainer(HexString.toByteArray("8000" + "8000" + "8000" + "8000"));
+		assertEquals(4, container.getNoOfElements(true));
+	}
+
+	/**
+	 * Negative test: nesting deeper than the limit is rejected by the container.
+	 */
+	@Test(expected = ISO7816Exception.class)
+	public void testMaxDepth_container() {
+		TlvParsingLimits.setCurrent(new TlvParsingLimits(2, 100, 100));
+
+		new TlvDataObjectContainer(HexString.toByteArray("A106" + "A104" + "8002" + "0102"));
+	}
+
+	/**
+	 * Negative test: nesting deeper than the limit is rejected by the constructed TLV data object.
+	 */
+	@Test(expected = ISO7816Exception.class)
+	public void testMaxDepth_constructedTlvDataObject() {
+		TlvParsingLimits.setCurrent(new TlvParsingLimits(2, 100, 100));
+
+		new ConstructedTlvDataObject(HexString.toByteArray("A106" + "A104" + "8002" + "0102"));
+	}
+
+	/**
+	 * Negative test: more elements than allowed by the limit, counted on all levels.
+	 */
+	@Test(expected = ISO7816Exception.class)
+	public void testMaxNoOfElements() {
+		TlvParsingLimits.setCurrent(new TlvParsingLimits(100, 3, 100));
+
+		new TlvDataObjectContainer(HexString.toByteArray("A104" + "8000" + "8000" + "8000"));
+	}
+
+	/**
+	 * Negative test: more bytes than allowed by the limit.
+	 */
+	@Test(expected = ISO7816Exception.class)
+	public void testMaxNoOfBytes_container() {
+		TlvParsingLimits.setCurrent(new TlvParsingLimits(100, 100, 7));
+
+		new TlvDataObjectContainer(HexString.toByteArray("8000" + "8000" + "8000" + "8000"));
+	}
+
+	/**
+	 * Negative test: primitive TLV data object with a value exceeding the limit.
+	 */
+	@Test(expected = ISO7816Exception.class)
+	public void testMaxNoOfBytes_primitiveTlvDataObject() {
+		TlvParsingLimits.setCurrent(new TlvParsingLimits(100, 100, 4));
+
+		new PrimitiveTlvDataObject(HexString.toByteArray("8003010203"));
+	}
+
+	/**
+	 * Positive test: without limits deep nesting is accepted.
+	 */
+	@Test
+	public void testUnlimited() {
+		TlvParsingLimits.setCurrent(TlvParsingLimits.UNLIMITED);
+
+		byte[] data = TlvBenchmarkTest.createNestedTree(TlvParsingLimits.DEFAULT.getMaxDepth() + 1);
+		assertEquals(2 * TlvParsingLimits.DEFAULT.getMaxDepth() + 1, new TlvDataObjectContainer(data).getNoOfElements(true));
+	}
+
+	/**
+	 * Positive test: structures accepted when parsing started are parsed on
+	 * demand under the same limits, even if the current limits changed in the
+	 * meantime.
+	 */
+	@Test
+	public void testDeferredParsing_limitsChanged() {
+		TlvParsingLimits.setCurrent(TlvParsingLimits.UNLIMITED);
+
+		byte[] data = TlvBenchmarkTest.createNestedTree(TlvParsingLimits.DEFAULT.getMaxDepth() + 1);
+		TlvDataObjectContainer container = new TlvDataObjectContainer(data);
+		TlvDataObjectContainer wrapped = TlvDataObjectContainer.wrap(data);
+		ConstructedTlvDataObject constructed = new ConstructedTlvDataObject(HexString.toByteArray("A108" + "8006" + "010203040506"));
+
+		TlvParsingLimits.setCurrent(new TlvParsingLimits(1, 1, 2));
+
+		assertEquals(2 * TlvParsingLimits.DEFAULT.getMaxDepth() + 1, container.getNoOfElements(true));
+		assertEquals(2 * TlvParsingLimits.DEFAULT.getMaxDepth() + 1, wrapped.getNoOfElements(true));
+		assertEquals(1, constructed.getNoOfElements(true));
+	}
+
+	/**
+	 * Negative test: the default limits reject deeper nesting.
+	 */
+	@Test(expected = ISO7816Exception.class)
+	public void testDefault_maxDepth() {
+		new TlvDataObjectContainer(TlvBenchmarkTest.createNestedTree(TlvParsingLimits.DEFAULT.getMaxDepth() + 1));
+	}
+
+	/**
+	 * Negative test: limits must allow at least one element.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_invalidMaxNoOfElements() {
+		new TlvParsingLimits(1, 0, 2);
+	}
+
+	/**
+	 * Negative test: limits must not be null.
+	 */
+	@Test(expected = NullPointerException.class)
+	public void testSetCurrent_null() {
+		TlvParsingLimits.setCurrent(null);
+	}
+
+}
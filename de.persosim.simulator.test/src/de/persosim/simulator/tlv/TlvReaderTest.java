@@ -0,0 +1,156 @@
+package de.persosim.simulator.tlv;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import de.persosim.simulator.exception.ISO7816Exception;
+import de.persosim.simulator.utils.HexString;
+
+public class TlvReaderTest implements TlvConstants {
+
+	/* 7C(80|A1(82)|83) followed by two INTEGERs and a two byte tag */
+	private static final byte[] DATA = HexString.toByteArray("7C0A8001AAA1038201BB8300" + "020101" + "020102" + "5F2001CC");
+
+	/**
+	 * Positive test: iterate all elements on the top level.
+	 */
+	@Test
+	public void testNext() {
+		TlvReader reader = new TlvReader(DATA);
+
+		assertTrue(reader.next());
+		assertTrue(reader.matches(TAG_7C));
+		assertTrue(reader.isConstructed());
+		assertEquals(0, reader.getOffset());
+		assertEquals(12, reader.getLength());
+		assertEquals(10, reader.getValueLength());
+
+		assertTrue(reader.next());
+		assertTrue(reader.matches(TAG_INTEGER));
+		assertTrue(reader.next());
+		assertTrue(reader.matches(TAG_INTEGER));
+
+		assertTrue(reader.next());
+		assertTrue(reader.matches(TAG_5F20));
+		assertEquals(2, reader.getNoOfTagBytes());
+		assertArrayEquals(HexString.toByteArray("CC"), reader.getValueField());
+
+		assertFalse(reader.next());
+		assertFalse(reader.isPositioned());
+	}
+
+	/**
+	 * Positive test: find an element along a path, the value is provided as
+	 * view on the original array.
+	 */
+	@Test
+	public void testFind_path() {
+		TlvReader reader = new TlvReader(DATA);
+
+		assertTrue(reader.find(new TlvPath(TAG_7C, new TlvTag((byte) 0xA1), TAG_82)));
+		assertArrayEquals(HexString.toByteArray("8201BB"), reader.toByteArray());
+
+		ByteBuffer value = reader.getValue();
+		assertEquals(1, value.remaining());
+		assertEquals((byte) 0xBB, value.get(0));
+		assertTrue(value.isReadOnly());
+	}
+
+	/**
+	 * Positive test: find the second occurrence of a tag.
+	 */
+	@Test
+	public void testFind_secondOccurrence() {
+		TlvReader reader = new TlvReader(DATA);
+
+		assertTrue(reader.find(new TlvTagIdentifier(TAG_INTEGER, 1)));
+		assertArrayEquals(HexString.toByteArray("02"), reader.getValueField());
+	}
+
+	/**
+	 * Negative test: find a missing element.
+	 */
+	@Test
+	public void testFind_missing() {
+		TlvReader reader = new TlvReader(DATA);
+
+		assertFalse(reader.find(new TlvPath(TAG_7C, TAG_83, TAG_82)));
+		assertFalse(new TlvReader(DATA).find(TAG_87));
+	}
+
+	/**
+	 * Positive test: elements materialized from the reader equal those
+	 * parsed by {@link TlvDataObjectContainer}.
+	 */
+	@Test
+	public void testToTlvDataObject() {
+		TlvDataObjectContainer container = new TlvDataObjectContainer(DATA);
+		TlvReader reader = new TlvReader(DATA);
+
+		for (TlvDataObject curObject : container) {
+			assertTrue(reader.next());
+			assertEquals(curObject, reader.toTlvDataObject());
+		}
+		assertFalse(reader.next());
+	}
+
+	/**
+	 * Positive test: enter a constructed element and read its children.
+	 */
+	@Test
+	public void testEnter() {
+		TlvReader reader = new TlvReader(DATA);
+		reader.next();
+		TlvReader childReader = reader.getChildReader();
+		reader.enter();
+
+		assertTrue(reader.next());
+		assertTrue(reader.matches(TAG_80));
+		assertTrue(childReader.next());
+		assertEquals(reader.getOffset(), childReader.getOffset());
+
+		assertTrue(reader.next());
+		assertTrue(reader.next());
+		assertTrue(reader.matches(TAG_83));
+		assertEquals(0, reader.getValueLength());
+		assertFalse(reader.next());
+	}
+
+	/**
+	 * Negative test: indicated length exceeds the available data.
+	 */
+	@Test(expected = ISO7816Exception.class)
+	public void testNext_lengthExceedsData() {
+		new TlvReader(HexString.toByteArray("800301")).next();
+	}
+
+	/**
+	 * Negative test: length field indicating a length exceeding int range.
+	 */
+	@Test(expected = ISO7816Exception.class)
+	public void testNext_lengthExceedsInt() {
+		new TlvReader(HexString.toByteArray("8084FFFFFFFF01")).next();
+	}
+
+	/**
+	 * Negative test: two byte tag encoding a tag number that fits into one
+	 * byte.
+	 */
+	@Test(expected = ISO7816Exception.class)
+	public void testNext_invalidTag() {
+		new TlvReader(HexString.toByteArray("1F1E0100")).next();
+	}
+
+	/**
+	 * Negative test: access to the current element without positioning the
+	 * reader.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testGetValue_notPositioned() {
+		new TlvReader(DATA).getValue();
+	}
+
+}
@@ -2,6 +2,7 @@ package de.persosim.simulator.tlv;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 
@@ -243,4 +244,45 @@ public class TlvTagTest {
 		assertEquals("Is valid DER encoding", tag.isValidDerEncoding(), true);
 	}
 
+	/**
+	 * Positive test case: valueOf returns shared instances equal to the tags
+	 * created by the constructors for all valid one and two byte tags.
+	 */
+	@Test
+	public void testValueOf_shared() {
+		for (int i = 0; i < 256; i++) {
+			if ((i & 0x1F) == 0x1F) {
+				continue;
+			}
+			TlvTag tag = TlvTag.valueOf((byte) i);
+			assertEquals(new TlvTag((byte) i), tag);
+			assertSame(tag, TlvTag.valueOf(new byte[] {(byte) i, (byte) 0x01}, 0, 2));
+		}
+		
+		TlvTag tag = TlvTag.valueOf((short) 0x7F4C);
+		assertEquals(new TlvTag(new byte[] {(byte) 0x7F, (byte) 0x4C}), tag);
+		assertSame(tag, TlvTag.valueOf(new byte[] {(byte) 0x7F, (byte) 0x4C}));
+		assertSame(TlvConstants.TAG_7F4C, tag);
+	}
+	
+	/**
+	 * Positive test case: valueOf creates new instances for three byte tags.
+	 */
+	@Test
+	public void testValueOf_3ByteTag() {
+		byte[] tagField = new byte[] {(byte) 0x9F, (byte) 0x81, (byte) 0x01, (byte) 0x00};
+		
+		TlvTag tag = TlvTag.valueOf(tagField, 0, tagField.length);
+		
+		assertArrayEquals(new byte[] {(byte) 0x9F, (byte) 0x81, (byte) 0x01}, tag.toByteArray());
+	}
+	
+	/**
+	 * Negative test case: valueOf rejects invalid tags like the constructor.
+	 */
+	@Test(expected = ISO7816Exception.class)
+	public void testValueOf_invalid2ByteTag() {
+		TlvTag.valueOf(new byte[] {(byte) 0x5F, (byte) 0x1E});
+	}
+
 }
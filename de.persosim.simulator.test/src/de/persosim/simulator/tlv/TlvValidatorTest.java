@@ -0,0 +1,104 @@
+package de.persosim.simulator.tlv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.persosim.simulator.utils.HexString;
+
+public class TlvValidatorTest {
+
+	/**
+	 * Positive test: nested structure with one, two and three byte tags and
+	 * short and long form lengths.
+	 */
+	@Test
+	public void testIsValidDerEncoding() {
+		byte[] data = HexString.toByteArray("7F4E0A" + "5F2900" + "7F4904" + "0600" + "8100" + "9F81010100");
+
+		assertTrue(TlvValidator.isValidBerEncoding(data));
+		assertTrue(TlvValidator.isValidDerEncoding(data));
+		assertTrue(TlvValidator.isValidBerEncoding(new byte[0]));
+	}
+
+	/**
+	 * Positive test: a length field not in minimal form is valid BER but
+	 * not valid DER.
+	 */
+	@Test
+	public void testIsValidDerEncoding_nonMinimalLength() {
+		assertTrue(TlvValidator.isValidBerEncoding(HexString.toByteArray("300480820000")));
+		assertFalse(TlvValidator.isValidDerEncoding(HexString.toByteArray("300480820000")));
+		assertFalse(TlvValidator.isValidDerEncoding(HexString.toByteArray("3003808100")));
+		assertTrue(TlvValidator.isValidDerEncoding(HexString.toByteArray("808180" + HexString.encode(new byte[128]))));
+	}
+
+	/**
+	 * Positive test: unsorted elements are valid BER but not valid DER.
+	 */
+	@Test
+	public void testIsValidDerEncoding_unsorted() {
+		byte[] data = HexString.toByteArray("87020101" + "97010F" + "8E0100");
+
+		assertTrue(TlvValidator.isValidBerEncoding(data));
+		assertFalse(TlvValidator.isValidDerEncoding(data));
+	}
+
+	/**
+	 * Negative test: malformed encodings.
+	 */
+	@Test
+	public void testIsValidBerEncoding_malformed() {
+		String[] malformed = new String[] {
+				"80", // missing length
+				"8002FF", // length exceeding data
+				"3003800200", // nested length exceeding parent
+				"8080", // indefinite length
+				"8085000000000100", // length field too long
+				"1F1E00", // two byte tag for tag number < 31
+				"1F8000", // leading zero tag bits
+				"1F81818100", // tag too long
+				"1F81", // unterminated tag
+		};
+
+		for (String curEncoding : malformed) {
+			assertFalse(curEncoding, TlvValidator.isValidBerEncoding(HexString.toByteArray(curEncoding)));
+		}
+	}
+
+	/**
+	 * Positive test: the nesting depth is limited.
+	 */
+	@Test
+	public void testIsValidEncoding_maxDepth() {
+		byte[] data = HexString.toByteArray("3004" + "3002" + "8000");
+
+		assertTrue(TlvValidator.isValidEncoding(data, 0, data.length, true, 3));
+		assertFalse(TlvValidator.isValidEncoding(data, 0, data.length, true, 2));
+		assertTrue(TlvValidator.isValidEncoding(data, 4, 6, true, 1));
+	}
+
+	/**
+	 * Positive test: results match those of the object representation.
+	 */
+	@Test
+	public void testIsValidEncoding_matchesObjects() {
+		String[] encodings = new String[] {
+				"3005" + "8001FF" + "8100",
+				"3005" + "8100" + "8001FF",
+				"308105" + "8001FF" + "8100",
+				"7F4E08" + "5F29820001FF" + "8100",
+		};
+
+		for (String curEncoding : encodings) {
+			byte[] data = HexString.toByteArray(curEncoding);
+			TlvDataObject tlvObject = TlvDataObjectFactory.createTLVDataObject(data);
+
+			assertEquals(curEncoding, tlvObject.isValidBerEncoding(), TlvValidator.isValidBerEncoding(data));
+			assertEquals(curEncoding, tlvObject.isValidDerEncoding(), TlvValidator.isValidDerEncoding(data));
+		}
+	}
+
+}
@@ -29,7 +29,7 @@ public class CommandApduImpl implements CommandApdu {
 	private boolean isExtendedLength;
 	private byte isoCase;
 	private int ne;
-	private short nc;
+	private int nc;
 	private TlvValue commandData;
 
 	private CommandApdu predecessor = null;
@@ -241,8 +241,8 @@ public class CommandApduImpl implements CommandApdu {
 			if (isExtendedLength) {
 				byte[] retVal = new byte[3];
 				retVal[0] = 0;
-				retVal[1] = (byte) ((nc & (short) 0xFF00) >> 8);
-				retVal[2] = (byte) (nc & (short) 0x00FF);
+				retVal[1] = (byte) ((nc & 0xFF00) >> 8);
+				retVal[2] = (byte) (nc & 0x00FF);
 				return retVal;
 			} else {
 				return new byte[]{(byte) nc};
@@ -270,8 +270,8 @@ public class CommandApduImpl implements CommandApdu {
 				} else {
 					byte[] retVal = new byte[3];
 					retVal[0] = 0;
-					retVal[1] = (byte) ((ne & (short) 0xFF00) >> 8);
-					retVal[2] = (byte) (ne & (short) 0x00FF);
+					retVal[1] = (byte) ((ne & 0xFF00) >> 8);
+					retVal[2] = (byte) (ne & 0x00FF);
 					return retVal;
 				}
 				
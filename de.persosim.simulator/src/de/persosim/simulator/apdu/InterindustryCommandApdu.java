@@ -37,7 +37,7 @@ public class InterindustryCommandApdu extends CommandApduImpl implements IsoSecu
 	}
 
 	public byte getChannel() {
-		return Iso7816Lib.getChannel(getHeader());
+		return Iso7816Lib.getChannel(header);
 	}
 
 	@Override
@@ -38,9 +38,9 @@ public abstract class AbstractFile extends AbstractCardObject implements
 
 	@Override
 	public ConstructedTlvDataObject getFileControlParameterDataObject() {
-		ConstructedTlvDataObject result = new ConstructedTlvDataObject(new TlvTag(Iso7816.TAG_FILE_CONTROL_PARAMETERS_TEMPLATE));
+		ConstructedTlvDataObject result = new ConstructedTlvDataObject(TlvTag.valueOf(Iso7816.TAG_FILE_CONTROL_PARAMETERS_TEMPLATE));
 		//TODO MBK implement FCP template according to ISO7816-4 Table 12
-		result.addTlvDataObject(new PrimitiveTlvDataObject(new TlvTag(
+		result.addTlvDataObject(new PrimitiveTlvDataObject(TlvTag.valueOf(
 				(byte) 0x83), Utils.toUnsignedByteArray(fileIdentifier
 				.getFileIdentifier())));
 		return result;
@@ -49,7 +49,7 @@ public abstract class AbstractFile extends AbstractCardObject implements
 	@Override
 	public ConstructedTlvDataObject getFileManagementDataObject() {
 		//IMPL return FMD template as described in ISO7816-4 Table 12
-		ConstructedTlvDataObject result = new ConstructedTlvDataObject(new TlvTag(Iso7816.TAG_FILE_MANAGEMENT_DATA_TEMPLATE));
+		ConstructedTlvDataObject result = new ConstructedTlvDataObject(TlvTag.valueOf(Iso7816.TAG_FILE_MANAGEMENT_DATA_TEMPLATE));
 		return result;
 	}
 
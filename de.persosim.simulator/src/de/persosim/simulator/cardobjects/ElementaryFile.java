@@ -85,11 +85,11 @@ public class ElementaryFile extends AbstractFile {
 		ConstructedTlvDataObject result = super
 				.getFileControlParameterDataObject();
 
-		result.addTlvDataObject(new PrimitiveTlvDataObject(new TlvTag(
+		result.addTlvDataObject(new PrimitiveTlvDataObject(TlvTag.valueOf(
 				(byte) 0x80), Utils.removeLeadingZeroBytes(Utils
 				.toUnsignedByteArray(content.length))));
 
-		result.addTlvDataObject(new PrimitiveTlvDataObject(new TlvTag(
+		result.addTlvDataObject(new PrimitiveTlvDataObject(TlvTag.valueOf(
 				(byte) 0x88), Utils
 				.toUnsignedByteArray((byte) shortFileIdentifier
 						.getShortFileIdentifier())));
@@ -3,6 +3,7 @@ package de.persosim.simulator.cardobjects;
 import java.io.FileNotFoundException;
 
 import de.persosim.simulator.platform.CommandProcessor;
+import de.persosim.simulator.platform.Iso7816;
 
 /**
  * This class is a container for a tree of CardObjects (e.g. DFs, EF,
@@ -36,6 +37,17 @@ public class ObjectStore {
 	 * {@link #getObject(CardObjectIdentifier, Scope)}.
 	 */
 	private CardFile cachedFile;
+	
+	/**
+	 * The selection state of the logical channels not addressed by the current
+	 * APDU, indexed by channel number. Null entries indicate the master file.
+	 */
+	private CardFile[] channelCurrentFiles = new CardFile[Iso7816.NUMBER_OF_LOGICAL_CHANNELS];
+	
+	/**
+	 * The logical channel {@link #currentFile} belongs to
+	 */
+	private byte currentChannel = Iso7816.CH_DEFAULT;
 
 	public ObjectStore(MasterFile masterFile){
 		this.masterFile = masterFile;
@@ -133,6 +145,44 @@ public class ObjectStore {
 		return (MasterFile) currentFile;
 	}
 
+	/**
+	 * Makes the selection state of the given logical channel the current one.
+	 * The selection state of the previously addressed channel is kept.
+	 * 
+	 * @param channel
+	 *            the logical channel addressed by the current APDU
+	 */
+	public void selectLogicalChannel(byte channel) {
+		if (channel == currentChannel) {
+			return;
+		}
+		
+		channelCurrentFiles[currentChannel] = currentFile;
+		currentFile = channelCurrentFiles[channel];
+		if (currentFile == null) {
+			currentFile = masterFile;
+		}
+		channelCurrentFiles[channel] = null;
+		cachedFile = null;
+		currentChannel = channel;
+	}
+	
+	/**
+	 * Resets the selection state of the given logical channel to the master
+	 * file.
+	 * 
+	 * @param channel
+	 *            the logical channel to reset
+	 */
+	public void resetLogicalChannel(byte channel) {
+		if (channel == currentChannel) {
+			currentFile = masterFile;
+			cachedFile = null;
+		} else {
+			channelCurrentFiles[channel] = null;
+		}
+	}
+	
 	/**
 	 * Search a CardObject starting from the currentFile
 	 * 
@@ -0,0 +1,135 @@
+package de.persosim.simulator.crypto;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+
+/**
+ * This class implements a block cipher in CBC mode without padding that is
+ * bound to a fixed key. The engines for encryption and decryption are
+ * initialized with the key once on construction, so the key schedule is only
+ * set up once. Only the IV needs to be provided for each operation, the CBC
+ * chaining is performed on top of the engines operating in ECB mode.
+ * <p/>
+ * All operations work in place and do not allocate any memory. Objects of
+ * this class are not thread-safe.
+ */
+public class CbcCipher {
+
+	private Cipher encryptionEngine;
+	private Cipher decryptionEngine;
+	private int blockSize;
+
+	/* reused buffers for the CBC chaining during decryption */
+	private byte[] chainingBlock;
+	private byte[] cipherTextBlock;
+
+	/*--------------------------------------------------------------------------------*/
+
+	/**
+	 * Constructor for a CBC cipher bound to the provided key.
+	 * @param cipherAlgorithm the name of the block cipher, e.g. AES or DESede
+	 * @param key the key to be used for all operations
+	 * @throws GeneralSecurityException if the engines can not be created or initialized
+	 */
+	public CbcCipher(String cipherAlgorithm, Key key) throws GeneralSecurityException {
+		if(cipherAlgorithm == null) {throw new NullPointerException("algorithm must not be null");}
+		if(key == null) {throw new NullPointerException("key must not be null");}
+
+		encryptionEngine = Cipher.getInstance(cipherAlgorithm + "/ECB/NoPadding", Crypto.getCryptoProvider());
+		encryptionEngine.init(Cipher.ENCRYPT_MODE, key);
+
+		decryptionEngine = Cipher.getInstance(cipherAlgorithm + "/ECB/NoPadding", Crypto.getCryptoProvider());
+		decryptionEngine.init(Cipher.DECRYPT_MODE, key);
+
+		blockSize = encryptionEngine.getBlockSize();
+		chainingBlock = new byte[blockSize];
+		cipherTextBlock = new byte[blockSize];
+	}
+
+	/*--------------------------------------------------------------------------------*/
+
+	/**
+	 * Encrypts a range of the provided buffer in place.
+	 * @param iv the initialization vector
+	 * @param buffer the buffer containing the plain text
+	 * @param offset the first offset of the plain text
+	 * @param length the length of the plain text, must be a multiple of the block size
+	 */
+	public void encrypt(byte[] iv, byte[] buffer, int offset, int length) {
+		checkParameters(iv, buffer, offset, length);
+
+		byte[] previousBlock = iv;
+		int previousOffset = 0;
+
+		for(int blockOffset = offset; blockOffset < offset + length; blockOffset += blockSize) {
+			for(int i = 0; i < blockSize; i++) {
+				buffer[blockOffset + i] ^= previousBlock[previousOffset + i];
+			}
+
+			processBlock(encryptionEngine, buffer, blockOffset, buffer, blockOffset);
+
+			previousBlock = buffer;
+			previousOffset = blockOffset;
+		}
+	}
+
+	/**
+	 * Decrypts a range of the provided buffer in place.
+	 * @param iv the initialization vector
+	 * @param buffer the buffer containing the cipher text
+	 * @param offset the first offset of the cipher text
+	 * @param length the length of the cipher text, must be a multiple of the block size
+	 */
+	public void decrypt(byte[] iv, byte[] buffer, int offset, int length) {
+		checkParameters(iv, buffer, offset, length);
+
+		System.arraycopy(iv, 0, chainingBlock, 0, blockSize);
+
+		for(int blockOffset = offset; blockOffset < offset + length; blockOffset += blockSize) {
+			System.arraycopy(buffer, blockOffset, cipherTextBlock, 0, blockSize);
+
+			processBlock(decryptionEngine, buffer, blockOffset, buffer, blockOffset);
+
+			for(int i = 0; i < blockSize; i++) {
+				buffer[blockOffset + i] ^= chainingBlock[i];
+			}
+
+			byte[] swap = chainingBlock;
+			chainingBlock = cipherTextBlock;
+			cipherTextBlock = swap;
+		}
+	}
+
+	/**
+	 * Encrypts a single block without any chaining, e.g. for deriving an IV.
+	 * @param input the buffer containing the plain text block
+	 * @param inputOffset the first offset of the plain text block
+	 * @param output the buffer to write the cipher text block to
+	 * @param outputOffset the first offset to be written
+	 */
+	public void encryptBlock(byte[] input, int inputOffset, byte[] output, int outputOffset) {
+		processBlock(encryptionEngine, input, inputOffset, output, outputOffset);
+	}
+
+	private void processBlock(Cipher engine, byte[] input, int inputOffset, byte[] output, int outputOffset) {
+		try {
+			engine.update(input, inputOffset, blockSize, output, outputOffset);
+		} catch (ShortBufferException e) {
+			throw new IllegalArgumentException("short buffer");
+		}
+	}
+
+	private void checkParameters(byte[] iv, byte[] buffer, int offset, int length) {
+		if(iv.length != blockSize) {throw new IllegalArgumentException("invalid iv");}
+		if((length % blockSize) != 0) {throw new IllegalArgumentException("illegal blocksize");}
+		if((offset < 0) || (length < 0) || (offset + length > buffer.length)) {throw new IllegalArgumentException("selected array area must not lie outside of data array");}
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+}
@@ -20,8 +20,14 @@ import de.persosim.simulator.Activator;
  */
 public class Crypto implements ServiceListener {
 
-	private static Crypto instance;
-	private static Provider providerObject = null;
+	private static volatile Provider providerObject = null;
+	
+	/*
+	 * Provider resolved from the OSGi service or the installed providers. It
+	 * is resolved once and only updated upon OSGi service events, null if not
+	 * yet resolved.
+	 */
+	private static volatile Provider resolvedProvider = null;
 	
 	/**
 	 * Singleton constructor, ensures that the class can not be instantiated from outside.
@@ -38,34 +44,65 @@ public class Crypto implements ServiceListener {
 		}
 	};
 	
+	/**
+	 * Lazily and thread-safely creates the singleton instance.
+	 */
+	private static class InstanceHolder {
+		private static final Crypto INSTANCE = new Crypto();
+	}
+	
 	/**
 	 * @return singleton instance
 	 */
 	public static Crypto getInstance() {
-		if (instance == null) {
-			instance = new Crypto();
-		}
-		return instance;
+		return InstanceHolder.INSTANCE;
 	}
 	
 	
-	private Cryptoprovider cryptoProviderService = null;
+	private volatile Cryptoprovider cryptoProviderService = null;
 	
 	public static void setCryptoProvider(Provider newProvider) {
 		providerObject = newProvider;
 	}
 
+	/**
+	 * Returns the provider to be used for all cryptographic operations. This
+	 * is the provider set explicitly, otherwise the provider of the OSGi
+	 * service or the most preferred installed provider. The latter is resolved
+	 * once and cached until the OSGi service changes.
+	 * 
+	 * @return the provider to be used
+	 */
 	public static Provider getCryptoProvider() {
-		if (providerObject != null) {
-			return providerObject;
+		Provider provider = providerObject;
+		if (provider != null) {
+			return provider;
 		}
 		
-		return getInstance().getCryptoProviderFromService();
+		provider = resolvedProvider;
+		if (provider != null) {
+			return provider;
+		}
+		
+		return resolveCryptoProvider();
+	}
+	
+	/**
+	 * Resolves the provider if not yet done. Resolution is synchronized with
+	 * {@link #serviceChanged(ServiceEvent)}, so a provider of a service that
+	 * already changed is never cached.
+	 */
+	private static synchronized Provider resolveCryptoProvider() {
+		if (resolvedProvider == null) {
+			resolvedProvider = getInstance().getCryptoProviderFromService();
+		}
+		return resolvedProvider;
 	}
 		
 	private Provider getCryptoProviderFromService() {
-	    if (cryptoProviderService != null) {
-			return cryptoProviderService.getCryptoProviderObject();
+		Cryptoprovider service = cryptoProviderService;
+	    if (service != null) {
+			return service.getCryptoProviderObject();
 		}
 
 		Provider[] providers = Security.getProviders();
@@ -77,10 +114,14 @@ public class Crypto implements ServiceListener {
 
 	@Override
 	public void serviceChanged(ServiceEvent event) {
-		if (event.getType() == ServiceEvent.REGISTERED){
-			this.cryptoProviderService = (Cryptoprovider) Activator.getContext().getService(event.getServiceReference());
-		} else if (event.getType() == ServiceEvent.UNREGISTERING){
-			this.cryptoProviderService = null;
+		synchronized (Crypto.class) {
+			if (event.getType() == ServiceEvent.REGISTERED){
+				this.cryptoProviderService = (Cryptoprovider) Activator.getContext().getService(event.getServiceReference());
+				resolvedProvider = null;
+			} else if (event.getType() == ServiceEvent.UNREGISTERING){
+				this.cryptoProviderService = null;
+				resolvedProvider = null;
+			}
 		}
 	}
 
@@ -7,6 +7,7 @@ import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
+import java.security.Provider;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.Arrays;
 
@@ -14,73 +15,136 @@ import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 import de.persosim.simulator.utils.HexString;
 
+/**
+ * This class provides symmetric cryptographic operations for a fixed cipher
+ * (name, mode and padding) and MAC algorithm.
+ * <p/>
+ * Instances are immutable and safe for concurrent use. The {@link Cipher} and
+ * {@link Mac} engines are initialized on every operation, so each thread uses
+ * engines of its own that are created on first use and reused afterwards.
+ * All engines of an instance are created by the provider that was current
+ * when the instance was created. Instances can therefore be shared, e.g. as
+ * cached by {@link CryptoSupportSelector}.
+ */
 public abstract class CryptoSupport {
 	
-	protected String cipherAlgorithmNameModePadding;
-	protected String macName;
+	protected final String cipherAlgorithmNameModePadding;
+	protected final String macName;
 	
-	protected Cipher cipher;
-	protected Mac mac;
+	private final Provider provider;
 	
-	/*--------------------------------------------------------------------------------*/
+	/* engines of the calling thread */
+	private final ThreadLocal<Cipher> cipher;
+	private final ThreadLocal<Mac> mac;
 	
-	public CryptoSupport() {
-		
-	}
+	/* IvParameterSpec copies the IV, so instances can be shared, indexed by block size */
+	private static final IvParameterSpec[] IVS_SET_TO_ALL_ZEROS = new IvParameterSpec[33];
 	
-	public CryptoSupport(String algorithmNameModePadding, String macName) {
-		if(algorithmNameModePadding == null) {throw new NullPointerException("algorithm must not be null");}
-		
-		this.setCipherAlgorithmNameModePadding(algorithmNameModePadding);
-		this.setMacName(macName);
+	static {
+		for(int i = 1; i < IVS_SET_TO_ALL_ZEROS.length; i++) {
+			IVS_SET_TO_ALL_ZEROS[i] = new IvParameterSpec(new byte[i]);
+		}
 	}
 	
 	/*--------------------------------------------------------------------------------*/
 	
-	public SecretKeySpec generateSecretKeySpec(byte[] key, String algorithm) {
-		return new SecretKeySpec(key, algorithm);
-	}
-	
-	protected abstract String getCipherAlgorithm();
-	
-	public String getCipherAlgorithmNameModePadding() {
-		return cipherAlgorithmNameModePadding;
-	}
-
-	public void setCipherAlgorithmNameModePadding(String cipherAlgorithmNameModePadding) {
+	public CryptoSupport(String algorithmNameModePadding, String macName) {
+		if(algorithmNameModePadding == null) {throw new NullPointerException("algorithm must not be null");}
+		
 		String cipherAlgorithmExpected, cipherAlgorithmReceived;
 		
 		cipherAlgorithmExpected = this.getCipherAlgorithm();
-		cipherAlgorithmReceived = CryptoUtil.getCipherNameAsString(cipherAlgorithmNameModePadding);
+		cipherAlgorithmReceived = CryptoUtil.getCipherNameAsString(algorithmNameModePadding);
 		
 		if(!cipherAlgorithmExpected.equals(cipherAlgorithmReceived)) {
 			throw new IllegalArgumentException("algorithm must be " + cipherAlgorithmExpected);
 		}
 		
-		this.cipherAlgorithmNameModePadding = cipherAlgorithmNameModePadding;
+		this.cipherAlgorithmNameModePadding = algorithmNameModePadding;
+		this.macName = macName;
+		this.provider = Crypto.getCryptoProvider();
 		
+		/* create the engines of the calling thread eagerly in order to detect unsupported algorithms */
 		try {
-			this.cipher = Cipher.getInstance(this.cipherAlgorithmNameModePadding, Crypto.getCryptoProvider());
+			this.cipher = new ThreadLocal<Cipher>() {
+				@Override
+				protected Cipher initialValue() {
+					try {
+						return createCipher();
+					} catch (GeneralSecurityException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			};
+			this.cipher.set(createCipher());
 		} catch (GeneralSecurityException e) {
 			logException(getClass(), e);
 			throw new IllegalArgumentException(e);
 		}
-	}
-
-	public void setMacName(String macName) {
-		this.macName = macName;
 		
 		try {
-			this.mac = Mac.getInstance(this.macName, Crypto.getCryptoProvider());
+			this.mac = new ThreadLocal<Mac>() {
+				@Override
+				protected Mac initialValue() {
+					try {
+						return createMac();
+					} catch (GeneralSecurityException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			};
+			this.mac.set(createMac());
 		} catch (GeneralSecurityException e) {
 			throw new IllegalArgumentException(e);
 		}
 	}
+	
+	/*--------------------------------------------------------------------------------*/
+	
+	public SecretKeySpec generateSecretKeySpec(byte[] key, String algorithm) {
+		return new SecretKeySpec(key, algorithm);
+	}
+	
+	protected abstract String getCipherAlgorithm();
+	
+	public String getCipherAlgorithmNameModePadding() {
+		return cipherAlgorithmNameModePadding;
+	}
+	
+	private Cipher createCipher() throws GeneralSecurityException {
+		return Cipher.getInstance(cipherAlgorithmNameModePadding, provider);
+	}
+	
+	private Mac createMac() throws GeneralSecurityException {
+		return Mac.getInstance(macName, provider);
+	}
+	
+	/**
+	 * @return the provider all engines of this instance are created by
+	 */
+	public Provider getProvider() {
+		return provider;
+	}
+	
+	/**
+	 * @return the cipher engine of the calling thread
+	 */
+	public Cipher getCipher() {
+		return this.cipher.get();
+	}
+	
+	/**
+	 * @return the MAC engine of the calling thread
+	 */
+	public Mac getMac() {
+		return this.mac.get();
+	}
 
 	public SecretKeySpec generateSecretKeySpecCipher(byte[] in) {
 		return this.generateSecretKeySpec(in, this.cipherAlgorithmNameModePadding);
@@ -103,7 +167,7 @@ public abstract class CryptoSupport {
 	}
 	
 	public byte[] encrypt(byte[] plainText, Key key, IvParameterSpec ivParams) {
-		return encrypt(this.cipher, plainText, key, ivParams);
+		return encrypt(this.getCipher(), plainText, key, ivParams);
 	}
 	
 	public static byte[] encrypt(Cipher cipher, byte[] plainText, Key key, IvParameterSpec ivParams) {
@@ -158,12 +222,65 @@ public abstract class CryptoSupport {
 		}
 	}
 	
+	/**
+	 * Encrypts a range of the provided buffer in place, i.e. the cipher text
+	 * replaces the plain text. The range must be a multiple of the block size
+	 * if the cipher does not perform any padding.
+	 * @param cipher the cipher to be used
+	 * @param buffer the buffer containing the plain text
+	 * @param offset the first offset of the plain text
+	 * @param length the length of the plain text
+	 * @param key the key to be used
+	 * @param aps the algorithm parameters to be used, may be null
+	 * @return the number of bytes written
+	 */
+	public static int encrypt(Cipher cipher, byte[] buffer, int offset, int length, Key key, AlgorithmParameterSpec aps) {
+		return processInPlace(cipher, Cipher.ENCRYPT_MODE, buffer, offset, length, key, aps);
+	}
+	
+	/**
+	 * Decrypts a range of the provided buffer in place, i.e. the plain text
+	 * replaces the cipher text.
+	 * @param cipher the cipher to be used
+	 * @param buffer the buffer containing the cipher text
+	 * @param offset the first offset of the cipher text
+	 * @param length the length of the cipher text
+	 * @param key the key to be used
+	 * @param aps the algorithm parameters to be used, may be null
+	 * @return the number of bytes written
+	 */
+	public static int decrypt(Cipher cipher, byte[] buffer, int offset, int length, Key key, AlgorithmParameterSpec aps) {
+		return processInPlace(cipher, Cipher.DECRYPT_MODE, buffer, offset, length, key, aps);
+	}
+	
+	private static int processInPlace(Cipher cipher, int mode, byte[] buffer, int offset, int length, Key key, AlgorithmParameterSpec aps) {
+		try {
+			if(aps != null) {
+				cipher.init(mode, key, aps);
+			} else{
+				cipher.init(mode, key);
+			}
+			
+			return cipher.doFinal(buffer, offset, length, buffer, offset);
+		} catch (InvalidKeyException e) {
+			throw new IllegalArgumentException("invalid key");
+		} catch (InvalidAlgorithmParameterException e) {
+			throw new IllegalArgumentException("invalid iv");
+		} catch (IllegalBlockSizeException e) {
+			throw new IllegalArgumentException("illegal blocksize");
+		} catch (BadPaddingException e) {
+			throw new IllegalArgumentException("bad padding");
+		} catch (ShortBufferException e) {
+			throw new IllegalArgumentException("short buffer");
+		}
+	}
+	
 	public static byte[] decryptWithIvZero(Cipher cipher, byte[] cipherText, Key key) {
 		return decrypt(cipher, cipherText, key, getIvSetToAllZeros(cipher.getBlockSize()));
 	}
 	
 	public byte[] decrypt(byte[] cipherText, Key key, AlgorithmParameterSpec aps) {
-		return decrypt(this.cipher, cipherText, key, aps);
+		return decrypt(this.getCipher(), cipherText, key, aps);
 	}
 	
 	public byte[] decryptWithIvZero(byte[] cipherText, Key key) {
@@ -171,7 +288,7 @@ public abstract class CryptoSupport {
 	}
 	
 	public byte[] macPlain(byte[] tokenPlain, Key key) {
-		return macPlain(this.mac, tokenPlain, key);
+		return macPlain(this.getMac(), tokenPlain, key);
 	}
 	
 	public static byte[] macPlain(Mac mac, byte[] tokenPlain, Key key) {
@@ -185,12 +302,19 @@ public abstract class CryptoSupport {
 	}
 	
 	public static byte[] mac(Mac mac, byte[] auxiliaryBlock, Cipher cipherEnc, byte[] macInput, Key macKey, int macLength) {
-		byte[] processedMacInput = new byte[auxiliaryBlock.length + macInput.length];
-		System.arraycopy(auxiliaryBlock, 0, processedMacInput, 0, auxiliaryBlock.length);
-		System.arraycopy(macInput, 0, processedMacInput, auxiliaryBlock.length, macInput.length);
 		log(CryptoSupport.class, "processed mac input is: " + HexString.encode(macInput));
 		
-		byte [] macResult = CryptoSupport.macPlain(mac, processedMacInput, macKey);
+		byte [] macResult;
+		try {
+			mac.init(macKey);
+			log(CryptoSupport.class, "used mac algorithm is: " + mac.getAlgorithm());
+			
+			/* auxiliary block and MAC input are processed without concatenating them */
+			mac.update(auxiliaryBlock);
+			macResult = mac.doFinal(macInput);
+		} catch (InvalidKeyException e) {
+			throw new IllegalArgumentException(e);
+		}
 		log(CryptoSupport.class, "raw mac is: " + HexString.encode(macResult));
 		
 		macResult = Arrays.copyOf(macResult, macLength);
@@ -200,7 +324,7 @@ public abstract class CryptoSupport {
 	}
 	
 	public byte[] computeInitialBlockFromAuxiliaryData(byte[] auxiliaryBlock, byte[] macInput, Key macKey) {
-		return computeInitialBlockFromAuxiliaryData(auxiliaryBlock, this.cipher, macInput, macKey);
+		return computeInitialBlockFromAuxiliaryData(auxiliaryBlock, this.getCipher(), macInput, macKey);
 	}
 	
 	public static byte[] computeInitialBlockFromAuxiliaryData(byte[] auxiliaryBlock, Cipher cipherEnc, byte[] macInput, Key macKey) {
@@ -221,21 +345,20 @@ public abstract class CryptoSupport {
 	}
 	
 	public int getBlockSize() {
-		return this.cipher.getBlockSize();
+		return this.getCipher().getBlockSize();
 	}
 	
 	public IvParameterSpec getIvSetToAllZeros() {
-		return getIvSetToAllZeros(this.cipher.getBlockSize());
+		return getIvSetToAllZeros(this.getCipher().getBlockSize());
 	}
 	
 	public static IvParameterSpec getIvSetToAllZeros(int blockSizeInBytes) {
-		byte[] ivMaterial;
-		
-		ivMaterial = new byte[blockSizeInBytes];
-		Arrays.fill(ivMaterial, (byte) 0x00);
+		if((blockSizeInBytes < 1) || (blockSizeInBytes >= IVS_SET_TO_ALL_ZEROS.length)) {
+			/* initialization vector for block cipher */
+			return new IvParameterSpec(new byte[blockSizeInBytes]);
+		}
 		
-		/* initialization vector for block cipher */
-		return new IvParameterSpec(ivMaterial);
+		return IVS_SET_TO_ALL_ZEROS[blockSizeInBytes];
 	}
 	
 	public String getCipherNameModePadding() {
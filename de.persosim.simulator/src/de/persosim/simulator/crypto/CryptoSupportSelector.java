@@ -1,11 +1,51 @@
 package de.persosim.simulator.crypto;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Factory for {@link CryptoSupport} instances. As {@link CryptoSupport} is
+ * immutable and safe for concurrent use, instances are cached by cipher
+ * (name, mode and padding) and MAC algorithm and shared between all callers,
+ * e.g. between the protocols of many simulated cards within one JVM. Cached
+ * instances are replaced once the provider returned by
+ * {@link Crypto#getCryptoProvider()} changes.
+ */
 public class CryptoSupportSelector {
+	
+	private static final ConcurrentMap<String, CryptoSupport> CACHE = new ConcurrentHashMap<>();
+	
 	private CryptoSupportSelector() {
 		//should not be instantiated
 	}
 	
+	/**
+	 * Returns the shared {@link CryptoSupport} for the provided algorithms.
+	 * @param cipherName the cipher in the form name/mode/padding
+	 * @param macName the MAC algorithm
+	 * @return the shared instance using the current provider
+	 */
 	public static CryptoSupport getCryptoSupport(String cipherName, String macName) {
+		String key = cipherName + "|" + macName;
+		
+		CryptoSupport cryptoSupport = CACHE.get(key);
+		if(cryptoSupport == null) {
+			cryptoSupport = createCryptoSupport(cipherName, macName);
+			CryptoSupport previous = CACHE.putIfAbsent(key, cryptoSupport);
+			if(previous != null) {
+				cryptoSupport = previous;
+			}
+		} else if(cryptoSupport.getProvider() != Crypto.getCryptoProvider()) {
+			/* engines of the cached instance were created by a provider no longer current */
+			CryptoSupport outdated = cryptoSupport;
+			cryptoSupport = createCryptoSupport(cipherName, macName);
+			CACHE.replace(key, outdated, cryptoSupport);
+		}
+		
+		return cryptoSupport;
+	}
+	
+	private static CryptoSupport createCryptoSupport(String cipherName, String macName) {
 		switch (CryptoUtil.getCipherNameAsString(cipherName)) {
 		case "AES":
 			return new CryptoSupportAes(cipherName, macName);
@@ -1,6 +1,7 @@
 package de.persosim.simulator.crypto;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyFactory;
@@ -375,13 +376,13 @@ public class CryptoUtil {
 		
 		TlvDataObjectContainer integers = new TlvDataObjectContainer();
 
-		PrimitiveTlvDataObject integerRObject = new PrimitiveTlvDataObject(new TlvTag(Asn1.INTEGER), getPadded(r));
-		PrimitiveTlvDataObject integerSObject = new PrimitiveTlvDataObject(new TlvTag(Asn1.INTEGER), getPadded(s));
+		PrimitiveTlvDataObject integerRObject = new PrimitiveTlvDataObject(TlvTag.valueOf(Asn1.INTEGER), getPadded(r));
+		PrimitiveTlvDataObject integerSObject = new PrimitiveTlvDataObject(TlvTag.valueOf(Asn1.INTEGER), getPadded(s));
 		
 		integers.addTlvDataObject(integerRObject);
 		integers.addTlvDataObject(integerSObject);
 		
-		ConstructedTlvDataObject signatureObject = new ConstructedTlvDataObject(new TlvTag(Asn1.SEQUENCE), integers);
+		ConstructedTlvDataObject signatureObject = new ConstructedTlvDataObject(TlvTag.valueOf(Asn1.SEQUENCE), integers);
 		return signatureObject;
 	}
 
@@ -460,22 +461,132 @@ public class CryptoUtil {
 	 * @return the padded data
 	 */
 	public static byte[] padData(byte[] unpaddedData, int blockSize) {
+		byte[] paddedData = new byte[getPaddedLength(unpaddedData.length, blockSize)];
+		System.arraycopy(unpaddedData, 0, paddedData, 0, unpaddedData.length);
+		padData(paddedData, 0, unpaddedData.length, blockSize);
+		return paddedData;
+	}
+	
+	/**
+	 * This method returns the length of data once padded according to
+	 * ISO/IEC 9797-1 padding method 2.
+	 * @param length the length of the unpadded data
+	 * @param blockSize the block size
+	 * @return the length of the padded data
+	 */
+	public static int getPaddedLength(int length, int blockSize) {
+		if(blockSize < 1) {throw new IllegalArgumentException("block size must be > 0");}
 		
 		/* +1 for mandatory padding byte 0x80 */
-		int overlap = (unpaddedData.length + 1) % blockSize;
+		return (length / blockSize + 1) * blockSize;
+	}
+	
+	/**
+	 * This method padds data in place according to ISO/IEC 9797-1 padding
+	 * method 2, i.e. the padding is written to the buffer right behind the
+	 * data. The buffer must provide enough space for the padding.
+	 * @param buffer the buffer containing the data
+	 * @param offset the first offset of the data
+	 * @param length the length of the data
+	 * @param blockSize the block size
+	 * @return the length of the padded data
+	 */
+	public static int padData(byte[] buffer, int offset, int length, int blockSize) {
+		int paddedLength = getPaddedLength(length, blockSize);
+		if((offset < 0) || (length < 0) || (offset + paddedLength > buffer.length)) {throw new IllegalArgumentException("buffer is too short for padding");}
+		
+		buffer[offset + length] = (byte) 0x80;
+		Arrays.fill(buffer, offset + length + 1, offset + paddedLength, (byte) 0x00);
+		
+		return paddedLength;
+	}
+	
+	/**
+	 * This method determines the length of data padded according to ISO/IEC
+	 * 9797-1 padding method 2 once the padding has been removed. The buffer is
+	 * not modified, so the padding can be removed in place by just using the
+	 * returned length.
+	 * <p/>
+	 * The padding is expected within the last block. The last block is always
+	 * completely examined without branching on its content, 8 bytes at a time
+	 * where possible, so the time taken does not reveal where or why the
+	 * padding is invalid.
+	 * 
+	 * @param buffer the buffer containing the padded data
+	 * @param offset the first offset of the padded data
+	 * @param length the length of the padded data
+	 * @param blockSize the block size
+	 * @return the length of the unpadded data
+	 * @throws IllegalArgumentException if the padding is invalid
+	 */
+	public static int unpadData(byte[] buffer, int offset, int length, int blockSize) {
+		if(buffer == null) {throw new NullPointerException("padded data must not be null");}
+		if(blockSize < 1) {throw new IllegalArgumentException("block size must be > 0");}
+		if(length < 1) {throw new IllegalArgumentException("padded data is too short");}
+		if((offset < 0) || (offset + length > buffer.length)) {throw new IllegalArgumentException("selected array area must not lie outside of data array");}
+		
+		int end = offset + length;
+		int start = end - Math.min(blockSize, length);
 		
-		int nrOfZeros = blockSize - overlap;
+		/* all masks are either 0 or -1 */
+		int found = 0;
+		int invalid = 0;
+		int paddingOffset = 0;
 		
-		if (overlap == 0) {
-			//input plus padding byte already matches BlockSize
-			nrOfZeros = 0;
+		int current = end;
+		
+		if(current - start >= 8) {
+			ByteBuffer words = ByteBuffer.wrap(buffer);
+			
+			while(current - start >= 8) {
+				current -= 8;
+				long word = words.getLong(current);
+				
+				/* the padding indicator is the last non-zero byte of the word */
+				int noOfTrailingZeroBytes = Long.numberOfTrailingZeros(word) >>> 3;
+				int lastNonZeroByte = (int) (word >>> ((noOfTrailingZeroBytes & 7) << 3)) & 0xFF;
+				int isNonZero = (int) ((word | -word) >> 63);
+				
+				int isRelevant = ~found & isNonZero;
+				int isIndicator = isEqual(lastNonZeroByte, 0x80);
+				
+				invalid |= isRelevant & ~isIndicator;
+				paddingOffset = select(isRelevant & isIndicator, current + 7 - noOfTrailingZeroBytes, paddingOffset);
+				found |= isRelevant;
+			}
 		}
 		
-		byte[] paddingZeros = new byte[nrOfZeros];
-		Arrays.fill(paddingZeros, (byte) 0x00);
+		while(current > start) {
+			current--;
+			int currentByte = buffer[current] & 0xFF;
+			
+			int isRelevant = ~found & ~isEqual(currentByte, 0x00);
+			int isIndicator = isEqual(currentByte, 0x80);
+			
+			invalid |= isRelevant & ~isIndicator;
+			paddingOffset = select(isRelevant & isIndicator, current, paddingOffset);
+			found |= isRelevant;
+		}
 		
-		return Utils.concatByteArrays(unpaddedData, new byte[]{(byte) 0x80}, paddingZeros);
+		if((invalid | ~found) != 0) {
+			throw new IllegalArgumentException("invalid padding");
+		}
 		
+		return paddingOffset - offset;
+	}
+	
+	/**
+	 * @return -1 if both bytes are equal, 0 otherwise
+	 */
+	private static int isEqual(int byte1, int byte2) {
+		return ((byte1 ^ byte2) - 1) >> 31;
+	}
+	
+	/**
+	 * @return value1 if mask is -1, value2 if mask is 0
+	 */
+	private static int select(int mask, int value1, int value2) {
+		return (value1 & mask) | (value2 & ~mask);
 	}
 	
 }
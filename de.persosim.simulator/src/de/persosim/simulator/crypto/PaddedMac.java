@@ -0,0 +1,126 @@
+package de.persosim.simulator.crypto;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+
+/**
+ * This class computes a MAC over a sequence of buffer slices, e.g. the data
+ * objects of a secure messaging APDU, without concatenating them first.
+ * <p/>
+ * The MAC input is structured in segments, each of them is padded according
+ * to ISO/IEC 9797-1 padding method 2, i.e. by appending 0x80 followed by 0x00
+ * bytes up to the next multiple of the block size. Padding is applied
+ * implicitly by {@link #pad()} and {@link #doFinal(byte[], int)}, empty
+ * segments are not padded. This matches ISO 7816-4 secure messaging, where
+ * the header and the data objects are padded separately and absent data
+ * objects do not contribute a padding block.
+ * <p/>
+ * Instances can be reused by calling {@link #init(Mac, int)} again. Objects
+ * of this class are not thread-safe.
+ */
+public class PaddedMac {
+
+	public static final int MAX_BLOCK_SIZE = 32;
+
+	private static final byte[] PADDING = new byte[MAX_BLOCK_SIZE];
+
+	static {
+		PADDING[0] = (byte) 0x80;
+	}
+
+	private Mac mac;
+	private int blockSize;
+
+	/* number of bytes of the current segment within the last incomplete block */
+	private int position;
+	/* true iff data has been added since the last padding */
+	private boolean pending;
+
+	/*--------------------------------------------------------------------------------*/
+
+	/**
+	 * Starts a new MAC computation. The MAC must already be initialized with
+	 * the key, it may already have processed complete blocks, e.g. auxiliary
+	 * data, that are not part of the padded MAC input.
+	 * @param mac the initialized MAC
+	 * @param blockSize the block size used for padding
+	 * @return this object
+	 */
+	public PaddedMac init(Mac mac, int blockSize) {
+		if(mac == null) {throw new NullPointerException("mac must not be null");}
+		if((blockSize < 1) || (blockSize > MAX_BLOCK_SIZE)) {throw new IllegalArgumentException("block size must be in the range from 1 to " + MAX_BLOCK_SIZE);}
+
+		this.mac = mac;
+		this.blockSize = blockSize;
+		this.position = 0;
+		this.pending = false;
+		return this;
+	}
+
+	/**
+	 * Adds a single byte to the current segment.
+	 * @param input the byte to be added
+	 * @return this object
+	 */
+	public PaddedMac update(byte input) {
+		mac.update(input);
+		position = (position + 1) % blockSize;
+		pending = true;
+		return this;
+	}
+
+	/**
+	 * Adds a slice of the provided buffer to the current segment.
+	 * @param buffer the buffer containing the input
+	 * @param offset the first offset of the input
+	 * @param length the length of the input
+	 * @return this object
+	 */
+	public PaddedMac update(byte[] buffer, int offset, int length) {
+		if(length > 0) {
+			mac.update(buffer, offset, length);
+			position = (position + length) % blockSize;
+			pending = true;
+		}
+		return this;
+	}
+
+	/**
+	 * Terminates the current segment by padding it to the block size. Does
+	 * nothing if no data has been added since the last padding.
+	 * @return this object
+	 */
+	public PaddedMac pad() {
+		if(pending) {
+			mac.update(PADDING, 0, blockSize - position);
+			position = 0;
+			pending = false;
+		}
+		return this;
+	}
+
+	/**
+	 * Pads the current segment and completes the MAC computation.
+	 * @param output the buffer to write the MAC to
+	 * @param offset the first offset to be written
+	 * @return the number of bytes written
+	 */
+	public int doFinal(byte[] output, int offset) {
+		pad();
+
+		try {
+			mac.doFinal(output, offset);
+			return mac.getMacLength();
+		} catch (ShortBufferException e) {
+			throw new IllegalArgumentException("short buffer");
+		}
+	}
+
+	/**
+	 * @return the length of the MAC in bytes
+	 */
+	public int getMacLength() {
+		return mac.getMacLength();
+	}
+
+}
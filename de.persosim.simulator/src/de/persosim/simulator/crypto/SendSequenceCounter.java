@@ -1,108 +1,150 @@
 package de.persosim.simulator.crypto;
 
 import java.math.BigInteger;
-import java.util.Arrays;
-
-import de.persosim.simulator.utils.Utils;
 
 /**
+ * This class implements a send sequence counter of up to
+ * {@link #MAX_BYTE_LENGTH} bytes, i.e. large enough for the block size of
+ * all supported block ciphers. The value is held in two primitive longs,
+ * so incrementing and encoding do not allocate any memory. When incremented
+ * beyond its max value the counter wraps around to 0.
+ *
  * @author slutters
  *
  */
 public class SendSequenceCounter {
-	/* the current value */
-	protected BigInteger value;
-	
+
+	public static final int MAX_BYTE_LENGTH = 16;
+
+	/* the current value, most and least significant 64 bits */
+	protected long valueHigh;
+	protected long valueLow;
+
 	/* current value must always fit into maxByteLength */
 	protected int maxByteLength;
-	
-	/* current value must always be <= maxValue */
-	private BigInteger maxValue;
-	
+
+	/* current value must always be <= maxValue, most and least significant 64 bits */
+	private long maxValueHigh;
+	private long maxValueLow;
+
 	/*--------------------------------------------------------------------------------*/
-	
+
 	public SendSequenceCounter(BigInteger value, BigInteger maxValue) {
-		this.setValue(value);
 		this.setMaxValue(maxValue);
+		this.setValue(value);
 	}
-	
+
 	public SendSequenceCounter(BigInteger maxValue) {
 		this(BigInteger.ZERO, maxValue);
 	}
-	
+
 	public SendSequenceCounter(BigInteger value, int maxByteLength) {
 		this.setMaxByteLength(maxByteLength);
 		this.setValue(value);
 	}
-	
+
 	public SendSequenceCounter(int maxByteLength) {
 		this(BigInteger.ZERO, maxByteLength);
 	}
-	
+
 	/*--------------------------------------------------------------------------------*/
-	
+
 	private void setMaxValue(BigInteger maxValue) {
 		if(maxValue.compareTo(BigInteger.ZERO) <= 0) {throw new IllegalArgumentException("max value must not be smaller than 1");}
-		
-		this.maxValue = maxValue;
+		if(maxValue.bitLength() > MAX_BYTE_LENGTH * 8) {throw new IllegalArgumentException("max value must not exceed " + MAX_BYTE_LENGTH + " bytes");}
+
+		this.maxValueHigh = maxValue.shiftRight(64).longValue();
+		this.maxValueLow = maxValue.longValue();
 		this.maxByteLength = (int) (Math.ceil(maxValue.bitLength()/8.0));
 	}
-	
+
 	public void increment() {
-		this.value = this.value.add(BigInteger.ONE);
-		
-		if(this.value.compareTo(this.maxValue) > 0) {
+		valueLow++;
+		if(valueLow == 0) {
+			valueHigh++;
+		}
+
+		if(compareUnsigned(valueHigh, valueLow, maxValueHigh, maxValueLow) > 0) {
 			this.reset();
 		}
 	}
-	
+
+	/**
+	 * Compares two unsigned 128 bit values given as most and least significant 64 bits.
+	 */
+	private static int compareUnsigned(long high1, long low1, long high2, long low2) {
+		if(high1 != high2) {
+			return ((high1 + Long.MIN_VALUE) < (high2 + Long.MIN_VALUE)) ? -1 : 1;
+		}
+		if(low1 != low2) {
+			return ((low1 + Long.MIN_VALUE) < (low2 + Long.MIN_VALUE)) ? -1 : 1;
+		}
+		return 0;
+	}
+
 	@Override
 	public String toString() {
-		return this.value.toString();
+		return this.getValue().toString();
 	}
-	
+
 	private int getCurrentBitLength() {
 		int bl;
-		
-		bl = this.value.bitLength();
-		
+
+		if(valueHigh != 0) {
+			bl = 128 - Long.numberOfLeadingZeros(valueHigh);
+		} else{
+			bl = 64 - Long.numberOfLeadingZeros(valueLow);
+		}
+
 		if(bl <= 0) {
-			return 1;	
+			return 1;
 		} else{
 			return bl;
 		}
 	}
-	
+
 	public int getCurrentByteLength() {
 		return (int) Math.ceil(this.getCurrentBitLength()/8.0);
 	}
-	
+
 	public void reset() {
-		this.value = BigInteger.ZERO;
+		this.valueHigh = 0;
+		this.valueLow = 0;
 	}
-	
+
 	public byte[] toByteArray() {
-		byte[] tmp, out;
-		
-		tmp = Utils.toUnsignedByteArray(this.value);
-		
-		if(tmp.length < this.maxByteLength) {
-			/* we will have to pad the output */
-			out = new byte[this.maxByteLength];
-			Arrays.fill(out, (byte) 0x00);
-			System.arraycopy(tmp, 0, out, out.length - tmp.length, tmp.length);
-		} else{
-			out = tmp;
-		}
-		
+		byte[] out = new byte[this.maxByteLength];
+		writeTo(out, 0);
 		return out;
 	}
 
+	/**
+	 * Writes the big-endian encoding of the current value padded to the max
+	 * byte length into the provided buffer. The buffer must provide at least
+	 * {@link #getMaxByteLength()} bytes starting at the provided offset.
+	 * @param buffer the buffer to write to
+	 * @param offset the first offset to be written
+	 * @return the first offset behind the bytes written
+	 */
+	public int writeTo(byte[] buffer, int offset) {
+		int endOffset = offset + this.maxByteLength;
+
+		for(int i = 1; i <= this.maxByteLength; i++) {
+			if(i <= 8) {
+				buffer[endOffset - i] = (byte) (valueLow >>> ((i - 1) * 8));
+			} else{
+				buffer[endOffset - i] = (byte) (valueHigh >>> ((i - 9) * 8));
+			}
+		}
+
+		return endOffset;
+	}
+
 	/**
 	 * @return the ssc
 	 */
 	public BigInteger getValue() {
-		return value;
+		return new BigInteger(1, toByteArray());
 	}
 
 	/**
@@ -110,11 +152,14 @@ public class SendSequenceCounter {
 	 */
 	public void setValue(BigInteger ssc) {
 		if(ssc.compareTo(BigInteger.ZERO) < 0) {throw new IllegalArgumentException("ssc must not be smaller than 0");}
-		if(ssc.compareTo(this.maxValue) > 0) {throw new IllegalArgumentException("ssc must not be larger than max value");}
-		
-		this.value = ssc;
+		if((ssc.bitLength() > MAX_BYTE_LENGTH * 8) || (compareUnsigned(ssc.shiftRight(64).longValue(), ssc.longValue(), maxValueHigh, maxValueLow) > 0)) {
+			throw new IllegalArgumentException("ssc must not be larger than max value");
+		}
+
+		this.valueHigh = ssc.shiftRight(64).longValue();
+		this.valueLow = ssc.longValue();
 	}
-	
+
 	public void setValue(byte[] newValue) {
 		this.setValue(new BigInteger(1, newValue));
 	}
@@ -131,8 +176,16 @@ public class SendSequenceCounter {
 	 */
 	public void setMaxByteLength(int maxByteLength) {
 		if(maxByteLength < 1) {throw new IllegalArgumentException("max byte length must not be smaller than 1");}
-		
+		if(maxByteLength > MAX_BYTE_LENGTH) {throw new IllegalArgumentException("max byte length must not be larger than " + MAX_BYTE_LENGTH);}
+
 		this.maxByteLength = maxByteLength;
-		this.maxValue = ((new BigInteger((new Integer(2)).toString())).pow(maxByteLength * 8)).subtract(BigInteger.ONE);
+
+		if(maxByteLength > 8) {
+			this.maxValueHigh = -1L >>> ((MAX_BYTE_LENGTH - maxByteLength) * 8);
+			this.maxValueLow = -1L;
+		} else{
+			this.maxValueHigh = 0;
+			this.maxValueLow = -1L >>> ((8 - maxByteLength) * 8);
+		}
 	}
 }
@@ -0,0 +1,179 @@
+package de.persosim.simulator.crypto;
+
+import static de.persosim.simulator.utils.PersoSimLogger.WARN;
+import static de.persosim.simulator.utils.PersoSimLogger.log;
+
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import de.persosim.simulator.utils.HexString;
+import de.persosim.simulator.utils.Utils;
+
+/**
+ * This class provides the session keys derived during PACE and CA and the
+ * randomness for the ephemeral values these protocols generate.
+ * <p/>
+ * By default (production mode) randomness is taken from the caller's
+ * {@link SecureRandom} and session keys are derived anew for every handshake,
+ * nothing is cached.
+ * <p/>
+ * <b>Test mode must never be used outside of test environments.</b> When
+ * enabled by {@link #enableTestMode(byte[])} the ephemeral values generated
+ * by the card, i.e. the PACE nonce s, the PICC's PACE mapping key pair and the
+ * CA nonce r_PICC, are derived deterministically from the provided seed and
+ * the derived session key sets are cached by shared secret and nonce. A
+ * terminal test suite repeating identical handshakes with deterministic keys
+ * on its own side thus skips key derivation. Only the derived keys are
+ * cached, cipher and MAC are still initialized with them for every session.
+ */
+public class SessionKeyCache {
+
+	public static final String PURPOSE_PACE_NONCE = "PACE nonce s";
+	public static final String PURPOSE_PACE_MAPPING = "PACE mapping key pair";
+	public static final String PURPOSE_CA_NONCE = "CA nonce r_PICC";
+
+	/* the cache is cleared if it grows beyond this number of entries */
+	public static final int MAX_ENTRIES = 256;
+
+	private static final ConcurrentMap<String, SessionKeys> CACHE = new ConcurrentHashMap<>();
+
+	private static volatile byte[] testModeSeed = null;
+
+	/*--------------------------------------------------------------------------------*/
+
+	private SessionKeyCache() {
+		//should not be instantiated
+	}
+
+	/*--------------------------------------------------------------------------------*/
+
+	/**
+	 * Pair of session keys for encryption and MAC computation.
+	 */
+	public static class SessionKeys {
+		private final SecretKeySpec keyEnc;
+		private final SecretKeySpec keyMac;
+
+		public SessionKeys(SecretKeySpec keyEnc, SecretKeySpec keyMac) {
+			this.keyEnc = keyEnc;
+			this.keyMac = keyMac;
+		}
+
+		public SecretKeySpec getKeyEnc() {
+			return keyEnc;
+		}
+
+		public SecretKeySpec getKeyMac() {
+			return keyMac;
+		}
+	}
+
+	/*--------------------------------------------------------------------------------*/
+
+	/**
+	 * Enables test mode. From now on all ephemeral values generated by the
+	 * card are deterministic and session keys are cached.
+	 * @param seed the seed the ephemeral values are derived from
+	 */
+	public static synchronized void enableTestMode(byte[] seed) {
+		if(seed == null) {throw new NullPointerException("seed must not be null");}
+		if(seed.length == 0) {throw new IllegalArgumentException("seed must not be empty");}
+
+		CACHE.clear();
+		testModeSeed = seed.clone();
+
+		log(SessionKeyCache.class, "test mode enabled, ephemeral keys are deterministic and session keys are cached - do not use in production", WARN);
+	}
+
+	/**
+	 * Disables test mode and discards all cached session keys.
+	 */
+	public static synchronized void disableTestMode() {
+		testModeSeed = null;
+		CACHE.clear();
+	}
+
+	/**
+	 * @return true iff test mode is enabled
+	 */
+	public static boolean isTestModeEnabled() {
+		return testModeSeed != null;
+	}
+
+	/**
+	 * @return the number of cached session key sets
+	 */
+	public static int size() {
+		return CACHE.size();
+	}
+
+	/*--------------------------------------------------------------------------------*/
+
+	/**
+	 * Returns the randomness to be used for an ephemeral value.
+	 * @param secureRandom the randomness to be used in production mode
+	 * @param purpose the ephemeral value to be generated, see PURPOSE_* constants
+	 * @return the provided randomness in production mode, a new deterministic
+	 *         generator seeded with the test mode seed and the purpose in test mode
+	 */
+	public static SecureRandom getSecureRandom(SecureRandom secureRandom, String purpose) {
+		byte[] seed = testModeSeed;
+
+		if(seed == null) {
+			return secureRandom;
+		}
+
+		try {
+			SecureRandom deterministicRandom = SecureRandom.getInstance("SHA1PRNG");
+			/* seeding before first use replaces the generator's own seed */
+			deterministicRandom.setSeed(Utils.concatByteArrays(seed, purpose.getBytes(StandardCharsets.US_ASCII)));
+			return deterministicRandom;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("deterministic random number generator is not available", e);
+		}
+	}
+
+	/**
+	 * Derives the session keys for encryption and MAC computation according
+	 * to TR-03110 A.2.3, in test mode previously derived keys are reused.
+	 * @param cryptoSupport the crypto support the keys are generated for
+	 * @param keyLengthInBytes the key length
+	 * @param sharedSecret the common secret shared by PICC and PCD
+	 * @param nonce optional nonce, may be null
+	 * @return the session keys
+	 */
+	public static SessionKeys deriveSessionKeys(CryptoSupport cryptoSupport, int keyLengthInBytes, byte[] sharedSecret, byte[] nonce) {
+		if(!isTestModeEnabled()) {
+			return createSessionKeys(cryptoSupport, keyLengthInBytes, sharedSecret, nonce);
+		}
+
+		String key = cryptoSupport.getCipherNameModePadding() + "|" + cryptoSupport.getMacName() + "|" + keyLengthInBytes + "|" + HexString.encode(sharedSecret) + "|" + ((nonce == null) ? "" : HexString.encode(nonce));
+
+		SessionKeys sessionKeys = CACHE.get(key);
+		if(sessionKeys == null) {
+			sessionKeys = createSessionKeys(cryptoSupport, keyLengthInBytes, sharedSecret, nonce);
+
+			if(CACHE.size() >= MAX_ENTRIES) {
+				CACHE.clear();
+			}
+			CACHE.put(key, sessionKeys);
+		}
+
+		return sessionKeys;
+	}
+
+	private static SessionKeys createSessionKeys(CryptoSupport cryptoSupport, int keyLengthInBytes, byte[] sharedSecret, byte[] nonce) {
+		KeyDerivationFunction kdf = new KeyDerivationFunction(keyLengthInBytes);
+
+		SecretKeySpec keyEnc = cryptoSupport.generateSecretKeySpecCipher(kdf.deriveENC(sharedSecret, nonce));
+		SecretKeySpec keyMac = cryptoSupport.generateSecretKeySpecMac(kdf.deriveMAC(sharedSecret, nonce));
+
+		return new SessionKeys(keyEnc, keyMac);
+	}
+
+}
@@ -153,8 +153,8 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 			mrzPlainBytes = new byte[0];
 		}
 		
-		ConstructedTlvDataObject ePassDg1 = new ConstructedTlvDataObject(new TlvTag((byte) 0x61));
-		PrimitiveTlvDataObject ePassDg1Sub = new PrimitiveTlvDataObject(new TlvTag(new byte[]{(byte) 0x5F, (byte) 0x1F}), mrzPlainBytes);
+		ConstructedTlvDataObject ePassDg1 = new ConstructedTlvDataObject(TlvTag.valueOf((byte) 0x61));
+		PrimitiveTlvDataObject ePassDg1Sub = new PrimitiveTlvDataObject(TlvTag.valueOf((short) 0x5F1F), mrzPlainBytes);
 		ePassDg1.addTlvDataObject(ePassDg1Sub);
 		
 		// ePass DG1
@@ -228,7 +228,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 			utf8StringPlainBytes = new byte[0];
 		}
 		
-		PrimitiveTlvDataObject utf8StringTlv = new PrimitiveTlvDataObject(new TlvTag(UNIVERSAL_UTF8String), utf8StringPlainBytes);
+		PrimitiveTlvDataObject utf8StringTlv = new PrimitiveTlvDataObject(TlvTag.valueOf(UNIVERSAL_UTF8String), utf8StringPlainBytes);
 		utf8DgTlv.addTlvDataObject(utf8StringTlv);
 		
 		return utf8DgTlv;
@@ -252,7 +252,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 			datePlainBytes = new byte[0];
 		}
 		
-		PrimitiveTlvDataObject dateTlv = new PrimitiveTlvDataObject(new TlvTag(UNIVERSAL_NUMERIC_STRING), datePlainBytes);
+		PrimitiveTlvDataObject dateTlv = new PrimitiveTlvDataObject(TlvTag.valueOf(UNIVERSAL_NUMERIC_STRING), datePlainBytes);
 		dateDgTlv.addTlvDataObject(dateTlv);
 		
 		return dateDgTlv;
@@ -276,7 +276,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 			icaoStringPlainBytes = new byte[0];
 		}
 		
-		PrimitiveTlvDataObject icaoStringTlv = new PrimitiveTlvDataObject(new TlvTag(UNIVERSAL_PRINTABLE_STRING), icaoStringPlainBytes);
+		PrimitiveTlvDataObject icaoStringTlv = new PrimitiveTlvDataObject(TlvTag.valueOf(UNIVERSAL_PRINTABLE_STRING), icaoStringPlainBytes);
 		icaoStringDgTlv.addTlvDataObject(icaoStringTlv);
 		
 		return icaoStringDgTlv;
@@ -285,7 +285,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 	@Override
 	protected void addEidDg1(DedicatedFile eIdAppl) {
 		initPersonalizationDataContainer();
-		ConstructedTlvDataObject dg1Tlv = getIcaoStringDgTlv(new TlvTag((byte) 0x61), persoDataContainer.getDg1PlainData());
+		ConstructedTlvDataObject dg1Tlv = getIcaoStringDgTlv(TlvTag.valueOf((byte) 0x61), persoDataContainer.getDg1PlainData());
 		
 		CardFile eidDg1 = new ElementaryFile(new FileIdentifier(0x0101),
 				new ShortFileIdentifier(0x01),
@@ -314,7 +314,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 			issuingStatePlainBytes = new byte[0];
 		}
 		
-		PrimitiveTlvDataObject issuingStateTlv = new PrimitiveTlvDataObject(new TlvTag(UNIVERSAL_PRINTABLE_STRING), issuingStatePlainBytes);
+		PrimitiveTlvDataObject issuingStateTlv = new PrimitiveTlvDataObject(TlvTag.valueOf(UNIVERSAL_PRINTABLE_STRING), issuingStatePlainBytes);
 		issuingStateDgTlv.addTlvDataObject(issuingStateTlv);
 		
 		return issuingStateDgTlv;
@@ -323,7 +323,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 	@Override
 	protected void addEidDg2(DedicatedFile eIdAppl) {
 		initPersonalizationDataContainer();
-		ConstructedTlvDataObject dg2Tlv = getIssuingStateDgTlv(new TlvTag((byte) 0x62), persoDataContainer.getDg2PlainData());
+		ConstructedTlvDataObject dg2Tlv = getIssuingStateDgTlv(TlvTag.valueOf((byte) 0x62), persoDataContainer.getDg2PlainData());
 		
 		CardFile eidDg1 = new ElementaryFile(new FileIdentifier(0x0102),
 				new ShortFileIdentifier(0x02),
@@ -337,7 +337,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 	@Override
 	protected void addEidDg3(DedicatedFile eIdAppl) {
 		initPersonalizationDataContainer();
-		ConstructedTlvDataObject dg3Tlv = getDateDgTlv(new TlvTag((byte) 0x63), persoDataContainer.getDg3PlainData());
+		ConstructedTlvDataObject dg3Tlv = getDateDgTlv(TlvTag.valueOf((byte) 0x63), persoDataContainer.getDg3PlainData());
 		
 		CardFile eidDg3 = new ElementaryFile(new FileIdentifier(0x0103),
 				new ShortFileIdentifier(0x03),
@@ -351,7 +351,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 	@Override
 	protected void addEidDg4(DedicatedFile eIdAppl) {
 		initPersonalizationDataContainer();
-		ConstructedTlvDataObject dg4Tlv = getUtf8StringDgTlv(new TlvTag((byte) 0x64), persoDataContainer.getDg4PlainData());
+		ConstructedTlvDataObject dg4Tlv = getUtf8StringDgTlv(TlvTag.valueOf((byte) 0x64), persoDataContainer.getDg4PlainData());
 
 		CardFile eidDg4 = new ElementaryFile(new FileIdentifier(0x0104),
 				new ShortFileIdentifier(0x04),
@@ -365,7 +365,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 	@Override
 	protected void addEidDg5(DedicatedFile eIdAppl) {
 		initPersonalizationDataContainer();
-		ConstructedTlvDataObject dg5Tlv = getUtf8StringDgTlv(new TlvTag((byte) 0x65), persoDataContainer.getDg5PlainData());
+		ConstructedTlvDataObject dg5Tlv = getUtf8StringDgTlv(TlvTag.valueOf((byte) 0x65), persoDataContainer.getDg5PlainData());
 		
 		CardFile eidDg5 = new ElementaryFile(
 				new FileIdentifier(0x0105),
@@ -380,7 +380,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 	@Override
 	protected void addEidDg6(DedicatedFile eIdAppl) {
 		initPersonalizationDataContainer();
-		ConstructedTlvDataObject dg6Tlv = getUtf8StringDgTlv(new TlvTag((byte) 0x66), persoDataContainer.getDg6PlainData());
+		ConstructedTlvDataObject dg6Tlv = getUtf8StringDgTlv(TlvTag.valueOf((byte) 0x66), persoDataContainer.getDg6PlainData());
 		
 		CardFile eidDg6 = new ElementaryFile(
 				new FileIdentifier(0x0106),
@@ -396,7 +396,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 	protected void addEidDg7(DedicatedFile eIdAppl) {
 		initPersonalizationDataContainer();
 		
-		ConstructedTlvDataObject dg7Tlv = getUtf8StringDgTlv(new TlvTag((byte) 0x67), persoDataContainer.getDg7PlainData());
+		ConstructedTlvDataObject dg7Tlv = getUtf8StringDgTlv(TlvTag.valueOf((byte) 0x67), persoDataContainer.getDg7PlainData());
 		
 		CardFile eidDg7 = new ElementaryFile(new FileIdentifier(0x0107),
 				new ShortFileIdentifier(0x07),
@@ -411,7 +411,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 	protected void addEidDg8(DedicatedFile eIdAppl) {
 		initPersonalizationDataContainer();
 		
-		ConstructedTlvDataObject dg8Tlv = getDateDgTlv(new TlvTag((byte) 0x68), persoDataContainer.getDg8PlainData());
+		ConstructedTlvDataObject dg8Tlv = getDateDgTlv(TlvTag.valueOf((byte) 0x68), persoDataContainer.getDg8PlainData());
 		
 		CardFile eidDg8 = new ElementaryFile(new FileIdentifier(0x0108),
 				new ShortFileIdentifier(0x08),
@@ -427,7 +427,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 		initPersonalizationDataContainer();
 		
 		try {
-			ConstructedTlvDataObject dg9Tlv = getGeneralPlaceDgTlv(new TlvTag((byte) 0x69), null, persoDataContainer.getDg9PlainData(), null, null, null);
+			ConstructedTlvDataObject dg9Tlv = getGeneralPlaceDgTlv(TlvTag.valueOf((byte) 0x69), null, persoDataContainer.getDg9PlainData(), null, null, null);
 			
 			CardFile eidDg9 = new ElementaryFile(
 					new FileIdentifier(0x0109),
@@ -461,7 +461,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 	protected void addEidDg13(DedicatedFile eIdAppl) {
 		initPersonalizationDataContainer();
 		
-		ConstructedTlvDataObject dg13Tlv = getUtf8StringDgTlv(new TlvTag((byte) 0x6D), persoDataContainer.getDg13PlainData());
+		ConstructedTlvDataObject dg13Tlv = getUtf8StringDgTlv(TlvTag.valueOf((byte) 0x6D), persoDataContainer.getDg13PlainData());
 		
 		CardFile eidDg13 = new ElementaryFile(new FileIdentifier(0x010D),
 				new ShortFileIdentifier(0x0D),
@@ -540,52 +540,52 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 		if(zipString == null) {nullCounter++;} else {place = zipString;};
 		
 		if(nullCounter == 5) {
-			generalPlace = new ConstructedTlvDataObject(new TlvTag((byte) 0xA2));
-			PrimitiveTlvDataObject noPlace = new PrimitiveTlvDataObject(new TlvTag((byte) 0x0C), (new String("keine Hauptwohnung in Deutschland")).getBytes("UTF-8"));
+			generalPlace = new ConstructedTlvDataObject(TlvTag.valueOf((byte) 0xA2));
+			PrimitiveTlvDataObject noPlace = new PrimitiveTlvDataObject(TlvTag.valueOf((byte) 0x0C), (new String("keine Hauptwohnung in Deutschland")).getBytes("UTF-8"));
 			generalPlace.addTlvDataObject(noPlace);
 		} else{
 			if(nullCounter == 4) {
-				generalPlace = new ConstructedTlvDataObject(new TlvTag((byte) 0xA1));
-				PrimitiveTlvDataObject freeText = new PrimitiveTlvDataObject(new TlvTag(UNIVERSAL_UTF8String), place.getBytes("UTF-8"));
+				generalPlace = new ConstructedTlvDataObject(TlvTag.valueOf((byte) 0xA1));
+				PrimitiveTlvDataObject freeText = new PrimitiveTlvDataObject(TlvTag.valueOf(UNIVERSAL_UTF8String), place.getBytes("UTF-8"));
 				generalPlace.addTlvDataObject(freeText);
 			} else{
-				generalPlace = new ConstructedTlvDataObject(new TlvTag((byte) 0x30));
+				generalPlace = new ConstructedTlvDataObject(TlvTag.valueOf((byte) 0x30));
 				
 				ConstructedTlvDataObject sequenceElement;
 				PrimitiveTlvDataObject content;
 				
 				if(streetString != null) {
-					sequenceElement = new ConstructedTlvDataObject(new TlvTag((byte) 0xAA));
+					sequenceElement = new ConstructedTlvDataObject(TlvTag.valueOf((byte) 0xAA));
 					generalPlace.addTlvDataObject(sequenceElement);
-					content = new PrimitiveTlvDataObject(new TlvTag((byte) 0x0C), streetString.getBytes("UTF-8"));
+					content = new PrimitiveTlvDataObject(TlvTag.valueOf((byte) 0x0C), streetString.getBytes("UTF-8"));
 					sequenceElement.addTlvDataObject(content);
 				}
 				
 				if(cityString != null) {
-					sequenceElement = new ConstructedTlvDataObject(new TlvTag((byte) 0xAB));
+					sequenceElement = new ConstructedTlvDataObject(TlvTag.valueOf((byte) 0xAB));
 					generalPlace.addTlvDataObject(sequenceElement);
-					content = new PrimitiveTlvDataObject(new TlvTag((byte) 0x0C), cityString.getBytes("UTF-8"));
+					content = new PrimitiveTlvDataObject(TlvTag.valueOf((byte) 0x0C), cityString.getBytes("UTF-8"));
 					sequenceElement.addTlvDataObject(content);
 				}
 				
 				if(stateString != null) {
-					sequenceElement = new ConstructedTlvDataObject(new TlvTag((byte) 0xAC));
+					sequenceElement = new ConstructedTlvDataObject(TlvTag.valueOf((byte) 0xAC));
 					generalPlace.addTlvDataObject(sequenceElement);
-					content = new PrimitiveTlvDataObject(new TlvTag((byte) 0x0C), stateString.getBytes("UTF-8"));
+					content = new PrimitiveTlvDataObject(TlvTag.valueOf((byte) 0x0C), stateString.getBytes("UTF-8"));
 					sequenceElement.addTlvDataObject(content);
 				}
 				
 				if(countryString != null) {
-					sequenceElement = new ConstructedTlvDataObject(new TlvTag((byte) 0xAD));
+					sequenceElement = new ConstructedTlvDataObject(TlvTag.valueOf((byte) 0xAD));
 					generalPlace.addTlvDataObject(sequenceElement);
-					content = new PrimitiveTlvDataObject(new TlvTag((byte) 0x13), countryString.getBytes("US-ASCII"));
+					content = new PrimitiveTlvDataObject(TlvTag.valueOf((byte) 0x13), countryString.getBytes("US-ASCII"));
 					sequenceElement.addTlvDataObject(content);
 				}
 				
 				if(zipString != null) {
-					sequenceElement = new ConstructedTlvDataObject(new TlvTag((byte) 0xAE));
+					sequenceElement = new ConstructedTlvDataObject(TlvTag.valueOf((byte) 0xAE));
 					generalPlace.addTlvDataObject(sequenceElement);
-					content = new PrimitiveTlvDataObject(new TlvTag((byte) 0x13), zipString.getBytes("US-ASCII"));
+					content = new PrimitiveTlvDataObject(TlvTag.valueOf((byte) 0x13), zipString.getBytes("US-ASCII"));
 					sequenceElement.addTlvDataObject(content);
 				}
 			}
@@ -602,7 +602,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 		
 		try {
 			ConstructedTlvDataObject dg17Tlv = getGeneralPlaceDgTlv(
-					new TlvTag((byte) 0x71),
+					TlvTag.valueOf((byte) 0x71),
 					persoDataContainer.getDg17StreetPlainData(),
 					persoDataContainer.getDg17CityPlainData(),
 					persoDataContainer.getDg17StatePlainData(),
@@ -630,7 +630,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 	 */
 	public static ConstructedTlvDataObject getCommunityIdDgTlv(TlvTag tlvTag, String content) {
 		ConstructedTlvDataObject communityIdDgTlv = new ConstructedTlvDataObject(tlvTag);
-		PrimitiveTlvDataObject communityIdTlv = new PrimitiveTlvDataObject(new TlvTag(UNIVERSAL_OCTET_STRING), HexString.toByteArray(content));
+		PrimitiveTlvDataObject communityIdTlv = new PrimitiveTlvDataObject(TlvTag.valueOf(UNIVERSAL_OCTET_STRING), HexString.toByteArray(content));
 		communityIdDgTlv.addTlvDataObject(communityIdTlv);
 		
 		return communityIdDgTlv;
@@ -640,7 +640,7 @@ public abstract class AbstractProfile extends DefaultPersoTestPki implements Asn
 	protected void addEidDg18(DedicatedFile eIdAppl) {
 		initPersonalizationDataContainer();
 		
-		ConstructedTlvDataObject dg18Tlv = getCommunityIdDgTlv(new TlvTag((byte) 0x72), persoDataContainer.getDg18PlainData());
+		ConstructedTlvDataObject dg18Tlv = getCommunityIdDgTlv(TlvTag.valueOf((byte) 0x72), persoDataContainer.getDg18PlainData());
 		
 		CardFile eidDg18 = new ElementaryFile(new FileIdentifier(0x0112),
 				new ShortFileIdentifier(0x12),
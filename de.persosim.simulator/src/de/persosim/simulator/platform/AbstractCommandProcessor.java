@@ -7,9 +7,12 @@ import static de.persosim.simulator.utils.PersoSimLogger.logException;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.NoSuchElementException;
 
+import de.persosim.simulator.apdu.CommandApdu;
+import de.persosim.simulator.apdu.IsoSecureMessagingCommandApdu;
 import de.persosim.simulator.apdu.ResponseApdu;
 import de.persosim.simulator.cardobjects.CardFile;
 import de.persosim.simulator.cardobjects.CardObject;
@@ -29,6 +32,7 @@ import de.persosim.simulator.secstatus.SecStatus;
 import de.persosim.simulator.secstatus.SecStatus.SecContext;
 import de.persosim.simulator.statemachine.AbstractStateMachine;
 import de.persosim.simulator.statemachine.StateMachine;
+import de.persosim.simulator.utils.Utils;
 
 /**
  * This class implements the processing of CommandApdus. It orchestrates
@@ -59,6 +63,7 @@ public abstract class AbstractCommandProcessor extends Layer implements
 		log(this, "will now begin processing of ascending APDU", TRACE);
 
 		try {
+			selectLogicalChannel(PlatformUtil.getLogicalChannel(processingData.getCommandApdu()));
 			securityStatus.updateSecStatus(processingData);
 			
 			//process the event
@@ -93,6 +98,12 @@ public abstract class AbstractCommandProcessor extends Layer implements
 	public void powerOn() {
 		super.powerOn();
 
+		log(this, "powerOn, discard state of logical channels", TRACE);
+		dispatchCache.clear();
+		channelProtocolStacks.clear();
+		currentChannel = CH_DEFAULT;
+		objectStore.selectLogicalChannel(CH_DEFAULT);
+
 		log(this, "powerOn, remove all protocols from stack", TRACE);
 		setStackPointerToBottom();
 		removeCurrentProtocolAndAboveFromStack();
@@ -106,6 +117,46 @@ public abstract class AbstractCommandProcessor extends Layer implements
 
 	}
 
+	@Override
+	public void resetLogicalChannel(byte channel) {
+		objectStore.resetLogicalChannel(channel);
+		securityStatus.resetLogicalChannel(channel);
+		
+		if (channel == currentChannel) {
+			protocolStack = new ArrayList<>();
+			stackPointer = 0;
+		} else {
+			channelProtocolStacks.remove(channel);
+		}
+		log(this, "discarded state of logical channel " + channel, TRACE);
+	}
+
+	/**
+	 * Makes the card state (selected file, security status and protocol
+	 * stack) of the given logical channel the current one. The state of the
+	 * previously addressed channel is kept.
+	 * <p/>
+	 * Protocol instances are shared between all channels, so a protocol
+	 * should only be in progress on one channel at a time.
+	 * 
+	 * @param channel
+	 *            the logical channel addressed by the current APDU
+	 */
+	protected void selectLogicalChannel(byte channel) {
+		objectStore.selectLogicalChannel(channel);
+		securityStatus.selectLogicalChannel(channel);
+		
+		if (channel != currentChannel) {
+			channelProtocolStacks.put(currentChannel, protocolStack);
+			protocolStack = channelProtocolStacks.remove(channel);
+			if (protocolStack == null) {
+				protocolStack = new ArrayList<>();
+			}
+			stackPointer = 0;
+			currentChannel = channel;
+		}
+	}
+
 	// ---------------------------------------------------
 	// methods/fields handling/representing the card state
 	// ---------------------------------------------------
@@ -134,6 +185,7 @@ public abstract class AbstractCommandProcessor extends Layer implements
 	public void addProtocol(Protocol newProtocol) {
 		newProtocol.setCardStateAccessor(this);
 		protocols.add(newProtocol);
+		dispatchCache.clear();
 	}
 
 	// --------------------------------------------------------
@@ -201,6 +253,16 @@ public abstract class AbstractCommandProcessor extends Layer implements
 	 * the stack containing all active/unfinished/interrupted protocols
 	 */
 	protected ArrayList<Protocol> protocolStack;
+	
+	/**
+	 * the protocol stacks of the logical channels not addressed by the current APDU
+	 */
+	protected HashMap<Byte, ArrayList<Protocol>> channelProtocolStacks = new HashMap<>();
+	
+	/**
+	 * the logical channel {@link #protocolStack} belongs to
+	 */
+	protected byte currentChannel = CH_DEFAULT;
 
 	/**
 	 * protocolPointer is a pointer pointing at an element of protocols, i.e.
@@ -282,18 +344,26 @@ public abstract class AbstractCommandProcessor extends Layer implements
 	 * ) to the {@link #protocolStack}
 	 */
 	public void addProtocolAtProtocolPointerToStack() {
-		Protocol protocol = protocols.get(protocolPointer);
+		Protocol protocol = getProtocolAtProtocolPointer();
 		log(this,
 				"protocol put to top of stack is "
 						+ protocol.getProtocolName());
 		this.protocolStack.add(protocol);
+		
+		if (dispatchCacheEnabled && apduHasBeenProcessed()) {
+			if ((protocolPointer == 0) && (dispatchCandidate >= 0)) {
+				dispatchCacheHits++;
+			} else {
+				dispatchCache.put(dispatchKey, getProtocolIndex(protocolPointer));
+			}
+		}
 	}
 	
 	/**
 	 * 
 	 */
 	public boolean protocolAtPointerWantsToGetOnStack() {
-		Protocol protocol = protocols.get(protocolPointer);
+		Protocol protocol = getProtocolAtProtocolPointer();
 		return protocol == null ? false : protocol.isMoveToStackRequested();
 	}
 
@@ -305,7 +375,7 @@ public abstract class AbstractCommandProcessor extends Layer implements
 	 * {@link #protocolPointer}.
 	 */
 	public void resetProtocolAtProtocolPointer() {
-		protocols.get(protocolPointer).reset();
+		getProtocolAtProtocolPointer().reset();
 	}
 
 	/**
@@ -316,6 +386,16 @@ public abstract class AbstractCommandProcessor extends Layer implements
 	 */
 	public void setProtocolPointerToFirstElementOfProtocolList() {
 		protocolPointer = 0;
+		
+		dispatchCandidate = -1;
+		if (dispatchCacheEnabled && (processingData.getCommandApdu() != null)) {
+			dispatchCacheLookups++;
+			dispatchKey = getDispatchKey(processingData.getCommandApdu());
+			Integer candidate = dispatchCache.get(dispatchKey);
+			if (candidate != null) {
+				dispatchCandidate = candidate;
+			}
+		}
 	}
 
 	/**
@@ -347,7 +427,7 @@ public abstract class AbstractCommandProcessor extends Layer implements
 	 * protocol.
 	 */
 	public void makeProtocolAtProtocolPointerCurrentlyActiveProtocol() {
-		currentlyActiveProtocol = protocols.get(this.protocolPointer);
+		currentlyActiveProtocol = getProtocolAtProtocolPointer();
 	}
 
 	/**
@@ -409,6 +489,146 @@ public abstract class AbstractCommandProcessor extends Layer implements
 		}
 	}
 
+	// ------------------------------------
+	// Protocol dispatch cache
+	// ------------------------------------
+	
+	/**
+	 * Maps dispatch keys (see {@link #getDispatchKey(CommandApdu)}) to the
+	 * index of the protocol within {@link #protocols} that last accepted an
+	 * APDU with this key.
+	 */
+	protected HashMap<Long, Integer> dispatchCache = new HashMap<>();
+	protected boolean dispatchCacheEnabled = false;
+	
+	/**
+	 * index of the protocol tried first during the current iteration of the
+	 * protocol list, -1 if the protocols are tried in list order
+	 */
+	protected int dispatchCandidate = -1;
+	protected long dispatchKey;
+	
+	protected long dispatchCacheLookups;
+	protected long dispatchCacheHits;
+	
+	/**
+	 * Enables or disables the protocol dispatch cache.
+	 * <p/>
+	 * If enabled, the protocol that last accepted an APDU with the same CLA,
+	 * INS, P1/P2 class and SM state while the same protocols were on the stack
+	 * is tried first when iterating the protocol list. Protocols that reject
+	 * the APDU are expected to do so independent of the order they are tried
+	 * in. The cache is disabled by default.
+	 * 
+	 * @param enabled
+	 */
+	public void setDispatchCacheEnabled(boolean enabled) {
+		dispatchCacheEnabled = enabled;
+		dispatchCache.clear();
+	}
+	
+	public boolean isDispatchCacheEnabled() {
+		return dispatchCacheEnabled;
+	}
+	
+	/**
+	 * @return the number of protocol list iterations that used the dispatch cache
+	 */
+	public long getDispatchCacheLookups() {
+		return dispatchCacheLookups;
+	}
+	
+	/**
+	 * @return the number of protocol list iterations where the cached protocol accepted the APDU
+	 */
+	public long getDispatchCacheHits() {
+		return dispatchCacheHits;
+	}
+	
+	/**
+	 * @return the hit rate of the dispatch cache, 0 if not used yet
+	 */
+	public double getDispatchCacheHitRate() {
+		if (dispatchCacheLookups == 0) {
+			return 0;
+		}
+		return (double) dispatchCacheHits / dispatchCacheLookups;
+	}
+	
+	/**
+	 * Returns the key identifying APDUs that are expected to be accepted by
+	 * the same protocol. It consists of CLA, INS, P1/P2 class, SM state and a
+	 * signature of the current protocol stack, so entries become ineffective
+	 * as soon as the stack changes.
+	 * 
+	 * @param apdu
+	 * @return the dispatch key
+	 */
+	protected long getDispatchKey(CommandApdu apdu) {
+		long key = Utils.maskUnsignedByteToInt(apdu.getCla());
+		key = (key << 8) | Utils.maskUnsignedByteToInt(apdu.getIns());
+		key = (key << 16) | Utils.maskUnsignedShortToInt(getP1P2Class(apdu));
+		
+		boolean sm = (apdu instanceof IsoSecureMessagingCommandApdu) && ((IsoSecureMessagingCommandApdu) apdu).wasSecureMessaging();
+		key = (key << 1) | (sm ? 1 : 0);
+		
+		int stackSignature = 0;
+		for (Protocol curProtocol : protocolStack) {
+			stackSignature = (stackSignature * 31) + protocols.indexOf(curProtocol) + 1;
+		}
+		return key ^ ((long) stackSignature << 33);
+	}
+	
+	/**
+	 * Returns the part of P1/P2 relevant for protocol dispatch. Offsets
+	 * encoded in P1/P2 of binary commands are irrelevant, only the short EF
+	 * identifier is kept if present.
+	 * 
+	 * @param apdu
+	 * @return P1/P2 class
+	 */
+	private short getP1P2Class(CommandApdu apdu) {
+		switch (apdu.getIns()) {
+		case INS_B0_READ_BINARY:
+		case INS_D0_WRITE_BINARY:
+		case INS_D6_UPDATE_BINARY:
+		case INS_0E_ERASE_BINARY:
+			if ((apdu.getP1() & (byte) 0x80) == (byte) 0x80) {
+				return (short) (apdu.getP1P2() & (short) 0xFF00);
+			}
+			return 0;
+		default:
+			return apdu.getP1P2();
+		}
+	}
+	
+	/**
+	 * Maps the {@link #protocolPointer} to an index within {@link #protocols}.
+	 * The {@link #dispatchCandidate} is tried first, all others in list order.
+	 * 
+	 * @param pointer
+	 * @return index within {@link #protocols}
+	 */
+	private int getProtocolIndex(int pointer) {
+		if (dispatchCandidate < 0) {
+			return pointer;
+		}
+		if (pointer == 0) {
+			return dispatchCandidate;
+		}
+		if (pointer <= dispatchCandidate) {
+			return pointer - 1;
+		}
+		return pointer;
+	}
+	
+	/**
+	 * @return the protocol the {@link #protocolPointer} refers to
+	 */
+	protected Protocol getProtocolAtProtocolPointer() {
+		return protocols.get(getProtocolIndex(protocolPointer));
+	}
+
 	// -----------------------
 	// Control of StateMachine
 	// -----------------------
@@ -0,0 +1,377 @@
+package de.persosim.simulator.platform;
+
+import static de.persosim.simulator.utils.PersoSimLogger.DEBUG;
+import static de.persosim.simulator.utils.PersoSimLogger.TRACE;
+import static de.persosim.simulator.utils.PersoSimLogger.log;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import de.persosim.simulator.apdu.CommandApdu;
+import de.persosim.simulator.apdu.InterindustryCommandApdu;
+import de.persosim.simulator.apdu.IsoSecureMessagingCommandApdu;
+import de.persosim.simulator.apdu.ResponseApdu;
+import de.persosim.simulator.tlv.TlvValue;
+import de.persosim.simulator.tlv.TlvValuePlain;
+
+/**
+ * This layer implements command chaining and the transfer of long responses
+ * via GET RESPONSE according to ISO7816-4.
+ * <p/>
+ * Ascending chained command APDUs are collected and acknowledged by this layer.
+ * When the last command of a chain is received the collected data is handed to
+ * the higher layers as one single command APDU. Descending responses that
+ * contain more data than expected by the command (N_e) are sliced, the
+ * remaining data is indicated by SW 61XX and can be retrieved by GET RESPONSE.
+ * <p/>
+ * Each logical channel has a buffer of its own. Both directions use the same
+ * buffer, as ISO7816-4 does not allow a chain to be interleaved with the
+ * retrieval of a response on the same channel. The buffer is also bound to the
+ * secure messaging status of the command that filled it, subsequent chained
+ * commands and GET RESPONSE must be protected by secure messaging iff that
+ * command was. Otherwise the buffer is discarded, so data of a protected
+ * response is never returned unprotected.
+ * <p/>
+ * Commands that carry protocol specific chaining semantics (e.g. GENERAL
+ * AUTHENTICATE according to TR-03110) are not collected but passed to the
+ * higher layers unmodified.
+ */
+public class ChainingManager extends Layer {
+
+	/**
+	 * Instructions that use chaining to link subsequent protocol steps instead
+	 * of splitting the data of one command
+	 */
+	public static final byte[] INS_PROTOCOL_CHAINING = new byte[] {
+		INS_86_GENERAL_AUTHENTICATE, INS_87_GENERAL_AUTHENTICATE };
+
+	private static final int STATE_IDLE = 0;
+	private static final int STATE_COLLECTING_COMMAND = 1;
+	private static final int STATE_RESPONSE_PENDING = 2;
+
+	/* chaining state of the logical channels, indexed by channel number, created on first use */
+	private ChannelState[] channelStates = new ChannelState[NUMBER_OF_LOGICAL_CHANNELS];
+
+	/* chaining state of the logical channel addressed by the current APDU */
+	private ChannelState current;
+
+	/* indicates that the current APDU was completely handled by this layer */
+	private boolean apduConsumed;
+
+	public ChainingManager(int id) {
+		super(id);
+	}
+
+	@Override
+	public String getLayerName() {
+		return "ChainingManager";
+	}
+
+	/*--------------------------------------------------------------------------------*/
+
+	@Override
+	public void powerOn() {
+		super.powerOn();
+		Arrays.fill(channelStates, null);
+		current = null;
+	}
+
+	@Override
+	public void powerOff() {
+		super.powerOff();
+		Arrays.fill(channelStates, null);
+		current = null;
+	}
+
+	@Override
+	public void resetLogicalChannel(byte channel) {
+		if (channelStates[channel] != null) {
+			channelStates[channel].discard();
+		}
+	}
+
+	@Override
+	public boolean isApduConsumed() {
+		return apduConsumed;
+	}
+
+	@Override
+	public void processAscending() {
+		apduConsumed = false;
+
+		CommandApdu commandApdu = processingData.getCommandApdu();
+		selectChannelState(commandApdu);
+
+		if (!(commandApdu instanceof InterindustryCommandApdu)) {
+			log(this, "don't process non interindustry APDU", TRACE);
+			current.discard();
+			return;
+		}
+		InterindustryCommandApdu interindustryApdu = (InterindustryCommandApdu) commandApdu;
+
+		if (current.state == STATE_RESPONSE_PENDING) {
+			if (isGetResponse(interindustryApdu)) {
+				processGetResponse(interindustryApdu);
+				return;
+			}
+			log(this, "pending response data discarded by subsequent command", DEBUG);
+			current.discard();
+		}
+
+		if (isProtocolChaining(interindustryApdu)) {
+			if (current.state == STATE_COLLECTING_COMMAND) {
+				abortChain("chain interrupted by command with protocol specific chaining");
+			}
+			log(this, "don't process command with protocol specific chaining", TRACE);
+			return;
+		}
+
+		if (current.state == STATE_COLLECTING_COMMAND) {
+			if (!Arrays.equals(current.chainHeader, getChainHeader(interindustryApdu))) {
+				abortChain("chain interrupted by command with different header");
+				return;
+			}
+			if (current.secureMessaging != wasSecureMessaging(interindustryApdu)) {
+				abortChain("chain interrupted by command with different secure messaging status");
+				return;
+			}
+		}
+
+		if (interindustryApdu.isChaining()) {
+			collectChainedCommand(interindustryApdu);
+		} else if (current.state == STATE_COLLECTING_COMMAND) {
+			completeChainedCommand(interindustryApdu);
+		} else {
+			log(this, "don't process unchained APDU", TRACE);
+		}
+	}
+
+	@Override
+	public void processDescending() {
+		if (apduConsumed) {
+			log(this, "response was created by this layer", TRACE);
+			return;
+		}
+
+		CommandApdu commandApdu = processingData.getCommandApdu();
+		ResponseApdu responseApdu = processingData.getResponseApdu();
+		if ((commandApdu == null) || (responseApdu == null) || (responseApdu.getData() == null)) {
+			return;
+		}
+
+		if (responseApdu.getStatusWord() != SW_9000_NO_ERROR) {
+			return;
+		}
+
+		int ne = commandApdu.getNe();
+		TlvValue responseData = responseApdu.getData();
+		if ((ne == 0) || (responseData.getLength() <= ne)) {
+			return;
+		}
+
+		log(this, "response data exceeds N_e, provide remaining data via GET RESPONSE", DEBUG);
+		selectChannelState(commandApdu);
+		current.responseBuffer = responseData.toByteArray();
+		current.responseOffset = 0;
+		current.secureMessaging = wasSecureMessaging(commandApdu);
+		current.state = STATE_RESPONSE_PENDING;
+
+		processingData.updateResponseAPDU(this, "response data exceeds N_e", getNextResponseSlice(ne));
+	}
+
+	/**
+	 * Makes the chaining state of the logical channel addressed by the given
+	 * APDU the current one, see {@link PlatformUtil#getLogicalChannel(CommandApdu)}
+	 * @param apdu the APDU currently processed
+	 */
+	private void selectChannelState(CommandApdu apdu) {
+		byte channel = PlatformUtil.getLogicalChannel(apdu);
+		if (channelStates[channel] == null) {
+			channelStates[channel] = new ChannelState();
+		}
+		current = channelStates[channel];
+	}
+
+	/**
+	 * Returns whether the given APDU was protected by secure messaging
+	 * @param apdu the APDU to check
+	 * @return true iff the APDU was unwrapped by the secure messaging layer
+	 */
+	private static boolean wasSecureMessaging(CommandApdu apdu) {
+		return (apdu instanceof IsoSecureMessagingCommandApdu) && ((IsoSecureMessagingCommandApdu) apdu).wasSecureMessaging();
+	}
+
+	/**
+	 * Returns whether the given APDU is a GET RESPONSE command
+	 * @param apdu the APDU to check
+	 * @return true iff the APDU is an unchained GET RESPONSE
+	 */
+	private boolean isGetResponse(InterindustryCommandApdu apdu) {
+		return (apdu.getIns() == INS_C0_GET_RESPONSE) && !apdu.isChaining();
+	}
+
+	/**
+	 * Returns whether the given APDU uses protocol specific chaining, see
+	 * {@link #INS_PROTOCOL_CHAINING}
+	 * @param apdu the APDU to check
+	 * @return true iff chaining must not be handled by this layer
+	 */
+	private boolean isProtocolChaining(InterindustryCommandApdu apdu) {
+		for (byte curIns : INS_PROTOCOL_CHAINING) {
+			if (apdu.getIns() == curIns) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private byte[] getChainHeader(InterindustryCommandApdu apdu) {
+		byte[] header = apdu.getHeader();
+		header[OFFSET_CLA] = (byte) (header[OFFSET_CLA] & ~CLA_CHAINING_MASK);
+		return header;
+	}
+
+	private void collectChainedCommand(InterindustryCommandApdu apdu) {
+		if (current.state == STATE_IDLE) {
+			current.chainHeader = getChainHeader(apdu);
+			current.commandBuffer.reset();
+			current.secureMessaging = wasSecureMessaging(apdu);
+			current.state = STATE_COLLECTING_COMMAND;
+		}
+
+		if (!appendCommandData(apdu)) {
+			return;
+		}
+
+		log(this, "collected chained command, " + current.commandBuffer.size() + " bytes buffered", DEBUG);
+		consume("chained command collected", new ResponseApdu(SW_9000_NO_ERROR));
+	}
+
+	private void completeChainedCommand(InterindustryCommandApdu apdu) {
+		if (!appendCommandData(apdu)) {
+			return;
+		}
+
+		byte[] data = current.commandBuffer.toByteArray();
+		byte[] plainApdu = Iso7816Lib.buildCommandApdu(current.chainHeader, data, apdu.getNe());
+		current.discard();
+
+		log(this, "last command of chain received, " + data.length + " bytes collected", DEBUG);
+		processingData.updateCommandApdu(this, "chained command completed",
+				new InterindustryCommandApdu(plainApdu, apdu));
+	}
+
+	/**
+	 * Appends the data of the given APDU to the command buffer
+	 * @param apdu the APDU providing the data
+	 * @return false iff the data could not be appended and the chain was aborted
+	 */
+	private boolean appendCommandData(InterindustryCommandApdu apdu) {
+		if (apdu.getNc() == 0) {
+			return true;
+		}
+
+		byte[] data = apdu.getCommandData().toByteArray();
+		if (current.commandBuffer.size() + data.length > MAX_NC_EXTENDED) {
+			current.discard();
+			consume("chained data exceeds maximum length", new ResponseApdu(SW_6700_WRONG_LENGTH));
+			return false;
+		}
+
+		current.commandBuffer.write(data, 0, data.length);
+		return true;
+	}
+
+	private void processGetResponse(InterindustryCommandApdu apdu) {
+		if (current.secureMessaging != wasSecureMessaging(apdu)) {
+			/* the secure messaging layer may already have discarded the session, so the data must not be returned at all */
+			short sw = current.secureMessaging ? SW_6987_EXPECTED_SM_DATA_OBJECTS_MISSING : SW_6985_CONDITIONS_OF_USE_NOT_SATISFIED;
+			current.discard();
+			consume("GET RESPONSE with different secure messaging status, pending response data discarded", new ResponseApdu(sw));
+			return;
+		}
+
+		if (apdu.getP1P2() != 0) {
+			consume("GET RESPONSE with invalid parameters", new ResponseApdu(SW_6A86_INCORRECT_PARAMETERS_P1P2));
+			return;
+		}
+
+		if (apdu.getNe() == 0) {
+			consume("GET RESPONSE without L_e", new ResponseApdu(SW_6700_WRONG_LENGTH));
+			return;
+		}
+
+		consume("GET RESPONSE", getNextResponseSlice(apdu.getNe()));
+	}
+
+	/**
+	 * Removes the next slice from the response buffer and creates the matching
+	 * {@link ResponseApdu}.
+	 *
+	 * @param ne
+	 *            maximum number of bytes to be returned
+	 * @return the response APDU providing the slice and indicating remaining
+	 *         data if applicable
+	 */
+	private ResponseApdu getNextResponseSlice(int ne) {
+		int sliceLength = Math.min(ne, current.responseBuffer.length - current.responseOffset);
+		byte[] slice = Arrays.copyOfRange(current.responseBuffer, current.responseOffset, current.responseOffset + sliceLength);
+		current.responseOffset += sliceLength;
+
+		int remaining = current.responseBuffer.length - current.responseOffset;
+		short sw;
+		if (remaining == 0) {
+			sw = SW_9000_NO_ERROR;
+			current.discard();
+		} else {
+			sw = (short) (SW_6100_BYTES_REMAINING | ((remaining > 0xFF) ? 0 : remaining));
+		}
+
+		return new ResponseApdu(new TlvValuePlain(slice), sw);
+	}
+
+	private void abortChain(String reason) {
+		log(this, reason, DEBUG);
+		current.discard();
+		consume(reason, new ResponseApdu(SW_6883_LAST_COMMAND_EXPECTED));
+	}
+
+	/**
+	 * Set the response and mark the current APDU as completely handled by this
+	 * layer
+	 */
+	private void consume(String message, ResponseApdu response) {
+		processingData.updateResponseAPDU(this, message, response);
+		apduConsumed = true;
+	}
+
+	/**
+	 * Chaining state and buffers of one logical channel
+	 */
+	private static class ChannelState {
+		private int state = STATE_IDLE;
+
+		/* collects chained command data, grows amortized without copying all previous fragments for each new fragment */
+		private final ByteArrayOutputStream commandBuffer = new ByteArrayOutputStream();
+
+		/* header (CLA without chaining bit, INS, P1, P2) of the chain currently collected */
+		private byte[] chainHeader;
+
+		/* response data not yet retrieved by GET RESPONSE */
+		private byte[] responseBuffer;
+		private int responseOffset;
+
+		/* indicates that the buffer was filled by commands protected by secure messaging */
+		private boolean secureMessaging;
+
+		private void discard() {
+			state = STATE_IDLE;
+			commandBuffer.reset();
+			chainHeader = null;
+			responseBuffer = null;
+			responseOffset = 0;
+			secureMessaging = false;
+		}
+	}
+
+}
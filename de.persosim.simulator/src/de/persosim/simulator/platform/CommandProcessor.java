@@ -14,7 +14,7 @@ import de.persosim.simulator.secstatus.SecStatus;
  * @author amay
  * 
  */
-public class CommandProcessor extends CommandProcessorStateMachine {
+public class CommandProcessor extends TableDrivenCommandProcessorStateMachine {
 
 	private Personalization perso;
 
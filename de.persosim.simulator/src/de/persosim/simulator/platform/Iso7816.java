@@ -28,6 +28,11 @@ public interface Iso7816 {
 	public static final byte APDU_MINIMUM_LENGTH_EXTENDED_ISO_CASE3 = 8;
 	public static final byte APDU_MINIMUM_LENGTH_ISO_CASE4 = 7;
 	
+	public static final int MAX_NC_SHORT    = 255;
+	public static final int MAX_NC_EXTENDED = 65535;
+	public static final int MAX_NE_SHORT    = 256;
+	public static final int MAX_NE_EXTENDED = 65536;
+	
 	
 	
 	public static final byte ISO_FORMAT_INVALID = -2;
@@ -49,6 +54,8 @@ public interface Iso7816 {
 	public static final boolean CHAINING_ON  = true;
 	public static final boolean CHAINING_OFF = false;
 	
+	public static final byte CLA_CHAINING_MASK = (byte) 0x10;
+	
 	
 	
 	/*
@@ -71,6 +78,10 @@ public interface Iso7816 {
 //	public static final byte CH_UNDETERMINED = (byte) 0xFF;
 //	public static final byte CH_NOT_APPLICABLE = (byte) 0xFE;
 	public static final byte CH_DEFAULT = (byte) 0x00;
+	public static final int NUMBER_OF_LOGICAL_CHANNELS = 20;
+	
+	public static final byte P1_MANAGE_CHANNEL_OPEN  = (byte) 0x00;
+	public static final byte P1_MANAGE_CHANNEL_CLOSE = (byte) 0x80;
 	
 	
 	
@@ -438,7 +438,7 @@ public abstract class Iso7816Lib implements Iso7816 {
 	 */
 	public  static boolean isCommandChainingCLA(byte[] apdu) {
 		byte cla = getClassByte(apdu);
-		return ((byte) (cla & (byte) 0x10) == (byte) 0x10);
+		return ((byte) (cla & CLA_CHAINING_MASK) == CLA_CHAINING_MASK);
 	}
 	
 	/*----------------------------------------------------------------*/
@@ -564,9 +564,8 @@ public abstract class Iso7816Lib implements Iso7816 {
 			channel = cla;
 		} else{
 			if(isoFormat == ISO_FORMAT_FURTHERINTERINDUSTRY) {
-				cla = (byte) (cla & (byte) 0x0F);
-				cla = (byte) (cla << 2);
-				channel = (byte) (cla | (byte) 0x03);
+				// further interindustry class encodes channels 4 to 19
+				channel = (byte) ((cla & (byte) 0x0F) + 4);
 			} else{
 				// exception is thrown implicitly by called function.
 				channel = Byte.MIN_VALUE;
@@ -708,15 +707,15 @@ public abstract class Iso7816Lib implements Iso7816 {
 	 * @param isoCase the ISO case of the provided APDU
 	 * @return the N_c encoded in the provided APDU
 	 */
-	public static short getNc(byte[] apdu) {
+	public static int getNc(byte[] apdu) {
 		if(getISOcase(apdu) < ISO_CASE_3) {
 			return 0;
 		}
 		
 		if(isExtendedLengthLCLE(apdu)) {
-			return Utils.concatenate(apdu[OFFSET_LC + 1], apdu[OFFSET_LC + 2]);
+			return Utils.maskUnsignedShortToInt(Utils.concatenate(apdu[OFFSET_LC + 1], apdu[OFFSET_LC + 2]));
 		} else{
-			return Utils.maskUnsignedByteToShort(apdu[OFFSET_LC]);
+			return Utils.maskUnsignedByteToInt(apdu[OFFSET_LC]);
 		}
 	}
 	
@@ -753,6 +752,62 @@ public abstract class Iso7816Lib implements Iso7816 {
 		}
 	}
 	
+	/**
+	 * Builds a command APDU from its components. Short length fields are used
+	 * whenever possible, extended length fields otherwise.
+	 * 
+	 * @param header the 4 byte header of the APDU
+	 * @param data the command data, may be empty
+	 * @param ne the N_e of the APDU, 0 if L_e is to be absent
+	 * @return the encoded APDU
+	 */
+	public static byte[] buildCommandApdu(byte[] header, byte[] data, int ne) {
+		if((data.length > MAX_NC_EXTENDED) || (ne < 0) || (ne > MAX_NE_EXTENDED)) {
+			throw new IllegalArgumentException("N_c or N_e exceed maximum length");
+		}
+		
+		boolean isExtendedLength = (data.length > MAX_NC_SHORT) || (ne > MAX_NE_SHORT);
+		int lengthFieldSize = isExtendedLength ? 2 : 1;
+		
+		int apduLength = header.length;
+		if(data.length > 0) {
+			apduLength += lengthFieldSize + data.length;
+		}
+		if(ne > 0) {
+			apduLength += lengthFieldSize;
+		}
+		if(isExtendedLength) {
+			apduLength++;
+		}
+		
+		byte[] apdu = new byte[apduLength];
+		System.arraycopy(header, 0, apdu, 0, header.length);
+		int offset = header.length;
+		
+		if(isExtendedLength) {
+			apdu[offset++] = 0;
+		}
+		
+		if(data.length > 0) {
+			if(isExtendedLength) {
+				apdu[offset++] = (byte) (data.length >>> 8);
+			}
+			apdu[offset++] = (byte) data.length;
+			System.arraycopy(data, 0, apdu, offset, data.length);
+			offset += data.length;
+		}
+		
+		if(ne > 0) {
+			// N_e of 256 (short) and 65536 (extended) are encoded as zero bytes
+			if(isExtendedLength) {
+				apdu[offset++] = (byte) (ne >>> 8);
+			}
+			apdu[offset] = (byte) ne;
+		}
+		
+		return apdu;
+	}
+	
 	/*--------------------------------------------------------------------------------*/
 	
 	/**
@@ -979,7 +1034,7 @@ public abstract class Iso7816Lib implements Iso7816 {
 	 */
 	public static TlvValue getCommandData(byte[] apdu) {
 		short offsetData = getOffsetData(apdu);
-		short nc = getNc(apdu);
+		int nc = getNc(apdu);
 		return new TlvValuePlain(apdu, offsetData, offsetData + nc);
 	}
 	
@@ -46,6 +46,20 @@ public abstract class Layer implements Iso7816, InfoSource {
 		log(this, "powerOff, nothing needs to be done for this layer", TRACE);
 	}
 	
+	/**
+	 * Channel-management function. This method is called by the
+	 * {@link LogicalChannelManager} whenever a logical channel is opened or
+	 * closed. All state bound to the given channel needs to be discarded.
+	 * 
+	 * Default implementation does nothing but logging. Subclasses are expected
+	 * to override this behavior if needed.
+	 * 
+	 * @param channel the number of the logical channel
+	 */
+	public void resetLogicalChannel(byte channel) {
+		log(this, "resetLogicalChannel, nothing needs to be done for this layer", TRACE);
+	}
+	
 	/**
 	 * Central processing routine for events handed up from a lower layer.
 	 * Actual layer specific processing is done in {@link #processAscending()}
@@ -78,6 +92,21 @@ public abstract class Layer implements Iso7816, InfoSource {
 		log(this, "skipped processing of ascending APDU", TRACE);
 	}
 	
+	/**
+	 * Returns whether processing of the current APDU was completed during
+	 * {@link #processAscending()} of this layer. In this case the
+	 * {@link PersoSimKernel} does not propagate the APDU to the higher layers
+	 * but starts descending processing with this layer.
+	 * 
+	 * Default implementation returns false. Subclasses are expected to
+	 * override this behavior if needed.
+	 * 
+	 * @return true iff higher layers must not process the current APDU
+	 */
+	public boolean isApduConsumed() {
+		return false;
+	}
+	
 	/**
 	 * Central processing routine for events handed down from a higher layer.
 	 * Actual layer specific processing is done in {@link #processDescending()}
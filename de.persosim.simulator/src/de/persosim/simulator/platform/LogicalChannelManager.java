@@ -0,0 +1,196 @@
+package de.persosim.simulator.platform;
+
+import static de.persosim.simulator.utils.PersoSimLogger.DEBUG;
+import static de.persosim.simulator.utils.PersoSimLogger.TRACE;
+import static de.persosim.simulator.utils.PersoSimLogger.log;
+
+import java.util.List;
+
+import de.persosim.simulator.apdu.CommandApdu;
+import de.persosim.simulator.apdu.InterindustryCommandApdu;
+import de.persosim.simulator.apdu.ResponseApdu;
+import de.persosim.simulator.tlv.TlvValuePlain;
+
+/**
+ * This layer implements the management of logical channels according to
+ * ISO7816-4.
+ * <p/>
+ * It processes MANAGE CHANNEL commands and rejects commands addressed to
+ * logical channels that are not open. Each layer that keeps state bound to a
+ * logical channel (e.g. current file, SM session, security status) selects
+ * this state according to the channel indicated in the CLA byte of the current
+ * APDU and is notified via {@link Layer#resetLogicalChannel(byte)} whenever a
+ * channel is opened or closed.
+ * <p/>
+ * Newly opened channels always start with the master file selected and an
+ * empty channel specific security status, regardless of the channel the
+ * MANAGE CHANNEL command was received on.
+ */
+public class LogicalChannelManager extends Layer {
+
+	private List<Layer> layers;
+
+	private boolean[] openChannels = new boolean[NUMBER_OF_LOGICAL_CHANNELS];
+
+	/* indicates that the current APDU was completely handled by this layer */
+	private boolean apduConsumed;
+
+	/**
+	 * Constructor
+	 *
+	 * @param id
+	 *            the layer id
+	 * @param layers
+	 *            all layers of the kernel, these are notified when a channel
+	 *            is opened or closed
+	 */
+	public LogicalChannelManager(int id, List<Layer> layers) {
+		super(id);
+		this.layers = layers;
+		openChannels[CH_DEFAULT] = true;
+	}
+
+	@Override
+	public String getLayerName() {
+		return "LogicalChannelManager";
+	}
+
+	/*--------------------------------------------------------------------------------*/
+
+	@Override
+	public void powerOn() {
+		super.powerOn();
+		for (int i = 0; i < openChannels.length; i++) {
+			openChannels[i] = (i == CH_DEFAULT);
+		}
+	}
+
+	@Override
+	public boolean isApduConsumed() {
+		return apduConsumed;
+	}
+
+	@Override
+	public void processAscending() {
+		apduConsumed = false;
+
+		CommandApdu commandApdu = processingData.getCommandApdu();
+		if (!(commandApdu instanceof InterindustryCommandApdu)) {
+			log(this, "don't process non interindustry APDU", TRACE);
+			return;
+		}
+
+		byte channel = ((InterindustryCommandApdu) commandApdu).getChannel();
+		if (!isOpen(channel)) {
+			consume("logical channel " + channel + " is not open", new ResponseApdu(SW_6881_LOGICAL_CHANNEL_NOT_SUPPORTED));
+			return;
+		}
+
+		if (commandApdu.getIns() == INS_70_MANAGE_CHANNEL) {
+			processManageChannel(commandApdu, channel);
+		} else {
+			log(this, "don't process APDU other than MANAGE CHANNEL", TRACE);
+		}
+	}
+
+	/**
+	 * @param channel the channel number
+	 * @return true iff the given channel is currently open
+	 */
+	public boolean isOpen(byte channel) {
+		return (channel >= 0) && (channel < openChannels.length) && openChannels[channel];
+	}
+
+	private void processManageChannel(CommandApdu commandApdu, byte channel) {
+		byte p2 = commandApdu.getP2();
+
+		switch (commandApdu.getP1()) {
+		case P1_MANAGE_CHANNEL_OPEN:
+			if (p2 == 0) {
+				openAssignedChannel(commandApdu);
+			} else {
+				openChannel(p2);
+			}
+			break;
+		case P1_MANAGE_CHANNEL_CLOSE:
+			closeChannel((p2 == 0) ? channel : p2);
+			break;
+		default:
+			consume("MANAGE CHANNEL with invalid P1", new ResponseApdu(SW_6A86_INCORRECT_PARAMETERS_P1P2));
+		}
+	}
+
+	/**
+	 * Open the lowest available channel and return its number
+	 */
+	private void openAssignedChannel(CommandApdu commandApdu) {
+		if (commandApdu.getNe() == 0) {
+			consume("MANAGE CHANNEL open with assignment by card requires L_e", new ResponseApdu(SW_6700_WRONG_LENGTH));
+			return;
+		}
+
+		for (byte curChannel = 1; curChannel < openChannels.length; curChannel++) {
+			if (!openChannels[curChannel]) {
+				activateChannel(curChannel, true);
+				consume("opened logical channel " + curChannel,
+						new ResponseApdu(new TlvValuePlain(new byte[] { curChannel }), SW_9000_NO_ERROR));
+				return;
+			}
+		}
+
+		consume("no further logical channel available", new ResponseApdu(SW_6881_LOGICAL_CHANNEL_NOT_SUPPORTED));
+	}
+
+	private void openChannel(byte channel) {
+		if ((channel <= CH_DEFAULT) || (channel >= openChannels.length)) {
+			consume("requested logical channel " + channel + " is not supported", new ResponseApdu(SW_6881_LOGICAL_CHANNEL_NOT_SUPPORTED));
+			return;
+		}
+
+		if (openChannels[channel]) {
+			consume("requested logical channel " + channel + " is already open", new ResponseApdu(SW_6A86_INCORRECT_PARAMETERS_P1P2));
+			return;
+		}
+
+		activateChannel(channel, true);
+		consume("opened logical channel " + channel, new ResponseApdu(SW_9000_NO_ERROR));
+	}
+
+	private void closeChannel(byte channel) {
+		if (channel == CH_DEFAULT) {
+			consume("basic channel can not be closed", new ResponseApdu(SW_6A86_INCORRECT_PARAMETERS_P1P2));
+			return;
+		}
+
+		if (!isOpen(channel)) {
+			consume("logical channel " + channel + " is not open", new ResponseApdu(SW_6881_LOGICAL_CHANNEL_NOT_SUPPORTED));
+			return;
+		}
+
+		activateChannel(channel, false);
+		consume("closed logical channel " + channel, new ResponseApdu(SW_9000_NO_ERROR));
+	}
+
+	/**
+	 * Change the state of a logical channel and discard all state bound to it
+	 * within all layers
+	 */
+	private void activateChannel(byte channel, boolean open) {
+		openChannels[channel] = open;
+		log(this, "logical channel " + channel + (open ? " opened" : " closed"), DEBUG);
+
+		for (Layer curLayer : layers) {
+			curLayer.resetLogicalChannel(channel);
+		}
+	}
+
+	/**
+	 * Set the response and mark the current APDU as completely handled by this
+	 * layer
+	 */
+	private void consume(String message, ResponseApdu response) {
+		processingData.updateResponseAPDU(this, message, response);
+		apduConsumed = true;
+	}
+
+}
@@ -77,6 +77,8 @@ public class PersoSimKernel implements InfoSource {
 		layers = new LinkedList<>();
 		layers.add(new IoManager(layerId++));
 		layers.add(new SecureMessaging(layerId++));
+		layers.add(new LogicalChannelManager(layerId++, layers));
+		layers.add(new ChainingManager(layerId++));
 		CommandProcessor commandProcessor = new CommandProcessor(layerId++, perso, objectStore, securityStatus);
 		commandProcessor.init();
 		layers.add(commandProcessor);
@@ -120,7 +122,9 @@ public class PersoSimKernel implements InfoSource {
 	/**
 	 * This method represents the simulator's actual core. APDUs and
 	 * accompanying ProcessingData-Objects are propagated through all available
-	 * layers from bottom to the top and back down again.
+	 * layers from bottom to the top and back down again. Ascending propagation
+	 * stops early at a layer that consumed the APDU (see
+	 * {@link Layer#isApduConsumed()}).
 	 * 
 	 * @param apdu
 	 *            the APDU that was recently received
@@ -136,7 +140,14 @@ public class PersoSimKernel implements InfoSource {
 		//propagate the event all layers up
 		int curLayerId = 0;
 		for (; curLayerId < layers.size(); curLayerId++) {
-			layers.get(curLayerId).processAscending(processingData);	
+			Layer curLayer = layers.get(curLayerId);
+			curLayer.processAscending(processingData);
+			
+			if (curLayer.isApduConsumed()) {
+				log(this, "APDU consumed by " + curLayer.getLayerName(), TRACE);
+				curLayerId++;
+				break;
+			}
 		}
 		
 		//propagate the event all layers down
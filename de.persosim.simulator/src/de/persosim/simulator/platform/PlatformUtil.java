@@ -1,5 +1,8 @@
 package de.persosim.simulator.platform;
 
+import de.persosim.simulator.apdu.CommandApdu;
+import de.persosim.simulator.apdu.InterindustryCommandApdu;
+
 /**
  * This class contains utility methods for the simulator platform.
  * @author mboonk
@@ -43,4 +46,19 @@ public class PlatformUtil {
 		} else
 			throw new IllegalArgumentException();
 	}
+	
+	/**
+	 * Returns the logical channel the given command APDU is addressed to.
+	 * APDUs that do not support logical channels (e.g. proprietary class) are
+	 * regarded as addressing the basic channel.
+	 * 
+	 * @param apdu the command APDU, may be null
+	 * @return the logical channel number
+	 */
+	public static byte getLogicalChannel(CommandApdu apdu) {
+		if (apdu instanceof InterindustryCommandApdu) {
+			return ((InterindustryCommandApdu) apdu).getChannel();
+		}
+		return Iso7816.CH_DEFAULT;
+	}
 }
@@ -0,0 +1,253 @@
+package de.persosim.simulator.platform;
+
+import static de.persosim.simulator.utils.PersoSimLogger.TRACE;
+import static de.persosim.simulator.utils.PersoSimLogger.log;
+
+/**
+ * Hand written replacement for the generated
+ * {@link CommandProcessorStateMachine}. It implements exactly the same states,
+ * guards and transition actions but encodes them within constant tables
+ * indexed by the current state instead of nested switch statements.
+ * <p/>
+ * Every state of the command processor has exactly one guard and two possible
+ * transitions (guard true/false, unconditional transitions only use the first
+ * one). The actions of a transition are encoded as bit mask and executed in the
+ * order of the bits, which is the order the generated code executes them in.
+ * <p/>
+ * State ids are identical to those of the generated code, thus
+ * {@link #getInnermostActiveState()} yields comparable results. Transitions are
+ * only logged if enabled via {@link #setTraceTransitions(boolean)}.
+ */
+public abstract class TableDrivenCommandProcessorStateMachine extends AbstractCommandProcessor {
+
+	public static final int INITIALIZATION = CommandProcessorStateMachine.INITIALIZATION;
+	public static final int PROTOCOL_UNABLE_TO_PROCESS_APDU = CommandProcessorStateMachine.PROTOCOL_UNABLE_TO_PROCESS_APDU;
+	public static final int END_OF_STACK_OR_EMPTY = CommandProcessorStateMachine.END_OF_STACK_OR_EMPTY;
+	public static final int PROTOCOL_INACTIVE = CommandProcessorStateMachine.PROTOCOL_INACTIVE;
+	public static final int PROTOCOL_FROM_STACK_ACTIVE = CommandProcessorStateMachine.PROTOCOL_FROM_STACK_ACTIVE;
+	public static final int COMMAND_PROCESSOR = CommandProcessorStateMachine.COMMAND_PROCESSOR;
+	public static final int PROTOCOL_PROCESSED = CommandProcessorStateMachine.PROTOCOL_PROCESSED;
+	public static final int PROTOCOL_FROM_LIST_ACTIVE = CommandProcessorStateMachine.PROTOCOL_FROM_LIST_ACTIVE;
+	public static final int WAITING_FOR_COMMAND = CommandProcessorStateMachine.WAITING_FOR_COMMAND;
+	public static final int START_OF_STACK = CommandProcessorStateMachine.START_OF_STACK;
+	public static final int START_PROTOCOL_ITERATION = CommandProcessorStateMachine.START_PROTOCOL_ITERATION;
+	public static final int WAITING_FOR_PROTOCOL_TO_PROCESS_APDU = CommandProcessorStateMachine.WAITING_FOR_PROTOCOL_TO_PROCESS_APDU;
+	public static final int __UNKNOWN_STATE__ = CommandProcessorStateMachine.__UNKNOWN_STATE__;
+
+	/* value returned by processEvent if a transition was taken, as in generated code */
+	private static final int EVENT_CONSUMED = 16;
+
+	// guards
+	private static final byte G_TRUE = 0;
+	private static final byte G_APDU_PROCESSED = 1;
+	private static final byte G_APDU_PROCESSED_OR_PROTOCOL_WANTS_TO_GET_ON_STACK = 2;
+	private static final byte G_PROTOCOL_FINISHED = 3;
+	private static final byte G_ALL_PROTOCOLS_PROCESSED = 4;
+	private static final byte G_STACK_POINTER_IS_NULL = 5;
+
+	// actions, bits are executed in ascending order
+	private static final int A_NONE = 0;
+	private static final int A_SET_STACK_POINTER_TO_BOTTOM = 1;
+	private static final int A_MAKE_STACK_POINTER_ACTIVE = 1 << 1;
+	private static final int A_INCREMENT_STACK_POINTER = 1 << 2;
+	private static final int A_REMOVE_FROM_STACK = 1 << 3;
+	private static final int A_FIRST_PROTOCOL_OF_LIST = 1 << 4;
+	private static final int A_NEXT_PROTOCOL_OF_LIST = 1 << 5;
+	private static final int A_RESET_PROTOCOL_AT_POINTER = 1 << 6;
+	private static final int A_MAKE_PROTOCOL_AT_POINTER_ACTIVE = 1 << 7;
+	private static final int A_PROCESS = 1 << 8;
+	private static final int A_ADD_PROTOCOL_AT_POINTER_TO_STACK = 1 << 9;
+	private static final int A_SET_SW_UNSUPPORTED = 1 << 10;
+	private static final int A_RETURN_RESULT = 1 << 11;
+	private static final int A_MAX = A_RETURN_RESULT;
+
+	private static final int NUMBER_OF_STATES = __UNKNOWN_STATE__;
+
+	private static final byte[] GUARD = new byte[NUMBER_OF_STATES];
+	private static final int[] ACTIONS_TRUE = new int[NUMBER_OF_STATES];
+	private static final int[] NEXT_TRUE = new int[NUMBER_OF_STATES];
+	private static final int[] ACTIONS_FALSE = new int[NUMBER_OF_STATES];
+	private static final int[] NEXT_FALSE = new int[NUMBER_OF_STATES];
+
+	static {
+		transition(INITIALIZATION,
+				A_RETURN_RESULT, WAITING_FOR_COMMAND);
+		transition(WAITING_FOR_COMMAND,
+				A_SET_STACK_POINTER_TO_BOTTOM, START_OF_STACK);
+		transition(START_OF_STACK, G_STACK_POINTER_IS_NULL,
+				A_NONE, END_OF_STACK_OR_EMPTY,
+				A_MAKE_STACK_POINTER_ACTIVE, PROTOCOL_FROM_STACK_ACTIVE);
+		transition(PROTOCOL_FROM_STACK_ACTIVE,
+				A_PROCESS, PROTOCOL_PROCESSED);
+		transition(PROTOCOL_PROCESSED, G_PROTOCOL_FINISHED,
+				A_REMOVE_FROM_STACK, PROTOCOL_INACTIVE,
+				A_INCREMENT_STACK_POINTER, PROTOCOL_INACTIVE);
+		transition(PROTOCOL_INACTIVE,
+				A_NONE, START_OF_STACK);
+		transition(END_OF_STACK_OR_EMPTY, G_APDU_PROCESSED,
+				A_RETURN_RESULT, WAITING_FOR_COMMAND,
+				A_FIRST_PROTOCOL_OF_LIST, START_PROTOCOL_ITERATION);
+		transition(START_PROTOCOL_ITERATION, G_ALL_PROTOCOLS_PROCESSED,
+				A_SET_SW_UNSUPPORTED | A_RETURN_RESULT, WAITING_FOR_COMMAND,
+				A_NONE, WAITING_FOR_PROTOCOL_TO_PROCESS_APDU);
+		transition(WAITING_FOR_PROTOCOL_TO_PROCESS_APDU,
+				A_RESET_PROTOCOL_AT_POINTER | A_MAKE_PROTOCOL_AT_POINTER_ACTIVE | A_PROCESS, PROTOCOL_FROM_LIST_ACTIVE);
+		transition(PROTOCOL_FROM_LIST_ACTIVE, G_APDU_PROCESSED_OR_PROTOCOL_WANTS_TO_GET_ON_STACK,
+				A_ADD_PROTOCOL_AT_POINTER_TO_STACK, PROTOCOL_PROCESSED,
+				A_NEXT_PROTOCOL_OF_LIST, PROTOCOL_UNABLE_TO_PROCESS_APDU);
+		transition(PROTOCOL_UNABLE_TO_PROCESS_APDU, G_ALL_PROTOCOLS_PROCESSED,
+				A_SET_SW_UNSUPPORTED | A_RETURN_RESULT, WAITING_FOR_COMMAND,
+				A_NONE, WAITING_FOR_PROTOCOL_TO_PROCESS_APDU);
+	}
+
+	private static void transition(int state, int actions, int next) {
+		transition(state, G_TRUE, actions, next, A_NONE, next);
+	}
+
+	private static void transition(int state, byte guard, int actionsTrue, int nextTrue, int actionsFalse, int nextFalse) {
+		GUARD[state] = guard;
+		ACTIONS_TRUE[state] = actionsTrue;
+		NEXT_TRUE[state] = nextTrue;
+		ACTIONS_FALSE[state] = actionsFalse;
+		NEXT_FALSE[state] = nextFalse;
+	}
+
+	protected boolean m_initialized = false;
+
+	/* innermost active state, the composite state COMMAND_PROCESSOR is implicit */
+	private int state;
+
+	private boolean traceTransitions = false;
+
+	/**
+	 * Enable or disable logging of every state transition with level TRACE.
+	 * Disabled by default, as the log messages would be built for every
+	 * transition of every APDU.
+	 *
+	 * @param traceTransitions
+	 *            true iff transitions should be logged
+	 */
+	public void setTraceTransitions(boolean traceTransitions) {
+		this.traceTransitions = traceTransitions;
+	}
+
+	/**
+	 * @return the innermost active state, ids are identical to those used by
+	 *         {@link CommandProcessorStateMachine}
+	 */
+	public int getInnermostActiveState() {
+		return m_initialized ? state : __UNKNOWN_STATE__;
+	}
+
+	@Override
+	public void reInitialize() {
+		m_initialized = false;
+		initialize();
+	}
+
+	@Override
+	public void initialize() {
+		if (!m_initialized) {
+			m_initialized = true;
+			state = INITIALIZATION;
+		}
+	}
+
+	@Override
+	public int processEvent(int msg) {
+		if (!m_initialized) {
+			return 0;
+		}
+
+		continueProcessing = true;
+		do {
+			int curState = state;
+			int actions;
+			int next;
+			if (evaluateGuard(GUARD[curState])) {
+				actions = ACTIONS_TRUE[curState];
+				next = NEXT_TRUE[curState];
+			} else {
+				actions = ACTIONS_FALSE[curState];
+				next = NEXT_FALSE[curState];
+			}
+
+			if (traceTransitions) {
+				log(this, "transition from state " + curState + " to state " + next, TRACE);
+			}
+
+			executeActions(actions);
+			state = next;
+		} while (continueProcessing);
+
+		return EVENT_CONSUMED;
+	}
+
+	private boolean evaluateGuard(byte guard) {
+		switch (guard) {
+		case G_APDU_PROCESSED:
+			return apduHasBeenProcessed();
+		case G_APDU_PROCESSED_OR_PROTOCOL_WANTS_TO_GET_ON_STACK:
+			return apduHasBeenProcessed() || protocolAtPointerWantsToGetOnStack();
+		case G_PROTOCOL_FINISHED:
+			return isProtocolFinished();
+		case G_ALL_PROTOCOLS_PROCESSED:
+			return allProtocolsOfProtocolListProcessed();
+		case G_STACK_POINTER_IS_NULL:
+			return stackPointerIsNull();
+		default:
+			return true;
+		}
+	}
+
+	private void executeActions(int actions) {
+		for (int curAction = 1; (curAction <= A_MAX) && (actions != 0); curAction <<= 1) {
+			if ((actions & curAction) == 0) {
+				continue;
+			}
+			actions &= ~curAction;
+
+			switch (curAction) {
+			case A_SET_STACK_POINTER_TO_BOTTOM:
+				setStackPointerToBottom();
+				break;
+			case A_MAKE_STACK_POINTER_ACTIVE:
+				makeStackPointerCurrentlyActiveProtocol();
+				break;
+			case A_INCREMENT_STACK_POINTER:
+				incrementStackPointer();
+				break;
+			case A_REMOVE_FROM_STACK:
+				removeCurrentProtocolAndAboveFromStack();
+				break;
+			case A_FIRST_PROTOCOL_OF_LIST:
+				setProtocolPointerToFirstElementOfProtocolList();
+				break;
+			case A_NEXT_PROTOCOL_OF_LIST:
+				setProtocolPointerToNextElementOfProtocolList();
+				break;
+			case A_RESET_PROTOCOL_AT_POINTER:
+				resetProtocolAtProtocolPointer();
+				break;
+			case A_MAKE_PROTOCOL_AT_POINTER_ACTIVE:
+				makeProtocolAtProtocolPointerCurrentlyActiveProtocol();
+				break;
+			case A_PROCESS:
+				currentProtocolProcess();
+				break;
+			case A_ADD_PROTOCOL_AT_POINTER_TO_STACK:
+				addProtocolAtProtocolPointerToStack();
+				break;
+			case A_SET_SW_UNSUPPORTED:
+				setStatusWordForUnsupportedCommand();
+				break;
+			case A_RETURN_RESULT:
+				returnResult();
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+}
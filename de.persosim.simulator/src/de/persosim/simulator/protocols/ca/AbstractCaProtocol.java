@@ -33,7 +33,8 @@ import de.persosim.simulator.cardobjects.Scope;
 import de.persosim.simulator.crypto.Crypto;
 import de.persosim.simulator.crypto.CryptoSupport;
 import de.persosim.simulator.crypto.DomainParameterSet;
-import de.persosim.simulator.crypto.KeyDerivationFunction;
+import de.persosim.simulator.crypto.SessionKeyCache;
+import de.persosim.simulator.crypto.SessionKeyCache.SessionKeys;
 import de.persosim.simulator.crypto.StandardizedDomainParameters;
 import de.persosim.simulator.exception.ProcessingException;
 import de.persosim.simulator.platform.Iso7816;
@@ -275,16 +276,13 @@ public abstract class AbstractCaProtocol extends AbstractProtocolStateMachine im
 	 */
 	protected void computeSessionKeys(byte[] sharedSecret, byte[] rPiccNonce) {
 		//compute session keys
-		KeyDerivationFunction kdf = new KeyDerivationFunction(caOid.getSymmetricCipherKeyLengthInBytes());
+		SessionKeys sessionKeys = SessionKeyCache.deriveSessionKeys(cryptoSupport, caOid.getSymmetricCipherKeyLengthInBytes(), sharedSecret, rPiccNonce);
 		
-		byte[] keyMaterialMac = kdf.deriveMAC(sharedSecret, rPiccNonce);
-		byte[] keyMaterialEnc = kdf.deriveENC(sharedSecret, rPiccNonce);
+		secretKeySpecMAC = sessionKeys.getKeyMac();
+		secretKeySpecENC = sessionKeys.getKeyEnc();
 		
-		log(this, "PICC's session key for MAC of " + keyMaterialMac.length + " bytes length is: " + HexString.encode(keyMaterialMac), DEBUG);
-		log(this, "PICC's session key for ENC of " + keyMaterialMac.length + " bytes length is: " + HexString.encode(keyMaterialEnc), DEBUG);
-		
-		secretKeySpecMAC = cryptoSupport.generateSecretKeySpecMac(keyMaterialMac);
-		secretKeySpecENC = cryptoSupport.generateSecretKeySpecCipher(keyMaterialEnc);
+		log(this, "PICC's session key for MAC of " + secretKeySpecMAC.getEncoded().length + " bytes length is: " + HexString.encode(secretKeySpecMAC.getEncoded()), DEBUG);
+		log(this, "PICC's session key for ENC of " + secretKeySpecENC.getEncoded().length + " bytes length is: " + HexString.encode(secretKeySpecENC.getEncoded()), DEBUG);
 	}
 	
 	/**
@@ -295,7 +293,7 @@ public abstract class AbstractCaProtocol extends AbstractProtocolStateMachine im
 		//get nonce r_PICC
 		int nonceSizeInBytes = 8;
 		byte[] rPiccNonce = new byte[nonceSizeInBytes];
-		this.secureRandom.nextBytes(rPiccNonce);
+		SessionKeyCache.getSecureRandom(this.secureRandom, SessionKeyCache.PURPOSE_CA_NONCE).nextBytes(rPiccNonce);
 		log(this, "nonce r_PICC of " + nonceSizeInBytes + " bytes length is: " + HexString.encode(rPiccNonce), DEBUG);
 		return rPiccNonce;
 	}
@@ -375,7 +373,7 @@ public abstract class AbstractCaProtocol extends AbstractProtocolStateMachine im
 		TlvDataObjectContainer commandData = processingData.getCommandApdu().getCommandDataObjectContainer();
 		
 		//retrieve PCD's public key
-		TlvDataObject tlvObject = commandData.getTlvDataObject(new TlvPath(new TlvTag((byte) 0x7C), new TlvTag((byte) 0x80)));
+		TlvDataObject tlvObject = commandData.getTlvDataObject(new TlvPath(TlvTag.valueOf((byte) 0x7C), TlvTag.valueOf((byte) 0x80)));
 		byte[] pcdPublicKeyMaterial = tlvObject.getValueField();
 		
 		keyAgreementAlgorithmName = caDomainParameters.getKeyAgreementAlgorithm();
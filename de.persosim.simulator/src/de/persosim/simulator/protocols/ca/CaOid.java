@@ -4,7 +4,7 @@ import java.security.InvalidParameterException;
 import java.util.Arrays;
 
 import de.persosim.simulator.crypto.CryptoSupport;
-import de.persosim.simulator.crypto.CryptoSupportAes;
+import de.persosim.simulator.crypto.CryptoSupportSelector;
 import de.persosim.simulator.crypto.CryptoUtil;
 import de.persosim.simulator.protocols.Oid;
 import de.persosim.simulator.utils.HexString;
@@ -77,13 +77,7 @@ public class CaOid extends Oid implements Ca {
 			String cipherName = getSymmetricCipherAlgorithmNameModePadding();
 			String macName = getMacName();
 			
-			switch (CryptoUtil.getCipherNameAsString(cipherName)) {
-			case "AES":
-				cryptoSupportCache = new CryptoSupportAes(cipherName, macName);
-				break;
-			default:
-				throw new IllegalArgumentException("algorithm " + cipherName + " is unknown or not supported");
-			}
+			cryptoSupportCache = CryptoSupportSelector.getCryptoSupport(cipherName, macName);
 		}
 		
 		return cryptoSupportCache;
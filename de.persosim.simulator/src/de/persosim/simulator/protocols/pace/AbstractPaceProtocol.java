@@ -42,6 +42,8 @@ import de.persosim.simulator.crypto.Crypto;
 import de.persosim.simulator.crypto.CryptoSupport;
 import de.persosim.simulator.crypto.DomainParameterSet;
 import de.persosim.simulator.crypto.KeyDerivationFunction;
+import de.persosim.simulator.crypto.SessionKeyCache;
+import de.persosim.simulator.crypto.SessionKeyCache.SessionKeys;
 import de.persosim.simulator.crypto.certificates.PublicKeyReference;
 import de.persosim.simulator.platform.CardStateAccessor;
 import de.persosim.simulator.platform.Iso7816;
@@ -401,7 +403,7 @@ public abstract class AbstractPaceProtocol extends AbstractProtocolStateMachine
 		log(this, "key length k in Bytes is " + keySizeInBytes + ", block size in Bytes is " + blockSizeInBytes + " --> nonce s must be of smallest length l in Bytes, l being a multiple of the block size, such that l<=k", TRACE);
 		
 		this.piccsPlainNonceS = new byte[nonceSizeInBytes];
-		this.secureRandom.nextBytes(this.piccsPlainNonceS);
+		SessionKeyCache.getSecureRandom(this.secureRandom, SessionKeyCache.PURPOSE_PACE_NONCE).nextBytes(this.piccsPlainNonceS);
 		
 		log(this, "new (plain) nonce s of byte length " + this.piccsPlainNonceS.length + " is " + HexString.encode(this.piccsPlainNonceS), TRACE);
 		
@@ -495,7 +497,7 @@ public abstract class AbstractPaceProtocol extends AbstractProtocolStateMachine
 		//get commandDataContainer
 		TlvDataObjectContainer commandData = processingData.getCommandApdu().getCommandDataObjectContainer();
 						
-		TlvDataObject tlvObject = commandData.getTlvDataObject(new TlvPath(new TlvTag((byte) 0x7C), new TlvTag((byte) 0x83)));
+		TlvDataObject tlvObject = commandData.getTlvDataObject(new TlvPath(TlvTag.valueOf((byte) 0x7C), TlvTag.valueOf((byte) 0x83)));
 		byte[] rawKeyPlain = tlvObject.getValueField();
 		
 		log(this, "PCD's public raw key of " + rawKeyPlain.length + " bytes length is: " + HexString.encode(rawKeyPlain), TRACE);
@@ -560,13 +562,10 @@ public abstract class AbstractPaceProtocol extends AbstractProtocolStateMachine
 			
 			log(this, "shared secret of byte length " + sharedSecret.length + " resulting from " + paceOid.getKeyAgreementName() + " key agreement is " + HexString.encode(sharedSecret), DEBUG);
 			
-			KeyDerivationFunction kdf = new KeyDerivationFunction(paceOid.getSymmetricCipherKeyLengthInBytes());
+			SessionKeys sessionKeys = SessionKeyCache.deriveSessionKeys(this.cryptoSupport, paceOid.getSymmetricCipherKeyLengthInBytes(), sharedSecret, null);
 			
-			byte[] keyMaterialMAC = kdf.deriveMAC(sharedSecret);
-			byte[] keyMaterialENC = kdf.deriveENC(sharedSecret);
-			
-			this.secretKeySpecMAC = this.cryptoSupport.generateSecretKeySpecMac(keyMaterialMAC);
-			this.secretKeySpecENC = this.cryptoSupport.generateSecretKeySpecCipher(keyMaterialENC);
+			this.secretKeySpecMAC = sessionKeys.getKeyMac();
+			this.secretKeySpecENC = sessionKeys.getKeyEnc();
 			
 			log(this, "final " + secretKeySpecENC.getAlgorithm() + " symmetric key material ENC is " + HexString.encode(secretKeySpecENC.getEncoded()), DEBUG);
 			log(this, "final " + secretKeySpecMAC.getAlgorithm() + " symmetric key material MAC is " + HexString.encode(secretKeySpecMAC.getEncoded()), DEBUG);
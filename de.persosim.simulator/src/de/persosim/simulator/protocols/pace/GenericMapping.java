@@ -11,6 +11,7 @@ import java.security.spec.InvalidKeySpecException;
 
 import de.persosim.simulator.crypto.CryptoUtil;
 import de.persosim.simulator.crypto.DomainParameterSet;
+import de.persosim.simulator.crypto.SessionKeyCache;
 
 /**
  * This class performs the generic, i.e. non key agreement specific parts of generic mapping.
@@ -22,7 +23,7 @@ public abstract class GenericMapping implements Mapping {
 	
 	@Override
 	public MappingResult performMapping(DomainParameterSet domainParametersUnmapped, byte[] sNonce, byte[] publicKeyComponentPcd) throws NoSuchAlgorithmException, NoSuchProviderException, InvalidAlgorithmParameterException, InvalidKeySpecException {
-		KeyPair keyPairPiccUnmapped = CryptoUtil.generateKeyPair(domainParametersUnmapped, new SecureRandom());
+		KeyPair keyPairPiccUnmapped = CryptoUtil.generateKeyPair(domainParametersUnmapped, SessionKeyCache.getSecureRandom(new SecureRandom(), SessionKeyCache.PURPOSE_PACE_MAPPING));
 		PublicKey publicKeyPcdUnMapped = domainParametersUnmapped.reconstructPublicKey(publicKeyComponentPcd);
 		
 		byte[] secretPointOfKeyAgreementEncoding = performKeyAgreement(domainParametersUnmapped, keyPairPiccUnmapped.getPrivate(), publicKeyPcdUnMapped);
@@ -4,7 +4,7 @@ import java.security.InvalidParameterException;
 import java.util.Arrays;
 
 import de.persosim.simulator.crypto.CryptoSupport;
-import de.persosim.simulator.crypto.CryptoSupportAes;
+import de.persosim.simulator.crypto.CryptoSupportSelector;
 import de.persosim.simulator.crypto.CryptoUtil;
 import de.persosim.simulator.protocols.Oid;
 import de.persosim.simulator.utils.HexString;
@@ -112,12 +112,7 @@ public class PaceOid extends Oid implements Pace {
 		String cipherName = getSymmetricCipherAlgorithmNameModePadding();
 		String macName = getMacName();
 		
-		switch (CryptoUtil.getCipherNameAsString(cipherName)) {
-		case "AES":
-			return new CryptoSupportAes(cipherName, macName);
-		default:
-			throw new IllegalArgumentException("algorithm " + cipherName + " is unknown or not supported");
-		}
+		return CryptoSupportSelector.getCryptoSupport(cipherName, macName);
 	}
 	
 	/*----------------------------------------------------------------*/
@@ -6,6 +6,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 
 import de.persosim.simulator.platform.CommandProcessor;
+import de.persosim.simulator.platform.Iso7816;
 import de.persosim.simulator.processing.ProcessingData;
 import de.persosim.simulator.processing.UpdatePropagation;
 
@@ -16,6 +17,9 @@ import de.persosim.simulator.processing.UpdatePropagation;
  * active protocols can query the SecStatus through a facade provided during
  * protocol initialization and modify by adding UpdatePropagations to the
  * ProcessingData.
+ * <p/>
+ * All contexts but {@link SecContext#GLOBAL} are bound to the logical channel
+ * selected via {@link #selectLogicalChannel(byte)}.
  * 
  * @author amay
  * 
@@ -28,6 +32,13 @@ public class SecStatus {
 
 	EnumMap<SecContext, HashMap<Class<? extends SecMechanism>, SecMechanism>> contexts = new EnumMap<>(
 			SecContext.class);
+	
+	/**
+	 * Contexts of the logical channels not addressed by the current APDU. The
+	 * {@link SecContext#GLOBAL} context is shared between all channels.
+	 */
+	HashMap<Byte, EnumMap<SecContext, HashMap<Class<? extends SecMechanism>, SecMechanism>>> channelContexts = new HashMap<>();
+	byte currentChannel = Iso7816.CH_DEFAULT;
 
 	public SecStatus() {
 		reset();
@@ -39,6 +50,56 @@ public class SecStatus {
 			contexts.put(curSecContext,
 					new HashMap<Class<? extends SecMechanism>, SecMechanism>());
 		}
+		channelContexts.clear();
+		currentChannel = Iso7816.CH_DEFAULT;
+	}
+	
+	/**
+	 * Makes the security status of the given logical channel the current one.
+	 * The status of the previously addressed channel is kept.
+	 * 
+	 * @param channel
+	 *            the logical channel addressed by the current APDU
+	 */
+	public void selectLogicalChannel(byte channel) {
+		if (channel == currentChannel) {
+			return;
+		}
+		
+		channelContexts.put(currentChannel, contexts);
+		EnumMap<SecContext, HashMap<Class<? extends SecMechanism>, SecMechanism>> newContexts = channelContexts.remove(channel);
+		contexts = (newContexts != null) ? newContexts : createChannelContexts();
+		currentChannel = channel;
+	}
+	
+	/**
+	 * Discards the channel specific security status of the given logical
+	 * channel. The {@link SecContext#GLOBAL} context is not modified.
+	 * 
+	 * @param channel
+	 *            the logical channel to reset
+	 */
+	public void resetLogicalChannel(byte channel) {
+		if (channel == currentChannel) {
+			contexts = createChannelContexts();
+		} else {
+			channelContexts.remove(channel);
+		}
+	}
+	
+	/**
+	 * @return new empty contexts, sharing the current global context
+	 */
+	private EnumMap<SecContext, HashMap<Class<? extends SecMechanism>, SecMechanism>> createChannelContexts() {
+		EnumMap<SecContext, HashMap<Class<? extends SecMechanism>, SecMechanism>> newContexts = new EnumMap<>(SecContext.class);
+		for (SecContext curSecContext : SecContext.values()) {
+			if (curSecContext == SecContext.GLOBAL) {
+				newContexts.put(curSecContext, contexts.get(SecContext.GLOBAL));
+			} else {
+				newContexts.put(curSecContext, new HashMap<Class<? extends SecMechanism>, SecMechanism>());
+			}
+		}
+		return newContexts;
 	}
 	
 	/**
@@ -6,28 +6,32 @@ import static de.persosim.simulator.utils.PersoSimLogger.TRACE;
 import static de.persosim.simulator.utils.PersoSimLogger.log;
 import static de.persosim.simulator.utils.PersoSimLogger.logException;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.security.InvalidKeyException;
 import java.util.Arrays;
 import java.util.LinkedList;
 
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+
 import de.persosim.simulator.apdu.CommandApdu;
 import de.persosim.simulator.apdu.IsoSecureMessagingCommandApdu;
 import de.persosim.simulator.apdu.ResponseApdu;
 import de.persosim.simulator.crypto.CryptoSupport;
 import de.persosim.simulator.crypto.CryptoUtil;
+import de.persosim.simulator.crypto.PaddedMac;
 import de.persosim.simulator.platform.Iso7816;
 import de.persosim.simulator.platform.Layer;
+import de.persosim.simulator.platform.PlatformUtil;
 import de.persosim.simulator.processing.UpdatePropagation;
 import de.persosim.simulator.secstatus.SecStatusEventUpdatePropagation;
 import de.persosim.simulator.secstatus.SecurityEvent;
-import de.persosim.simulator.tlv.PrimitiveTlvDataObject;
-import de.persosim.simulator.tlv.TlvDataObject;
 import de.persosim.simulator.tlv.TlvDataObjectContainer;
+import de.persosim.simulator.tlv.TlvLength;
+import de.persosim.simulator.tlv.TlvParsingLimits;
+import de.persosim.simulator.tlv.TlvReader;
 import de.persosim.simulator.tlv.TlvTag;
+import de.persosim.simulator.tlv.TlvValidator;
 import de.persosim.simulator.tlv.TlvValue;
-import de.persosim.simulator.utils.HexString;
-import de.persosim.simulator.utils.Utils;
 
 /**
  * This layer implements secure messaging according to ISO7816-4. Ascending
@@ -42,16 +46,39 @@ import de.persosim.simulator.utils.Utils;
  * 
  */
 public class SecureMessaging extends Layer {
-	public static final TlvTag TAG_87 = new TlvTag((byte) 0x87);
-	public static final TlvTag TAG_97 = new TlvTag((byte) 0x97);
-	public static final TlvTag TAG_99 = new TlvTag((byte) 0x99);
-	public static final TlvTag TAG_8E = new TlvTag((byte) 0x8E);
+	public static final TlvTag TAG_87 = TlvTag.valueOf((byte) 0x87);
+	public static final TlvTag TAG_97 = TlvTag.valueOf((byte) 0x97);
+	public static final TlvTag TAG_99 = TlvTag.valueOf((byte) 0x99);
+	public static final TlvTag TAG_8E = TlvTag.valueOf((byte) 0x8E);
+	
+	/* optional executor shared by all secure messaging layers within the JVM */
+	private static volatile SmCryptoExecutor cryptoExecutor = null;
 	
 	/*--------------------------------------------------------------------------------*/
 	private SmDataProvider dataProvider = null;
 	
+	/* SmDataProviders of the logical channels not addressed by the current APDU, indexed by channel number */
+	private SmDataProvider[] channelDataProviders = new SmDataProvider[NUMBER_OF_LOGICAL_CHANNELS];
+	private byte currentChannel = CH_DEFAULT;
+	
 	protected CryptoSupport cryptoSupport;
 	
+	/*
+	 * Buffers reused for every APDU of a secure messaging session. The command
+	 * data of incoming APDUs is decrypted in place within smBuffer.
+	 */
+	private byte[] smBuffer = new byte[0];
+	private int smBufferLength;
+	private byte[] macBuffer = new byte[0];
+	
+	/* data objects located within smBuffer */
+	private final SmDataObject do87 = new SmDataObject();
+	private final SmDataObject do97 = new SmDataObject();
+	private final SmDataObject do8E = new SmDataObject();
+	
+	/* reused for the incremental MAC computation over the data objects */
+	private final PaddedMac paddedMac = new PaddedMac();
+	
 	/*--------------------------------------------------------------------------------*/
 	
 	public SecureMessaging(int id) {
@@ -63,16 +90,63 @@ public class SecureMessaging extends Layer {
 		return "SecureMessaging";
 	}
 	
+	/**
+	 * Sets the executor that performs the cryptographic operations of all
+	 * secure messaging layers, e.g. when many cards are simulated within one
+	 * JVM. By default no executor is set and the operations are performed by
+	 * the thread processing the APDU.
+	 * @param executor the executor to be used, may be null
+	 */
+	public static void setCryptoExecutor(SmCryptoExecutor executor) {
+		cryptoExecutor = executor;
+	}
+	
+	/**
+	 * @return the executor set by {@link #setCryptoExecutor(SmCryptoExecutor)}, may be null
+	 */
+	public static SmCryptoExecutor getCryptoExecutor() {
+		return cryptoExecutor;
+	}
+	
 	/*--------------------------------------------------------------------------------*/
 	
 	@Override
 	public void powerOn() {
 		super.powerOn();
 		discardSecureMessagingSession();
+		Arrays.fill(channelDataProviders, null);
+		currentChannel = CH_DEFAULT;
+	}
+	
+	@Override
+	public void resetLogicalChannel(byte channel) {
+		if (channel == currentChannel) {
+			dataProvider = null;
+		} else {
+			channelDataProviders[channel] = null;
+		}
+		log(this, "discarded secure messaging session of logical channel " + channel, TRACE);
+	}
+	
+	/**
+	 * Make the secure messaging session of the given logical channel the
+	 * current one, the session of the previously addressed channel is kept.
+	 * 
+	 * @param channel the logical channel addressed by the current APDU
+	 */
+	private void selectLogicalChannel(byte channel) {
+		if (channel != currentChannel) {
+			channelDataProviders[currentChannel] = dataProvider;
+			dataProvider = channelDataProviders[channel];
+			channelDataProviders[channel] = null;
+			currentChannel = channel;
+		}
 	}
 	
 	@Override
 	public void processAscending() {
+		selectLogicalChannel(PlatformUtil.getLogicalChannel(processingData.getCommandApdu()));
+		
 		if(this.processingData.getCommandApdu() instanceof IsoSecureMessagingCommandApdu) {
 			if (((IsoSecureMessagingCommandApdu) processingData.getCommandApdu()).getSecureMessaging() != SM_OFF_OR_NO_INDICATION) {
 				if (dataProvider != null) {
@@ -108,6 +182,8 @@ public class SecureMessaging extends Layer {
 		} else {
 			log(this, "no data provider present, nothing to discard", TRACE);
 		}
+		Arrays.fill(smBuffer, (byte) 0x00);
+		Arrays.fill(macBuffer, (byte) 0x00);
 		if (processingData != null) {
 			processingData.addUpdatePropagation(this, "Inform the SecStatus about the ended secure messaging session",
 					new SecStatusEventUpdatePropagation(
@@ -169,55 +245,79 @@ public class SecureMessaging extends Layer {
 	}
 
 	/**
-	 * This method performs the SM operations for outgoing APDUs if they are needed
+	 * This method performs the SM operations for outgoing APDUs if they are needed.
+	 * The response data is padded and encrypted in place within the data field of
+	 * the SM response, the MAC is computed incrementally over the data objects.
 	 */
 	public void processOutgoingSmApdu() {
 		log(this, "START encryption of outgoing SM APDU");
 		dataProvider.nextIncoming();
 		
-		TlvDataObjectContainer container = new TlvDataObjectContainer();
+		ResponseApdu plainResponse = this.processingData.getResponseApdu();
+		short sw = plainResponse.getStatusWord();
+		TlvValue dataObject = plainResponse.getData();
+		int dataLength = (dataObject != null) ? dataObject.getLength() : 0;
+		
+		Cipher cipher = dataProvider.getCipher();
+		final int blockSize = cipher.getBlockSize();
+		int macLength = dataProvider.getMacLength();
+		
+		int paddedLength = 0;
+		int lengthOf87 = 0;
+		int valueLength87 = 0;
+		if(dataLength > 0) {
+			paddedLength = CryptoUtil.getPaddedLength(dataLength, blockSize);
+			valueLength87 = paddedLength + 1;
+			lengthOf87 = 1 + TlvLength.getMinNoOfBytesEncodingLength(valueLength87) + valueLength87;
+		}
+		
+		/* the SM response is handed over to the response APDU, so it can not be reused */
+		final byte[] smResponse = new byte[lengthOf87 + 4 + 2 + macLength];
+		int offset = 0;
 		
-		TlvValue dataObject = this.processingData.getResponseApdu().getData();
-		if((dataObject != null) && (dataObject.getLength() > 0)) {
+		if(dataLength > 0) {
 			log(this, "APDU to be sent contains data", TRACE);
 			
-			byte[] data, postpaddedData, paddedData, encryptedData;
-			PrimitiveTlvDataObject primitive87;
-			
-			data = dataObject.toByteArray();
-			
-			log(this, "data to be padded is: " + HexString.encode(data), TRACE);
-			
-			paddedData = CryptoUtil.padData(data, dataProvider.getCipher().getBlockSize());
-			
-			log(this, "padded data is: " + HexString.encode(paddedData), DEBUG);
-			log(this, "block size is: " + dataProvider.getCipher().getBlockSize(), DEBUG);
+			smResponse[offset++] = (byte) 0x87;
+			offset = TlvLength.writeLengthEncoding(valueLength87, smResponse, offset);
+			smResponse[offset++] = (byte) 0x01;
 			
-			encryptedData = CryptoSupport.encrypt(dataProvider.getCipher(), paddedData, dataProvider.getKeyEnc(), dataProvider.getCipherIv());
-			log(this, "encrypted data is: " + HexString.encode(encryptedData), DEBUG);
+			dataObject.writeTo(smResponse, offset);
+			CryptoUtil.padData(smResponse, offset, dataLength, blockSize);
+			log(this, "block size is: " + blockSize, DEBUG);
 			
-			postpaddedData = new byte[paddedData.length + 1];
-			System.arraycopy(encryptedData, 0, postpaddedData, 1, encryptedData.length);
-			postpaddedData[0] = (byte) 0x01;
-			
-			primitive87 = new PrimitiveTlvDataObject(TAG_87, postpaddedData);
-			container.addTlvDataObject(primitive87);
+			encrypt(smResponse, offset, paddedLength);
+			offset += paddedLength;
 		} else{
 			log(this, "APDU to be sent contains NO data", DEBUG);
 		}
 		
 		//add status word
-		byte[] sw = Utils.toUnsignedByteArray(this.processingData.getResponseApdu().getStatusWord());
-		PrimitiveTlvDataObject primitive99 = new PrimitiveTlvDataObject(TAG_99, sw);
-		container.addTlvDataObject(primitive99);
+		smResponse[offset++] = (byte) 0x99;
+		smResponse[offset++] = (byte) 0x02;
+		smResponse[offset++] = (byte) (sw >>> 8);
+		smResponse[offset++] = (byte) sw;
 		
 		//add MAC
-		byte[] macedData = this.padAndMac(container);
-		PrimitiveTlvDataObject primitive8E = new PrimitiveTlvDataObject(TAG_8E, macedData);
-		container.addTlvDataObject(primitive8E);
+		final int macInputLength = offset;
+		SmCryptoExecutor executor = cryptoExecutor;
+		if(executor == null) {
+			computeResponseMac(smResponse, macInputLength, blockSize);
+		} else{
+			executor.execute(dataProvider, new Runnable() {
+				@Override
+				public void run() {
+					computeResponseMac(smResponse, macInputLength, blockSize);
+				}
+			});
+		}
+		
+		smResponse[offset++] = (byte) 0x8E;
+		smResponse[offset++] = (byte) macLength;
+		System.arraycopy(macBuffer, 0, smResponse, offset, macLength);
 		
 		//create and propagate response APDU
-		ResponseApdu resp = new ResponseApdu(container, this.processingData.getResponseApdu().getStatusWord());
+		ResponseApdu resp = new ResponseApdu(TlvDataObjectContainer.wrap(smResponse), sw);
 		this.processingData.updateResponseAPDU(this, "Encrypted outgoing SM APDU", resp);
 	}
 	
@@ -229,17 +329,28 @@ public class SecureMessaging extends Layer {
 		dataProvider.nextIncoming();
 		CommandApdu smApdu = processingData.getCommandApdu();
 		
-		log(this, "Incoming SM APDU is: " + smApdu.toString(), DEBUG);
 		log(this, "Incoming SM APDU is ISO case: " + smApdu.getIsoCase(), DEBUG);
 		
-		try {
-			//create new CommandAPDU
-			CommandApdu plainCommand = extractPlainTextAPDU();
-			log(this, "plain text APDU is " + plainCommand, DEBUG);
+		//the command data is copied and parsed only once for MAC verification and decryption
+		loadSmData();
+		if (!TlvValidator.isValidEncoding(smBuffer, 0, smBufferLength, false, TlvParsingLimits.getCurrent().getMaxDepth())) {
+			log(this, "SM APDU does not contain valid BER-TLV encoded data", ERROR);
 			
-			if (verifyMac()) {
+			//create and propagate response APDU without parsing the data
+			ResponseApdu resp = new ResponseApdu(Iso7816.SW_6988_INCORRECT_SM_DATA_OBJECTS);
+			processingData.updateResponseAPDU(this, "decoding sm APDU failed", resp);
+			return;
+		}
+		locateSmDataObjects();
+		
+		try {
+			//the MAC is verified before any data is decrypted
+			if (verifyLoadedMac()) {
 				log(this, "verification of mac: correct", DEBUG);
 				
+				//create new CommandAPDU
+				CommandApdu plainCommand = extractLoadedPlainTextApdu();
+				
 				//propagate new CommandAPDU
 				processingData.updateCommandApdu(this, "SM APDU extracted", plainCommand);
 				
@@ -263,14 +374,76 @@ public class SecureMessaging extends Layer {
 	}
 	
 	/**
-	 * This method returns a plain APDU.
+	 * Copies the command data of the current SM APDU into the reused buffer,
+	 * the data objects need to be located afterwards.
+	 */
+	private void loadSmData() {
+		TlvValue smData = processingData.getCommandApdu().getCommandData();
+		smBufferLength = (smData != null) ? smData.getLength() : 0;
+		
+		if(smBuffer.length < smBufferLength) {
+			Arrays.fill(smBuffer, (byte) 0x00);
+			smBuffer = new byte[smBufferLength];
+		}
+		
+		if(smData != null) {
+			smData.writeTo(smBuffer, 0);
+		}
+		
+		do87.present = false;
+		do97.present = false;
+		do8E.present = false;
+	}
+	
+	/**
+	 * Locates the first occurrences of the data objects 87, 97 and 8E on the
+	 * top level of the command data loaded into the reused buffer.
+	 */
+	private void locateSmDataObjects() {
+		TlvReader reader = new TlvReader(smBuffer, 0, smBufferLength);
+		
+		while(reader.next()) {
+			if(!do87.present && reader.matches(TAG_87)) {
+				do87.set(reader);
+			} else if(!do97.present && reader.matches(TAG_97)) {
+				do97.set(reader);
+			} else if(!do8E.present && reader.matches(TAG_8E)) {
+				do8E.set(reader);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the ISO case of the plain APDU as indicated by the presence of
+	 * the data objects 87 and 97.
+	 */
+	private int getIsoCaseOfPlainApdu() {
+		if(!do87.present) {
+			return do97.present ? 2 : 1;
+		} else{
+			return do97.present ? 4 : 3;
+		}
+	}
+	
+	/**
+	 * This method returns a plain APDU. The encrypted data is decrypted in place
+	 * within the reused buffer and copied once into the plain APDU.
 	 * @return a byte array representation of an SM secured APDU
 	 */
 	public CommandApdu extractPlainTextAPDU() {
-		TlvDataObject tlvObject87, tlvObject8E, tlvObject97;
-		byte[] encryptedData, paddedData, data, le, plainApduCommandData, dbgIv;
-		int isoCaseOfPlainAPDU;
-		ByteArrayOutputStream apduStream;
+		loadSmData();
+		locateSmDataObjects();
+		return extractLoadedPlainTextApdu();
+	}
+	
+	/**
+	 * Extracts the plain APDU from the command data already loaded into the
+	 * reused buffer, see {@link #extractPlainTextAPDU()}.
+	 */
+	private CommandApdu extractLoadedPlainTextApdu() {
+		int isoCaseOfPlainAPDU, dataOffset, dataLength, leLength;
+		byte le1, le2;
+		boolean isExtendedLength;
 		
 		log(this, "started extracting SM APDU", TRACE);
 		
@@ -282,11 +455,7 @@ public class SecureMessaging extends Layer {
 			throw new IllegalArgumentException("SM APDU is expected to be an IsoSecureMessagingCommandApdu");
 		}
 		
-		TlvDataObjectContainer constructedCommandDataField = processingData.getCommandApdu().getCommandDataObjectContainer();
-		tlvObject8E = constructedCommandDataField .getTlvDataObject(TAG_8E);
-		log(this, "TLV object 8E is: " + tlvObject8E, TRACE);
-		
-		if(tlvObject8E == null) {
+		if(!do8E.present) {
 			//create and propagate response APDU
 			ResponseApdu resp = new ResponseApdu(Iso7816.SW_6987_EXPECTED_SM_DATA_OBJECTS_MISSING);
 			processingData.updateResponseAPDU(this, "SM APDU is expected to contain tag 8E (mac)", resp);
@@ -294,266 +463,304 @@ public class SecureMessaging extends Layer {
 			throw new IllegalArgumentException("SM APDU is expected to contain tag 8E (mac)");
 		}
 		
-		tlvObject87 = constructedCommandDataField.getTlvDataObject(TAG_87);
-		tlvObject97 = constructedCommandDataField.getTlvDataObject(TAG_97);
+		isoCaseOfPlainAPDU = getIsoCaseOfPlainApdu();
+		
+		dataOffset = 0;
+		dataLength = -1;
+		leLength = 0;
+		le1 = 0;
+		le2 = 0;
 		
-		if(tlvObject87 == null) {
-			if(tlvObject97 == null) {
-				isoCaseOfPlainAPDU = 1;
-			} else{
-				isoCaseOfPlainAPDU = 2;
+		// extract data if present
+		if(isoCaseOfPlainAPDU > 2) {
+			if(do87.valueLength < 1) {
+				throw new IllegalArgumentException("SM APDU is expected to contain the padding content indicator in tag 87");
 			}
-		} else{
-			if(tlvObject97 == null) {
-				isoCaseOfPlainAPDU = 3;
-			} else{
-				isoCaseOfPlainAPDU = 4;
+			
+			// skip padding content indicator
+			dataOffset = do87.valueOffset + 1;
+			int encryptedLength = do87.valueLength - 1;
+			
+			decrypt(smBuffer, dataOffset, encryptedLength);
+			dataLength = CryptoUtil.unpadData(smBuffer, dataOffset, encryptedLength, dataProvider.getCipher().getBlockSize());
+		}
+		
+		// extract le if present
+		if((isoCaseOfPlainAPDU == 2) || (isoCaseOfPlainAPDU == 4)) {
+			leLength = do97.valueLength;
+			
+			if ((leLength < 1) || (leLength > 2)) {
+				throw new IllegalArgumentException("SM APDU is expected to contain an L_e of 1 or 2 bytes in tag 97");
 			}
+			
+			le1 = smBuffer[do97.valueOffset];
+			le2 = smBuffer[do97.valueOffset + leLength - 1];
+		}
+		
+		/*
+		 * The plain APDU uses extended length if the SM APDU does or if the
+		 * protected content can not be expressed with short length fields,
+		 * i.e. more than 255 bytes of data or a two byte L_e in tag 97.
+		 */
+		isExtendedLength = processingData.getCommandApdu().isExtendedLength()
+				|| (dataLength > MAX_NC_SHORT)
+				|| (leLength == 2);
+		
+		int plainLength = 0;
+		if(isExtendedLength && ((dataLength >= 0) || (leLength > 0))) {
+			plainLength++;
+		}
+		if(dataLength >= 0) {
+			plainLength += (isExtendedLength ? 2 : 1) + dataLength;
+		}
+		if(leLength > 0) {
+			plainLength += isExtendedLength ? 2 : 1;
 		}
 		
-		apduStream = new ByteArrayOutputStream();
+		byte[] plainApduCommandData = new byte[plainLength];
+		int offset = 0;
+		
 		// append extendedLengthIndicator if needed
-		if (processingData.getCommandApdu().isExtendedLength()) {
-			apduStream.write(0x00);
+		if (isExtendedLength && (plainLength > 0)) {
+			plainApduCommandData[offset++] = 0x00;
 		}
 		
 		// append data if present 
-		if(isoCaseOfPlainAPDU > 2) {
-			log(this, "TLV object 87 is: " + tlvObject87);
-			encryptedData = this.getEncryptedDataFromFormattedEncryptedData(tlvObject87);
-			log(this, "encrypted data is: " + HexString.encode(encryptedData));
-			log(this, "used cipher iv is     : " + HexString.encode(dataProvider.getCipherIv().getIV()));
-			
-			dbgIv = CryptoSupport.decryptWithIvZero(dataProvider.getCipher(), dataProvider.getCipherIv().getIV(), dataProvider.getKeyEnc());
-			log(this, "decrypted cipher iv is: " + HexString.encode(dbgIv));
-			
-			paddedData = CryptoSupport.decrypt(dataProvider.getCipher(), encryptedData, dataProvider.getKeyEnc(), dataProvider.getCipherIv());
-			log(this, "padded data is: " + HexString.encode(paddedData));
-			
-			data = this.unpadPlainTextData(paddedData);
-			log(this, "plain text data is: " + HexString.encode(data));
-			
-			try {
-				if (processingData.getCommandApdu().isExtendedLength()) {
-					apduStream.write(Utils.toUnsignedByteArray((short) data.length));
-				} else {			
-					apduStream.write(data.length);
-				}
-			
-				apduStream.write(data);
-			} catch (IOException e) {
-				logException(this, e);
+		if(dataLength >= 0) {
+			if (isExtendedLength) {
+				plainApduCommandData[offset++] = (byte) (dataLength >>> 8);
 			}
-			
+			plainApduCommandData[offset++] = (byte) dataLength;
+			System.arraycopy(smBuffer, dataOffset, plainApduCommandData, offset, dataLength);
+			offset += dataLength;
 		}
 		
 		// append le if present
-		if((isoCaseOfPlainAPDU == 2) || (isoCaseOfPlainAPDU == 4)) {
-			log(this, "TLV object 97 is: " + tlvObject97, TRACE);
-			le = tlvObject97.getValueField();
-			
+		if(leLength > 0) {
 			//ensure correct length of le field
-			if (processingData.getCommandApdu().isExtendedLength()) {
-				if (le.length == 1) {
-					le = new byte[]{0, le[0]};
+			if (isExtendedLength) {
+				if (leLength == 1) {
+					if ((le1 == 0) && !processingData.getCommandApdu().isExtendedLength()) {
+						// short L_e '00' within a short SM APDU encodes 256
+						le1 = 1;
+					} else {
+						le1 = 0;
+					}
 				}
+				plainApduCommandData[offset++] = le1;
 			}
-			
-			try {
-				
-				apduStream.write(le);
-			} catch (IOException e) {
-				logException(this, e);
-			}
+			plainApduCommandData[offset++] = le2;
+		}
+		
+		// the plain text must not remain within the buffer
+		if(dataLength > 0) {
+			Arrays.fill(smBuffer, dataOffset, dataOffset + dataLength, (byte) 0x00);
 		}
 		
-		plainApduCommandData = apduStream.toByteArray();
 		CommandApdu result = ((IsoSecureMessagingCommandApdu)this.processingData.getCommandApdu()).rewrapApdu(Iso7816.SM_OFF_OR_NO_INDICATION, plainApduCommandData);
 		log(this, "completed extracting SM APDU", TRACE);
 		return result;
 	}
 	
 	/**
-	 * This method performs the mac verification for an SM secured APDU.
+	 * This method performs the mac verification for an SM secured APDU. The MAC
+	 * is computed incrementally over header, padding and data objects.
 	 * @return the result of mac verification: true iff verified, false otherwise
 	 */
 	public boolean verifyMac() {
-		TlvDataObject tlvObject87, tlvObject8E, tlvObject97;
-		byte[] extractedMac, tlv97Plain, tlv87Plain;
-		byte[] header, paddingHeader, paddingMacInput, macResult;
-		int paddingLengthHeader, blockSize, lengthOfMacInputData, paddingLengthMacInput;
-		ByteArrayOutputStream macInputStream;
-		int isoCaseOfPlainAPDU;
-		
+		loadSmData();
+		locateSmDataObjects();
+		return verifyLoadedMac();
+	}
+	
+	/**
+	 * Verifies the MAC of the command data already loaded into the reused
+	 * buffer, see {@link #verifyMac()}.
+	 */
+	private boolean verifyLoadedMac() {
 		log(this, "started verifying SM APDU", TRACE);
 		
-		header = this.processingData.getCommandApdu().getHeader();
+		final CommandApdu smApdu = this.processingData.getCommandApdu();
 		
-		if(processingData.getCommandApdu().getIsoCase() != ISO_CASE_4) {
+		if(smApdu.getIsoCase() != ISO_CASE_4) {
 			throw new IllegalArgumentException("SM APDU is expected to be ISO case 4");
 		}
 		
-		TlvDataObjectContainer constructedCommandDataField = processingData.getCommandApdu().getCommandDataObjectContainer();
-		tlvObject8E = constructedCommandDataField.getTlvDataObject(TAG_8E);
-		log(this, "TLV object 8E is: " + tlvObject8E, TRACE);
-		
-		if(tlvObject8E == null) {
+		if(!do8E.present) {
 			throw new IllegalArgumentException("SM APDU is expected to contain tag 8E (mac)");
 		}
 		
-		tlvObject87 = constructedCommandDataField.getTlvDataObject(TAG_87);
-		tlvObject97 = constructedCommandDataField.getTlvDataObject(TAG_97);
-		
-		if(tlvObject87 == null) {
-			if(tlvObject97 == null) {
-				isoCaseOfPlainAPDU = 1;
-			} else{
-				isoCaseOfPlainAPDU = 2;
-			}
-		} else{
-			if(tlvObject97 == null) {
-				isoCaseOfPlainAPDU = 3;
-			} else{
-				isoCaseOfPlainAPDU = 4;
-			}
-		}
-		
-		if((isoCaseOfPlainAPDU == 2) || (isoCaseOfPlainAPDU == 4)) {
-			log(this, "TLV object 97 is: " + tlvObject97, TRACE);
-		}
-		
-		if(isoCaseOfPlainAPDU > 2) {
-			log(this, "TLV object 87 is: " + tlvObject87, TRACE);
-		}
+		final int isoCaseOfPlainAPDU = getIsoCaseOfPlainApdu();
 		
 		/* verify mac */
 		
-		blockSize = dataProvider.getCipher().getBlockSize();
-		macInputStream = new ByteArrayOutputStream();
-		
-		/* header must be padded to match block size */
-		paddingLengthHeader = blockSize - header.length;
-		paddingHeader = new byte[paddingLengthHeader];
-		Arrays.fill(paddingHeader, (byte) 0x00);
-		paddingHeader[0] = (byte) 0x80;
+		final int blockSize = dataProvider.getCipher().getBlockSize();
+		SmCryptoExecutor executor = cryptoExecutor;
+		if(executor == null) {
+			computeCommandMac(smApdu, isoCaseOfPlainAPDU, blockSize);
+		} else{
+			executor.execute(dataProvider, new Runnable() {
+				@Override
+				public void run() {
+					computeCommandMac(smApdu, isoCaseOfPlainAPDU, blockSize);
+				}
+			});
+		}
+		int macLength = dataProvider.getMacLength();
 		
-		try {
-			macInputStream.write(header);
-			macInputStream.write(paddingHeader);
-		} catch (IOException e) {
-			logException(this, e);
+		if(isEqual(macBuffer, macLength, smBuffer, do8E.valueOffset, do8E.valueLength)) {
+			log(this, "mac match", DEBUG);
+			return true;
+		} else {
+			log(this, "mac mismatch", ERROR);
+			return false;
 		}
+	}
+	
+	/**
+	 * Computes the MAC of the SM response, the result is stored within the
+	 * reused MAC buffer.
+	 */
+	private void computeResponseMac(byte[] smResponse, int macInputLength, int blockSize) {
+		PaddedMac mac = startMac(blockSize);
+		mac.update(smResponse, 0, macInputLength);
+		finishMac(mac);
+	}
+	
+	/**
+	 * Computes the MAC of the SM command loaded into the reused buffer, the
+	 * result is stored within the reused MAC buffer.
+	 */
+	private void computeCommandMac(CommandApdu smApdu, int isoCaseOfPlainAPDU, int blockSize) {
+		PaddedMac mac = startMac(blockSize);
 		
-		lengthOfMacInputData = header.length + paddingHeader.length;
+		/* header is padded separately */
+		mac.update(smApdu.getCla()).update(smApdu.getIns()).update(smApdu.getP1()).update(smApdu.getP2()).pad();
 		
 		if(isoCaseOfPlainAPDU > 2) {
-			tlv87Plain = tlvObject87.toByteArray();
-			lengthOfMacInputData += tlv87Plain.length;
-			
-			try {
-				macInputStream.write(tlv87Plain);
-			} catch (IOException e) {
-				logException(this, e);
-			}
+			mac.update(smBuffer, do87.offset, do87.length);
 		}
 		
 		if((isoCaseOfPlainAPDU == 2) || (isoCaseOfPlainAPDU == 4)) {
-			tlv97Plain = tlvObject97.toByteArray();
-			lengthOfMacInputData += tlvObject97.getLength();
-			
-			try {
-				macInputStream.write(tlv97Plain);
-			} catch (IOException e) {
-				logException(this, e);
-			}
+			mac.update(smBuffer, do97.offset, do97.length);
 		}
 		
-		if(isoCaseOfPlainAPDU > 1) {
-			/* mac input must be padded to match block size */
-			log(this, "length of mac input data is " + lengthOfMacInputData + " bytes", TRACE);
-			paddingLengthMacInput = blockSize - ((lengthOfMacInputData + 1) % blockSize) + 1;
-			log(this, "mac input data needs " + paddingLengthMacInput + " bytes padding to match multiple of blockSize " + blockSize, TRACE);
-			paddingMacInput = new byte[paddingLengthMacInput];
-			Arrays.fill(paddingMacInput, (byte) 0x00);
-			paddingMacInput[0] = (byte) 0x80;
-			log(this, "padding of mac input data is " + HexString.encode(paddingMacInput), TRACE);
-			
-			try {
-				macInputStream.write(paddingMacInput);
-			} catch (IOException e) {
-				logException(this, e);
-			}
+		/* data objects are padded implicitly, if present */
+		finishMac(mac);
+	}
+	
+	/**
+	 * Encrypts the padded data in place, on the {@link SmCryptoExecutor} if
+	 * one is set, otherwise on the current thread.
+	 */
+	private void encrypt(final byte[] buffer, final int offset, final int length) {
+		SmCryptoExecutor executor = cryptoExecutor;
+		if(executor == null) {
+			encryptInPlace(buffer, offset, length);
+		} else{
+			executor.execute(dataProvider, new Runnable() {
+				@Override
+				public void run() {
+					encryptInPlace(buffer, offset, length);
+				}
+			});
 		}
-		
-
-		log(this, "padded mac input is " + HexString.encode(macInputStream.toByteArray()), TRACE);
-		
-		macResult = CryptoSupport.mac(dataProvider.getMac(), dataProvider.getMacAuxiliaryData(),
-				dataProvider.getCipher(), macInputStream.toByteArray(), dataProvider.getKeyMac(), dataProvider.getMacLength());
-		
-		log(this, "expected mac is : " + HexString.encode(macResult), DEBUG);
-		extractedMac = tlvObject8E.getValueField();
-		log(this, "extracted mac is: " + HexString.encode(extractedMac), DEBUG);
-		
-		if(Arrays.equals(macResult, extractedMac)) {
-			log(this, "mac match", DEBUG);
-			return true;
-		} else {
-			log(this, "mac mismatch", ERROR);
-			return false;
+	}
+	
+	/**
+	 * Decrypts the cryptogram in place, see {@link #encrypt(byte[], int, int)}.
+	 */
+	private void decrypt(final byte[] buffer, final int offset, final int length) {
+		SmCryptoExecutor executor = cryptoExecutor;
+		if(executor == null) {
+			decryptInPlace(buffer, offset, length);
+		} else{
+			executor.execute(dataProvider, new Runnable() {
+				@Override
+				public void run() {
+					decryptInPlace(buffer, offset, length);
+				}
+			});
 		}
-		
-		
 	}
 	
 	/**
-	 * This method extracts the encrypted data from the formatted encrypted data
-	 * @param tlvDataObject the formatted encrypted data
-	 * @return the encrypted data
+	 * Encrypts the padded data in place. Session bound providers use their
+	 * engines initialized once per session, otherwise the cipher is
+	 * initialized with the key and IV provided for the current APDU.
 	 */
-	public byte[] getEncryptedDataFromFormattedEncryptedData(TlvDataObject tlvDataObject) {
-		byte[] encryptedData, tlvDataObjectValuePlain;
-		
-		tlvDataObjectValuePlain = tlvDataObject.getValueField();
-		encryptedData = Arrays.copyOfRange(tlvDataObjectValuePlain, 1, tlvDataObjectValuePlain.length);
-		
-		return encryptedData;
+	private void encryptInPlace(byte[] buffer, int offset, int length) {
+		if (dataProvider instanceof SessionBoundSmDataProvider) {
+			((SessionBoundSmDataProvider) dataProvider).encrypt(buffer, offset, length);
+		} else{
+			CryptoSupport.encrypt(dataProvider.getCipher(), buffer, offset, length, dataProvider.getKeyEnc(), dataProvider.getCipherIv());
+		}
 	}
 	
 	/**
-	 * This method delegates padding of data for mac computation.
-	 * @param unpaddedData the data to be padded
-	 * @return the padded data
+	 * Decrypts the cryptogram in place, see {@link #encryptInPlace(byte[], int, int)}.
 	 */
-	public byte[] padDataForMac(byte[] unpaddedData) {
-		return CryptoUtil.padData(unpaddedData, dataProvider.getCipher().getBlockSize());
+	private void decryptInPlace(byte[] buffer, int offset, int length) {
+		if (dataProvider instanceof SessionBoundSmDataProvider) {
+			((SessionBoundSmDataProvider) dataProvider).decrypt(buffer, offset, length);
+		} else{
+			CryptoSupport.decrypt(dataProvider.getCipher(), buffer, offset, length, dataProvider.getKeyEnc(), dataProvider.getCipherIv());
+		}
 	}
 	
 	/**
-	 * This method delegates padding and mac computation of input data.
-	 * @param input the data to be padded and maced
-	 * @return the padded and maced data
+	 * Initializes the MAC of the current session and feeds the auxiliary data.
+	 * @param blockSize the block size used for padding the MAC input
+	 * @return the MAC ready to be updated with the MAC input
 	 */
-	public byte[] padAndMac(TlvDataObjectContainer input) {
-		byte[] dataToBePadded, dataToBeMaced, macedData;
+	private PaddedMac startMac(int blockSize) {
+		Mac mac;
 		
-		dataToBePadded = input.toByteArray();
-		dataToBeMaced = padDataForMac(dataToBePadded);
-		log(this, "data to be maced is: " + HexString.encode(dataToBeMaced));
+		if (dataProvider instanceof SessionBoundSmDataProvider) {
+			mac = ((SessionBoundSmDataProvider) dataProvider).getInitializedMac();
+		} else{
+			mac = dataProvider.getMac();
+			
+			try {
+				mac.init(dataProvider.getKeyMac());
+			} catch (InvalidKeyException e) {
+				throw new IllegalArgumentException(e);
+			}
+			
+			mac.update(dataProvider.getMacAuxiliaryData());
+		}
 		
-		macedData = CryptoSupport.mac(dataProvider.getMac(), dataProvider.getMacAuxiliaryData(),
-				dataProvider.getCipher(), dataToBeMaced, dataProvider.getKeyMac(), dataProvider.getMacLength());
+		return paddedMac.init(mac, blockSize);
+	}
+	
+	/**
+	 * Pads the MAC input and completes the MAC computation, the result is
+	 * stored within the reused MAC buffer.
+	 * @param mac the MAC to be completed
+	 */
+	private void finishMac(PaddedMac mac) {
+		if(macBuffer.length < mac.getMacLength()) {
+			macBuffer = new byte[mac.getMacLength()];
+		}
 		
-		return macedData;
+		mac.doFinal(macBuffer, 0);
 	}
 	
 	/**
-	 * This method delegates the unpadding of padded data
-	 * @param paddedData the data to remove the padding from
-	 * @return the unpadded data
+	 * Compares the first bytes of the computed MAC with the extracted MAC in
+	 * constant time.
+	 * @return true iff the extracted MAC has the expected length and matches
 	 */
-	public byte[] unpadPlainTextData(byte[] paddedData) {
-		return unpadData(paddedData, dataProvider.getCipher().getBlockSize());
+	private static boolean isEqual(byte[] expected, int expectedLength, byte[] data, int offset, int length) {
+		if(length != expectedLength) {
+			return false;
+		}
+		
+		int diff = 0;
+		for(int i = 0; i < length; i++) {
+			diff |= expected[i] ^ data[offset + i];
+		}
+		return diff == 0;
 	}
 	
 	/**
@@ -564,35 +771,29 @@ public class SecureMessaging extends Layer {
 	 */
 	public static byte[] unpadData(byte[] paddedData, int blockSize) {
 		if(paddedData == null) {throw new NullPointerException("padded data must not be null");}
-		if(blockSize < 1) {throw new IllegalArgumentException("block size must be > 0");}
-		if(paddedData.length < 1) {throw new IllegalArgumentException("padded data is too short");}
 		
-		byte[] unpaddedData;
-		byte currentByte;
-		int offsetStart, offsetEnd;
-		
-		offsetStart = 0;
-		offsetEnd = paddedData.length - 1;
-		
-		for (int i = 0; i < blockSize; i++) {
-			currentByte = paddedData[offsetEnd];
-			
-			if(currentByte == (byte) 0x00) {
-				offsetEnd--;
-			} else{
-				if(currentByte == (byte) 0x80) {
-					unpaddedData = new byte[offsetEnd - offsetStart];
-					System.arraycopy(paddedData, offsetStart, unpaddedData, 0, unpaddedData.length);
-					return unpaddedData;
-				} else{
-					throw new IllegalArgumentException("invalid padding");
-				}
-			}
+		return Arrays.copyOf(paddedData, CryptoUtil.unpadData(paddedData, 0, paddedData.length, blockSize));
+	}
+	
+	/**
+	 * This class holds the position of a data object within the reused buffer.
+	 */
+	private static class SmDataObject {
+		boolean present;
+		int offset;
+		int length;
+		int valueOffset;
+		int valueLength;
+		
+		void set(TlvReader reader) {
+			present = true;
+			offset = reader.getOffset();
+			length = reader.getLength();
+			valueOffset = reader.getValueOffset();
+			valueLength = reader.getValueLength();
 		}
-		
-		throw new IllegalArgumentException("invalid padding");
 	}
-
+	
 	private void setDataProvider(SmDataProvider newProvider) {
 		newProvider.init(dataProvider);
 		dataProvider = newProvider;
@@ -0,0 +1,57 @@
+package de.persosim.simulator.securemessaging;
+
+import javax.crypto.Mac;
+
+/**
+ * This interface extends the {@link SmDataProvider} for providers whose keys
+ * are fixed for the whole secure messaging session, e.g. after PACE or CA.
+ *
+ * Such providers keep their cryptographic engines initialized with the session
+ * keys, so the key schedule is set up once per session instead of once per
+ * APDU. Only the IV is derived for every APDU. {@link SecureMessaging} uses
+ * these methods instead of initializing the {@link javax.crypto.Cipher} and
+ * {@link Mac} returned by the {@link SmDataProvider} for every operation.
+ *
+ * All methods operate on the currently handled APDU as defined by the calls
+ * to {@link #nextIncoming()} and {@link #nextOutgoing()}.
+ */
+public interface SessionBoundSmDataProvider extends SmDataProvider {
+
+	/**
+	 * Encrypts a range of the provided buffer in place using the IV of the
+	 * currently handled APDU.
+	 *
+	 * @param buffer
+	 *            the buffer containing the padded plain text
+	 * @param offset
+	 *            the first offset of the plain text
+	 * @param length
+	 *            the length of the plain text, must be a multiple of the block
+	 *            size
+	 */
+	public void encrypt(byte[] buffer, int offset, int length);
+
+	/**
+	 * Decrypts a range of the provided buffer in place using the IV of the
+	 * currently handled APDU.
+	 *
+	 * @param buffer
+	 *            the buffer containing the cipher text
+	 * @param offset
+	 *            the first offset of the cipher text
+	 * @param length
+	 *            the length of the cipher text, must be a multiple of the block
+	 *            size
+	 */
+	public void decrypt(byte[] buffer, int offset, int length);
+
+	/**
+	 * Return the MAC of the session ready to authenticate the currently handled
+	 * APDU, i.e. initialized with the session key and already updated with the
+	 * auxiliary data.
+	 *
+	 * @return mac
+	 */
+	public Mac getInitializedMac();
+
+}
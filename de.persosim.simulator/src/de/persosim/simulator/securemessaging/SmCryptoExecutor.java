@@ -0,0 +1,312 @@
+package de.persosim.simulator.securemessaging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class executes the cryptographic operations of many secure messaging
+ * sessions, e.g. of many simulated cards within one JVM, on a small set of
+ * dedicated worker threads.
+ * <p/>
+ * Every session is bound to one worker, so the engines a session initialized
+ * once (see {@link SessionBoundSmDataProvider}) are always used by the same
+ * thread. Workers collect pending jobs in batches and process each batch
+ * without being woken up in between. A batch is closed when it is full or
+ * when its first job has been waiting for the flush interval, so the latency
+ * added by batching is bounded by the flush interval. A flush interval of 0
+ * only batches jobs that are already pending.
+ * <p/>
+ * Submitting threads block until the batch containing their job has been
+ * processed. After {@link #shutdown()} jobs are processed by the submitting
+ * thread.
+ */
+public class SmCryptoExecutor {
+
+	private static final Job STOP = new Job(null);
+
+	private final Worker[] workers;
+	private final long flushIntervalNanos;
+	private final int maxBatchSize;
+
+	private long batchCount;
+	private long jobCount;
+	private int maxObservedBatchSize;
+	private long totalLatencyNanos;
+	private long totalProcessingNanos;
+
+	/*--------------------------------------------------------------------------------*/
+
+	/**
+	 * Creates the executor and starts its workers.
+	 * @param noOfWorkers the number of worker threads
+	 * @param flushInterval the maximum time the first job of a batch waits for further jobs
+	 * @param unit the unit of the flush interval
+	 * @param maxBatchSize the maximum number of jobs processed in one batch
+	 */
+	public SmCryptoExecutor(int noOfWorkers, long flushInterval, TimeUnit unit, int maxBatchSize) {
+		if(noOfWorkers < 1) {throw new IllegalArgumentException("number of workers must be > 0");}
+		if(flushInterval < 0) {throw new IllegalArgumentException("flush interval must be >= 0");}
+		if(maxBatchSize < 1) {throw new IllegalArgumentException("batch size must be > 0");}
+
+		this.flushIntervalNanos = unit.toNanos(flushInterval);
+		this.maxBatchSize = maxBatchSize;
+
+		workers = new Worker[noOfWorkers];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker("SM crypto worker " + i);
+			workers[i].start();
+		}
+	}
+
+	/*--------------------------------------------------------------------------------*/
+
+	/**
+	 * Executes the job on the worker bound to the session and waits for its
+	 * completion. Runtime exceptions and errors thrown by the job are
+	 * rethrown to the caller.
+	 * @param session the session the job belongs to, e.g. its {@link SmDataProvider}
+	 * @param task the job to be executed
+	 */
+	public void execute(Object session, Runnable task) {
+		if(task == null) {throw new NullPointerException("task must not be null");}
+
+		Job job = new Job(task);
+		Worker worker = workers[(System.identityHashCode(session) & Integer.MAX_VALUE) % workers.length];
+
+		worker.queue.add(job);
+
+		if(worker.stopped && worker.queue.remove(job)) {
+			/* the worker will not pick up this job anymore */
+			job.run();
+			job.complete();
+		}
+
+		job.await();
+	}
+
+	/**
+	 * Stops all workers after they processed the jobs already submitted.
+	 */
+	public void shutdown() {
+		for (Worker worker : workers) {
+			worker.queue.add(STOP);
+		}
+	}
+
+	/**
+	 * @return the statistics of all batches processed so far
+	 */
+	public synchronized Statistics getStatistics() {
+		return new Statistics(batchCount, jobCount, maxObservedBatchSize, totalLatencyNanos, totalProcessingNanos);
+	}
+
+	private synchronized void recordBatch(int size, long latencyNanos, long processingNanos) {
+		batchCount++;
+		jobCount += size;
+		maxObservedBatchSize = Math.max(maxObservedBatchSize, size);
+		totalLatencyNanos += latencyNanos;
+		totalProcessingNanos += processingNanos;
+	}
+
+	/*--------------------------------------------------------------------------------*/
+
+	/**
+	 * Snapshot of the statistics of the processed batches.
+	 */
+	public static class Statistics {
+		private final long batchCount;
+		private final long jobCount;
+		private final int maxBatchSize;
+		private final long totalLatencyNanos;
+		private final long totalProcessingNanos;
+
+		Statistics(long batchCount, long jobCount, int maxBatchSize, long totalLatencyNanos, long totalProcessingNanos) {
+			this.batchCount = batchCount;
+			this.jobCount = jobCount;
+			this.maxBatchSize = maxBatchSize;
+			this.totalLatencyNanos = totalLatencyNanos;
+			this.totalProcessingNanos = totalProcessingNanos;
+		}
+
+		/**
+		 * @return the number of processed batches
+		 */
+		public long getBatchCount() {
+			return batchCount;
+		}
+
+		/**
+		 * @return the number of processed jobs
+		 */
+		public long getJobCount() {
+			return jobCount;
+		}
+
+		/**
+		 * @return the number of jobs within the largest batch
+		 */
+		public int getMaxBatchSize() {
+			return maxBatchSize;
+		}
+
+		/**
+		 * @return the average number of jobs per batch
+		 */
+		public double getAverageBatchSize() {
+			return (batchCount == 0) ? 0 : (double) jobCount / batchCount;
+		}
+
+		/**
+		 * @return the average time in ns from submission of a job to completion of its batch
+		 */
+		public double getAverageLatencyNanos() {
+			return (jobCount == 0) ? 0 : (double) totalLatencyNanos / jobCount;
+		}
+
+		/**
+		 * @return the average time in ns needed to process a batch
+		 */
+		public double getAverageBatchProcessingNanos() {
+			return (batchCount == 0) ? 0 : (double) totalProcessingNanos / batchCount;
+		}
+
+		@Override
+		public String toString() {
+			return "batches: " + batchCount + ", jobs: " + jobCount + ", max batch size: " + maxBatchSize + ", avg batch size: " + getAverageBatchSize() + ", avg latency [ns]: " + getAverageLatencyNanos() + ", avg batch processing [ns]: " + getAverageBatchProcessingNanos();
+		}
+	}
+
+	/*--------------------------------------------------------------------------------*/
+
+	private static class Job {
+		private final Runnable task;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private final long submitted = System.nanoTime();
+		private Throwable failure;
+
+		Job(Runnable task) {
+			this.task = task;
+		}
+
+		void run() {
+			try {
+				task.run();
+			} catch (RuntimeException | Error e) {
+				failure = e;
+			}
+		}
+
+		void complete() {
+			done.countDown();
+		}
+
+		void await() {
+			boolean interrupted = false;
+
+			/* the job works on the caller's buffers, so the caller must not continue before it is done */
+			while(true) {
+				try {
+					done.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+
+			if(failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			}
+			if(failure instanceof Error) {
+				throw (Error) failure;
+			}
+		}
+	}
+
+	private class Worker extends Thread {
+		private final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+		private volatile boolean stopped = false;
+
+		Worker(String name) {
+			super(name);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			List<Job> batch = new ArrayList<>(maxBatchSize);
+
+			while(!stopped) {
+				try {
+					collectBatch(batch);
+				} catch (InterruptedException e) {
+					/* jobs already collected are processed below */
+				}
+
+				processBatch(batch);
+			}
+
+			/* process jobs submitted concurrently to the shutdown */
+			queue.drainTo(batch);
+			batch.removeAll(Collections.singleton(STOP));
+			processBatch(batch);
+		}
+
+		private void collectBatch(List<Job> batch) throws InterruptedException {
+			Job job = queue.take();
+			long deadline = job.submitted + flushIntervalNanos;
+
+			while(true) {
+				if(job == STOP) {
+					stopped = true;
+					return;
+				}
+
+				batch.add(job);
+				if(batch.size() >= maxBatchSize) {
+					return;
+				}
+
+				long remaining = deadline - System.nanoTime();
+				job = (remaining > 0) ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+				if(job == null) {
+					return;
+				}
+			}
+		}
+
+		private void processBatch(List<Job> batch) {
+			if(batch.isEmpty()) {
+				return;
+			}
+
+			long start = System.nanoTime();
+			for (Job job : batch) {
+				job.run();
+			}
+
+			long end = System.nanoTime();
+			long latency = 0;
+			for (Job job : batch) {
+				latency += end - job.submitted;
+			}
+
+			/* statistics are recorded before the submitting threads continue */
+			recordBatch(batch.size(), latency, end - start);
+
+			for (Job job : batch) {
+				job.complete();
+			}
+			batch.clear();
+		}
+	}
+
+}
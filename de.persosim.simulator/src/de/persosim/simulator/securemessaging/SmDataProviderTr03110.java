@@ -8,13 +8,21 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
+import de.persosim.simulator.crypto.CbcCipher;
 import de.persosim.simulator.crypto.Crypto;
-import de.persosim.simulator.crypto.CryptoSupport;
 import de.persosim.simulator.crypto.CryptoUtil;
 import de.persosim.simulator.crypto.SendSequenceCounter;
 import de.persosim.simulator.processing.UpdatePropagation;
 
-public class SmDataProviderTr03110 implements SmDataProvider {
+/**
+ * {@link SmDataProvider} for secure messaging according to BSI TR-03110.
+ * 
+ * The keys are fixed for the whole session, so the engines for encryption,
+ * decryption, IV derivation and message authentication are initialized once
+ * on construction. For every APDU only the IV is derived from the send
+ * sequence counter.
+ */
+public class SmDataProviderTr03110 implements SessionBoundSmDataProvider {
 	
 	@Override
 	public Class<? extends UpdatePropagation> getKey() {
@@ -32,6 +40,17 @@ public class SmDataProviderTr03110 implements SmDataProvider {
 	 */
 	private SendSequenceCounter ssc;
 	
+	/* reused buffer for the encoding of the ssc */
+	private byte[] sscEncoding;
+	
+	/* engines initialized with keyEnc, shared by encryption, decryption and IV derivation */
+	private CbcCipher cbcCipher;
+	private boolean isDesEde;
+	
+	/* IV of the currently handled APDU, derived on first use */
+	private byte[] iv;
+	private boolean ivValid;
+	
 	public SmDataProviderTr03110(SecretKeySpec cipherKey, SecretKeySpec macKey) throws GeneralSecurityException {
 		keyEnc = cipherKey;
 		keyMac = macKey;
@@ -48,17 +67,22 @@ public class SmDataProviderTr03110 implements SmDataProvider {
 		// The differentiation between Cipher and Mac wrappers is intended to be
 		// according to the JavaCryptoApi. 
 		// {@link CryptoSupport}
-		if (CryptoUtil.getCipherNameAsString(cipher.getAlgorithm()).equals(
-				"DESede")) {
+		String cipherName = CryptoUtil.getCipherNameAsString(cipher.getAlgorithm());
+		isDesEde = cipherName.equals("DESede");
+		if (isDesEde) {
 			// 3DES
 			mac = Mac.getInstance("ISO9797ALG3", Crypto.getCryptoProvider());
 		} else {
 			//AES
 			mac = Mac.getInstance(keyMac.getAlgorithm(), Crypto.getCryptoProvider());
 		}
+		mac.init(keyMac);
 		
+		cbcCipher = new CbcCipher(cipherName, keyEnc);
 		
 		ssc = new SendSequenceCounter(this.cipher.getBlockSize());
+		sscEncoding = new byte[ssc.getMaxByteLength()];
+		iv = new byte[this.cipher.getBlockSize()];
 	}
 
 	@Override
@@ -70,11 +94,13 @@ public class SmDataProviderTr03110 implements SmDataProvider {
 	@Override
 	public void nextIncoming() {
 		ssc.increment();
+		ivValid = false;
 	}
 
 	@Override
 	public void nextOutgoing() {
 		ssc.increment();
+		ivValid = false;
 	}
 
 	@Override
@@ -84,16 +110,44 @@ public class SmDataProviderTr03110 implements SmDataProvider {
 
 	@Override
 	public IvParameterSpec getCipherIv() {
-		byte[] cipherIvPlain;
-		//XXX AMY use new Crypto wrappers here (details see above)
-		if (CryptoUtil.getCipherNameAsString(cipher.getAlgorithm()).equals("DESede")) {
-			//3DES
-			cipherIvPlain = new byte[8];
-		} else {
-			//AES
-			cipherIvPlain = CryptoSupport.encryptWithIvZero(cipher, ssc.toByteArray(), keyEnc);
+		return new IvParameterSpec(getIv());
+	}
+	
+	/**
+	 * Returns the IV of the currently handled APDU, it is only derived once per APDU.
+	 * @return the IV, must not be modified
+	 */
+	private byte[] getIv() {
+		if (!ivValid) {
+			//XXX AMY use new Crypto wrappers here (details see above)
+			if (!isDesEde) {
+				//AES
+				ssc.writeTo(sscEncoding, 0);
+				cbcCipher.encryptBlock(sscEncoding, 0, iv, 0);
+			}
+			//3DES uses an IV set to all zeros
+			ivValid = true;
 		}
-		return new IvParameterSpec(cipherIvPlain);
+		return iv;
+	}
+	
+	@Override
+	public void encrypt(byte[] buffer, int offset, int length) {
+		cbcCipher.encrypt(getIv(), buffer, offset, length);
+	}
+	
+	@Override
+	public void decrypt(byte[] buffer, int offset, int length) {
+		cbcCipher.decrypt(getIv(), buffer, offset, length);
+	}
+	
+	@Override
+	public Mac getInitializedMac() {
+		mac.reset();
+		// incrementing is already done in #nextIncoming() and #nextOutgoing()
+		ssc.writeTo(sscEncoding, 0);
+		mac.update(sscEncoding);
+		return mac;
 	}
 
 	@Override
@@ -1,5 +1,6 @@
 package de.persosim.simulator.tlv;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -39,6 +40,10 @@ import java.util.Iterator;
  * constructed TLV data objects, the costs for ensuring restrictive access
  * control would exceed any benefit from it.
  * 
+ * When constructed from raw bytes the structure of all nested levels is
+ * checked immediately, but the sub-objects are only created when they are
+ * accessed for the first time, see {@link TlvDataObjectContainer}.
+ * 
  * @author slutters
  * 
  */
@@ -61,14 +66,40 @@ public class ConstructedTlvDataObject extends TlvDataObject implements TlvDataSt
 	 * This offset may no longer be part of the array.
 	 */
 	public ConstructedTlvDataObject(byte[] byteArray, int minOffset, int maxOffset) {
-		super(byteArray, minOffset, maxOffset);
+		this(byteArray, minOffset, maxOffset, TlvParsingLimits.getCurrent(), true, true);
+	}
+	
+	/**
+	 * Constructor for a TLV data object with constructed encoding based on a range
+	 * from an array of raw bytes, see {@link #ConstructedTlvDataObject(byte[], int, int)}.
+	 * 
+	 * @param byteArray the array that contains the TLV data object
+	 * @param minOffset the first offset of the range to contain the TLV data object (inclusive)
+	 * @param maxOffset the first offset of the range to not contain the TLV data object (exclusive).
+	 * @param limits the limits to be enforced, also when the value field is parsed later on
+	 * @param check true: check the structure of the value field against the limits,
+	 * false: the structure has already been checked
+	 * @param copy true: copy the value field, false: the array will not be modified and may be shared
+	 */
+	ConstructedTlvDataObject(byte[] byteArray, int minOffset, int maxOffset, TlvParsingLimits limits, boolean check, boolean copy) {
+		super(byteArray, minOffset, maxOffset, limits);
 		
 		if(!tlvTag.indicatesEncodingConstructed()) {throw new IllegalArgumentException("tag must be constructed");}
 		
 		int minOffsetSub = minOffset + tlvTag.getLength() + tlvLength.getLength();
 		int maxOffsetSub = (minOffsetSub + tlvLength.getIndicatedLength());
 		
-		tlvDataObjectContainer = new TlvDataObjectContainer(byteArray, minOffsetSub, maxOffsetSub);
+		if(check) {
+			/* this object itself already counts as one element on the top level */
+			limits.checkNoOfBytes(maxOffsetSub - minOffset);
+			TlvDataObjectContainer.checkStructure(byteArray, minOffsetSub, maxOffsetSub, limits.getMaxDepth() - 1, limits.getMaxNoOfElements() - 1);
+		}
+		
+		if(copy) {
+			tlvDataObjectContainer = TlvDataObjectContainer.createUnparsed(Arrays.copyOfRange(byteArray, minOffsetSub, maxOffsetSub), 0, maxOffsetSub - minOffsetSub, limits);
+		} else{
+			tlvDataObjectContainer = TlvDataObjectContainer.createUnparsed(byteArray, minOffsetSub, maxOffsetSub, limits);
+		}
 	}
 	
 	/**
@@ -162,6 +193,7 @@ public class ConstructedTlvDataObject extends TlvDataObject implements TlvDataSt
 
 	@Override
 	public void setTag(TlvTag tlvTagInput, boolean performValidityChecksInput) {
+		checkNotFrozen();
 		if(tlvTagInput == null) {throw new NullPointerException("tag must not be null");}
 		
 		if(!tlvTagInput.indicatesEncodingConstructed()) {throw new IllegalArgumentException("tag must be constructed");}
@@ -177,6 +209,9 @@ public class ConstructedTlvDataObject extends TlvDataObject implements TlvDataSt
 		 * The tag must only be set by methods offered by this class e.g. to
 		 * prevent setting the primitive tag to be a constructed tag.
 		 */
+		if(tlvTag != null) {
+			tagReplaced();
+		}
 		tlvTag = tlvTagInput.clone();
 	}
 	
@@ -290,6 +325,7 @@ public class ConstructedTlvDataObject extends TlvDataObject implements TlvDataSt
 	 * @param tlvDataObjectContainerInput the value to be set
 	 */
 	public void setValue(TlvDataObjectContainer tlvDataObjectContainerInput) {
+		checkNotFrozen();
 		if(tlvDataObjectContainerInput == null) {throw new NullPointerException("value must not be null");}
 		tlvDataObjectContainer = (TlvDataObjectContainer) tlvDataObjectContainerInput;
 	}
@@ -53,7 +53,21 @@ public class PrimitiveTlvDataObject extends TlvDataObject {
 	 * This offset may no longer be part of the array.
 	 */
 	public PrimitiveTlvDataObject(byte[] byteArray, int minOffset, int maxOffset) {
-		super(byteArray, minOffset, maxOffset);
+		this(byteArray, minOffset, maxOffset, TlvParsingLimits.getCurrent());
+	}
+	
+	/**
+	 * Constructor for a TLV data object with primitive encoding based on a range
+	 * from an array of raw bytes checked against the provided limits, see
+	 * {@link #PrimitiveTlvDataObject(byte[], int, int)}.
+	 * 
+	 * @param byteArray the array that contains the TLV data object
+	 * @param minOffset the first offset of the range to contain the TLV data object (inclusive)
+	 * @param maxOffset the first offset of the range to not contain the TLV data object (exclusive).
+	 * @param limits the limits to be enforced
+	 */
+	PrimitiveTlvDataObject(byte[] byteArray, int minOffset, int maxOffset, TlvParsingLimits limits) {
+		super(byteArray, minOffset, maxOffset, limits);
 		
 		if(!tlvTag.indicatesEncodingPrimitive()) {throw new IllegalArgumentException("tag must be primitive");}
 		
@@ -146,6 +160,7 @@ public class PrimitiveTlvDataObject extends TlvDataObject {
 	
 	@Override
 	public void setTag(TlvTag tlvTagInput, boolean performValidityChecksInput) {
+		checkNotFrozen();
 		if(tlvTagInput == null) {throw new NullPointerException("tag must not be null");}
 		
 		if(!tlvTagInput.indicatesEncodingPrimitive()) {throw new IllegalArgumentException("tag must be primitive");}
@@ -161,6 +176,9 @@ public class PrimitiveTlvDataObject extends TlvDataObject {
 		 * The tag must only be set by methods offered by this class e.g. to
 		 * prevent setting the primitive tag to be a constructed tag.
 		 */
+		if(tlvTag != null) {
+			tagReplaced();
+		}
 		tlvTag = tlvTagInput.clone();
 	}
 	
@@ -191,12 +209,30 @@ public class PrimitiveTlvDataObject extends TlvDataObject {
 	 * @param tlvValuePlainInput the value to be set
 	 */
 	public void setValue(TlvValuePlain tlvValuePlainInput) {
+		checkNotFrozen();
 		if(tlvValuePlainInput == null) {throw new NullPointerException("value must not be null");}	
 		tlvValuePlain = tlvValuePlainInput;
 	}
+	
+	@Override
+	public void freeze() {
+		if(!isFrozen()) {
+			/* the value may still be referenced and modified by the caller */
+			tlvValuePlain = tlvValuePlain.clone();
+		}
+		super.freeze();
+	}
 
+	/**
+	 * Returns the value of this object. If this object is frozen the returned
+	 * value is a copy, as {@link TlvValuePlain} itself is mutable.
+	 * @return the value of this object
+	 */
 	@Override
 	public TlvValuePlain getTlvValue() {
+		if(isFrozen()) {
+			return tlvValuePlain.clone();
+		}
 		return tlvValuePlain;
 	}
 	
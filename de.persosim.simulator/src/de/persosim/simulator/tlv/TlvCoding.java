@@ -0,0 +1,178 @@
+package de.persosim.simulator.tlv;
+
+import de.persosim.simulator.exception.ISO7816Exception;
+import de.persosim.simulator.platform.Iso7816;
+
+/**
+ * This class decodes tag and length fields directly from an array of raw
+ * bytes without creating any objects. It is shared by {@link TlvReader},
+ * {@link TlvValidator} and the structure checks of
+ * {@link TlvDataObjectContainer}, so all of them accept exactly the same
+ * encodings as {@link TlvTag} and {@link TlvLength} do.
+ * <p/>
+ * The decode methods return negative error codes instead of throwing
+ * exceptions, the get methods throw the {@link ISO7816Exception}s also thrown
+ * during object construction.
+ */
+final class TlvCoding implements Iso7816 {
+
+	/**
+	 * Error code: the field is malformed
+	 */
+	static final int INVALID = -1;
+
+	/**
+	 * Error code: the field exceeds the provided range
+	 */
+	static final int OUTSIDE_RANGE = -2;
+
+	/**
+	 * Should never be instantiated
+	 */
+	private TlvCoding() {
+	}
+
+	/*--------------------------------------------------------------------------------*/
+
+	/**
+	 * Returns the number of bytes of the tag field starting at the provided
+	 * offset. Checks are identical to those performed by {@link TlvTag}.
+	 * @param data the byte array that contains the tag field
+	 * @param minOffset the first offset of the tag field (inclusive)
+	 * @param maxOffset the first offset not to be part of the range (exclusive)
+	 * @return the number of bytes of the tag field, {@link #INVALID} or {@link #OUTSIDE_RANGE}
+	 */
+	static int decodeNoOfTagBytes(byte[] data, int minOffset, int maxOffset) {
+		if((data[minOffset] & 0x1F) != 0x1F) {
+			return 1;
+		}
+
+		for(int currentOffset = minOffset + 1; currentOffset < maxOffset; currentOffset++) {
+			byte currentByte = data[currentOffset];
+
+			if(currentOffset == minOffset + 1) {
+				/* tag number would also have fit into a smaller tag */
+				if((currentByte & 0x7F) == 0) {return INVALID;}
+				if(((currentByte & 0x80) == 0) && (currentByte <= 30)) {return INVALID;}
+			}
+
+			if((currentByte & 0x80) == 0) {
+				int noOfTagBytes = currentOffset - minOffset + 1;
+				/* tag is longer than the allowed 3 bytes */
+				return (noOfTagBytes > 3) ? INVALID : noOfTagBytes;
+			}
+		}
+
+		return OUTSIDE_RANGE;
+	}
+
+	/**
+	 * Returns the number of bytes of the length field starting at the provided
+	 * offset. Checks are identical to those performed by {@link TlvLength}.
+	 * @param data the byte array that contains the length field
+	 * @param minOffset the first offset of the length field (inclusive)
+	 * @param maxOffset the first offset not to be part of the range (exclusive)
+	 * @return the number of bytes of the length field, {@link #INVALID} or {@link #OUTSIDE_RANGE}
+	 */
+	static int decodeNoOfLengthBytes(byte[] data, int minOffset, int maxOffset) {
+		byte firstLengthByte = data[minOffset];
+
+		if((firstLengthByte & 0x80) == 0) {
+			return 1;
+		}
+
+		int noOfLengthBytes = (firstLengthByte & 0x7F) + 1;
+
+		if((noOfLengthBytes <= 1) || (noOfLengthBytes > 5)) {
+			/* indefinite form and length fields exceeding 5 bytes are not supported */
+			return INVALID;
+		}
+
+		if((minOffset + noOfLengthBytes) > maxOffset) {
+			return OUTSIDE_RANGE;
+		}
+
+		return noOfLengthBytes;
+	}
+
+	/**
+	 * @see #decodeNoOfTagBytes(byte[], int, int)
+	 * @throws ISO7816Exception if the tag field is malformed or exceeds the range
+	 */
+	static int getNoOfTagBytes(byte[] data, int minOffset, int maxOffset) {
+		return checkDecoded(decodeNoOfTagBytes(data, minOffset, maxOffset));
+	}
+
+	/**
+	 * @see #decodeNoOfLengthBytes(byte[], int, int)
+	 * @throws ISO7816Exception if the length field is malformed or exceeds the range
+	 */
+	static int getNoOfLengthBytes(byte[] data, int minOffset, int maxOffset) {
+		return checkDecoded(decodeNoOfLengthBytes(data, minOffset, maxOffset));
+	}
+
+	private static int checkDecoded(int noOfBytes) {
+		if(noOfBytes == INVALID) {
+			ISO7816Exception.throwIt(SW_6A80_WRONG_DATA);
+		}
+		if(noOfBytes == OUTSIDE_RANGE) {
+			ISO7816Exception.throwIt(SW_6A85_NC_INCONSISTENT_WITH_TLV_STRUCTURE, "offset outside data array");
+		}
+		return noOfBytes;
+	}
+
+	/**
+	 * Returns the length indicated by the length field at the provided offset.
+	 * @param data the byte array that contains the length field
+	 * @param offset the first offset of the length field
+	 * @param noOfLengthBytes the number of bytes of the length field
+	 * @return the indicated length, negative if it exceeds the range of int
+	 */
+	static int getIndicatedLength(byte[] data, int offset, int noOfLengthBytes) {
+		if(noOfLengthBytes == 1) {
+			return data[offset] & 0xFF;
+		}
+
+		int indicatedLength = 0;
+		for(int i = 1; i < noOfLengthBytes; i++) {
+			indicatedLength = (indicatedLength << 8) | (data[offset + i] & 0xFF);
+		}
+		return indicatedLength;
+	}
+
+	/**
+	 * Returns the tag number encoded within a tag field, see
+	 * {@link TlvTag#getIndicatedTagNo()}.
+	 * @param data the byte array that contains the tag field
+	 * @param offset the first offset of the tag field
+	 * @param noOfTagBytes the number of bytes of the tag field
+	 * @return the tag number
+	 */
+	static int getTagNo(byte[] data, int offset, int noOfTagBytes) {
+		if(noOfTagBytes == 1) {
+			return data[offset] & 0x1F;
+		}
+
+		int tagNo = 0;
+		for(int i = 1; i < noOfTagBytes; i++) {
+			tagNo = (tagNo << 7) | (data[offset + i] & 0x7F);
+		}
+		return tagNo;
+	}
+
+	/**
+	 * Compares two tag fields like {@link TlvDataObjectComparatorDer} does,
+	 * i.e. by class first and tag number second.
+	 * @return the Comparator's compare result
+	 */
+	static int compareTags(byte[] data, int offset1, int noOfTagBytes1, int offset2, int noOfTagBytes2) {
+		int classDiff = (data[offset1] & 0xC0) - (data[offset2] & 0xC0);
+
+		if(classDiff != 0) {
+			return classDiff;
+		} else{
+			return getTagNo(data, offset1, noOfTagBytes1) - getTagNo(data, offset2, noOfTagBytes2);
+		}
+	}
+
+}
@@ -7,44 +7,44 @@ package de.persosim.simulator.tlv;
  *
  */
 public interface TlvConstants {
-	public static final TlvTag TAG_06 = new TlvTag((byte) 0x06);
-	public static final TlvTag TAG_42 = new TlvTag((byte) 0x42);
-	public static final TlvTag TAG_53 = new TlvTag((byte) 0x53);
-	public static final TlvTag TAG_65 = new TlvTag((byte) 0x65);
-	public static final TlvTag TAG_67 = new TlvTag((byte) 0x67);
-	public static final TlvTag TAG_73 = new TlvTag((byte) 0x73);
-	public static final TlvTag TAG_7C = new TlvTag((byte) 0x7C);
-	public static final TlvTag TAG_80 = new TlvTag((byte) 0x80);
-	public static final TlvTag TAG_81 = new TlvTag((byte) 0x81);
-	public static final TlvTag TAG_82 = new TlvTag((byte) 0x82);
-	public static final TlvTag TAG_83 = new TlvTag((byte) 0x83);
-	public static final TlvTag TAG_84 = new TlvTag((byte) 0x84);
-	public static final TlvTag TAG_85 = new TlvTag((byte) 0x85);
-	public static final TlvTag TAG_86 = new TlvTag((byte) 0x86);
-	public static final TlvTag TAG_87 = new TlvTag((byte) 0x87);
-	public static final TlvTag TAG_88 = new TlvTag((byte) 0x88);
-	public static final TlvTag TAG_8A = new TlvTag((byte) 0x8A);
-	public static final TlvTag TAG_91 = new TlvTag((byte) 0x91);
-	public static final TlvTag TAG_92 = new TlvTag((byte) 0x92);
-	public static final TlvTag TAG_A0 = new TlvTag((byte) 0xA0);
-	public static final TlvTag TAG_5F20 = new TlvTag(new byte []{0x5F, 0x20});
-	public static final TlvTag TAG_5F24 = new TlvTag(new byte []{0x5F, 0x24});
-	public static final TlvTag TAG_5F25 = new TlvTag(new byte []{0x5F, 0x25});
-	public static final TlvTag TAG_5F29 = new TlvTag(new byte []{0x5F, 0x29});
-	public static final TlvTag TAG_5F37 = new TlvTag(new byte []{0x5F, 0x37});
-	public static final TlvTag TAG_7F21 = new TlvTag(new byte []{0x7F, 0x21});
-	public static final TlvTag TAG_7F49 = new TlvTag(new byte []{0x7F, 0x49});
-	public static final TlvTag TAG_7F4C = new TlvTag(new byte []{0x7F, 0x4C});
-	public static final TlvTag TAG_7F4E = new TlvTag(new byte []{0x7F, 0x4E});
+	public static final TlvTag TAG_06 = TlvTag.valueOf((byte) 0x06);
+	public static final TlvTag TAG_42 = TlvTag.valueOf((byte) 0x42);
+	public static final TlvTag TAG_53 = TlvTag.valueOf((byte) 0x53);
+	public static final TlvTag TAG_65 = TlvTag.valueOf((byte) 0x65);
+	public static final TlvTag TAG_67 = TlvTag.valueOf((byte) 0x67);
+	public static final TlvTag TAG_73 = TlvTag.valueOf((byte) 0x73);
+	public static final TlvTag TAG_7C = TlvTag.valueOf((byte) 0x7C);
+	public static final TlvTag TAG_80 = TlvTag.valueOf((byte) 0x80);
+	public static final TlvTag TAG_81 = TlvTag.valueOf((byte) 0x81);
+	public static final TlvTag TAG_82 = TlvTag.valueOf((byte) 0x82);
+	public static final TlvTag TAG_83 = TlvTag.valueOf((byte) 0x83);
+	public static final TlvTag TAG_84 = TlvTag.valueOf((byte) 0x84);
+	public static final TlvTag TAG_85 = TlvTag.valueOf((byte) 0x85);
+	public static final TlvTag TAG_86 = TlvTag.valueOf((byte) 0x86);
+	public static final TlvTag TAG_87 = TlvTag.valueOf((byte) 0x87);
+	public static final TlvTag TAG_88 = TlvTag.valueOf((byte) 0x88);
+	public static final TlvTag TAG_8A = TlvTag.valueOf((byte) 0x8A);
+	public static final TlvTag TAG_91 = TlvTag.valueOf((byte) 0x91);
+	public static final TlvTag TAG_92 = TlvTag.valueOf((byte) 0x92);
+	public static final TlvTag TAG_A0 = TlvTag.valueOf((byte) 0xA0);
+	public static final TlvTag TAG_5F20 = TlvTag.valueOf((short) 0x5F20);
+	public static final TlvTag TAG_5F24 = TlvTag.valueOf((short) 0x5F24);
+	public static final TlvTag TAG_5F25 = TlvTag.valueOf((short) 0x5F25);
+	public static final TlvTag TAG_5F29 = TlvTag.valueOf((short) 0x5F29);
+	public static final TlvTag TAG_5F37 = TlvTag.valueOf((short) 0x5F37);
+	public static final TlvTag TAG_7F21 = TlvTag.valueOf((short) 0x7F21);
+	public static final TlvTag TAG_7F49 = TlvTag.valueOf((short) 0x7F49);
+	public static final TlvTag TAG_7F4C = TlvTag.valueOf((short) 0x7F4C);
+	public static final TlvTag TAG_7F4E = TlvTag.valueOf((short) 0x7F4E);
 
-	public static final TlvTag TAG_BOOLEAN = new TlvTag(Asn1.BOOLEAN);
-	public static final TlvTag TAG_INTEGER = new TlvTag(Asn1.INTEGER);
-	public static final TlvTag TAG_BIT_STRING = new TlvTag(Asn1.BIT_STRING);
-	public static final TlvTag TAG_OCTET_STRING = new TlvTag(Asn1.OCTET_STRING);
-	public static final TlvTag TAG_OID = new TlvTag(Asn1.OBJECT_IDENTIFIER);
-	public static final TlvTag TAG_SEQUENCE = new TlvTag(Asn1.SEQUENCE);
-	public static final TlvTag TAG_SET = new TlvTag(Asn1.SET);
-	public static final TlvTag TAG_IA5_STRING = new TlvTag(Asn1.IA5_STRING);
+	public static final TlvTag TAG_BOOLEAN = TlvTag.valueOf(Asn1.BOOLEAN);
+	public static final TlvTag TAG_INTEGER = TlvTag.valueOf(Asn1.INTEGER);
+	public static final TlvTag TAG_BIT_STRING = TlvTag.valueOf(Asn1.BIT_STRING);
+	public static final TlvTag TAG_OCTET_STRING = TlvTag.valueOf(Asn1.OCTET_STRING);
+	public static final TlvTag TAG_OID = TlvTag.valueOf(Asn1.OBJECT_IDENTIFIER);
+	public static final TlvTag TAG_SEQUENCE = TlvTag.valueOf(Asn1.SEQUENCE);
+	public static final TlvTag TAG_SET = TlvTag.valueOf(Asn1.SET);
+	public static final TlvTag TAG_IA5_STRING = TlvTag.valueOf(Asn1.IA5_STRING);
 	
 	
 	public static final TlvValuePlain DER_BOOLEAN_TRUE = new TlvValuePlain(new byte [] {(byte) 0xFF});
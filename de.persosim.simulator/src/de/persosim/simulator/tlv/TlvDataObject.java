@@ -1,10 +1,6 @@
 package de.persosim.simulator.tlv;
 
-import static de.persosim.simulator.utils.PersoSimLogger.DEBUG;
-import static de.persosim.simulator.utils.PersoSimLogger.logException;
-
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import de.persosim.simulator.exception.ISO7816Exception;
@@ -40,6 +36,12 @@ import de.persosim.simulator.platform.Iso7816;
  * are always valid, validity of value fields of constructed TLV data objects
  * needs to be checked recursively.
  * 
+ * TLV data objects that are not to be modified any more, e.g. objects built
+ * during personalization, can be frozen by calling {@link #freeze()}. Freezing
+ * affects the object and all of its sub-objects. Their encoding is computed
+ * once and cached, any later attempt to modify them results in an
+ * {@link IllegalStateException}.
+ * 
  * @author slutters
  * 
  */
@@ -74,6 +76,23 @@ public abstract class TlvDataObject extends TlvElement implements Iso7816, Valid
 	
 	protected boolean performValidityChecks;
 	
+	/*
+	 * The container whose tag index covers this object, it is notified when
+	 * the tag of this object is replaced. Null if no index covers this object.
+	 */
+	TlvDataObjectContainer indexingContainer;
+	
+	/*
+	 * Sizes determined by the last call of computeEncodedLength(). They are only
+	 * valid during a single serialization, as the tree may be modified between two
+	 * serializations without this object being notified.
+	 */
+	private int encodedValueLength;
+	private TlvLength encodedTlvLength;
+	
+	/* The encoding of this object, only present if this object is frozen */
+	private byte[] frozenEncoding;
+	
 	/*--------------------------------------------------------------------------------*/
 	
 	/**
@@ -91,6 +110,18 @@ public abstract class TlvDataObject extends TlvElement implements Iso7816, Valid
 	 * @param maxOffset the first offset not to be part of the range to contain the TLV data object (exclusive).
 	 */
 	public TlvDataObject(byte[] dataField, int minOffset, int maxOffset) {
+		this(dataField, minOffset, maxOffset, TlvParsingLimits.getCurrent());
+	}
+	
+	/**
+	 * Constructor for TLV objects checked against the provided limits, see
+	 * {@link #TlvDataObject(byte[], int, int)}.
+	 * @param dataField the byte array that in a certain range contains the TLV data object
+	 * @param minOffset the first offset of the range to contain the TLV data object (inclusive)
+	 * @param maxOffset the first offset not to be part of the range to contain the TLV data object (exclusive).
+	 * @param limits the limits to be enforced
+	 */
+	TlvDataObject(byte[] dataField, int minOffset, int maxOffset, TlvParsingLimits limits) {
 		if(dataField == null) {throw new NullPointerException();}
 		if(minOffset < 0) {throw new IllegalArgumentException("min offset must not be less than 0");}
 		if(maxOffset < minOffset) {throw new IllegalArgumentException("max offset must not be smaller than min offset");}
@@ -104,13 +135,13 @@ public abstract class TlvDataObject extends TlvElement implements Iso7816, Valid
 		 */
 		int currentOffset = minOffset;
 		
-		tlvTag = new TlvTag(dataField, currentOffset, maxOffset);
+		tlvTag = TlvTag.valueOf(dataField, currentOffset, maxOffset);
 		
 		/*
 		 * Determine Length
 		 */
 		currentOffset += getNoOfTagBytes();
-		tlvLength = new TlvLength(dataField, currentOffset, maxOffset);
+		tlvLength = TlvLength.valueOf(dataField, currentOffset, maxOffset);
 		
 		int indicatedLength = tlvLength.getIndicatedLength();
 		
@@ -119,11 +150,13 @@ public abstract class TlvDataObject extends TlvElement implements Iso7816, Valid
 		 */
 		currentOffset += tlvLength.getLength();
 		
-		if((currentOffset + indicatedLength) > maxOffset) {
+		if((indicatedLength < 0) || (indicatedLength > (maxOffset - currentOffset))) {
 			/* error, length indicated by TLV would exceed expected length */
 			ISO7816Exception.throwIt(SW_6A85_NC_INCONSISTENT_WITH_TLV_STRUCTURE, "offset outside data array");
 		}
 		
+		limits.checkNoOfBytes(currentOffset + indicatedLength - minOffset);
+		
 		/* The actual value is set by the sub-class constructors */
 	}
 	
@@ -153,6 +186,7 @@ public abstract class TlvDataObject extends TlvElement implements Iso7816, Valid
 	 * @param performValidityChecksInput true: perform validity checks, false: do not perform validity checks
 	 */
 	public void setLength(TlvLength tlvLengthInput, boolean performValidityChecksInput) {
+		checkNotFrozen();
 		if(tlvLengthInput == null) {throw new NullPointerException("length must not be null");}
 		
 		performValidityChecks = performValidityChecksInput;
@@ -175,6 +209,52 @@ public abstract class TlvDataObject extends TlvElement implements Iso7816, Valid
 	
 	/*--------------------------------------------------------------------------------*/
 	
+	/**
+	 * Must be called by all methods replacing the tag of an existing object.
+	 */
+	void tagReplaced() {
+		TlvDataObjectContainer container = indexingContainer;
+		if(container != null) {
+			container.discardTagIndex();
+		}
+	}
+	
+	/**
+	 * Freezes this object and all of its sub-objects. The encoding of frozen
+	 * objects is computed once and cached, any later attempt to modify them
+	 * results in an {@link IllegalStateException}. Freezing an already frozen
+	 * object has no effect.
+	 */
+	public void freeze() {
+		if(isFrozen()) {
+			return;
+		}
+		
+		TlvValue tlvValue = getTlvValue();
+		if(tlvValue instanceof TlvDataObjectContainer) {
+			((TlvDataObjectContainer) tlvValue).freeze();
+		}
+		
+		frozenEncoding = toByteArray();
+	}
+	
+	/**
+	 * @return true iff this object has been frozen
+	 */
+	public boolean isFrozen() {
+		return frozenEncoding != null;
+	}
+	
+	/**
+	 * Must be called by all methods modifying this object.
+	 * @throws IllegalStateException if this object is frozen
+	 */
+	protected void checkNotFrozen() {
+		if(isFrozen()) {throw new IllegalStateException("TLV data object is frozen and must not be modified");}
+	}
+	
+	/*--------------------------------------------------------------------------------*/
+	
 	/**
 	 * @return the noOfTagBytes
 	 */
@@ -196,29 +276,105 @@ public abstract class TlvDataObject extends TlvElement implements Iso7816, Valid
 	
 	@Override
 	public int getLength() {
-		return getNoOfTagBytes() + getNoOfLengthBytes() + getNoOfValueBytes();
+		return computeEncodedLength();
 	}
 	
 	/*--------------------------------------------------------------------------------*/
 	
 	@Override
 	public byte[] toByteArray() {
-		ByteArrayOutputStream outputStream;
-		
-		outputStream = new ByteArrayOutputStream();
-		
-		try {
-			/* tag can be accessed directly */
-			outputStream.write(tlvTag.toByteArray());
-			/* length must be accessed by getter in case there is a valid override */
-			outputStream.write(getTlvLength().toByteArray());
-			/* value must be accessed by getter as values are only specified by sub classes */
-			outputStream.write(getTlvValue().toByteArray());
-		} catch (IOException e) {
-			logException(this.getClass(), e, DEBUG);
+		if(frozenEncoding != null) {
+			return frozenEncoding.clone();
+		}
+		
+		byte[] encoding = new byte[computeEncodedLength()];
+		writeEncoded(encoding, 0);
+		return encoding;
+	}
+	
+	@Override
+	public int writeTo(byte[] buffer, int offset) {
+		computeEncodedLength();
+		return writeEncoded(buffer, offset);
+	}
+	
+	@Override
+	public void writeTo(ByteBuffer buffer) {
+		if(frozenEncoding != null) {
+			buffer.put(frozenEncoding);
+		} else{
+			super.writeTo(buffer);
+		}
+	}
+	
+	/**
+	 * Returns the encoding of this object without copying it if this object
+	 * is frozen. The returned array must not be modified.
+	 * @return the encoding of this object
+	 */
+	private byte[] getEncoding() {
+		if(frozenEncoding != null) {
+			return frozenEncoding;
+		}
+		
+		return toByteArray();
+	}
+	
+	/**
+	 * Computes the size of the encoding of this object and all of its
+	 * children in a single pass and caches the sizes required by
+	 * {@link #writeEncoded(byte[], int)} within the visited objects.
+	 * @return the number of bytes occupied by the encoding of this object
+	 */
+	int computeEncodedLength() {
+		if(frozenEncoding != null) {
+			return frozenEncoding.length;
+		}
+		
+		TlvValue tlvValue = getTlvValue();
+		
+		if(tlvValue instanceof TlvDataObjectContainer) {
+			encodedValueLength = ((TlvDataObjectContainer) tlvValue).computeEncodedLength();
+		} else{
+			encodedValueLength = tlvValue.getLength();
+		}
+		
+		encodedTlvLength = getExplicitTlvLength(encodedValueLength);
+		int noOfLengthBytes = (encodedTlvLength == null) ? TlvLength.getMinNoOfBytesEncodingLength(encodedValueLength) : encodedTlvLength.getLength();
+		
+		return tlvTag.getLength() + noOfLengthBytes + encodedValueLength;
+	}
+	
+	/**
+	 * Writes the encoding of this object into the provided buffer using the
+	 * sizes cached by the preceding call of {@link #computeEncodedLength()}.
+	 * @param buffer the buffer to write to
+	 * @param offset the first offset to be written
+	 * @return the first offset behind the bytes written
+	 */
+	int writeEncoded(byte[] buffer, int offset) {
+		if(frozenEncoding != null) {
+			System.arraycopy(frozenEncoding, 0, buffer, offset, frozenEncoding.length);
+			return offset + frozenEncoding.length;
+		}
+		
+		/* tag can be accessed directly */
+		offset = tlvTag.writeTo(buffer, offset);
+		
+		/* length is either a valid override or the default DER encoding */
+		if(encodedTlvLength == null) {
+			offset = TlvLength.writeLengthEncoding(encodedValueLength, buffer, offset);
+		} else{
+			offset = encodedTlvLength.writeTo(buffer, offset);
+		}
+		
+		/* value must be accessed by getter as values are only specified by sub classes */
+		TlvValue tlvValue = getTlvValue();
+		if(tlvValue instanceof TlvDataObjectContainer) {
+			return ((TlvDataObjectContainer) tlvValue).writeEncoded(buffer, offset);
+		} else{
+			return tlvValue.writeTo(buffer, offset);
 		}
-
-		return outputStream.toByteArray();
 	}
 	
 	/**
@@ -269,26 +425,41 @@ public abstract class TlvDataObject extends TlvElement implements Iso7816, Valid
 	 * @return the tlvLength
 	 */
 	public TlvLength getTlvLength() {
+		int actualLength = getTlvValue().getLength();
+		TlvLength explicitTlvLength = getExplicitTlvLength(actualLength);
+		
+		if(explicitTlvLength == null) {
+			return TlvLength.valueOf(actualLength);
+		} else{
+			return explicitTlvLength;
+		}
+	}
+	
+	/**
+	 * Returns the explicitly set length field if it is to be used for the
+	 * provided actual length of the value field, see {@link #getTlvLength()}.
+	 * @param actualLength the actual length of the value field
+	 * @return the explicitly set length field or null if the default DER encoding is to be used
+	 */
+	private TlvLength getExplicitTlvLength(int actualLength) {
 		if(tlvLength == null) {
 			/* A TLV length field has NOT been explicitly set */
-			return new TlvLength(getTlvValue().getLength());
+			return null;
+		}
+		
+		/* A TLV length field has been explicitly set */
+		if(tlvLength.getIndicatedLength() == actualLength) {
+			/* The length indicated by the length field matches the actual length of the value field */
+			return tlvLength;
+		}
+		
+		/* The length indicated by the length field does NOT match the actual length of the value field */
+		if(performValidityChecks) {
+			/* discard invalid length field */
+			tlvLength = null;
+			return null;
 		} else{
-			/* A TLV length field has been explicitly set */
-			int indicatedLength = tlvLength.getIndicatedLength();
-			
-			if(indicatedLength == getTlvValue().getLength()) {
-				/* The length indicated by the length field matches the actual length of the value field */
-				return tlvLength;
-			} else{
-				/* The length indicated by the length field does NOT match the actual length of the value field */
-				if(performValidityChecks) {
-					/* discard invalid length field */
-					tlvLength = null;
-					return new TlvLength(getTlvValue().getLength());
-				} else{
-					return tlvLength;
-				}
-			}
+			return tlvLength;
 		}
 	}
 	
@@ -364,13 +535,13 @@ public abstract class TlvDataObject extends TlvElement implements Iso7816, Valid
 		}
 		
 		//TlvDataObjects are considered equal iff they encode the same T-L-V combination in the same way
-		return Arrays.equals(toByteArray(), ((TlvDataObject) anotherTlvDataObject).toByteArray());
+		return Arrays.equals(getEncoding(), ((TlvDataObject) anotherTlvDataObject).getEncoding());
 	}
 	
 	@Override
 	public int hashCode() {
 		int hash = 1;
-		byte[] byteArray = toByteArray();
+		byte[] byteArray = getEncoding();
 		for (int i = 0; i < byteArray.length; i++) {
 			hash *= byteArray[i];
 		}
@@ -378,6 +549,7 @@ public abstract class TlvDataObject extends TlvElement implements Iso7816, Valid
 	}
 	
 	public void setPerformValidityChecksTo(boolean performValidityChecksInput) {
+		checkNotFrozen();
 		performValidityChecks = performValidityChecksInput;
 	}
 	
@@ -23,8 +23,9 @@ public class TlvDataObjectComparatorDer implements Comparator<TlvDataObject> {
 	public int compare(TlvDataObject tlvdo1, TlvDataObject tlvdo2) {
 		TlvTag tlvTag1, tlvTag2;
 		
-		tlvTag1 = tlvdo1.getTlvTag();
-		tlvTag2 = tlvdo2.getTlvTag();
+		/* tags are only read, so they do not need to be cloned */
+		tlvTag1 = tlvdo1.tlvTag;
+		tlvTag2 = tlvdo2.tlvTag;
 		
 		return compare(tlvTag1, tlvTag2);
 	}
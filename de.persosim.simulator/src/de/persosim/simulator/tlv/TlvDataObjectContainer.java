@@ -1,15 +1,16 @@
 package de.persosim.simulator.tlv;
 
-import static de.persosim.simulator.utils.PersoSimLogger.logException;
-
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Vector;
+import java.util.RandomAccess;
 
+import de.persosim.simulator.exception.ISO7816Exception;
 import de.persosim.simulator.platform.Iso7816;
 
 /**
@@ -24,12 +25,53 @@ import de.persosim.simulator.platform.Iso7816;
  * dedicated tag or explicit length field. Objects of this class may also be
  * used as a representation of APDU command data fields.
  * 
+ * Containers with at least {@link #TAG_INDEX_THRESHOLD} elements lazily build
+ * an index of the first occurrence of each tag, so lookups by tag do not need
+ * to scan all elements. The index is discarded by all modifications of this
+ * container and by replacing the tag of any object covered by the index. An
+ * object is covered by the index of at most one container, containers sharing
+ * objects with another indexed container scan their elements instead.
+ * 
+ * Containers are frozen either explicitly or together with the
+ * {@link ConstructedTlvDataObject} containing them, see
+ * {@link TlvDataObject#freeze()}. Frozen containers reject all modifications
+ * with an {@link IllegalStateException}.
+ * 
+ * Containers holding the value field of a {@link ConstructedTlvDataObject}
+ * parsed from raw bytes keep the raw bytes until the contained objects are
+ * accessed for the first time. Only the direct children are parsed then, their
+ * own children again are parsed on demand. As long as the contained objects
+ * have not been accessed the original bytes are returned on encoding.
+ * 
  * @author slutters
  * 
  */
 public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvDataStructure {
 	
-	protected Vector<TlvDataObject> tlvObjects;
+	/**
+	 * Minimum number of elements for which lookups by tag use an index
+	 */
+	public static final int TAG_INDEX_THRESHOLD = 8;
+	
+	protected ArrayList<TlvDataObject> tlvObjects;
+	
+	/* offset of the first occurrence of each tag, built on demand */
+	private volatile HashMap<TlvTag, Integer> tagIndex;
+	
+	private boolean frozen = false;
+	
+	/*
+	 * Raw encoding of the contained objects as long as they have not been parsed.
+	 * The array is never modified and may be shared with other containers. It is
+	 * set to null after the parsed objects have been assigned, so threads reading
+	 * null also see the parsed objects.
+	 */
+	private volatile byte[] unparsedData;
+	private int unparsedMinOffset;
+	private int unparsedMaxOffset;
+	
+	/* limits the raw encoding has been checked against, enforced again when it is parsed */
+	private TlvParsingLimits unparsedLimits;
 	
 	/*--------------------------------------------------------------------------------*/
 	
@@ -40,7 +82,7 @@ public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvData
 	 * this TLV structure although the structure is empty.
 	 */
 	public TlvDataObjectContainer() {
-		this.tlvObjects = new Vector<TlvDataObject>();
+		this.tlvObjects = new ArrayList<TlvDataObject>();
 	}
 	
 	/**
@@ -55,27 +97,31 @@ public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvData
 		if(maxOffset < minOffset) {throw new IllegalArgumentException("max offset must not be smaller than min offset");}
 		if(maxOffset > dataField.length) {throw new IllegalArgumentException("selected array area must not lie outside of data array");}
 		
-		this.tlvObjects = new Vector<TlvDataObject>();
+		this.tlvObjects = new ArrayList<TlvDataObject>();
 		
 		if(minOffset == maxOffset) {
 			/* The TLV data object container is empty */
 			return;
 		}
 		
+		TlvParsingLimits limits = TlvParsingLimits.getCurrent();
+		limits.checkNoOfBytes(maxOffset - minOffset);
+		checkStructure(dataField, minOffset, maxOffset, limits.getMaxDepth(), limits.getMaxNoOfElements());
+		
 		int currentOffset = minOffset;
 		TlvDataObject tlvObject;
 		
 		while(currentOffset < maxOffset) {
 			/* 
-			 * It is assumed that currentOffset always holds the first offset of the next TLV object.
-			 * As the number and standard conformity of the TLV data objects contained within the data
-			 * field is a priori unknown, maxOffset only indicates a maximum bound no TLV data object
-			 * is allowed to exceed. The loop will continue to extract TLV data objects and move on
-			 * currentOffset accordingly so it will continually close in on maxOffset. Finally maxOffset
-			 * will either be occupied by the last byte of a TLV data object and everything will be fine.
-			 * Otherwise there will always be an incomplete TLV data object left throwing an exception. 
-			 */		
-			tlvObject = TlvDataObjectFactory.createTLVDataObject(dataField, currentOffset, maxOffset);
+			 * The structure of all levels has already been checked above, so the
+			 * TLV data objects are extracted one after the other. Nested levels
+			 * are parsed from a copy when they are accessed for the first time.
+			 */
+			if((dataField[currentOffset] & 0x20) == 0x20) {
+				tlvObject = new ConstructedTlvDataObject(dataField, currentOffset, maxOffset, limits, false, true);
+			} else{
+				tlvObject = new PrimitiveTlvDataObject(dataField, currentOffset, maxOffset, limits);
+			}
 			
 			currentOffset += tlvObject.getLength();
 			tlvObjects.add(tlvObject);
@@ -90,6 +136,25 @@ public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvData
 		this(dataField, 0, dataField.length);
 	}
 	
+	/**
+	 * Creates a container for the TLV structure encoded within the provided
+	 * array. In contrast to {@link #TlvDataObjectContainer(byte[])} the array
+	 * is not copied but used as is, the contained objects are only created when
+	 * they are accessed for the first time. The caller hands over the array and
+	 * must not modify it afterwards.
+	 * @param dataField the data field that contains the TLV structure
+	 * @return the container
+	 */
+	public static TlvDataObjectContainer wrap(byte[] dataField) {
+		if(dataField == null) {throw new NullPointerException();}
+		
+		TlvParsingLimits limits = TlvParsingLimits.getCurrent();
+		limits.checkNoOfBytes(dataField.length);
+		checkStructure(dataField, 0, dataField.length, limits.getMaxDepth(), limits.getMaxNoOfElements());
+		
+		return createUnparsed(dataField, 0, dataField.length, limits);
+	}
+	
 	/**
 	 * Constructs an object only containing the provided object
 	 * @param tlvDataObject the object to contain
@@ -99,6 +164,125 @@ public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvData
 		this.addTlvDataObject(tlvDataObject);
 	}
 	
+	/**
+	 * Creates a container that parses the contained objects from the provided
+	 * range on first access. The range must already have been checked by
+	 * {@link #checkStructure(byte[], int, int, int, int)} and the array must not be
+	 * modified afterwards.
+	 * @param unparsedData the byte array that in a certain range contains the TLV structure
+	 * @param minOffset the first offset to be used (inclusive)
+	 * @param maxOffset the last offset to be used (exclusive)
+	 * @param limits the limits the range has been checked against
+	 * @return the container
+	 */
+	static TlvDataObjectContainer createUnparsed(byte[] unparsedData, int minOffset, int maxOffset, TlvParsingLimits limits) {
+		TlvDataObjectContainer container = new TlvDataObjectContainer();
+		
+		if(minOffset < maxOffset) {
+			container.unparsedMinOffset = minOffset;
+			container.unparsedMaxOffset = maxOffset;
+			container.unparsedLimits = limits;
+			container.unparsedData = unparsedData;
+		}
+		
+		return container;
+	}
+	
+	/**
+	 * Checks the TLV structure contained within the provided range including
+	 * all nested levels without creating any objects. Malformed encodings are
+	 * rejected in the same way as by {@link #TlvDataObjectContainer(byte[], int, int)}.
+	 * Encodings exceeding the provided limits for nesting depth or number of
+	 * TLV data objects are rejected as well, see {@link TlvParsingLimits}.
+	 * @param dataField the data field that contains the TLV structure
+	 * @param minOffset the first offset to be used (inclusive)
+	 * @param maxOffset the last offset to be used (exclusive)
+	 * @param remainingDepth the number of levels still allowed, including the one to be checked
+	 * @param remainingNoOfElements the number of TLV data objects still allowed
+	 * @return the number of TLV data objects contained on all levels
+	 */
+	static int checkStructure(byte[] dataField, int minOffset, int maxOffset, int remainingDepth, int remainingNoOfElements) {
+		if((minOffset < maxOffset) && (remainingDepth < 1)) {
+			ISO7816Exception.throwIt(SW_6A80_WRONG_DATA, "TLV encoding exceeds max nesting depth");
+		}
+		
+		int currentOffset = minOffset;
+		int noOfElements = 0;
+		
+		while(currentOffset < maxOffset) {
+			if(++noOfElements > remainingNoOfElements) {
+				ISO7816Exception.throwIt(SW_6A80_WRONG_DATA, "TLV encoding exceeds max number of elements");
+			}
+			
+			int lengthOffset = currentOffset + TlvCoding.getNoOfTagBytes(dataField, currentOffset, maxOffset);
+			if(lengthOffset >= maxOffset) {throw new IllegalArgumentException("selected part of data field must be greater than 0");}
+			
+			int noOfLengthBytes = TlvCoding.getNoOfLengthBytes(dataField, lengthOffset, maxOffset);
+			int indicatedLength = TlvCoding.getIndicatedLength(dataField, lengthOffset, noOfLengthBytes);
+			int valueOffset = lengthOffset + noOfLengthBytes;
+			
+			if((indicatedLength < 0) || (indicatedLength > (maxOffset - valueOffset))) {
+				/* error, length indicated by TLV would exceed expected length */
+				ISO7816Exception.throwIt(SW_6A85_NC_INCONSISTENT_WITH_TLV_STRUCTURE, "offset outside data array");
+			}
+			
+			if((dataField[currentOffset] & 0x20) == 0x20) {
+				noOfElements += checkStructure(dataField, valueOffset, valueOffset + indicatedLength, remainingDepth - 1, remainingNoOfElements - noOfElements);
+			}
+			
+			currentOffset = valueOffset + indicatedLength;
+		}
+		
+		return noOfElements;
+	}
+	
+	/**
+	 * Parses the direct children from the raw encoding if not already done.
+	 * Constructed children share the raw encoding and are parsed on demand.
+	 * Parsing is triggered by read-only methods as well, so it is performed
+	 * only once even if they are called concurrently.
+	 */
+	private void parse() {
+		if(unparsedData == null) {
+			return;
+		}
+		
+		synchronized (this) {
+			byte[] data = unparsedData;
+			if(data == null) {
+				/* parsed concurrently */
+				return;
+			}
+			
+			ArrayList<TlvDataObject> parsedObjects = new ArrayList<TlvDataObject>();
+			int currentOffset = unparsedMinOffset;
+			
+			while(currentOffset < unparsedMaxOffset) {
+				TlvDataObject tlvObject;
+				
+				if((data[currentOffset] & 0x20) == 0x20) {
+					tlvObject = new ConstructedTlvDataObject(data, currentOffset, unparsedMaxOffset, unparsedLimits, false, false);
+				} else{
+					tlvObject = new PrimitiveTlvDataObject(data, currentOffset, unparsedMaxOffset, unparsedLimits);
+				}
+				
+				currentOffset += tlvObject.getLength();
+				parsedObjects.add(tlvObject);
+			}
+			
+			tlvObjects = parsedObjects;
+			unparsedLimits = null;
+			unparsedData = null;
+		}
+	}
+	
+	/**
+	 * @return true iff the contained objects have not been parsed from the raw encoding yet
+	 */
+	boolean isUnparsed() {
+		return unparsedData != null;
+	}
+	
 	/**
 	 * Constructs an object from the provided one.
 	 * Usually the provided object is not fully processed.
@@ -142,10 +326,27 @@ public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvData
 	@Override
 	public TlvDataObject getTlvDataObject(TlvTagIdentifier tagIdentifier) {
 		if(tagIdentifier == null) {throw new NullPointerException("tag must not be null");}
+		TlvTag tlvTag = tagIdentifier.getTag();
+		if(tlvTag == null) {
+			return null;
+		}
+		
+		parse();
 		int remainingOccurences = tagIdentifier.getNoOfPreviousOccurrences();
+		int startIndex = 0;
 		
-		for(TlvDataObject tlvDataObject : this.tlvObjects) {
-			if(tlvDataObject.getTlvTag().equals(tagIdentifier.getTag())) {
+		HashMap<TlvTag, Integer> index = (tlvObjects.size() >= TAG_INDEX_THRESHOLD) ? getTagIndex() : null;
+		if(index != null) {
+			Integer firstOccurrence = index.get(tlvTag);
+			if(firstOccurrence == null) {
+				return null;
+			}
+			startIndex = firstOccurrence;
+		}
+		
+		for(int i = startIndex; i < tlvObjects.size(); i++) {
+			TlvDataObject tlvDataObject = tlvObjects.get(i);
+			if(tlvDataObject.matches(tlvTag)) {
 				if (remainingOccurences == 0) {
 					return tlvDataObject;
 				} else {
@@ -157,6 +358,53 @@ public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvData
 		return null;
 	}
 	
+	/**
+	 * Returns the index of the first occurrence of each tag, the index is
+	 * rebuilt if it has been discarded since it was built.
+	 * @return the index of the first occurrence of each tag or null if an
+	 *         object is already covered by the index of another container
+	 */
+	private HashMap<TlvTag, Integer> getTagIndex() {
+		HashMap<TlvTag, Integer> index = tagIndex;
+		if(index != null) {
+			return index;
+		}
+		
+		for(TlvDataObject tlvDataObject : tlvObjects) {
+			if((tlvDataObject.indexingContainer != null) && (tlvDataObject.indexingContainer != this)) {
+				/* replacing the tag of this object would only be notified to the other container */
+				return null;
+			}
+		}
+		
+		index = new HashMap<>();
+		for(int i = tlvObjects.size() - 1; i >= 0; i--) {
+			TlvDataObject tlvDataObject = tlvObjects.get(i);
+			tlvDataObject.indexingContainer = this;
+			index.put(tlvDataObject.tlvTag, i);
+		}
+		
+		tagIndex = index;
+		return index;
+	}
+	
+	/**
+	 * Discards the tag index, must be called before the contained objects
+	 * are modified and when the tag of a contained object is replaced.
+	 */
+	void discardTagIndex() {
+		if(tagIndex == null) {
+			return;
+		}
+		
+		tagIndex = null;
+		for(TlvDataObject tlvDataObject : tlvObjects) {
+			if(tlvDataObject.indexingContainer == this) {
+				tlvDataObject.indexingContainer = null;
+			}
+		}
+	}
+	
 	@Override
 	public TlvDataObject getTlvDataObject(TlvTag tlvTag) {
 		return getTlvDataObject(new TlvTagIdentifier(tlvTag));
@@ -171,6 +419,7 @@ public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvData
 	public int getNoOfElements(boolean recursive) {
 		int noOfElements;
 		
+		parse();
 		if(this.tlvObjects == null) {
 			throw new NullPointerException();
 		}
@@ -194,42 +443,181 @@ public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvData
 	}
 
 	/**
+	 * Returns a view on the contained objects. Modifications of the view are
+	 * performed on this container, the view of a frozen container is
+	 * unmodifiable.
 	 * @return the tlvObjects
 	 */
 	public List<TlvDataObject> getTlvObjects() {
-		return tlvObjects;
+		parse();
+		if(frozen) {
+			return Collections.unmodifiableList(tlvObjects);
+		}
+		
+		return new TlvObjectsView();
+	}
+	
+	/**
+	 * View on the contained objects discarding the tag index on modification.
+	 */
+	private class TlvObjectsView extends AbstractList<TlvDataObject> implements RandomAccess {
+		
+		@Override
+		public TlvDataObject get(int index) {
+			return tlvObjects.get(index);
+		}
+		
+		@Override
+		public int size() {
+			return tlvObjects.size();
+		}
+		
+		@Override
+		public TlvDataObject set(int index, TlvDataObject element) {
+			checkNotFrozen();
+			discardTagIndex();
+			return tlvObjects.set(index, element);
+		}
+		
+		@Override
+		public void add(int index, TlvDataObject element) {
+			checkNotFrozen();
+			discardTagIndex();
+			tlvObjects.add(index, element);
+			modCount++;
+		}
+		
+		@Override
+		public TlvDataObject remove(int index) {
+			checkNotFrozen();
+			discardTagIndex();
+			modCount++;
+			return tlvObjects.remove(index);
+		}
+		
 	}
 	
 	@Override
 	public byte[] toByteArray() {
-		ByteArrayOutputStream outputStream;
-		byte[] tlvObjectAsByteArray;
+		byte[] data = unparsedData;
+		if(data != null) {
+			return Arrays.copyOfRange(data, unparsedMinOffset, unparsedMaxOffset);
+		}
 		
-		outputStream = new ByteArrayOutputStream();
+		byte[] encoding = new byte[computeEncodedLength()];
+		writeEncoded(encoding, 0);
+		return encoding;
+	}
+	
+	@Override
+	public int writeTo(byte[] buffer, int offset) {
+		computeEncodedLength();
+		return writeEncoded(buffer, offset);
+	}
+	
+	/**
+	 * @see TlvDataObject#computeEncodedLength()
+	 * @return the number of bytes occupied by the encoding of all contained objects
+	 */
+	int computeEncodedLength() {
+		if(unparsedData != null) {
+			return unparsedMaxOffset - unparsedMinOffset;
+		}
 		
-		for(TlvDataObject tlvObject : this.tlvObjects) {
-			try {
-				tlvObjectAsByteArray = tlvObject.toByteArray();
-				outputStream.write(tlvObjectAsByteArray);
-			} catch (IOException e) {
-				logException(getClass(), e);
-			}
+		int length = 0;
+		
+		for(TlvDataObject tlvDataObject : this.tlvObjects) {
+			length += tlvDataObject.computeEncodedLength();
 		}
-
-		return outputStream.toByteArray();
+		
+		return length;
+	}
+	
+	/**
+	 * @see TlvDataObject#writeEncoded(byte[], int)
+	 * @param buffer the buffer to write to
+	 * @param offset the first offset to be written
+	 * @return the first offset behind the bytes written
+	 */
+	int writeEncoded(byte[] buffer, int offset) {
+		byte[] data = unparsedData;
+		if(data != null) {
+			System.arraycopy(data, unparsedMinOffset, buffer, offset, unparsedMaxOffset - unparsedMinOffset);
+			return offset + unparsedMaxOffset - unparsedMinOffset;
+		}
+		
+		for(TlvDataObject tlvDataObject : this.tlvObjects) {
+			offset = tlvDataObject.writeEncoded(buffer, offset);
+		}
+		
+		return offset;
+	}
+	
+	/*--------------------------------------------------------------------------------*/
+	
+	/**
+	 * Freezes this container and all contained objects, see
+	 * {@link TlvDataObject#freeze()}.
+	 */
+	public void freeze() {
+		/* parse all levels, frozen trees are not modified even when accessed */
+		parse();
+		frozen = true;
+		
+		for(TlvDataObject tlvDataObject : this.tlvObjects) {
+			tlvDataObject.freeze();
+		}
+	}
+	
+	/**
+	 * @return true iff this container has been frozen
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+	
+	/**
+	 * Must be called by all methods modifying this container.
+	 * @throws IllegalStateException if this container is frozen
+	 */
+	private void checkNotFrozen() {
+		if(frozen) {throw new IllegalStateException("TLV data object container is frozen and must not be modified");}
 	}
 	
 	/*--------------------------------------------------------------------------------*/
 
 	@Override
 	public Iterator<TlvDataObject> iterator() {
-		return this.tlvObjects.iterator();
+		parse();
+		final Iterator<TlvDataObject> iterator = tlvObjects.iterator();
+		
+		return new Iterator<TlvDataObject>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+			
+			@Override
+			public TlvDataObject next() {
+				return iterator.next();
+			}
+			
+			@Override
+			public void remove() {
+				checkNotFrozen();
+				discardTagIndex();
+				iterator.remove();
+			}
+		};
 	}
 	
 	/*--------------------------------------------------------------------------------*/
 	
 	@Override
 	public void sort(Comparator<TlvDataObject> comparator) {
+		checkNotFrozen();
+		parse();
+		discardTagIndex();
 		Collections.sort(this.tlvObjects, comparator);
 	}
 	
@@ -245,6 +633,9 @@ public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvData
 	
 	@Override
 	public void addTlvDataObject(TlvDataObject... tlvDataObject) {
+		checkNotFrozen();
+		parse();
+		discardTagIndex();
 		for (int i = 0; i < tlvDataObject.length; i++) {
 			this.tlvObjects.add(tlvDataObject[i]);	
 		}
@@ -270,8 +661,12 @@ public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvData
 	
 	@Override
 	public void removeTlvDataObject(TlvTagIdentifier tagIdentifier) {
+		checkNotFrozen();
 		TlvDataObject objToRemove = getTlvDataObject(tagIdentifier);
-		tlvObjects.remove(objToRemove);		
+		if(objToRemove != null) {
+			discardTagIndex();
+			tlvObjects.remove(objToRemove);
+		}
 	}
 	
 	@Override
@@ -281,15 +676,7 @@ public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvData
 
 	@Override
 	public int getLength() {
-		int length;
-		
-		length = 0;
-		
-		for(TlvDataObject tlvDataObject : this.tlvObjects) {
-			length += tlvDataObject.getLength();
-		}
-		
-		return length;
+		return computeEncodedLength();
 	}
 	
 	@Override
@@ -298,6 +685,7 @@ public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvData
 		
 		sb.append("(");
 		
+		parse();
 		for(TlvDataObject tlvDataObject : this.tlvObjects) {
 			sb.append("[");
 			sb.append(tlvDataObject.toString());
@@ -311,6 +699,7 @@ public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvData
 
 	@Override
 	public boolean isValidBerEncoding() {
+		parse();
 		for(TlvDataObject tlvDataObject : tlvObjects) {
 			if(!tlvDataObject.isValidBerEncoding()) {return false;}
 		}
@@ -321,6 +710,7 @@ public class TlvDataObjectContainer extends TlvValue implements Iso7816, TlvData
 	@Override
 	public boolean isValidDerEncoding() {
 		/* first check elements for themselves */
+		parse();
 		for(TlvDataObject tlvDataObject : tlvObjects) {
 			if(!tlvDataObject.isValidDerEncoding()) {return false;}
 		}
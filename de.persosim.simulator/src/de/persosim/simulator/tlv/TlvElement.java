@@ -1,5 +1,8 @@
 package de.persosim.simulator.tlv;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
 import de.persosim.simulator.platform.Iso7816;
 import de.persosim.simulator.utils.HexString;
 
@@ -32,6 +35,36 @@ public abstract class TlvElement implements Iso7816, ValidityChecks {
 	 */
 	public abstract int getLength();
 	
+	/**
+	 * Writes the byte array representation of this object into the provided
+	 * buffer. The buffer must provide at least {@link #getLength()} bytes
+	 * starting at the provided offset.
+	 * @param buffer the buffer to write to
+	 * @param offset the first offset to be written
+	 * @return the first offset behind the bytes written
+	 */
+	public int writeTo(byte[] buffer, int offset) {
+		byte[] encoding = toByteArray();
+		System.arraycopy(encoding, 0, buffer, offset, encoding.length);
+		return offset + encoding.length;
+	}
+	
+	/**
+	 * Writes the byte array representation of this object into the provided
+	 * buffer starting at its current position. The position is advanced by the
+	 * number of bytes written.
+	 * @param buffer the buffer to write to
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		if(buffer.hasArray()) {
+			if(buffer.remaining() < getLength()) {throw new BufferOverflowException();}
+			int endOffset = writeTo(buffer.array(), buffer.arrayOffset() + buffer.position());
+			buffer.position(endOffset - buffer.arrayOffset());
+		} else{
+			buffer.put(toByteArray());
+		}
+	}
+	
 	@Override
 	public String toString() {
 		return HexString.encode(this.toByteArray());
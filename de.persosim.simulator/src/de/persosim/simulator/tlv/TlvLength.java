@@ -11,14 +11,35 @@ import de.persosim.simulator.utils.Utils;
  * checks for validity or encoding. This explicitly allows for generating
  * intentionally damaged length fields.
  * 
+ * Length fields in short form, i.e. indicating lengths of up to 127 bytes,
+ * created by the valueOf methods share their encoding. It is never modified in
+ * place, all setters replace it by a copy.
+ * 
  * @author slutters
  * 
  */
 public class TlvLength extends TlvElement {
+	/* is never modified in place as it may be shared, see SHORT_FORM_LENGTHS */
 	protected byte[] lengthField;
 	
+	/* shared encodings of all length fields in short form, indexed by the indicated length */
+	private static final byte[][] SHORT_FORM_LENGTHS = new byte[128][];
+	
+	static {
+		for(int i = 0; i < SHORT_FORM_LENGTHS.length; i++) {
+			SHORT_FORM_LENGTHS[i] = new byte[]{(byte) i};
+		}
+	}
+	
 	/*--------------------------------------------------------------------------------*/
 	
+	/**
+	 * Constructor for length fields in short form, see {@link #getShortForm(int)}.
+	 */
+	private TlvLength() {
+		super();
+	}
+	
 	/**
 	 * Basic constructor for this object based on a range defined on an array of raw bytes.
 	 * 
@@ -103,6 +124,54 @@ public class TlvLength extends TlvElement {
 	
 	/*--------------------------------------------------------------------------------*/
 	
+	/**
+	 * Returns the length field contained at the beginning of a range defined
+	 * on an array of raw bytes. Length fields in short form are created
+	 * without copying their encoding, all other length fields are handled like
+	 * {@link #TlvLength(byte[], int, int)} does.
+	 * 
+	 * @param lengthFieldInput the byte array that in a certain range contains the TLV length
+	 * @param minOffset the first offset of the range to contain the TLV length (inclusive)
+	 * @param maxOffset the first offset not to be part of the range to contain the TLV length (exclusive).
+	 * @return the length field
+	 */
+	public static TlvLength valueOf(byte[] lengthFieldInput, int minOffset, int maxOffset) {
+		if((lengthFieldInput != null) && (minOffset >= 0) && (minOffset < maxOffset) && (maxOffset <= lengthFieldInput.length) && (lengthFieldInput[minOffset] >= 0)) {
+			return getShortForm(lengthFieldInput[minOffset]);
+		}
+		
+		return new TlvLength(lengthFieldInput, minOffset, maxOffset);
+	}
+	
+	/**
+	 * Returns the DER encoded length field for the provided length. Length
+	 * fields in short form are created without copying their encoding.
+	 * 
+	 * @param lengthValue the value to be represented by the length field
+	 * @return the length field
+	 */
+	public static TlvLength valueOf(int lengthValue) {
+		if((lengthValue >= 0) && (lengthValue < SHORT_FORM_LENGTHS.length)) {
+			return getShortForm(lengthValue);
+		}
+		
+		return new TlvLength(lengthValue);
+	}
+	
+	/**
+	 * Returns a new length field in short form using the shared encoding
+	 * without copying it.
+	 * @param lengthValue the value to be represented, in range 0-127
+	 * @return the length field
+	 */
+	private static TlvLength getShortForm(int lengthValue) {
+		TlvLength tlvLength = new TlvLength();
+		tlvLength.lengthField = SHORT_FORM_LENGTHS[lengthValue];
+		return tlvLength;
+	}
+	
+	/*--------------------------------------------------------------------------------*/
+	
 	/**
 	 * Basic method to set the length field based on a range from an array of raw bytes.
 	 * The defined range must contain at least the whole length field.
@@ -218,6 +287,12 @@ public class TlvLength extends TlvElement {
 		return Arrays.copyOf(lengthField, lengthField.length);
 	}
 	
+	@Override
+	public int writeTo(byte[] buffer, int offset) {
+		System.arraycopy(lengthField, 0, buffer, offset, lengthField.length);
+		return offset + lengthField.length;
+	}
+	
 	@Override
 	public int getLength() {
 		return this.lengthField.length;
@@ -292,7 +367,42 @@ public class TlvLength extends TlvElement {
 	 * @return the minimum number of bytes that is needed to encode the given length
 	 */
 	public static int getMinNoOfBytesEncodingLength(int indicatedLength) {
-		return getLengthEncoding(indicatedLength).length;
+		if(indicatedLength < 0) {throw new NullPointerException("length must not be smaller than 0");}
+		
+		if(indicatedLength <= 127) {
+			return 1;
+		}
+		
+		int noOfBytes = 2;
+		while((indicatedLength >>>= 8) != 0) {
+			noOfBytes++;
+		}
+		return noOfBytes;
+	}
+	
+	/**
+	 * Writes the minimum length encoding of the provided length value into the
+	 * provided buffer, i.e. the same bytes as returned by
+	 * {@link #getLengthEncoding(int)}.
+	 * @param indicatedLength the length value to be encoded
+	 * @param buffer the buffer to write to
+	 * @param offset the first offset to be written
+	 * @return the first offset behind the bytes written
+	 */
+	public static int writeLengthEncoding(int indicatedLength, byte[] buffer, int offset) {
+		int noOfBytes = getMinNoOfBytesEncodingLength(indicatedLength);
+		
+		if(noOfBytes == 1) {
+			buffer[offset] = (byte) indicatedLength;
+			return offset + 1;
+		}
+		
+		buffer[offset] = (byte) (0x80 | (noOfBytes - 1));
+		for(int i = noOfBytes - 1; i > 0; i--) {
+			buffer[offset + i] = (byte) indicatedLength;
+			indicatedLength >>>= 8;
+		}
+		return offset + noOfBytes;
 	}
 	
 }
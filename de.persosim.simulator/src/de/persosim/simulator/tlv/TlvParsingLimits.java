@@ -0,0 +1,96 @@
+package de.persosim.simulator.tlv;
+
+import de.persosim.simulator.exception.ISO7816Exception;
+import de.persosim.simulator.platform.Iso7816;
+
+/**
+ * This class defines the limits enforced when TLV data objects are parsed from
+ * raw bytes. The limits comprise the maximum nesting depth, the maximum number
+ * of TLV data objects including all nested ones and the maximum number of
+ * bytes to be parsed at once. They are checked before any TLV data object is
+ * created, i.e. malformed or hostile input is rejected early and the memory
+ * and time required for parsing remain bounded.
+ *
+ * Objects of this class are immutable. The limits currently in use can be
+ * replaced by {@link #setCurrent(TlvParsingLimits)}.
+ */
+public class TlvParsingLimits implements Iso7816 {
+
+	/**
+	 * Limits used by default, sufficient for all data structures handled by
+	 * the simulator.
+	 */
+	public static final TlvParsingLimits DEFAULT = new TlvParsingLimits(TlvValidator.DEFAULT_MAX_DEPTH, 0x10000, 0x100000);
+
+	/**
+	 * Limits that do not restrict parsing at all.
+	 */
+	public static final TlvParsingLimits UNLIMITED = new TlvParsingLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+	private static volatile TlvParsingLimits current = DEFAULT;
+
+	private final int maxDepth;
+	private final int maxNoOfElements;
+	private final int maxNoOfBytes;
+
+	/*--------------------------------------------------------------------------------*/
+
+	/**
+	 * Constructor for limits
+	 * @param maxDepth the maximum nesting depth, TLV data objects on the top level are at depth 1
+	 * @param maxNoOfElements the maximum number of TLV data objects including all nested ones
+	 * @param maxNoOfBytes the maximum number of bytes to be parsed at once
+	 */
+	public TlvParsingLimits(int maxDepth, int maxNoOfElements, int maxNoOfBytes) {
+		if(maxDepth < 1) {throw new IllegalArgumentException("max depth must be at least 1");}
+		if(maxNoOfElements < 1) {throw new IllegalArgumentException("max number of elements must be at least 1");}
+		if(maxNoOfBytes < 2) {throw new IllegalArgumentException("max number of bytes must be at least 2");}
+
+		this.maxDepth = maxDepth;
+		this.maxNoOfElements = maxNoOfElements;
+		this.maxNoOfBytes = maxNoOfBytes;
+	}
+
+	/*--------------------------------------------------------------------------------*/
+
+	/**
+	 * @return the limits currently enforced when parsing TLV data objects
+	 */
+	public static TlvParsingLimits getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Replaces the limits enforced when parsing TLV data objects.
+	 * @param limits the limits to be enforced from now on
+	 */
+	public static void setCurrent(TlvParsingLimits limits) {
+		if(limits == null) {throw new NullPointerException();}
+		current = limits;
+	}
+
+	/**
+	 * Checks the number of bytes to be parsed at once.
+	 * @param noOfBytes the number of bytes
+	 */
+	void checkNoOfBytes(int noOfBytes) {
+		if(noOfBytes > maxNoOfBytes) {
+			ISO7816Exception.throwIt(SW_6A80_WRONG_DATA, "TLV encoding exceeds max number of bytes");
+		}
+	}
+
+	/*--------------------------------------------------------------------------------*/
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public int getMaxNoOfElements() {
+		return maxNoOfElements;
+	}
+
+	public int getMaxNoOfBytes() {
+		return maxNoOfBytes;
+	}
+
+}
@@ -0,0 +1,314 @@
+package de.persosim.simulator.tlv;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import de.persosim.simulator.exception.ISO7816Exception;
+import de.persosim.simulator.platform.Iso7816;
+
+/**
+ * This class implements a read-only cursor over a sequence of BER-TLV data
+ * objects contained within a range of an array of raw bytes.
+ * <p/>
+ * In contrast to {@link TlvDataObjectContainer} no {@link TlvDataObject},
+ * {@link TlvTag}, {@link TlvLength} or {@link TlvValue} objects are created.
+ * The cursor only keeps offsets into the original array, thus iterating over
+ * elements, matching tags and navigating along a {@link TlvPath} do not
+ * allocate any memory. Value fields can be accessed as {@link ByteBuffer}
+ * views sharing the original array.
+ * <p/>
+ * The cursor is positioned before the first element after construction, each
+ * call to {@link #next()} moves it to the following element on the current
+ * level. Nested levels are entered explicitly by {@link #enter()}, which
+ * restricts the cursor to the value field of the current element.
+ * <p/>
+ * Malformed encodings are rejected with the same {@link ISO7816Exception}s
+ * thrown by {@link TlvDataObjectFactory}. As the cursor only decodes the
+ * elements it is moved across, malformed data behind the last accessed
+ * element is not detected.
+ * <p/>
+ * The array is not copied, callers must not modify it while it is in use by
+ * the reader.
+ */
+public class TlvReader implements Iso7816 {
+
+	private byte[] data;
+
+	/* first offset not to be part of the current level (exclusive) */
+	private int maxOffset;
+
+	/* offsets of the current element, tagOffset == endOffset if the cursor is not positioned on an element */
+	private int tagOffset;
+	private int noOfTagBytes;
+	private int valueOffset;
+	private int endOffset;
+
+	/*--------------------------------------------------------------------------------*/
+
+	/**
+	 * Constructor for a reader over a range of an array of raw bytes.
+	 * @param data the byte array that in a certain range contains the TLV data objects
+	 * @param minOffset the first offset of the range (inclusive)
+	 * @param maxOffset the first offset not to be part of the range (exclusive)
+	 */
+	public TlvReader(byte[] data, int minOffset, int maxOffset) {
+		if(data == null) {throw new NullPointerException();}
+		if(minOffset < 0) {throw new IllegalArgumentException("min offset must not be less than 0");}
+		if(maxOffset < minOffset) {throw new IllegalArgumentException("max offset must not be smaller than min offset");}
+		if(maxOffset > data.length) {throw new IllegalArgumentException("selected array area must not lie outside of data array");}
+
+		this.data = data;
+		reset(minOffset, maxOffset);
+	}
+
+	/**
+	 * Constructor for a reader over a whole array of raw bytes.
+	 * @param data the byte array that contains the TLV data objects
+	 */
+	public TlvReader(byte[] data) {
+		this(data, 0, data.length);
+	}
+
+	/*--------------------------------------------------------------------------------*/
+
+	private void reset(int minOffset, int maxOffset) {
+		this.maxOffset = maxOffset;
+		tagOffset = minOffset;
+		noOfTagBytes = 0;
+		valueOffset = minOffset;
+		endOffset = minOffset;
+	}
+
+	/**
+	 * Moves the cursor to the next element on the current level.
+	 * @return true iff the cursor is positioned on an element, false if the
+	 *         end of the current level has been reached
+	 */
+	public boolean next() {
+		if(endOffset >= maxOffset) {
+			tagOffset = maxOffset;
+			endOffset = maxOffset;
+			return false;
+		}
+
+		tagOffset = endOffset;
+		noOfTagBytes = TlvCoding.getNoOfTagBytes(data, tagOffset, maxOffset);
+
+		int lengthOffset = tagOffset + noOfTagBytes;
+		if(lengthOffset >= maxOffset) {
+			ISO7816Exception.throwIt(SW_6A85_NC_INCONSISTENT_WITH_TLV_STRUCTURE, "offset outside data array");
+		}
+
+		int noOfLengthBytes = TlvCoding.getNoOfLengthBytes(data, lengthOffset, maxOffset);
+		int indicatedLength = TlvCoding.getIndicatedLength(data, lengthOffset, noOfLengthBytes);
+
+		valueOffset = lengthOffset + noOfLengthBytes;
+		if((indicatedLength < 0) || (indicatedLength > (maxOffset - valueOffset))) {
+			/* error, length indicated by TLV would exceed expected length */
+			ISO7816Exception.throwIt(SW_6A85_NC_INCONSISTENT_WITH_TLV_STRUCTURE, "offset outside data array");
+		}
+
+		endOffset = valueOffset + indicatedLength;
+		return true;
+	}
+
+	/**
+	 * Moves the cursor forward on the current level to the given occurrence of
+	 * the provided tag. The current element is taken into account, so calling
+	 * this method repeatedly with the same tag does not move the cursor again.
+	 * @param tagIdentifier the tag and its occurrence to be found
+	 * @return true iff the cursor is positioned on a matching element
+	 */
+	public boolean find(TlvTagIdentifier tagIdentifier) {
+		if(tagIdentifier == null) {throw new NullPointerException("tag must not be null");}
+
+		int remainingOccurrences = tagIdentifier.getNoOfPreviousOccurrences();
+
+		if(!isPositioned()) {
+			if(!next()) {
+				return false;
+			}
+		}
+
+		do {
+			if(matches(tagIdentifier.getTag())) {
+				if(remainingOccurrences == 0) {
+					return true;
+				}
+				remainingOccurrences--;
+			}
+		} while(next());
+
+		return false;
+	}
+
+	/**
+	 * Moves the cursor forward on the current level to the first occurrence
+	 * of the provided tag.
+	 * @see #find(TlvTagIdentifier)
+	 * @param tlvTag the tag to be found
+	 * @return true iff the cursor is positioned on a matching element
+	 */
+	public boolean find(TlvTag tlvTag) {
+		return find(new TlvTagIdentifier(tlvTag));
+	}
+
+	/**
+	 * Navigates along the provided path starting at the current position. On
+	 * success the cursor is positioned on the element identified by the last
+	 * tag of the path and restricted to the level containing it.
+	 * @param path the path of the element to be found, relative to the current level
+	 * @return true iff the element identified by the path was found
+	 */
+	public boolean find(TlvPath path) {
+		if((path == null) || (path.size() == 0)) {throw new NullPointerException();}
+
+		for(int i = 0; i < path.size(); i++) {
+			if(i > 0) {
+				if(!isConstructed()) {
+					return false;
+				}
+				enter();
+			}
+
+			if(!find(path.get(i))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Restricts the cursor to the value field of the current element. The
+	 * cursor is positioned before the first child element afterwards.
+	 */
+	public void enter() {
+		checkPositioned();
+		reset(valueOffset, endOffset);
+	}
+
+	/**
+	 * Returns a new reader restricted to the value field of the current
+	 * element, this reader is not modified.
+	 * @return a reader over the child elements of the current element
+	 */
+	public TlvReader getChildReader() {
+		checkPositioned();
+		return new TlvReader(data, valueOffset, endOffset);
+	}
+
+	/*--------------------------------------------------------------------------------*/
+
+	/**
+	 * @return whether the cursor is positioned on an element
+	 */
+	public boolean isPositioned() {
+		return tagOffset < endOffset;
+	}
+
+	private void checkPositioned() {
+		if(!isPositioned()) {throw new IllegalStateException("reader is not positioned on an element");}
+	}
+
+	/**
+	 * @param tlvTag the tag to compare with
+	 * @return whether the tag of the current element matches the provided tag
+	 */
+	public boolean matches(TlvTag tlvTag) {
+		checkPositioned();
+		return tlvTag.matches(data, tagOffset, noOfTagBytes);
+	}
+
+	/**
+	 * @return whether the tag of the current element indicates constructed encoding
+	 */
+	public boolean isConstructed() {
+		checkPositioned();
+		return (data[tagOffset] & Asn1.ENCODING) == Asn1.ENCODING_CONSTRUCTED;
+	}
+
+	/**
+	 * @return the first offset of the current element within the underlying array
+	 */
+	public int getOffset() {
+		checkPositioned();
+		return tagOffset;
+	}
+
+	/**
+	 * @return the total number of bytes occupied by the current element
+	 */
+	public int getLength() {
+		checkPositioned();
+		return endOffset - tagOffset;
+	}
+
+	/**
+	 * @return the number of bytes occupied by the tag of the current element
+	 */
+	public int getNoOfTagBytes() {
+		checkPositioned();
+		return noOfTagBytes;
+	}
+
+	/**
+	 * @return the first offset of the value field of the current element within the underlying array
+	 */
+	public int getValueOffset() {
+		checkPositioned();
+		return valueOffset;
+	}
+
+	/**
+	 * @return the number of bytes occupied by the value field of the current element
+	 */
+	public int getValueLength() {
+		checkPositioned();
+		return endOffset - valueOffset;
+	}
+
+	/**
+	 * @return the array this reader operates on
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * Returns a read-only view on the value field of the current element. The
+	 * view shares the underlying array, its position is 0 and its limit is the
+	 * length of the value field.
+	 * @return a view on the value field of the current element
+	 */
+	public ByteBuffer getValue() {
+		checkPositioned();
+		return ByteBuffer.wrap(data, valueOffset, endOffset - valueOffset).slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return a copy of the value field of the current element
+	 */
+	public byte[] getValueField() {
+		checkPositioned();
+		return Arrays.copyOfRange(data, valueOffset, endOffset);
+	}
+
+	/**
+	 * @return a copy of the current element including tag and length field
+	 */
+	public byte[] toByteArray() {
+		checkPositioned();
+		return Arrays.copyOfRange(data, tagOffset, endOffset);
+	}
+
+	/**
+	 * Creates a {@link TlvDataObject} for the current element.
+	 * @return the current element as {@link TlvDataObject}
+	 */
+	public TlvDataObject toTlvDataObject() {
+		checkPositioned();
+		return TlvDataObjectFactory.createTLVDataObject(data, tagOffset, endOffset);
+	}
+
+}
@@ -11,6 +11,9 @@ import de.persosim.simulator.utils.Utils;
  * In the field tags do not need to be changed for themselves. They may only need to be exchanged as part of another data structure, i.e. {@link PrimitiveTlvDataObject}.
  * The preferred way of doing so is to provide/use an according unchecked setter method for/of respective data structures.
  * 
+ * As tags are immutable, all valid one and two byte tags are provided as shared instances by the valueOf methods.
+ * These should be preferred to the constructors wherever tags are frequently created, e.g. while parsing.
+ * 
  * @author slutters
  *
  */
@@ -18,6 +21,26 @@ public final class TlvTag extends TlvElement implements Asn1 {
 	
 	private byte[] tagField;
 	
+	/* shared instances of all valid one byte tags, indexed by the tag byte */
+	private static final TlvTag[] ONE_BYTE_TAGS = new TlvTag[256];
+	
+	/* shared instances of all valid two byte tags, indexed by bits 8-6 of the first byte and the second byte */
+	private static final TlvTag[][] TWO_BYTE_TAGS = new TlvTag[8][128];
+	
+	static {
+		for(int i = 0; i < ONE_BYTE_TAGS.length; i++) {
+			if((i & 0x1F) != 0x1F) {
+				ONE_BYTE_TAGS[i] = new TlvTag(new byte[]{(byte) i}, SKIP_VALIDITY_CHECKS);
+			}
+		}
+		
+		for(int i = 0; i < TWO_BYTE_TAGS.length; i++) {
+			for(int j = 31; j < TWO_BYTE_TAGS[i].length; j++) {
+				TWO_BYTE_TAGS[i][j] = new TlvTag(new byte[]{(byte) ((i << 5) | 0x1F), (byte) j}, SKIP_VALIDITY_CHECKS);
+			}
+		}
+	}
+	
 	/*--------------------------------------------------------------------------------*/
 	
 	/**
@@ -147,6 +170,88 @@ public final class TlvTag extends TlvElement implements Asn1 {
 	
 	/*--------------------------------------------------------------------------------*/
 	
+	/**
+	 * Returns the tag contained at the beginning of a range defined on an
+	 * array of raw bytes. Valid one and two byte tags are returned as shared
+	 * instances, all other tags are handled like
+	 * {@link #TlvTag(byte[], int, int)} does.
+	 * 
+	 * @param tagFieldInput the byte array that in a certain range contains the TLV tag
+	 * @param minOffset the first offset of the range to contain the TLV tag (inclusive)
+	 * @param maxOffset the first offset not to be part of the range to contain the TLV tag (exclusive).
+	 * @return the tag
+	 */
+	public static TlvTag valueOf(byte[] tagFieldInput, int minOffset, int maxOffset) {
+		if((tagFieldInput != null) && (minOffset >= 0) && (minOffset < maxOffset) && (maxOffset <= tagFieldInput.length)) {
+			int firstByte = tagFieldInput[minOffset] & 0xFF;
+			
+			if((firstByte & 0x1F) != 0x1F) {
+				return ONE_BYTE_TAGS[firstByte];
+			}
+			
+			if(minOffset + 1 < maxOffset) {
+				int secondByte = tagFieldInput[minOffset + 1] & 0xFF;
+				if(secondByte < 0x80) {
+					TlvTag tag = TWO_BYTE_TAGS[firstByte >> 5][secondByte];
+					if(tag != null) {
+						return tag;
+					}
+				}
+			}
+		}
+		
+		/* tags of three bytes as well as all error cases */
+		return new TlvTag(tagFieldInput, minOffset, maxOffset);
+	}
+	
+	/**
+	 * Returns the tag contained at the beginning of an array of raw bytes, see
+	 * {@link #valueOf(byte[], int, int)}.
+	 * 
+	 * @param tagFieldInput the byte array that contains the TLV tag
+	 * @return the tag
+	 */
+	public static TlvTag valueOf(byte[] tagFieldInput) {
+		if(tagFieldInput == null) {throw new NullPointerException("tag field must not be null");}
+		return valueOf(tagFieldInput, 0, tagFieldInput.length);
+	}
+	
+	/**
+	 * Returns the one byte tag, see {@link #TlvTag(byte)}. Valid tags are
+	 * returned as shared instances.
+	 * 
+	 * @param tagFieldInput the byte that contains the TLV tag
+	 * @return the tag
+	 */
+	public static TlvTag valueOf(byte tagFieldInput) {
+		TlvTag tag = ONE_BYTE_TAGS[tagFieldInput & 0xFF];
+		if(tag != null) {
+			return tag;
+		}
+		
+		return new TlvTag(tagFieldInput);
+	}
+	
+	/**
+	 * Returns the two byte tag, see {@link #TlvTag(short)}. Valid tags are
+	 * returned as shared instances.
+	 * 
+	 * @param tagFieldInput the short that contains the TLV tag
+	 * @return the tag
+	 */
+	public static TlvTag valueOf(short tagFieldInput) {
+		int firstByte = (tagFieldInput >> 8) & 0xFF;
+		int secondByte = tagFieldInput & 0xFF;
+		
+		if(((firstByte & 0x1F) == 0x1F) && (secondByte < 0x80) && (TWO_BYTE_TAGS[firstByte >> 5][secondByte] != null)) {
+			return TWO_BYTE_TAGS[firstByte >> 5][secondByte];
+		}
+		
+		return new TlvTag(tagFieldInput);
+	}
+	
+	/*--------------------------------------------------------------------------------*/
+	
 	/**
 	 * This method sets the TLV tag based on a raw byte array.
 	 * 
@@ -310,13 +415,39 @@ public final class TlvTag extends TlvElement implements Asn1 {
 	}
 	
 	public boolean matches(TlvTag anotherTlvTag) {
+		if (this == anotherTlvTag) {
+			return true;
+		}
+		
 		if (!Arrays.equals(this.tagField, anotherTlvTag.tagField)) {
 			return false;
 		}
 		
 		return true;
 	}
-	
+
+	/**
+	 * This method matches this tag against a tag field located within a range
+	 * of an array of raw bytes without copying it.
+	 * @param data the byte array that contains the tag field
+	 * @param offset the first offset of the tag field
+	 * @param length the number of bytes of the tag field
+	 * @return whether this tag matches the provided tag field
+	 */
+	boolean matches(byte[] data, int offset, int length) {
+		if (length != tagField.length) {
+			return false;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (tagField[i] != data[offset + i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	@Override
 	public int hashCode() {
 		return Arrays.hashCode(tagField);
@@ -350,6 +481,12 @@ public final class TlvTag extends TlvElement implements Asn1 {
 		return Arrays.copyOf(tagField, tagField.length);
 	}
 	
+	@Override
+	public int writeTo(byte[] buffer, int offset) {
+		System.arraycopy(tagField, 0, buffer, offset, tagField.length);
+		return offset + tagField.length;
+	}
+	
 	@Override
 	public TlvTag clone() {
 		return new TlvTag(this.toByteArray(), SKIP_VALIDITY_CHECKS);
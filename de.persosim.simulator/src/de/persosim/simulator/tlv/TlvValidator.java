@@ -0,0 +1,151 @@
+package de.persosim.simulator.tlv;
+
+/**
+ * This class checks sequences of TLV data objects contained within a range of
+ * an array of raw bytes for valid BER or DER encoding. In contrast to
+ * {@link TlvDataObject#isValidBerEncoding()} and
+ * {@link TlvDataObject#isValidDerEncoding()} no objects need to be
+ * constructed. All checks are performed in a single pass over the raw bytes
+ * without allocating any memory, thus malformed input can be rejected before
+ * any expensive object construction takes place.
+ *
+ * Checks for BER encoding comprise
+ * <ul>
+ * <li>tag fields of at most 3 bytes not encoding tag numbers that would fit
+ * into shorter tag fields</li>
+ * <li>length fields in definite form of at most 5 bytes</li>
+ * <li>all nested TLV data objects exactly filling the value field of their
+ * parent</li>
+ * <li>nesting not exceeding a maximum depth</li>
+ * </ul>
+ * Checks for DER encoding additionally comprise
+ * <ul>
+ * <li>length fields of minimal length</li>
+ * <li>TLV data objects on the same level being sorted as defined by
+ * {@link TlvDataObjectComparatorDer}</li>
+ * </ul>
+ */
+public class TlvValidator {
+
+	/**
+	 * Maximum nesting depth of constructed TLV data objects accepted by default
+	 */
+	public static final int DEFAULT_MAX_DEPTH = 64;
+
+	/**
+	 * Should never be instantiated
+	 */
+	private TlvValidator() {
+	}
+
+	/**
+	 * Checks whether the provided range contains a sequence of valid BER
+	 * encoded TLV data objects.
+	 * @param data the byte array that in a certain range contains the TLV data objects
+	 * @param minOffset the first offset of the range (inclusive)
+	 * @param maxOffset the first offset not to be part of the range (exclusive)
+	 * @return true iff the range contains valid BER encoding
+	 */
+	public static boolean isValidBerEncoding(byte[] data, int minOffset, int maxOffset) {
+		return isValidEncoding(data, minOffset, maxOffset, false, DEFAULT_MAX_DEPTH);
+	}
+
+	/**
+	 * @see #isValidBerEncoding(byte[], int, int)
+	 * @param data the byte array that contains the TLV data objects
+	 * @return true iff the array contains valid BER encoding
+	 */
+	public static boolean isValidBerEncoding(byte[] data) {
+		return isValidBerEncoding(data, 0, data.length);
+	}
+
+	/**
+	 * Checks whether the provided range contains a sequence of valid DER
+	 * encoded TLV data objects.
+	 * @param data the byte array that in a certain range contains the TLV data objects
+	 * @param minOffset the first offset of the range (inclusive)
+	 * @param maxOffset the first offset not to be part of the range (exclusive)
+	 * @return true iff the range contains valid DER encoding
+	 */
+	public static boolean isValidDerEncoding(byte[] data, int minOffset, int maxOffset) {
+		return isValidEncoding(data, minOffset, maxOffset, true, DEFAULT_MAX_DEPTH);
+	}
+
+	/**
+	 * @see #isValidDerEncoding(byte[], int, int)
+	 * @param data the byte array that contains the TLV data objects
+	 * @return true iff the array contains valid DER encoding
+	 */
+	public static boolean isValidDerEncoding(byte[] data) {
+		return isValidDerEncoding(data, 0, data.length);
+	}
+
+	/**
+	 * Checks whether the provided range contains a sequence of valid BER or
+	 * DER encoded TLV data objects.
+	 * @param data the byte array that in a certain range contains the TLV data objects
+	 * @param minOffset the first offset of the range (inclusive)
+	 * @param maxOffset the first offset not to be part of the range (exclusive)
+	 * @param der true: check for DER encoding, false: check for BER encoding
+	 * @param maxDepth the maximum nesting depth, TLV data objects on the top level are at depth 1
+	 * @return true iff the range contains valid encoding
+	 */
+	public static boolean isValidEncoding(byte[] data, int minOffset, int maxOffset, boolean der, int maxDepth) {
+		if(data == null) {throw new NullPointerException();}
+		if(minOffset < 0) {throw new IllegalArgumentException("min offset must not be less than 0");}
+		if(maxOffset < minOffset) {throw new IllegalArgumentException("max offset must not be smaller than min offset");}
+		if(maxOffset > data.length) {throw new IllegalArgumentException("selected array area must not lie outside of data array");}
+
+		return isValidLevel(data, minOffset, maxOffset, der, maxDepth);
+	}
+
+	/**
+	 * Checks all TLV data objects on one level and recursively all levels
+	 * nested within them.
+	 */
+	private static boolean isValidLevel(byte[] data, int minOffset, int maxOffset, boolean der, int remainingDepth) {
+		if((minOffset < maxOffset) && (remainingDepth < 1)) {return false;}
+
+		int currentOffset = minOffset;
+		int previousTagOffset = -1;
+		int previousNoOfTagBytes = 0;
+
+		while(currentOffset < maxOffset) {
+			int noOfTagBytes = TlvCoding.decodeNoOfTagBytes(data, currentOffset, maxOffset);
+			if(noOfTagBytes < 0) {return false;}
+
+			if(der && (previousTagOffset >= 0)) {
+				if(TlvCoding.compareTags(data, previousTagOffset, previousNoOfTagBytes, currentOffset, noOfTagBytes) > 0) {return false;}
+			}
+
+			int lengthOffset = currentOffset + noOfTagBytes;
+			if(lengthOffset >= maxOffset) {return false;}
+
+			int noOfLengthBytes = TlvCoding.decodeNoOfLengthBytes(data, lengthOffset, maxOffset);
+			if(noOfLengthBytes < 0) {return false;}
+
+			int indicatedLength = TlvCoding.getIndicatedLength(data, lengthOffset, noOfLengthBytes);
+			if(indicatedLength < 0) {return false;}
+
+			if(der && (noOfLengthBytes > 1)) {
+				/* length must not fit into the short form and must not have leading zero bytes */
+				if((indicatedLength < 0x80) || (data[lengthOffset + 1] == 0)) {return false;}
+			}
+
+			int valueOffset = lengthOffset + noOfLengthBytes;
+			if(indicatedLength > (maxOffset - valueOffset)) {return false;}
+			int endOffset = valueOffset + indicatedLength;
+
+			if((data[currentOffset] & 0x20) == 0x20) {
+				if(!isValidLevel(data, valueOffset, endOffset, der, remainingDepth - 1)) {return false;}
+			}
+
+			previousTagOffset = currentOffset;
+			previousNoOfTagBytes = noOfTagBytes;
+			currentOffset = endOffset;
+		}
+
+		return true;
+	}
+
+}
@@ -105,6 +105,12 @@ public class TlvValuePlain extends TlvValue {
 		return Arrays.copyOf(this.valueField, this.valueField.length);
 	}
 	
+	@Override
+	public int writeTo(byte[] buffer, int offset) {
+		System.arraycopy(valueField, 0, buffer, offset, valueField.length);
+		return offset + valueField.length;
+	}
+	
 	@Override
 	public TlvValuePlain clone() {
 		return new TlvValuePlain(this.valueField);
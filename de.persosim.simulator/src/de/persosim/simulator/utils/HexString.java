@@ -165,8 +165,12 @@ public class HexString {
 			return new byte[0];};
 		byte[] result = new byte[inputString.length() / 2];
 		for (int i = 0; i < inputString.length(); i=i+2) {
-			int v = Integer.parseInt(inputString.substring(i, i + 2),16);
-			result[i/2] = (byte) v;
+			int high = Character.digit(inputString.charAt(i), 16);
+			int low = Character.digit(inputString.charAt(i + 1), 16);
+			if ((high < 0) || (low < 0)) {
+				throw new NumberFormatException("For input string: \"" + inputString.substring(i, i + 2) + "\"");
+			}
+			result[i/2] = (byte) ((high << 4) | low);
 		}
 		return result;
 	}